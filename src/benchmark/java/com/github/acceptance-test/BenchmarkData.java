@@ -0,0 +1,140 @@
+package com.github.kentolsen;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Generates synthetic, reproducible inputs for the benchmarks: a source tree of modules and
+ * packages, changed files in it, suite mappings for its packages, integration pins and suite
+ * templates.
+ *
+ * @author Kent Olsen
+ */
+final class BenchmarkData {
+
+  static final String SHA = "adbf23f466db4d9c1b7e0652103ff9bce422c97a";
+
+  private static final int PACKAGES_PER_MODULE = 50;
+  private static final String PACKAGE_FILE_NAME = "package.json";
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * @return the path of source package <code>index</code>, for example services/module3/src/main/java/com/example/package17
+   */
+  static String packagePath(int index) {
+    return "services/module" + (index / PACKAGES_PER_MODULE) + "/src/main/java/com/example/package" + (index % PACKAGES_PER_MODULE);
+  }
+
+  /**
+   * @return <code>mappingKeys</code> suite mappings, one per source package, plus a fallback
+   */
+  static Properties suiteMappings(int mappingKeys) {
+    Properties suiteMappings = new Properties();
+    for (int index = 0; index < mappingKeys; index++) {
+      suiteMappings.setProperty(packagePath(index), "com.example.acceptance.Package" + index + "Test");
+    }
+    suiteMappings.setProperty(AcceptanceTestSelector.FALLBACK_CODE_PATH, "com.example.acceptance.SmokeTest");
+    return suiteMappings;
+  }
+
+  /**
+   * @return <code>integrationKeys</code> integration suite mappings for components named component-N
+   */
+  static Properties integrationSuiteMappings(int integrationKeys) {
+    Properties integrationSuiteMappings = new Properties();
+    for (int index = 0; index < integrationKeys; index++) {
+      integrationSuiteMappings.setProperty("component-" + index, "com.example.integration.Component" + index + "Test");
+    }
+    return integrationSuiteMappings;
+  }
+
+  /**
+   * @return the output of git diff --name-only for <code>changedFiles</code> files, about half of them in mapped packages
+   */
+  static String changedFiles(int changedFiles, int mappingKeys, long seed) {
+    Random random = new Random(seed);
+    StringBuilder output = new StringBuilder();
+    for (int index = 0; index < changedFiles; index++) {
+      int packageIndex = random.nextInt(Math.max(1, mappingKeys * 2));
+      output.append(packagePath(packageIndex)).append("/Class").append(index).append(".java\n");
+    }
+    return output.toString();
+  }
+
+  /**
+   * @return the changed pins, as the mojo reads them, when <code>changedPins</code> of the <code>integrationKeys * 2</code>
+   * components in a package.json change version, about half of them mapped
+   */
+  static Map<String, String> changedPins(int changedPins, int integrationKeys, long seed) throws IOException {
+    Random random = new Random(seed);
+    int components = Math.max(1, integrationKeys * 2);
+    Map<String, String> before = new TreeMap<String, String>();
+    for (int index = 0; index < components; index++) {
+      before.put("component-" + index, "^1.0.0");
+    }
+    Map<String, String> after = new TreeMap<String, String>(before);
+    for (int index = 0; index < changedPins; index++) {
+      after.put("component-" + random.nextInt(components), "^" + (2 + random.nextInt(8)) + '.' + random.nextInt(100) + ".0");
+    }
+    return PackagePins.diff(PackagePins.parse(PACKAGE_FILE_NAME, packageFile(before)),
+      PackagePins.parse(PACKAGE_FILE_NAME, packageFile(after)));
+  }
+
+  /**
+   * @return a package.json with <code>versions</code> as its dependencies
+   */
+  private static String packageFile(Map<String, String> versions) {
+    StringBuilder packageFile = new StringBuilder("{\n  \"name\": \"example\",\n  \"dependencies\": {");
+    String separator = "\n";
+    for (Map.Entry<String, String> version : versions.entrySet()) {
+      packageFile.append(separator).append("    \"").append(version.getKey()).append("\": \"").append(version.getValue()).append('"');
+      separator = ",\n";
+    }
+    return packageFile.append("\n  }\n}\n").toString();
+  }
+
+  /**
+   * @return a suite with <code>tests</code> tests, each with parameters, a packages section and <code>classesPerTest</code> classes
+   */
+  static String suiteTemplate(int tests, int classesPerTest) {
+    StringBuilder suite = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+      .append("<!DOCTYPE suite SYSTEM \"http://testng.org/testng-1.0.dtd\">\n")
+      .append("<suite name=\"Acceptance\" verbose=\"1\">\n")
+      .append("  <listeners>\n    <listener class-name=\"com.example.Listener\"/>\n  </listeners>\n");
+    for (int test = 0; test < tests; test++) {
+      suite.append("  <!-- test ").append(test).append(" -->\n")
+        .append("  <test name=\"Acceptance ").append(test).append("\" preserve-order=\"false\">\n")
+        .append("    <parameter name=\"browser\" value=\"chrome\"/>\n")
+        .append("    <packages>\n      <package name=\"com.example.acceptance.*\"/>\n    </packages>\n")
+        .append("    <classes>\n");
+      for (int index = 0; index < classesPerTest; index++) {
+        suite.append("      <class name=\"com.example.acceptance.Package").append(index).append("Test\"/>\n");
+      }
+      suite.append("    </classes>\n  </test>\n");
+    }
+    return suite.append("</suite>\n").toString();
+  }
+}
@@ -0,0 +1,108 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Benchmarks for matching changed files and changed pins to suites, for N changed files,
+ * M mapping keys and K integration keys.
+ *
+ * @author Kent Olsen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+  private static final String TEST_CLASS_SEPARATOR = ";";
+
+  @Param({"100", "10000"})
+  public int changedFiles;
+
+  @Param({"100", "5000"})
+  public int mappingKeys;
+
+  @Param({"10", "1000"})
+  public int integrationKeys;
+
+  private AcceptanceTestSelector selector;
+  private Properties suiteMappings;
+  private String changedFilesOutput;
+  private Map<String, String> changedPins;
+  private ChangedFileMatcher changedFileMatcher;
+
+  @Setup
+  public void setUp() throws MojoExecutionException, IOException {
+    suiteMappings = BenchmarkData.suiteMappings(mappingKeys);
+    selector = new AcceptanceTestSelector();
+    selector.setSuiteMappings(suiteMappings);
+    selector.setIntegrationSuiteMappings(BenchmarkData.integrationSuiteMappings(integrationKeys));
+    changedFilesOutput = BenchmarkData.changedFiles(changedFiles, mappingKeys, 42);
+    changedPins = BenchmarkData.changedPins(Math.max(1, integrationKeys / 10), integrationKeys, 42);
+    changedFileMatcher = matchChangedFiles();
+  }
+
+  /**
+   * Streams git diff --name-only output through the matcher, as the mojo does when reading the changed files.
+   */
+  @Benchmark
+  public ChangedFileMatcher matchChangedFiles() throws MojoExecutionException {
+    ChangedFileMatcher matcher = new ChangedFileMatcher(suiteMappings, TEST_CLASS_SEPARATOR);
+    BufferedReaderHelper.readLines(new BufferedReader(new StringReader(changedFilesOutput)), matcher);
+    return matcher;
+  }
+
+  @Benchmark
+  public Set<String> determineSuitesToRun() {
+    return selector.determineSuitesToRun(changedFileMatcher, changedPins);
+  }
+
+  @Benchmark
+  public String readFromBuffer() throws MojoExecutionException {
+    return BufferedReaderHelper.readFromBuffer(new BufferedReader(new StringReader(changedFilesOutput)));
+  }
+
+  @Benchmark
+  public String readSha() throws MojoExecutionException {
+    return selector.readSha(new BufferedReader(new StringReader("<SHA1>" + BenchmarkData.SHA + "</SHA1>\n")));
+  }
+}
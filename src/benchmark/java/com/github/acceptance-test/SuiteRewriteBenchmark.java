@@ -0,0 +1,89 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Benchmarks for reading a suite template and writing the selected classes into it, for
+ * suites of various sizes.
+ *
+ * @author Kent Olsen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuiteRewriteBenchmark {
+
+  @Param({"1", "50"})
+  public int tests;
+
+  @Param({"10", "1000"})
+  public int classesPerTest;
+
+  @Param({"10", "1000"})
+  public int selectedClasses;
+
+  private AcceptanceTestSelector selector;
+  private String suiteFile;
+  private String suiteTemplate;
+  private String classes;
+
+  @Setup
+  public void setUp() throws MojoExecutionException {
+    selector = new AcceptanceTestSelector();
+    suiteFile = BenchmarkData.suiteTemplate(tests, classesPerTest);
+    suiteTemplate = getSuiteFileContents();
+    Set<String> suites = new TreeSet<String>();
+    for (int index = 0; index < selectedClasses; index++) {
+      suites.add("com.example.acceptance.Package" + index + "Test");
+    }
+    classes = selector.generateSuiteClassesSection(suites, MethodSelection.of(suites));
+  }
+
+  @Benchmark
+  public String getSuiteFileContents() throws MojoExecutionException {
+    return selector.getSuiteFileContents(new BufferedReader(new StringReader(suiteFile)));
+  }
+
+  @Benchmark
+  public String setClassesInSuiteContents() {
+    return selector.setClassesInSuiteContents(suiteTemplate, classes);
+  }
+}
@@ -9,9 +9,17 @@ import org.codehaus.plexus.util.StringUtils;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /*
  * Copyright (C) 2015  Kent Olsen
@@ -41,8 +49,8 @@ import java.util.*;
  * class mappings, to determine which acceptance tests to run. It stores the
  * list of acceptance tests to run as classes in the testng suite file
  * named <code>suiteFileName</code>.  As it writes the testng suite file it removes
- * any <packages>...</packages> section and adds a <classes>...</classes> section
- * with the classes to run.
+ * every <packages>...</packages> section and replaces the <classes>...</classes> section
+ * of each <test> with the classes to run.
  *
  * @author Kent Olsen
  */
@@ -63,14 +71,30 @@ public class AcceptanceTestSelector extends AbstractMojo {
   public static final String FALLBACK_CODE_PATH = "_fallback_code_path_";
 
   public static final String LAST_SUCCESSFUL_REVISION = "LAST_SUCCESSFUL_REVISION";
+  private static final String PLUGIN_ARTIFACT_ID = "acceptance-test-selector-plugin";
   private static final String SHA_TAG = "<SHA1>";
-  private static final String PACKAGE_TAG_REGEX = "<packages>(?s).*</packages>";
   private static final String SIMPLE_SUITE_CONTENTS = "<suite name=\"Acceptance Test Suite\">\n"
     + "<test name=\"Selected Acceptance\" preserve-order=\"false\">\n"
     + "</test>\n"
     + "</suite>\n";
-  private static final String TEST_END_TAG = "</test>";
   private static final String TEST_CLASS_SEPARATOR = ";";
+  private static final String SUITE_READ_STAGE = "suite read";
+  private static final String SHA_RESOLUTION_STAGE = "SHA resolution";
+  private static final String CHANGED_FILES_STAGE = "changed files";
+  private static final String CHANGED_PINS_STAGE = "changed pins";
+  private static final String HEAD_RESOLUTION_STAGE = "HEAD resolution";
+  private static final String DEPENDENCY_GRAPH_STAGE = "dependency graph";
+  private static final String COVERAGE_INDEX_STAGE = "coverage index";
+  private static final String DAEMON_STAGE = "selection daemon";
+  private static final String MERGE_BASE_STAGE = "merge base";
+  private static final String SELECTION_CACHE_PHASE = "selection cache";
+  private static final String MATCHING_PHASE = "matching";
+  private static final String SUITE_REWRITE_PHASE = "suite rewrite";
+  private static final String SUITE_WRITE_PHASE = "suite write";
+  private static final String SHARD_FILE_INFIX = "-shard-";
+  private static final Pattern BASE_NAME_PATTERN = Pattern.compile("[\\w.-]+");
+  private static final Pattern CLASS_PATTERN = Pattern.compile("<class\\s+name=\"([^\"]+)\"\\s*(?:/>|>(.*?)</class>)", Pattern.DOTALL);
+  private static final Pattern INCLUDE_NAME_PATTERN = Pattern.compile("<include\\s+name=\"([^\"]+)\"");
 
   /**
    * The name of the acceptance test suite file that will be used by
@@ -96,6 +120,60 @@ public class AcceptanceTestSelector extends AbstractMojo {
     this.shaUrl = shaUrl;
   }
 
+  /**
+   * The connect timeout, in milliseconds, of each request to <code>shaUrl</code>.
+   */
+  @Parameter(defaultValue = "10000")
+  private int shaUrlConnectTimeoutMillis = 10000;
+
+  public void setShaUrlConnectTimeoutMillis(int shaUrlConnectTimeoutMillis) {
+    this.shaUrlConnectTimeoutMillis = shaUrlConnectTimeoutMillis;
+  }
+
+  /**
+   * The read timeout, in milliseconds, of each request to <code>shaUrl</code>.
+   */
+  @Parameter(defaultValue = "30000")
+  private int shaUrlReadTimeoutMillis = 30000;
+
+  public void setShaUrlReadTimeoutMillis(int shaUrlReadTimeoutMillis) {
+    this.shaUrlReadTimeoutMillis = shaUrlReadTimeoutMillis;
+  }
+
+  /**
+   * The number of times to try <code>shaUrl</code> before giving up.  Connection failures, timeouts and server
+   * errors are retried; client errors such as 404 are not.
+   */
+  @Parameter(defaultValue = "3")
+  private int shaUrlAttempts = 3;
+
+  public void setShaUrlAttempts(int shaUrlAttempts) {
+    this.shaUrlAttempts = shaUrlAttempts;
+  }
+
+  /**
+   * The wait, in milliseconds, before the second attempt to reach <code>shaUrl</code>.  Each later wait doubles.
+   */
+  @Parameter(defaultValue = "1000")
+  private long shaUrlRetryBackoffMillis = 1000;
+
+  public void setShaUrlRetryBackoffMillis(long shaUrlRetryBackoffMillis) {
+    this.shaUrlRetryBackoffMillis = shaUrlRetryBackoffMillis;
+  }
+
+  /**
+   * The file holding the last good response from <code>shaUrl</code> and its <code>ETag</code>.  It makes
+   * requests conditional, and its response is used when <code>shaUrl</code> cannot be reached.  The builds on a
+   * machine share it, each replacing only the entries of its own <code>shaUrl</code> under a lock on
+   * <code>sha-state.properties.lock</code>.  No state is kept when this is not set.
+   */
+  @Parameter(defaultValue = "${user.home}/.acceptance-test-selector/sha-state.properties")
+  private File shaStateFile;
+
+  public void setShaStateFile(File shaStateFile) {
+    this.shaStateFile = shaStateFile;
+  }
+
   /**
    * The root of the git repository containing the source code being tested.
    */
@@ -120,11 +198,20 @@ public class AcceptanceTestSelector extends AbstractMojo {
    *  </suiteMappings>
    *
    * In the example, any code changed in com/example/samplepackage will cause tests to be
-   * run in the com.example.acceptanceTestSuites.SampleSuite class.  It is
+   * run in the com.example.acceptanceTestSuites.SampleSuite class.  When more than one
+   * <name>...</name> is a prefix of a changed file, only the longest one is used.  It is
    * expected that <name>...</name> will be the path to the source starting from the repository root.
+   * A <name>...</name> may also be a glob such as services/*&#47;src/main/java/**&#47;api/, where ? matches one
+   * character, * matches within a directory, ** matches across directories and **&#47; matches zero or more
+   * directories, or a regular expression prefixed with regex:, as in regex:services/(billing|orders)/.  Globs
+   * and regular expressions match the start of the changed file path, and every one that matches is used
+   * in addition to the longest literal <name>...</name>.
    * It is expected that <value>...</value> will be the full class name of the testng class.  If multiple
    * test classes should run based on a source path, they should be separated by a semi-colon <code>;</code>
-   * as in the 2nd property listed above.
+   * as in the 2nd property listed above.  To run only some methods of a class, follow the class name with
+   * <code>#</code> and the comma separated method names, as in <code>com.example.BigTest#login,logout</code>.  The
+   * methods that several mappings select in the same class are merged, and a mapping to the whole class runs the
+   * whole class.  The mappings may be left out when <code>coverageDirectory</code> is set.
    */
   @SuppressWarnings ( "MismatchedQueryAndUpdateOfCollection" )
   @Parameter
@@ -135,11 +222,14 @@ public class AcceptanceTestSelector extends AbstractMojo {
   }
 
   /**
-   * The name of the package file that is used to determine which integration suites to run.  This file name
-	 * should contain one line for each separate component that contains the version of that component that
-	 * is being used/tested in the product.  As different versions of a separate component are used, the line
-	 * for that component should change to get the matching version.  This is a common approach used in
-	 * JavaScript projects with a package.json file.
+   * The name of the package file that is used to determine which integration suites to run, relative to
+	 * <code>sourceRoot</code>.  This file should contain the version of each separate component that is being
+	 * used/tested in the product.  As different versions of a separate component are used, the version
+	 * for that component should change.  A <code>.json</code> file is read as a package.json, as is common in
+	 * JavaScript projects, taking the versions from its dependency objects such as <code>dependencies</code> and
+	 * <code>devDependencies</code>.  Any other file is read as a properties file of component names and versions.
+	 * The versions in the base revision and in HEAD are compared, and each component that is new or has a different
+	 * version is a changed pin.
    */
   @Parameter
   private String packageFileName;
@@ -163,11 +253,12 @@ public class AcceptanceTestSelector extends AbstractMojo {
    *  </suiteMappings>
    *
    * In the example, a change to a component version in <code>packageFileName</code> for separate-component will cause tests to be
-   * run in the com.example.acceptanceTestSuites.SeparateComponentSuite class.  It is
-   * expected that <name>...</name> will be the path to the source starting from the repository root.
+   * run in the com.example.acceptanceTestSuites.SeparateComponentSuite class.  A <name>...</name> is the exact component
+   * name, so separate-component does not match a change to separate-component2.
    * It is expected that <value>...</value> will be the full class name of the testng class.  If multiple
    * test classes should run based on a source path, they should be separated by a semi-colon <code>;</code>
-   * as in the 2nd property listed above.
+   * as in the 2nd property listed above.  Methods may be selected as in <code>suiteMappings</code>.  The mappings may be left
+   * out when <code>coverageDirectory</code> is set.
    */
   @SuppressWarnings ( "MismatchedQueryAndUpdateOfCollection" )
   @Parameter
@@ -189,6 +280,327 @@ public class AcceptanceTestSelector extends AbstractMojo {
     this.skipFilter = skipFilter;
   }
 
+  /**
+   * Whether to read the changed files directly from the <code>.git</code> directory at <code>sourceRoot</code>
+   * instead of running <code>git diff --name-only</code>.  This avoids starting a process and works when git
+   * is not installed.  Renames are reported under both the old and the new path.  If the repository cannot be
+   * read in-process (for example, the SHA is abbreviated or the repository uses alternates), the git command
+   * is used instead.
+   */
+  @Parameter
+  private boolean inProcessGit;
+
+  public void setInProcessGit(boolean inProcessGit) {
+    this.inProcessGit = inProcessGit;
+  }
+
+  /**
+   * Whether to select against the merge base of HEAD and the SHA from <code>shaUrl</code> instead of the SHA
+   * itself.  On a feature branch the last successful build is often of a later mainline commit, and diffing
+   * against it would select the suites of every mainline change since the branch was made.  With
+   * <code>inProcessGit</code> the merge base is found in the <code>.git</code> directory, using its commit-graph
+   * file when there is one; otherwise <code>git merge-base</code> is run.
+   */
+  @Parameter(property = "acceptanceTestSelector.mergeBase")
+  private boolean mergeBase;
+
+  public void setMergeBase(boolean mergeBase) {
+    this.mergeBase = mergeBase;
+  }
+
+  /**
+   * Base revisions to select against in one run instead of the SHA from <code>shaUrl</code>, as in
+   * <code>nightly=origin/release,weekly=v2.3</code>.  Each entry is <code>name=revision</code> or a bare revision,
+   * named after itself, and the suite selected against it is written to <code>acceptance-<i>name</i>.xml</code>
+   * next to <code>suiteFileName</code> <code>acceptance.xml</code>, which is left as it is.  The trees of HEAD are
+   * compared with all the bases in one pass with <code>inProcessGit</code>, the package file of HEAD is read once,
+   * and a file changed since several bases is matched against <code>suiteMappings</code> once.  The selection
+   * cache, the selection daemon and <code>shardCount</code> do not apply to these runs.
+   */
+  @Parameter(property = "acceptanceTestSelector.baseRevisions")
+  private List<String> baseRevisions;
+
+  public void setBaseRevisions(List<String> baseRevisions) {
+    this.baseRevisions = baseRevisions;
+  }
+
+  /**
+   * The maximum number of seconds to wait for each step of the selection: reading the suite file, resolving the
+   * SHA from <code>shaUrl</code> and each git diff.  Reading the suite file overlaps with resolving the SHA, and
+   * the two git diffs run in parallel once the SHA is known.
+   */
+  @Parameter(defaultValue = "300")
+  private long stageTimeoutSeconds = 300;
+
+  public void setStageTimeoutSeconds(long stageTimeoutSeconds) {
+    this.stageTimeoutSeconds = stageTimeoutSeconds;
+  }
+
+  /**
+   * The directory of the selection cache.  Generated suites are cached under a key made from the base SHA,
+   * the HEAD SHA, <code>suiteMappings</code>, <code>integrationSuiteMappings</code>, <code>packageFileName</code>
+   * and the suite file template, so repeated runs for the same commit write the suite without running the git
+   * diffs or the matching again.  Caching is disabled when this is not set, as in
+   * <code>${project.build.directory}/acceptance-test-selector/cache</code> to enable it.
+   */
+  @Parameter
+  private File selectionCacheDirectory;
+
+  public void setSelectionCacheDirectory(File selectionCacheDirectory) {
+    this.selectionCacheDirectory = selectionCacheDirectory;
+  }
+
+  /**
+   * The maximum number of suites kept in the selection cache.  The least recently used suites are removed first.
+   */
+  @Parameter(defaultValue = "64")
+  private int selectionCacheSize = 64;
+
+  public void setSelectionCacheSize(int selectionCacheSize) {
+    this.selectionCacheSize = selectionCacheSize;
+  }
+
+  /**
+   * Whether to also select the test classes that depend, directly or through other classes, on a class compiled
+   * from a changed source file.  The dependencies are read from the class files in <code>classesDirectory</code>
+   * and <code>testClassesDirectory</code>, so those must be compiled before this plugin runs.  The selected
+   * test classes are the concrete top-level classes of <code>testClassesDirectory</code>.
+   */
+  @Parameter
+  private boolean dependencyAnalysis;
+
+  public void setDependencyAnalysis(boolean dependencyAnalysis) {
+    this.dependencyAnalysis = dependencyAnalysis;
+  }
+
+  /**
+   * The directory of the compiled classes used by <code>dependencyAnalysis</code>.
+   */
+  @Parameter(defaultValue = "${project.build.outputDirectory}")
+  private File classesDirectory;
+
+  public void setClassesDirectory(File classesDirectory) {
+    this.classesDirectory = classesDirectory;
+  }
+
+  /**
+   * The directory of the compiled test classes used by <code>dependencyAnalysis</code>.
+   */
+  @Parameter(defaultValue = "${project.build.testOutputDirectory}")
+  private File testClassesDirectory;
+
+  public void setTestClassesDirectory(File testClassesDirectory) {
+    this.testClassesDirectory = testClassesDirectory;
+  }
+
+  /**
+   * The largest number of classes <code>dependencyAnalysis</code> may find affected by the changes.  When more
+   * are affected, the change is too broad to select from and the <code>_fallback_code_path_</code> suites are
+   * run instead.
+   */
+  @Parameter(defaultValue = "20000")
+  private int dependencyAnalysisMaxClasses = 20000;
+
+  public void setDependencyAnalysisMaxClasses(int dependencyAnalysisMaxClasses) {
+    this.dependencyAnalysisMaxClasses = dependencyAnalysisMaxClasses;
+  }
+
+  /**
+   * The longest chain of class references <code>dependencyAnalysis</code> follows.  When a longer chain is
+   * found, the <code>_fallback_code_path_</code> suites are run instead.
+   */
+  @Parameter(defaultValue = "100")
+  private int dependencyAnalysisMaxDepth = 100;
+
+  public void setDependencyAnalysisMaxDepth(int dependencyAnalysisMaxDepth) {
+    this.dependencyAnalysisMaxDepth = dependencyAnalysisMaxDepth;
+  }
+
+  /**
+   * The index of parsed class files kept by <code>dependencyAnalysis</code> between builds, so that only the class
+   * files that changed since the last build are parsed again.  The whole graph is parsed on every build when this
+   * is not set.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/acceptance-test-selector/dependency-index.bin")
+  private File dependencyIndexFile;
+
+  public void setDependencyIndexFile(File dependencyIndexFile) {
+    this.dependencyIndexFile = dependencyIndexFile;
+  }
+
+  /**
+   * A directory of recorded coverage, one file per suite named after the test class of the suite: JaCoCo
+   * execution data named <code>&lt;suite&gt;.exec</code>, or a coverage map named <code>&lt;suite&gt;.coverage</code>
+   * listing one covered source path per line, optionally followed by <code>:</code> and the covered lines, as
+   * in <code>com/example/Foo.java:10-25,40</code>.  When set, the suites whose coverage includes a changed
+   * source file are selected as well, and <code>suiteMappings</code> may be left out.  Executed classes are
+   * traced to their source files through <code>classesDirectory</code>.
+   */
+  @Parameter
+  private File coverageDirectory;
+
+  public void setCoverageDirectory(File coverageDirectory) {
+    this.coverageDirectory = coverageDirectory;
+  }
+
+  /**
+   * The index of the coverage in <code>coverageDirectory</code> kept between builds, so that only the coverage
+   * files that changed since the last build are read again.  All coverage files are read on every build when
+   * this is not set.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/acceptance-test-selector/coverage-index.bin")
+  private File coverageIndexFile;
+
+  public void setCoverageIndexFile(File coverageIndexFile) {
+    this.coverageIndexFile = coverageIndexFile;
+  }
+
+  /**
+   * The number of suite files to split the selected test classes into, so that the acceptance tests can run on
+   * that many agents at once.  Shard <i>n</i> of <code>suiteFileName</code> <code>acceptance.xml</code> is written to
+   * <code>acceptance-shard-<i>n</i>.xml</code> in the same directory, in addition to the full suite file.  The
+   * classes are split so that the shards take about the same time, using the durations in
+   * <code>testHistoryFile</code> and <code>classDurationsFile</code>.  The suite is not split when this is 1.
+   */
+  @Parameter(defaultValue = "1")
+  private int shardCount = 1;
+
+  public void setShardCount(int shardCount) {
+    this.shardCount = shardCount;
+  }
+
+  /**
+   * A properties file of the duration of each test class in milliseconds, as in
+   * <code>com.example.LoginTest=95000</code>, used to balance the shards.  Its durations take precedence over
+   * those in <code>testHistoryFile</code>.
+   */
+  @Parameter
+  private File classDurationsFile;
+
+  public void setClassDurationsFile(File classDurationsFile) {
+    this.classDurationsFile = classDurationsFile;
+  }
+
+  /**
+   * The test history store written by the <code>recordTestHistory</code> goal.  The mean duration of the recorded
+   * runs of each test class is used to balance the shards.
+   */
+  @Parameter(defaultValue = "${user.home}/.acceptance-test-selector/${project.groupId}.${project.artifactId}/test-history.bin")
+  private File testHistoryFile;
+
+  public void setTestHistoryFile(File testHistoryFile) {
+    this.testHistoryFile = testHistoryFile;
+  }
+
+  /**
+   * The duration in milliseconds assumed for a test class that is in neither <code>testHistoryFile</code> nor
+   * <code>classDurationsFile</code>.
+   */
+  @Parameter(defaultValue = "60000")
+  private long defaultClassDuration = 60000;
+
+  public void setDefaultClassDuration(long defaultClassDuration) {
+    this.defaultClassDuration = defaultClassDuration;
+  }
+
+  /**
+   * Whether to run the selected test classes most likely to fail first, to shorten the time to the first failure.
+   * Classes are ranked by how recently and how often they failed in <code>testHistoryFile</code>, whether their
+   * source changed, and their expected duration, and each test of the suite is given
+   * <code>preserve-order="true"</code> so that TestNG keeps the order.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean failureFirstOrder;
+
+  public void setFailureFirstOrder(boolean failureFirstOrder) {
+    this.failureFirstOrder = failureFirstOrder;
+  }
+
+  /**
+   * The port of a {@link SelectionDaemon} on this machine to ask for the changed files, the suites they map to and
+   * the changed pins, which it keeps warm between builds.  When no daemon answers the selection runs in-process.
+   * No daemon is used when this is 0.  The daemon does not authenticate requests, so only use one on a build agent
+   * that is not shared with untrusted users.
+   */
+  @Parameter(property = "acceptanceTestSelector.daemonPort", defaultValue = "0")
+  private int daemonPort;
+
+  public void setDaemonPort(int daemonPort) {
+    this.daemonPort = daemonPort;
+  }
+
+  /**
+   * The maximum number of milliseconds to wait for the selection daemon to accept a connection.
+   */
+  @Parameter(defaultValue = "2000")
+  private int daemonTimeoutMillis = 2000;
+
+  public void setDaemonTimeoutMillis(int daemonTimeoutMillis) {
+    this.daemonTimeoutMillis = daemonTimeoutMillis;
+  }
+
+  /**
+   * The maximum number of milliseconds to wait for each answer of the selection daemon once it has accepted the
+   * connection.  A daemon that has just started may have to read the repository and diff a large change first, which
+   * would otherwise be repeated in-process.
+   */
+  @Parameter(defaultValue = "120000")
+  private int daemonSelectionTimeoutMillis = 120000;
+
+  public void setDaemonSelectionTimeoutMillis(int daemonSelectionTimeoutMillis) {
+    this.daemonSelectionTimeoutMillis = daemonSelectionTimeoutMillis;
+  }
+
+  /**
+   * The JSON report of each selection, with the time spent in each phase and how many changed files matched and
+   * suites were selected.  A one-line summary is also logged.  No report is written when this is not set.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/acceptance-test-selector/report.json")
+  private File reportFile;
+
+  public void setReportFile(File reportFile) {
+    this.reportFile = reportFile;
+  }
+
+  /**
+   * The number of changed files, changed pins and selected suites logged at INFO; the rest are logged at DEBUG
+   * and counted at INFO.  A negative number logs every item at INFO.
+   */
+  @Parameter(property = "acceptanceTestSelector.logItemLimit", defaultValue = "20")
+  private int logItemLimit = 20;
+
+  public void setLogItemLimit(int logItemLimit) {
+    this.logItemLimit = logItemLimit;
+  }
+
+  /**
+   * A file receiving the full lists of changed files, changed pins and selected suites, written on a background
+   * thread whatever the log level.  No file is written when this is not set.
+   */
+  @Parameter(property = "acceptanceTestSelector.logDetailFile")
+  private File logDetailFile;
+
+  public void setLogDetailFile(File logDetailFile) {
+    this.logDetailFile = logDetailFile;
+  }
+
+  private SelectionReport report = new SelectionReport();
+  private DetailLogWriter detailLog;
+  private GitRepositoryReader gitRepositoryReader;
+
+  /**
+   * The Maven session.  The SHA, the changed files and the changed pins are computed once per session and
+   * shared by every module of the build that runs the selector, as is the HEAD revision.  Sharing the changed
+   * files keeps their whole list in memory, so they are only shared when more than one module of the reactor
+   * runs the selector; a single module streams them from git through the matcher.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private Object session;
+
+  public void setSession(Object session) {
+    this.session = session;
+  }
+
   /**
    * Run the maven plugin.
    *
@@ -203,13 +615,17 @@ public class AcceptanceTestSelector extends AbstractMojo {
     if (suiteFileName == null) {
       ExceptionHelper.throwMojoExecutionException("suiteFileName MUST be set");
     }
-    if (shaUrl == null && (sha == null || sha.isEmpty())) {
+    boolean batch = baseRevisions != null && !baseRevisions.isEmpty();
+    if (!batch && shaUrl == null && (sha == null || sha.isEmpty())) {
       ExceptionHelper.throwMojoExecutionException("shaUrl or LAST_SUCCESSFUL_REVISION environment variable/property must be set");
     }
     if (StringUtils.isEmpty(sourceRoot)) {
       ExceptionHelper.throwMojoExecutionException("sourceRoot MUST be set");
     }
-    if (suiteMappings == null || suiteMappings.isEmpty()) {
+    if (coverageDirectory != null && suiteMappings == null) {
+      suiteMappings = new Properties();
+    }
+    if (coverageDirectory == null && (suiteMappings == null || suiteMappings.isEmpty())) {
       ExceptionHelper.throwMojoExecutionException("suiteMappings MUST be set");
     }
     if (StringUtils.isEmpty(packageFileName)) {
@@ -218,44 +634,668 @@ public class AcceptanceTestSelector extends AbstractMojo {
     if (integrationSuiteMappings == null || integrationSuiteMappings.isEmpty()) {
       ExceptionHelper.throwMojoExecutionException("integrationSuiteMappings MUST be set");
     }
+    if (shardCount < 1) {
+      ExceptionHelper.throwMojoExecutionException("shardCount must be at least 1");
+    }
 
-    String suiteContents = suiteFileName.exists()
-      ? getSuiteFileContents(getSuiteFileNameReader())
-      : getSimpleSuiteContents();
-    logInfoMessage("Running " + suiteFileName);
+    report = new SelectionReport();
+    report.setShardCount(shardCount);
+    gitRepositoryReader = null;
+    String error = "Selection did not complete";
+    SessionCache sessionCache = SessionCache.forSession(session);
+    SelectionPipeline pipeline = new SelectionPipeline(stageTimeoutSeconds);
+    detailLog = openDetailLog();
+    try {
+      SelectionPipeline.Stage<String> suiteContentsStage = pipeline.submit(SUITE_READ_STAGE, report.timed(SUITE_READ_STAGE,
+        () -> suiteFileName.exists()
+          ? getSuiteFileContents(getSuiteFileNameReader())
+          : getSimpleSuiteContents()));
+      SelectionPipeline.Stage<String> shaStage = batch
+        ? pipeline.completed(SHA_RESOLUTION_STAGE, null)
+        : sha == null || sha.isEmpty()
+        ? pipeline.submit(SHA_RESOLUTION_STAGE, report.timed(SHA_RESOLUTION_STAGE, () -> getShared(sessionCache, "SHA from " + shaUrl,
+            () -> readSha(getShaUrlReader()))))
+        : pipeline.completed(SHA_RESOLUTION_STAGE, sha);
+      SelectionPipeline.Stage<String> headShaStage = selectionCacheDirectory != null && !batch
+        ? pipeline.submit(HEAD_RESOLUTION_STAGE, report.timed(HEAD_RESOLUTION_STAGE,
+            () -> getShared(sessionCache, "HEAD revision", this::resolveHeadSha)))
+        : pipeline.completed(HEAD_RESOLUTION_STAGE, null);
+      SelectionPipeline.Stage<DependencyGraph> dependencyGraphStage = dependencyAnalysis
+        ? pipeline.submit(DEPENDENCY_GRAPH_STAGE, report.timed(DEPENDENCY_GRAPH_STAGE, this::scanDependencyGraph))
+        : pipeline.completed(DEPENDENCY_GRAPH_STAGE, null);
+      SelectionPipeline.Stage<CoverageIndex> coverageIndexStage = coverageDirectory != null
+        ? pipeline.submit(COVERAGE_INDEX_STAGE, report.timed(COVERAGE_INDEX_STAGE, this::updateCoverageIndex))
+        : pipeline.completed(COVERAGE_INDEX_STAGE, null);
 
-    if (sha == null || sha.isEmpty()) {
-      sha = readSha(getShaUrlReader());
+      String suiteContents = suiteContentsStage.get();
+      logInfoMessage("Running " + suiteFileName);
+
+      if (batch) {
+        writeBaseRevisionSuites(suiteContents, dependencyGraphStage.get(), coverageIndexStage.get());
+        error = null;
+        return;
+      }
+
+      sha = shaStage.get();
+      logInfoMessage("SHA is " + sha);
+      report.setSha(sha);
+
+      String cacheKey = null;
+      if (selectionCacheDirectory != null) {
+        DependencyGraph dependencyGraph = dependencyGraphStage.get();
+        CoverageIndex coverageIndex = coverageIndexStage.get();
+        cacheKey = getSelectionCacheKey(sha, headShaStage.get(), suiteContents,
+          dependencyGraph != null ? dependencyGraph.getFingerprint() : null,
+          coverageIndex != null ? coverageIndex.getFingerprint() : null, getTestHistoryFingerprint());
+        final String selectionCacheKey = cacheKey;
+        String cachedSuiteContents = report.timed(SELECTION_CACHE_PHASE, () -> readSelectionCache(selectionCacheKey)).run();
+        if (cachedSuiteContents != null) {
+          report.setCacheHit(true);
+          writeSuiteFileIfChanged(cachedSuiteContents);
+          MethodSelection methodSelection = getMethodSelectionInSuiteContents(cachedSuiteContents);
+          report.setSelectedSuiteCount(methodSelection.getClassNames().size());
+          if (shardCount > 1) {
+            writeShards(cachedSuiteContents, methodSelection.getClassNames(), methodSelection, readClassDurations(readTestHistory()));
+          }
+          error = null;
+          return;
+        }
+      }
+
+      SelectionPipeline.Stage<String> baseStage = mergeBase
+        ? pipeline.then(MERGE_BASE_STAGE, shaStage, report.timed(MERGE_BASE_STAGE,
+            input -> getShared(sessionCache, "merge base of " + input + " and HEAD", () -> findMergeBase(input))))
+        : shaStage;
+      if (mergeBase) {
+        String base = baseStage.get();
+        logInfoMessage("Merge base of " + sha + " and HEAD is " + base);
+        report.setMergeBase(base);
+      }
+
+      SelectionDaemon.Selection daemonSelection = null;
+      if (daemonPort > 0) {
+        final String daemonSha = baseStage.get();
+        daemonSelection = report.timed(DAEMON_STAGE, () -> requestDaemonSelection(daemonSha)).run();
+        report.setDaemonUsed(daemonSelection != null);
+      }
+      SelectionPipeline.Stage<ChangedFileMatcher> changedFilesStage = daemonSelection != null
+        ? pipeline.completed(CHANGED_FILES_STAGE, daemonSelection.getChangedFileMatcher())
+        : pipeline.then(CHANGED_FILES_STAGE, baseStage, input -> matchChangedFiles(input, sessionCache));
+      SelectionPipeline.Stage<Map<String, String>> changedPinsStage = daemonSelection != null
+        ? pipeline.completed(CHANGED_PINS_STAGE, daemonSelection.getChangedPins())
+        : pipeline.then(CHANGED_PINS_STAGE, baseStage, report.timed(CHANGED_PINS_STAGE,
+        input -> getShared(sessionCache, "changed pins of " + packageFileName + " since " + input, () -> readChangedPins(input))));
+
+      ChangedFileMatcher changedFileMatcher = changedFilesStage.get();
+      report.setChangedFileCount(changedFileMatcher.getChangedFileCount());
+      report.setMatchedFileCount(changedFileMatcher.getMatchedFileCount());
+      DependencyGraph dependencyGraph = dependencyGraphStage.get();
+      CoverageIndex coverageIndex = coverageIndexStage.get();
+      long matchingStart = System.nanoTime();
+      if (dependencyAnalysis) {
+        selectDependentTests(dependencyGraph, changedFileMatcher);
+      }
+      if (coverageDirectory != null) {
+        selectCoveringSuites(coverageIndex, changedFileMatcher);
+      }
+      report.addTime(MATCHING_PHASE, System.nanoTime() - matchingStart);
+
+      logInfoMessage("Package file name is " + packageFileName);
+
+      Map<String, String> changedPins = changedPinsStage.get();
+      SummarizedListLog changedPinsLog = createListLog("Changed pins", "Changed pin item");
+      changedPinsLog.begin();
+      for (Map.Entry<String, String> changedPin : changedPins.entrySet()) {
+        changedPinsLog.item(changedPin.getKey() + " " + changedPin.getValue());
+      }
+      changedPinsLog.end();
+
+      String selectedSuiteContents = writeSuite(suiteContents, changedFileMatcher, changedPins);
+      if (cacheKey != null) {
+        long cacheStart = System.nanoTime();
+        writeSelectionCache(cacheKey, selectedSuiteContents);
+        report.addTime(SELECTION_CACHE_PHASE, System.nanoTime() - cacheStart);
+      }
+      error = null;
     }
-    logInfoMessage("SHA is " + sha);
+    catch (MojoExecutionException | RuntimeException e) {
+      error = e.getMessage() != null ? e.getMessage() : e.toString();
+      throw e;
+    }
+    finally {
+      pipeline.shutdown();
+      writeReport(error);
+      closeDetailLog();
+      gitRepositoryReader = null;
+    }
+  }
+
+  private DetailLogWriter openDetailLog() {
+    if (logDetailFile == null) {
+      return null;
+    }
+    try {
+      return new DetailLogWriter(logDetailFile);
+    }
+    catch (IOException e) {
+      logWarnMessage("Unable to write detail log " + logDetailFile + ": " + e.getMessage());
+      return null;
+    }
+  }
 
-    List<String> changedFiles = getNamesOfChangedFiles(getGitCommandReader("git diff --name-only " + sha + " HEAD"));
-    logInfoMessage("Changed file list begin:");
-    for (String changedFile : changedFiles) {
-      logInfoMessage("Changed file item: " + changedFile);
+  private void closeDetailLog() {
+    if (detailLog == null) {
+      return;
+    }
+    try {
+      detailLog.close();
+    }
+    catch (IOException e) {
+      logWarnMessage("Unable to write detail log " + logDetailFile + ": " + e.getMessage());
     }
-    logInfoMessage("Changed file list end.");
+    detailLog = null;
+  }
 
-    logInfoMessage("Package file name is " + packageFileName);
+  private SummarizedListLog createListLog(String title, String itemLabel) {
+    return new SummarizedListLog(getLog(), ACCEPTANCE_TEST_SELECTOR_PLUGIN_MESSAGE_PREFIX, title, itemLabel, logItemLimit, detailLog);
+  }
 
-    String changedPins = BufferedReaderHelper.readFromBuffer(getGitCommandReader("git diff " + sha + " HEAD " + packageFileName + " | grep \"^\\+ \""));
-    logInfoMessage("Changed Pins Begin:");
-    logInfoMessage(changedPins);
-    logInfoMessage("Changed Pins End.");
+  private void writeReport(String error) {
+    report.finish(error);
+    logInfoMessage(report.getSummary());
+    if (reportFile == null) {
+      return;
+    }
+    try {
+      report.write(reportFile);
+    }
+    catch (IOException e) {
+      logWarnMessage("Unable to write selection report " + reportFile + ": " + e.getMessage());
+    }
+  }
 
-    Set<String> suites = determineSuitesToRun(changedFiles, changedPins);
-    logInfoMessage("Suites to run begin:");
+  private String writeSuite(String suiteContents, ChangedFileMatcher changedFileMatcher, Map<String, String> changedPins) throws MojoExecutionException {
+    long matchingStart = System.nanoTime();
+    MethodSelection methodSelection = MethodSelection.of(determineSuitesToRun(changedFileMatcher, changedPins));
+    Collection<String> suites = methodSelection.getClassNames();
+    report.addTime(MATCHING_PHASE, System.nanoTime() - matchingStart);
+    report.setSelectedSuiteCount(suites.size());
+    report.setMappedSuiteCount(getMappedSuiteCount());
+    Map<String, Long> durations = null;
+    if (failureFirstOrder || shardCount > 1) {
+      TestHistoryStore testHistoryStore = readTestHistory();
+      durations = readClassDurations(testHistoryStore);
+      if (failureFirstOrder) {
+        suites = SuitePrioritizer.prioritize(suites, testHistoryStore, getChangedClasses(changedFileMatcher, suites), durations,
+          defaultClassDuration);
+      }
+    }
+    SummarizedListLog suitesLog = createListLog("Suites to run", "Suite to run item");
+    suitesLog.begin();
     for (String suite : suites) {
-      logInfoMessage("Suite to run item: " + suite);
+      Set<String> methods = methodSelection.getMethods(suite);
+      suitesLog.item(suite
+        + (methods != null ? MethodSelection.METHOD_SEPARATOR + String.join(MethodSelection.METHOD_LIST_SEPARATOR, methods) : ""));
     }
-    logInfoMessage("Suites to run end.");
+    suitesLog.end();
 
-    String classes = generateSuiteClassesSection(suites);
+    String classes = generateSuiteClassesSection(suites, methodSelection);
 //    logInfoMessage("Classes generated from suites to run:\n" + classes);
 
-    suiteContents = setClassesInSuiteContents(suiteContents, classes);
+    String selectedSuiteContents = setClassesInSuiteContents(suiteContents, classes);
+    writeSuiteFileIfChanged(selectedSuiteContents);
+    if (shardCount > 1) {
+      writeShards(suiteContents, suites, methodSelection, durations);
+    }
+    return selectedSuiteContents;
+  }
+
+  /**
+   * @return the number of distinct test classes the suite and integration suite mappings name
+   */
+  private int getMappedSuiteCount() {
+    List<String> mappedSuites = new ArrayList<String>();
+    for (Properties mappings : Arrays.asList(suiteMappings, integrationSuiteMappings)) {
+      for (String key : mappings.stringPropertyNames()) {
+        Collections.addAll(mappedSuites, mappings.getProperty(key).split(TEST_CLASS_SEPARATOR));
+      }
+    }
+    return MethodSelection.of(mappedSuites).getClassNames().size();
+  }
+
+  /**
+   * Writes one suite file per shard, each holding the classes the sharder gave it.  With
+   * <code>failureFirstOrder</code> each shard keeps the classes in the order of <code>classes</code>.
+   */
+  private void writeShards(String suiteContents, Collection<String> classes, MethodSelection methodSelection,
+                           Map<String, Long> durations) throws MojoExecutionException {
+    List<SuiteSharder.Shard> shards = SuiteSharder.shard(classes, shardCount, durations, defaultClassDuration);
+    Map<String, Integer> order = new HashMap<String, Integer>();
+    for (String className : classes) {
+      order.put(className, order.size());
+    }
+    for (SuiteSharder.Shard shard : shards) {
+      File shardFile = getShardFile(shard.getNumber());
+      List<String> shardClasses = shard.getClasses();
+      if (failureFirstOrder) {
+        shardClasses = new ArrayList<String>(shardClasses);
+        shardClasses.sort((first, second) -> Integer.compare(order.get(first), order.get(second)));
+      }
+      String shardContents = setClassesInSuiteContents(suiteContents, generateSuiteClassesSection(shardClasses, methodSelection));
+      long writeStart = System.nanoTime();
+      boolean written = writeShardFile(shardFile, shardContents);
+      report.addTime(SUITE_WRITE_PHASE, System.nanoTime() - writeStart);
+      logInfoMessage("Shard " + shard.getNumber() + " of " + shardCount + " (" + shardFile.getName() + ", "
+        + (written ? "rewritten" : "unchanged") + "): " + shard.getClasses().size() + " classes, predicted "
+        + formatDuration(shard.getDuration()) + ".");
+    }
+    logInfoMessage("Predicted makespan of " + shardCount + " shards is " + formatDuration(SuiteSharder.getMakespan(shards)) + ".");
+  }
+
+  File getShardFile(int number) {
+    return getSiblingSuiteFile(SHARD_FILE_INFIX + number);
+  }
 
-    FileWriterHelper.writeToWriter(getSuiteFileWriter(), suiteContents);
+  File getBaseSuiteFile(String name) {
+    return getSiblingSuiteFile("-" + name);
+  }
+
+  /**
+   * @return the file in the directory of <code>suiteFileName</code> named like it, with <code>suffix</code>
+   * before its extension
+   */
+  private File getSiblingSuiteFile(String suffix) {
+    String name = suiteFileName.getName();
+    int extension = name.lastIndexOf('.');
+    String siblingName = extension < 0
+      ? name + suffix
+      : name.substring(0, extension) + suffix + name.substring(extension);
+    return new File(suiteFileName.getParentFile(), siblingName);
+  }
+
+  protected boolean writeShardFile(File shardFile, String shardContents) throws MojoExecutionException {
+    return FileWriterHelper.writeIfChanged(shardFile, shardContents);
+  }
+
+  /**
+   * Selects the suites against each of <code>baseRevisions</code> and writes one suite file per base.  The
+   * changed files of all the bases are listed together, the pins of HEAD are read once, and the mapping keys
+   * matching a path are found once however many bases it changed since.
+   */
+  private void writeBaseRevisionSuites(String suiteContents, DependencyGraph dependencyGraph, CoverageIndex coverageIndex)
+    throws MojoExecutionException {
+    Map<String, String> revisions = parseBaseRevisions();
+    report.setBaseRevisionCount(revisions.size());
+    Map<String, String> basesByName = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, String> revision : revisions.entrySet()) {
+      String base = revision.getValue();
+      if (mergeBase) {
+        base = report.timed(MERGE_BASE_STAGE, () -> findMergeBase(revision.getValue())).run();
+        logInfoMessage("Merge base of " + revision.getValue() + " and HEAD is " + base);
+      }
+      basesByName.put(revision.getKey(), base);
+    }
+    List<String> bases = new ArrayList<String>(new LinkedHashSet<String>(basesByName.values()));
+    List<List<String>> changedFilesOfBases = report.timed(CHANGED_FILES_STAGE, () -> listChangedFiles(bases)).run();
+    Map<String, String> headPins = report.timed(CHANGED_PINS_STAGE, () -> readPins("HEAD")).run();
+
+    PathPatternMatcher pathPatternMatcher = new PathPatternMatcher(suiteMappings.stringPropertyNames());
+    Map<String, Set<String>> suiteKeysByPath = new HashMap<String, Set<String>>();
+    Map<String, Map<String, String>> changedPinsByBase = new HashMap<String, Map<String, String>>();
+    TestHistoryStore testHistoryStore = failureFirstOrder ? readTestHistory() : null;
+    Map<String, Long> durations = failureFirstOrder ? readClassDurations(testHistoryStore) : null;
+    Set<String> selectedSuites = new HashSet<String>();
+    for (Map.Entry<String, String> baseByName : basesByName.entrySet()) {
+      String name = baseByName.getKey();
+      String base = baseByName.getValue();
+      Map<String, String> changedPins = changedPinsByBase.get(base);
+      if (changedPins == null) {
+        long pinsStart = System.nanoTime();
+        changedPins = PackagePins.diff(readPins(base), headPins);
+        report.addTime(CHANGED_PINS_STAGE, System.nanoTime() - pinsStart);
+        changedPinsByBase.put(base, changedPins);
+      }
+
+      long matchingStart = System.nanoTime();
+      ChangedFileMatcher changedFileMatcher = new ChangedFileMatcher(suiteMappings, pathPatternMatcher, TEST_CLASS_SEPARATOR,
+        dependencyAnalysis || coverageDirectory != null || failureFirstOrder, suiteKeysByPath);
+      changedFilesOfBases.get(bases.indexOf(base)).forEach(changedFileMatcher);
+      if (dependencyAnalysis) {
+        selectDependentTests(dependencyGraph, changedFileMatcher);
+      }
+      if (coverageDirectory != null) {
+        selectCoveringSuites(coverageIndex, changedFileMatcher);
+      }
+      MethodSelection methodSelection = MethodSelection.of(determineSuitesToRun(changedFileMatcher, changedPins));
+      Collection<String> suites = methodSelection.getClassNames();
+      if (failureFirstOrder) {
+        suites = SuitePrioritizer.prioritize(suites, testHistoryStore, getChangedClasses(changedFileMatcher, suites), durations,
+          defaultClassDuration);
+      }
+      report.addTime(MATCHING_PHASE, System.nanoTime() - matchingStart);
+      selectedSuites.addAll(suites);
+
+      SummarizedListLog suitesLog = createListLog("Suites to run against " + name, "Suite to run item");
+      suitesLog.begin();
+      for (String suite : suites) {
+        Set<String> methods = methodSelection.getMethods(suite);
+        suitesLog.item(suite
+          + (methods != null ? MethodSelection.METHOD_SEPARATOR + String.join(MethodSelection.METHOD_LIST_SEPARATOR, methods) : ""));
+      }
+      suitesLog.end();
+
+      File baseSuiteFile = getBaseSuiteFile(name);
+      String baseSuiteContents = setClassesInSuiteContents(suiteContents, generateSuiteClassesSection(suites, methodSelection));
+      long writeStart = System.nanoTime();
+      boolean written = writeBaseSuiteFile(baseSuiteFile, baseSuiteContents);
+      report.addTime(SUITE_WRITE_PHASE, System.nanoTime() - writeStart);
+      logInfoMessage("Base " + name + " (" + revisions.get(name) + (base.equals(revisions.get(name)) ? "" : ", merge base " + base)
+        + ", " + baseSuiteFile.getName() + ", " + (written ? "rewritten" : "unchanged") + "): "
+        + changedFileMatcher.getChangedFileCount() + " changed files, " + changedPins.size() + " changed pins, "
+        + suites.size() + " suites.");
+    }
+
+    int matchedFileCount = 0;
+    for (Set<String> suiteKeys : suiteKeysByPath.values()) {
+      if (!suiteKeys.isEmpty()) {
+        matchedFileCount++;
+      }
+    }
+    report.setChangedFileCount(suiteKeysByPath.size());
+    report.setMatchedFileCount(matchedFileCount);
+    report.setSelectedSuiteCount(selectedSuites.size());
+    report.setMappedSuiteCount(getMappedSuiteCount());
+  }
+
+  /**
+   * @return the revision of each base, by name, in the order of <code>baseRevisions</code>
+   */
+  private Map<String, String> parseBaseRevisions() throws MojoExecutionException {
+    Map<String, String> revisions = new LinkedHashMap<String, String>();
+    for (String baseRevision : baseRevisions) {
+      String entry = baseRevision.trim();
+      int separator = entry.indexOf('=');
+      String name = separator < 0 ? entry.replaceAll("[^\\w.-]", "-") : entry.substring(0, separator).trim();
+      String revision = separator < 0 ? entry : entry.substring(separator + 1).trim();
+      if (revision.isEmpty() || !BASE_NAME_PATTERN.matcher(name).matches()) {
+        ExceptionHelper.throwMojoExecutionException("Invalid base revision '" + baseRevision
+          + "', expected name=revision with a name of letters, digits, '.', '-' and '_'");
+      }
+      if (revisions.put(name, revision) != null) {
+        ExceptionHelper.throwMojoExecutionException("Base revision name '" + name + "' used more than once");
+      }
+    }
+    return revisions;
+  }
+
+  protected boolean writeBaseSuiteFile(File baseSuiteFile, String baseSuiteContents) throws MojoExecutionException {
+    return FileWriterHelper.writeIfChanged(baseSuiteFile, baseSuiteContents);
+  }
+
+  private Map<String, Long> readClassDurations(TestHistoryStore testHistoryStore) {
+    Map<String, Long> durations = new HashMap<String, Long>();
+    if (testHistoryStore != null) {
+      for (String className : testHistoryStore.getClassNames()) {
+        long averageDuration = testHistoryStore.getClassHistory(className).getAverageDuration();
+        if (averageDuration >= 0) {
+          durations.put(className, averageDuration);
+        }
+      }
+    }
+    if (classDurationsFile == null || !classDurationsFile.isFile()) {
+      return durations;
+    }
+    Properties properties = new Properties();
+    try {
+      InputStream inputStream = new FileInputStream(classDurationsFile);
+      try {
+        properties.load(inputStream);
+      }
+      finally {
+        inputStream.close();
+      }
+    }
+    catch (IOException e) {
+      logInfoMessage("Unable to read class durations from " + classDurationsFile + ": " + e.getMessage());
+      return durations;
+    }
+    for (String className : properties.stringPropertyNames()) {
+      try {
+        durations.put(className, Long.parseLong(properties.getProperty(className).trim()));
+      }
+      catch (NumberFormatException e) {
+        logInfoMessage("Ignoring duration of " + className + " in " + classDurationsFile + ": " + properties.getProperty(className));
+      }
+    }
+    return durations;
+  }
+
+  /**
+   * @return the test history, or null if there is none or it cannot be read
+   */
+  private TestHistoryStore readTestHistory() {
+    if (testHistoryFile == null || !testHistoryFile.isFile()) {
+      return null;
+    }
+    TestHistoryStore testHistoryStore = new TestHistoryStore(testHistoryFile, Integer.MAX_VALUE);
+    try {
+      testHistoryStore.load();
+      return testHistoryStore;
+    }
+    catch (IOException e) {
+      logInfoMessage("Unable to read test history from " + testHistoryFile + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return the fingerprint of the test history the order of the classes depends on, or null if it does not
+   */
+  private String getTestHistoryFingerprint() {
+    if (!failureFirstOrder) {
+      return null;
+    }
+    return testHistoryFile != null && testHistoryFile.isFile()
+      ? testHistoryFile.length() + ":" + testHistoryFile.lastModified()
+      : "";
+  }
+
+  /**
+   * @return the classes among <code>classes</code> whose source file changed.  A class matches a changed file
+   * whose path without its extension ends with the class name, its packages as directories, under whatever source
+   * directory; a class name without a package matches a file of that name in any directory.
+   */
+  static Set<String> getChangedClasses(ChangedFileMatcher changedFileMatcher, Collection<String> classes) {
+    // every way of stripping leading directories from the changed files, so that each class is looked up once
+    Set<String> changedSourceNames = new HashSet<String>();
+    for (String changedSourceFile : changedFileMatcher.getChangedSourceFiles()) {
+      int extension = changedSourceFile.lastIndexOf('.');
+      String sourceName = extension > changedSourceFile.lastIndexOf('/') ? changedSourceFile.substring(0, extension) : changedSourceFile;
+      // a suffix seen before means its shorter suffixes were added with it
+      int start = 0;
+      while (changedSourceNames.add(sourceName.substring(start))) {
+        int slash = sourceName.indexOf('/', start);
+        if (slash < 0) {
+          break;
+        }
+        start = slash + 1;
+      }
+    }
+    Set<String> changedClasses = new HashSet<String>();
+    for (String className : classes) {
+      if (changedSourceNames.contains(className.replace('.', '/'))) {
+        changedClasses.add(className);
+      }
+    }
+    return changedClasses;
+  }
+
+  /**
+   * Reads back the classes and methods of a suite generated by {@link #generateSuiteClassesSection}.
+   */
+  static MethodSelection getMethodSelectionInSuiteContents(String suiteContents) {
+    MethodSelection methodSelection = new MethodSelection();
+    Matcher matcher = CLASS_PATTERN.matcher(suiteContents);
+    while (matcher.find()) {
+      List<String> methods = new ArrayList<String>();
+      if (matcher.group(2) != null) {
+        Matcher includeMatcher = INCLUDE_NAME_PATTERN.matcher(matcher.group(2));
+        while (includeMatcher.find()) {
+          methods.add(includeMatcher.group(1));
+        }
+      }
+      methodSelection.add(methods.isEmpty()
+        ? matcher.group(1)
+        : matcher.group(1) + MethodSelection.METHOD_SEPARATOR + String.join(MethodSelection.METHOD_LIST_SEPARATOR, methods));
+    }
+    return methodSelection;
+  }
+
+  private static String formatDuration(long millis) {
+    return String.format("%d:%02d", millis / 60000, (millis / 1000) % 60);
+  }
+
+  private String resolveHeadSha() throws MojoExecutionException {
+    if (inProcessGit) {
+      try {
+        return getGitRepositoryReader().resolve("HEAD");
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to read git repository in-process, using git command instead: " + e.getMessage());
+      }
+    }
+    return BufferedReaderHelper.readFromBuffer(getGitCommandReader("git rev-parse HEAD")).trim();
+  }
+
+  private String getSelectionCacheKey(String sha, String headSha, String suiteContents, String classesFingerprint,
+                                      String coverageFingerprint, String testHistoryFingerprint) {
+    return SelectionCache.createKey(sha, headSha, SelectionCache.describe(suiteMappings),
+      SelectionCache.describe(integrationSuiteMappings), packageFileName, suiteContents, String.valueOf(inProcessGit),
+      classesFingerprint, String.valueOf(dependencyAnalysisMaxClasses), String.valueOf(dependencyAnalysisMaxDepth),
+      coverageFingerprint, String.valueOf(failureFirstOrder), testHistoryFingerprint, String.valueOf(mergeBase));
+  }
+
+  private DependencyGraph scanDependencyGraph() throws MojoExecutionException {
+    DependencyGraph dependencyGraph = null;
+    try {
+      if (dependencyIndexFile != null) {
+        dependencyGraph = updateDependencyIndex();
+      }
+      else {
+        dependencyGraph = DependencyGraph.scan(Collections.singletonList(classesDirectory),
+          Collections.singletonList(testClassesDirectory));
+      }
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading class files for dependency analysis", e);
+    }
+    return dependencyGraph;
+  }
+
+  private DependencyGraph updateDependencyIndex() throws IOException {
+    DependencyIndex dependencyIndex;
+    try {
+      dependencyIndex = DependencyIndex.load(dependencyIndexFile);
+    }
+    catch (IOException e) {
+      logInfoMessage("Unable to read dependency index, rebuilding it: " + e.getMessage());
+      dependencyIndex = new DependencyIndex();
+    }
+    DependencyGraph dependencyGraph = dependencyIndex.update(Collections.singletonList(classesDirectory),
+      Collections.singletonList(testClassesDirectory));
+    logInfoMessage("Dependency index reused " + dependencyIndex.getReusedCount() + " class files, parsed "
+      + dependencyIndex.getParsedCount() + " and removed " + dependencyIndex.getRemovedCount() + ".");
+    if (dependencyIndex.isModified()) {
+      try {
+        dependencyIndex.save(dependencyIndexFile);
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to write dependency index: " + e.getMessage());
+      }
+    }
+    return dependencyGraph;
+  }
+
+  private void selectDependentTests(DependencyGraph dependencyGraph, ChangedFileMatcher changedFileMatcher) {
+    List<String> changedSourceFiles = changedFileMatcher.getChangedSourceFiles();
+    Set<String> dependentTests = dependencyGraph.findAffectedTests(changedSourceFiles, dependencyAnalysisMaxClasses,
+      dependencyAnalysisMaxDepth);
+    if (dependentTests == null) {
+      logInfoMessage("Dependency analysis of " + changedSourceFiles.size() + " changed source files exceeded "
+        + dependencyAnalysisMaxClasses + " classes or depth " + dependencyAnalysisMaxDepth + ", using fallback suites.");
+      String fallbackSuites = suiteMappings.getProperty(FALLBACK_CODE_PATH);
+      if (!StringUtils.isEmpty(fallbackSuites)) {
+        report.setFallbackUsed(true);
+        changedFileMatcher.addSuiteNames(Arrays.asList(fallbackSuites.split(TEST_CLASS_SEPARATOR)));
+      }
+      return;
+    }
+    logInfoMessage("Dependency analysis of " + dependencyGraph.size() + " classes selected " + dependentTests.size()
+      + " test classes for " + changedSourceFiles.size() + " changed source files.");
+    changedFileMatcher.addSuiteNames(dependentTests);
+  }
+
+  private CoverageIndex updateCoverageIndex() throws MojoExecutionException {
+    CoverageIndex coverageIndex = new CoverageIndex();
+    if (coverageIndexFile != null) {
+      try {
+        coverageIndex = CoverageIndex.load(coverageIndexFile);
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to read coverage index, rebuilding it: " + e.getMessage());
+      }
+    }
+    try {
+      coverageIndex.update(coverageDirectory, Collections.singletonList(classesDirectory));
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading coverage from " + coverageDirectory, e);
+    }
+    logInfoMessage("Coverage index reused " + coverageIndex.getReusedCount() + " coverage files, read "
+      + coverageIndex.getReadCount() + " and removed " + coverageIndex.getRemovedCount() + ".");
+    if (coverageIndexFile != null && coverageIndex.isModified()) {
+      try {
+        coverageIndex.save(coverageIndexFile);
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to write coverage index: " + e.getMessage());
+      }
+    }
+    return coverageIndex;
+  }
+
+  private void selectCoveringSuites(CoverageIndex coverageIndex, ChangedFileMatcher changedFileMatcher) {
+    List<String> changedSourceFiles = changedFileMatcher.getChangedSourceFiles();
+    Set<String> coveringSuites = new HashSet<String>();
+    for (String changedSourceFile : changedSourceFiles) {
+      coveringSuites.addAll(coverageIndex.findSuites(changedSourceFile));
+    }
+    logInfoMessage("Coverage of " + coverageIndex.getSuiteCount() + " suites selected " + coveringSuites.size()
+      + " suites for " + changedSourceFiles.size() + " changed source files.");
+    changedFileMatcher.addSuiteNames(coveringSuites);
+  }
+
+  private String readSelectionCache(String cacheKey) {
+    SelectionCache selectionCache = new SelectionCache(selectionCacheDirectory, selectionCacheSize);
+    try {
+      String cachedSuiteContents = selectionCache.get(cacheKey);
+      logInfoMessage("Selection cache " + (cachedSuiteContents != null ? "hit" : "miss") + " (" + selectionCache.getHits()
+        + " hits, " + selectionCache.getMisses() + " misses)");
+      return cachedSuiteContents;
+    }
+    catch (IOException e) {
+      logInfoMessage("Unable to read selection cache: " + e.getMessage());
+      return null;
+    }
+  }
+
+  private void writeSelectionCache(String cacheKey, String selectedSuiteContents) {
+    try {
+      new SelectionCache(selectionCacheDirectory, selectionCacheSize).put(cacheKey, selectedSuiteContents);
+    }
+    catch (IOException e) {
+      logInfoMessage("Unable to write selection cache: " + e.getMessage());
+    }
   }
 
   private String getShaFromEnvironment() {
@@ -271,83 +1311,343 @@ public class AcceptanceTestSelector extends AbstractMojo {
   }
 
   protected BufferedReader getShaUrlReader() throws MojoExecutionException {
-    return BufferedReaderHelper.getBufferedReader(shaUrl);
+    ShaResolver shaResolver = new ShaResolver(shaUrlConnectTimeoutMillis, shaUrlReadTimeoutMillis, shaUrlAttempts,
+      shaUrlRetryBackoffMillis, shaStateFile);
+    String response = null;
+    try {
+      response = shaResolver.fetch(shaUrl);
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading from shaUrl " + shaUrl, e);
+    }
+    if (shaResolver.getLastSource() == ShaResolver.Source.LAST_KNOWN_GOOD) {
+      logWarnMessage("Unable to reach " + shaUrl + ", using last known good response from " + shaStateFile);
+    }
+    return new BufferedReader(new StringReader(response));
   }
 
   protected BufferedReader getGitCommandReader(String gitCommand) throws MojoExecutionException {
     return BufferedReaderHelper.getBufferedReader(gitCommand, sourceRoot);
   }
 
-  protected FileWriter getSuiteFileWriter() throws MojoExecutionException {
-    return FileWriterHelper.getFileWriter(suiteFileName);
+  /**
+   * @return the reader of the repository at <code>sourceRoot</code>, opened once per execution so that the stages
+   * share its mapped pack files and object cache
+   */
+  protected synchronized GitRepositoryReader getGitRepositoryReader() throws IOException {
+    if (gitRepositoryReader == null) {
+      gitRepositoryReader = new GitRepositoryReader(new File(sourceRoot));
+    }
+    return gitRepositoryReader;
+  }
+
+  /**
+   * Writes the suite file unless it already holds <code>suiteContents</code>.
+   *
+   * @return true if the suite file was written
+   */
+  protected boolean writeSuiteFile(String suiteContents) throws MojoExecutionException {
+    return FileWriterHelper.writeIfChanged(suiteFileName, suiteContents);
+  }
+
+  private void writeSuiteFileIfChanged(String suiteContents) throws MojoExecutionException {
+    long writeStart = System.nanoTime();
+    boolean written = writeSuiteFile(suiteContents);
+    report.addTime(SUITE_WRITE_PHASE, System.nanoTime() - writeStart);
+    if (written) {
+      logInfoMessage("Suite file " + suiteFileName + " rewritten.");
+    }
+    else {
+      logInfoMessage("Suite file " + suiteFileName + " reused, contents unchanged.");
+    }
   }
 
   private void logInfoMessage(String message) {
     getLog().info(ACCEPTANCE_TEST_SELECTOR_PLUGIN_MESSAGE_PREFIX + message);
   }
 
-  private String setClassesInSuiteContents(String suiteContents, String classes) {
-    if (suiteContents.contains(TEST_END_TAG)) {
-      return suiteContents.replaceFirst(TEST_END_TAG, classes + "\n" + TEST_END_TAG);
+  private void logWarnMessage(String message) {
+    getLog().warn(ACCEPTANCE_TEST_SELECTOR_PLUGIN_MESSAGE_PREFIX + message);
+  }
+
+  String setClassesInSuiteContents(String suiteContents, String classes) {
+    long rewriteStart = System.nanoTime();
+    try {
+      return SuiteFileRewriter.rewrite(suiteContents, classes, failureFirstOrder ? Boolean.TRUE : null);
     }
-    else {
-      return suiteContents;
+    finally {
+      report.addTime(SUITE_REWRITE_PHASE, System.nanoTime() - rewriteStart);
     }
   }
 
-  private String generateSuiteClassesSection(Set<String> suites) {
+  /**
+   * Generates the classes section of a test, with a methods section for each class of which only some methods
+   * are selected.
+   *
+   * @param suites the classes, in the order to write them
+   * @param methodSelection the selected methods of the classes
+   */
+  String generateSuiteClassesSection(Collection<String> suites, MethodSelection methodSelection) {
     StringBuilder classesSection = new StringBuilder("    <classes>\n");
     for (String suite : suites) {
       classesSection.append("      <class name=\"");
       classesSection.append(suite);
-      classesSection.append("\"/>\n");
+      Set<String> methods = methodSelection.getMethods(suite);
+      if (methods == null) {
+        classesSection.append("\"/>\n");
+        continue;
+      }
+      classesSection.append("\">\n        <methods>\n");
+      for (String method : methods) {
+        classesSection.append("          <include name=\"");
+        classesSection.append(method);
+        classesSection.append("\"/>\n");
+      }
+      classesSection.append("        </methods>\n      </class>\n");
     }
     classesSection.append("    </classes>\n");
 
     return classesSection.toString();
   }
 
-  private Set<String> determineSuitesToRun(List<String> changedFiles, String changedPins) {
-    Set<String> suiteNames = new HashSet<String>();
+  Set<String> determineSuitesToRun(ChangedFileMatcher changedFileMatcher, Map<String, String> changedPins) {
+    Set<String> suiteNames = new HashSet<String>(changedFileMatcher.getSuiteNames());
 
     Set<String> suiteKeys = suiteMappings.stringPropertyNames();
-    if (changedFiles != null) {
-      for (String changedFile : changedFiles) {
-        for (String suiteKey : suiteKeys) {
-          if (changedFile.startsWith(suiteKey)) {
-            if (!StringUtils.isEmpty(suiteMappings.getProperty(suiteKey))) {
-              Collections.addAll(suiteNames, suiteMappings.getProperty(suiteKey).split(TEST_CLASS_SEPARATOR));
-            }
-            break;
-          }
-        }
-      }
-    }
-    if (!StringUtils.isEmpty(changedPins)) {
-      Set<String> integrationSuiteKeys = integrationSuiteMappings.stringPropertyNames();
-      for (String integrationSuiteKey : integrationSuiteKeys) {
-        if (changedPins.contains(integrationSuiteKey)) {
-          if (!StringUtils.isEmpty(integrationSuiteMappings.getProperty(integrationSuiteKey))) {
-            Collections.addAll(suiteNames, integrationSuiteMappings.getProperty(integrationSuiteKey).split(TEST_CLASS_SEPARATOR));
-          }
-        }
+    for (String component : changedPins.keySet()) {
+      String integrationSuites = integrationSuiteMappings.getProperty(component);
+      if (!StringUtils.isEmpty(integrationSuites)) {
+        Collections.addAll(suiteNames, integrationSuites.split(TEST_CLASS_SEPARATOR));
       }
     }
     if (suiteNames.isEmpty() && suiteKeys.contains(FALLBACK_CODE_PATH)) {
-      suiteNames.add(suiteMappings.getProperty(FALLBACK_CODE_PATH));
+      report.setFallbackUsed(true);
+      Collections.addAll(suiteNames, suiteMappings.getProperty(FALLBACK_CODE_PATH).split(TEST_CLASS_SEPARATOR));
     }
     return suiteNames;
   }
 
-  private List<String> getNamesOfChangedFiles(BufferedReader reader) throws MojoExecutionException {
-    String shellCommandResponse = BufferedReaderHelper.readFromBuffer(reader);
+  /**
+   * Streams the files changed since <code>sha</code> through a matcher one line at a time, so that neither
+   * the git output nor the list of changed files is ever held in memory as a whole.
+   */
+  private ChangedFileMatcher matchChangedFiles(String sha, SessionCache sessionCache) throws MojoExecutionException {
+    final ChangedFileMatcher changedFileMatcher = new ChangedFileMatcher(suiteMappings, TEST_CLASS_SEPARATOR,
+      dependencyAnalysis || coverageDirectory != null || failureFirstOrder);
+    final long[] matchingNanos = new long[1];
+    final SummarizedListLog changedFilesLog = createListLog("Changed file list", "Changed file item");
+    Consumer<String> changedFileHandler = changedFile -> {
+      changedFilesLog.item(changedFile);
+      long matchingStart = System.nanoTime();
+      changedFileMatcher.accept(changedFile);
+      matchingNanos[0] += System.nanoTime() - matchingStart;
+    };
+    long start = System.nanoTime();
+    try {
+      changedFilesLog.begin();
+      List<String> changedFiles = sessionCache.isShared() && SessionCache.countModules(session, PLUGIN_ARTIFACT_ID) != 1
+        ? getShared(sessionCache, "changed files since " + sha, () -> listChangedFiles(sha))
+        : getNamesOfChangedFilesInProcess(sha);
+      if (changedFiles != null) {
+        changedFiles.forEach(changedFileHandler);
+      }
+      else {
+        BufferedReaderHelper.readLines(getGitCommandReader("git diff --name-only " + sha + " HEAD"), changedFileHandler);
+      }
+      changedFilesLog.end();
+      return changedFileMatcher;
+    }
+    finally {
+      // the files are matched as git lists them, so the matching time is taken out of the git diff time
+      report.addTime(CHANGED_FILES_STAGE, System.nanoTime() - start - matchingNanos[0]);
+      report.addTime(MATCHING_PHASE, matchingNanos[0]);
+    }
+  }
+
+  /**
+   * Asks the selection daemon for the changes since <code>sha</code>.
+   *
+   * @return the selection, or null if the daemon could not be asked and the selection should run in-process
+   */
+  private SelectionDaemon.Selection requestDaemonSelection(String sha) {
+    try {
+      SelectionDaemon.Selection selection = getSelectionDaemonClient().select(new File(sourceRoot), sha, "HEAD",
+        getPackageFile(), suiteMappings, TEST_CLASS_SEPARATOR, dependencyAnalysis || coverageDirectory != null || failureFirstOrder);
+      ChangedFileMatcher changedFileMatcher = selection.getChangedFileMatcher();
+      logInfoMessage("Selection daemon on port " + daemonPort + " matched " + changedFileMatcher.getMatchedFileCount() + " of "
+        + changedFileMatcher.getChangedFileCount() + " changed files up to " + selection.getHeadSha()
+        + (selection.isConfigSent() ? ", after compiling the suite mappings." : "."));
+      return selection;
+    }
+    catch (IOException e) {
+      logInfoMessage("Selection daemon on port " + daemonPort + " not available, selecting in-process: " + e.getMessage());
+      return null;
+    }
+  }
+
+  protected SelectionDaemonClient getSelectionDaemonClient() {
+    return new SelectionDaemonClient(daemonPort, daemonTimeoutMillis, daemonSelectionTimeoutMillis);
+  }
+
+  /**
+   * Finds the best common ancestor of <code>sha</code> and HEAD.
+   */
+  private String findMergeBase(String sha) throws MojoExecutionException {
+    String base = null;
+    boolean found = false;
+    if (inProcessGit) {
+      try {
+        base = getGitRepositoryReader().getMergeBase(sha, "HEAD");
+        found = true;
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to read git repository in-process, using git command instead: " + e.getMessage());
+      }
+    }
+    if (!found) {
+      base = BufferedReaderHelper.readFromBuffer(getGitCommandReader("git merge-base " + sha + " HEAD")).trim();
+    }
+    if (StringUtils.isEmpty(base)) {
+      ExceptionHelper.throwMojoExecutionException("No merge base of " + sha + " and HEAD");
+    }
+    return base;
+  }
+
+  /**
+   * Compares the component versions of the package file in <code>sha</code> and in HEAD.
+   *
+   * @return the new version of each changed component
+   */
+  private Map<String, String> readChangedPins(String sha) throws MojoExecutionException {
+    Map<String, String> changedPins = null;
+    try {
+      changedPins = Collections.unmodifiableMap(PackagePins.diff(PackagePins.parse(packageFileName, readPackageFile(sha)),
+        PackagePins.parse(packageFileName, readPackageFile("HEAD"))));
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading component versions from " + packageFileName, e);
+    }
+    return changedPins;
+  }
+
+  /**
+   * @return the package file, resolved against the source root unless it is absolute
+   */
+  private File getPackageFile() {
+    File packageFile = new File(packageFileName);
+    return packageFile.isAbsolute() ? packageFile : new File(sourceRoot, packageFileName);
+  }
+
+  /**
+   * @return the package file as it is in <code>revision</code>, null if it has none
+   */
+  private String readPackageFile(String revision) throws MojoExecutionException {
+    String path = SelectionDaemon.getRepositoryPath(getPackageFile());
+    if (inProcessGit && path != null) {
+      try {
+        byte[] contents = getGitRepositoryReader().readFile(revision, path);
+        return contents != null ? new String(contents, StandardCharsets.UTF_8) : null;
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to read git repository in-process, using git command instead: " + e.getMessage());
+      }
+    }
+    if (path == null) {
+      if (new File(packageFileName).isAbsolute()) {
+        ExceptionHelper.throwMojoExecutionException("Package file " + packageFileName + " is not in a git repository");
+      }
+      // git resolves ./ against its working directory, the source root
+      path = "./" + packageFileName;
+    }
+    // git reports a file missing in the revision on standard error, leaving nothing to read
+    String contents = BufferedReaderHelper.readFromBuffer(getGitCommandReader("git show " + revision + ":" + path));
+    if (contents.isEmpty()) {
+      logInfoMessage("No " + packageFileName + " in " + revision + ".");
+      return null;
+    }
+    return contents;
+  }
+
+  /**
+   * Reads the component versions of the package file in <code>revision</code>.
+   */
+  private Map<String, String> readPins(String revision) throws MojoExecutionException {
+    Map<String, String> pins = null;
+    try {
+      pins = PackagePins.parse(packageFileName, readPackageFile(revision));
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading component versions from " + packageFileName, e);
+    }
+    return pins;
+  }
+
+  /**
+   * Lists the files changed since each of <code>bases</code>, comparing the trees of HEAD with all of them at once
+   * when the repository is read in-process.
+   *
+   * @return the changed files of each base, in the order of the bases
+   */
+  private List<List<String>> listChangedFiles(List<String> bases) throws MojoExecutionException {
+    if (inProcessGit) {
+      try {
+        return getGitRepositoryReader().getChangedPaths(bases, "HEAD");
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to read git repository in-process, using git command instead: " + e.getMessage());
+      }
+    }
+    List<List<String>> changedFilesOfBases = new ArrayList<List<String>>(bases.size());
+    for (String base : bases) {
+      List<String> changedFiles = new ArrayList<String>();
+      BufferedReaderHelper.readLines(getGitCommandReader("git diff --name-only " + base + " HEAD"), changedFiles::add);
+      changedFilesOfBases.add(changedFiles);
+    }
+    return changedFilesOfBases;
+  }
+
+  /**
+   * Lists the files changed since <code>sha</code>, to share them with the other modules of the build.
+   */
+  private List<String> listChangedFiles(String sha) throws MojoExecutionException {
+    List<String> changedFiles = getNamesOfChangedFilesInProcess(sha);
+    if (changedFiles == null) {
+      changedFiles = new ArrayList<String>();
+      BufferedReaderHelper.readLines(getGitCommandReader("git diff --name-only " + sha + " HEAD"), changedFiles::add);
+    }
+    return Collections.unmodifiableList(changedFiles);
+  }
+
+  /**
+   * Gets a value shared by the modules of the build, computing it if no other module has.
+   *
+   * @param description describes the value in the log
+   */
+  private <T> T getShared(SessionCache sessionCache, String description, SelectionPipeline.Task<T> loader) throws MojoExecutionException {
+    final boolean[] loaded = new boolean[1];
+    T value = sessionCache.get(description + " in " + sourceRoot + (inProcessGit ? " in-process" : ""), () -> {
+      loaded[0] = true;
+      return loader.run();
+    });
+    if (!loaded[0]) {
+      logInfoMessage("Reusing " + description + " from an earlier module of the build.");
+    }
+    return value;
+  }
 
-    List<String> fileNames = new ArrayList<String>();
-    Collections.addAll(fileNames, shellCommandResponse.split(LINE_SEPARATOR));
-    return fileNames;
+  private List<String> getNamesOfChangedFilesInProcess(String sha) {
+    if (inProcessGit) {
+      try {
+        return getGitRepositoryReader().getChangedPaths(sha, "HEAD");
+      }
+      catch (IOException e) {
+        logInfoMessage("Unable to read git repository in-process, using git command instead: " + e.getMessage());
+      }
+    }
+    return null;
   }
 
-  private String readSha(BufferedReader reader) throws MojoExecutionException {
+  String readSha(BufferedReader reader) throws MojoExecutionException {
     String sha = BufferedReaderHelper.readFromBuffer(reader);
 
     if (StringUtils.isEmpty(sha)) {
@@ -362,8 +1662,16 @@ public class AcceptanceTestSelector extends AbstractMojo {
     return sha;
   }
 
-  private String getSuiteFileContents(BufferedReader reader) throws MojoExecutionException {
-    return BufferedReaderHelper.readFromBuffer(reader).replaceAll(PACKAGE_TAG_REGEX, "");
+  /**
+   * Reads the suite file without its packages and classes sections, so that the result only depends on the
+   * parts of the suite that are kept.
+   */
+  String getSuiteFileContents(BufferedReader reader) throws MojoExecutionException {
+    StringWriter suiteContents = new StringWriter();
+    SuiteFileRewriter suiteFileRewriter = new SuiteFileRewriter(suiteContents, null);
+    BufferedReaderHelper.readLines(reader, suiteFileRewriter);
+    suiteFileRewriter.finish();
+    return suiteContents.toString();
   }
 
   private String getSimpleSuiteContents() {
@@ -5,6 +5,8 @@ import org.apache.maven.plugin.MojoExecutionException;
 import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 /*
  * Copyright (C) 2015  Kent Olsen
@@ -34,7 +36,7 @@ public class BufferedReaderHelper {
   public static BufferedReader getBufferedReader(File suiteFileName) throws MojoExecutionException {
     BufferedReader reader = null;
     try {
-      reader = new BufferedReader(new FileReader(suiteFileName));
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(suiteFileName), StandardCharsets.UTF_8));
     }
     catch (FileNotFoundException e) {
       ExceptionHelper.throwMojoExecutionException("Error reading suite", e);
@@ -66,6 +68,30 @@ public class BufferedReaderHelper {
     return reader;
   }
 
+  /**
+   * Passes each line of <code>reader</code> to <code>lineHandler</code> as it is read, so that large
+   * outputs are never held in memory as a whole.  The reader is closed when done.
+   */
+  public static void readLines(BufferedReader reader, Consumer<String> lineHandler) throws MojoExecutionException {
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineHandler.accept(line);
+      }
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading from buffer", e);
+    }
+    finally {
+      try {
+        reader.close();
+      }
+      catch (IOException e) {
+        //ignore
+      }
+    }
+  }
+
   public static String readFromBuffer(BufferedReader reader) throws MojoExecutionException {
     StringBuilder stringBuilder = new StringBuilder();
     try {
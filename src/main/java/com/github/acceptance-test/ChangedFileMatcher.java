@@ -0,0 +1,171 @@
+package com.github.kentolsen;
+
+import org.codehaus.plexus.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Matches changed files against the suite mappings one at a time as they are read, keeping
+ * only the selected suite names.  Memory use is bounded by the number of selected suites
+ * rather than the number of changed files, unless the changed source files are collected for
+ * dependency analysis.
+ *
+ * @author Kent Olsen
+ */
+public class ChangedFileMatcher implements Consumer<String> {
+
+  private final Properties suiteMappings;
+  private final PathPatternMatcher pathPatternMatcher;
+  private final String testClassSeparator;
+  private final Map<String, Set<String>> suiteKeysByPath;
+  private final Set<String> suiteNames = new HashSet<String>();
+  private final List<String> changedSourceFiles;
+  private int changedFileCount;
+  private int matchedFileCount;
+
+  public ChangedFileMatcher(Properties suiteMappings, String testClassSeparator) {
+    this(suiteMappings, testClassSeparator, false);
+  }
+
+  /**
+   * @param suiteMappings the suite mappings
+   * @param testClassSeparator the separator of the test classes in a mapping value
+   * @param collectSourceFiles whether to keep the changed source files for {@link #getChangedSourceFiles()}
+   */
+  public ChangedFileMatcher(Properties suiteMappings, String testClassSeparator, boolean collectSourceFiles) {
+    this(suiteMappings, new PathPatternMatcher(suiteMappings.stringPropertyNames()), testClassSeparator, collectSourceFiles);
+  }
+
+  /**
+   * @param suiteMappings the suite mappings
+   * @param pathPatternMatcher the matcher of the keys of <code>suiteMappings</code>, compiled once to be reused
+   * @param testClassSeparator the separator of the test classes in a mapping value
+   * @param collectSourceFiles whether to keep the changed source files for {@link #getChangedSourceFiles()}
+   */
+  public ChangedFileMatcher(Properties suiteMappings, PathPatternMatcher pathPatternMatcher, String testClassSeparator,
+                            boolean collectSourceFiles) {
+    this(suiteMappings, pathPatternMatcher, testClassSeparator, collectSourceFiles, null);
+  }
+
+  /**
+   * @param suiteMappings the suite mappings
+   * @param pathPatternMatcher the matcher of the keys of <code>suiteMappings</code>, compiled once to be reused
+   * @param testClassSeparator the separator of the test classes in a mapping value
+   * @param collectSourceFiles whether to keep the changed source files for {@link #getChangedSourceFiles()}
+   * @param suiteKeysByPath the mapping keys matching each path already matched, shared by the matchers of several
+   *                        change sets so that a path changed in more than one is matched once; null to match every
+   *                        path.  It is not synchronized.
+   */
+  public ChangedFileMatcher(Properties suiteMappings, PathPatternMatcher pathPatternMatcher, String testClassSeparator,
+                            boolean collectSourceFiles, Map<String, Set<String>> suiteKeysByPath) {
+    this.changedSourceFiles = collectSourceFiles ? new ArrayList<String>() : null;
+    this.suiteMappings = suiteMappings;
+    this.pathPatternMatcher = pathPatternMatcher;
+    this.testClassSeparator = testClassSeparator;
+    this.suiteKeysByPath = suiteKeysByPath;
+  }
+
+  /**
+   * Recreates the outcome of matching done elsewhere, such as by the {@link SelectionDaemon}.
+   *
+   * @param suiteNames the selected suite names
+   * @param changedSourceFiles the changed source files, or null if they were not collected
+   * @param changedFileCount the number of changed files
+   * @param matchedFileCount the number of changed files that matched a mapping
+   * @return the matcher holding the outcome
+   */
+  public static ChangedFileMatcher matched(Collection<String> suiteNames, List<String> changedSourceFiles, int changedFileCount,
+                                           int matchedFileCount) {
+    Properties noMappings = new Properties();
+    ChangedFileMatcher changedFileMatcher = new ChangedFileMatcher(noMappings, new PathPatternMatcher(noMappings.stringPropertyNames()),
+      null, changedSourceFiles != null);
+    changedFileMatcher.suiteNames.addAll(suiteNames);
+    if (changedSourceFiles != null) {
+      changedFileMatcher.changedSourceFiles.addAll(changedSourceFiles);
+    }
+    changedFileMatcher.changedFileCount = changedFileCount;
+    changedFileMatcher.matchedFileCount = matchedFileCount;
+    return changedFileMatcher;
+  }
+
+  /**
+   * Adds the suites mapped to a changed file.
+   *
+   * @param changedFile the changed file path, relative to the repository root
+   */
+  public void accept(String changedFile) {
+    if (changedFile.isEmpty()) {
+      return;
+    }
+    changedFileCount++;
+    if (changedSourceFiles != null && DependencyGraph.isSourceFile(changedFile)) {
+      changedSourceFiles.add(changedFile);
+    }
+    Set<String> suiteKeys = suiteKeysByPath != null
+      ? suiteKeysByPath.computeIfAbsent(changedFile, pathPatternMatcher::findMatches)
+      : pathPatternMatcher.findMatches(changedFile);
+    if (!suiteKeys.isEmpty()) {
+      matchedFileCount++;
+    }
+    for (String suiteKey : suiteKeys) {
+      String suites = suiteMappings.getProperty(suiteKey);
+      if (!StringUtils.isEmpty(suites)) {
+        Collections.addAll(suiteNames, suites.split(testClassSeparator));
+      }
+    }
+  }
+
+  public Set<String> getSuiteNames() {
+    return suiteNames;
+  }
+
+  /**
+   * Adds suites selected by other means than the suite mappings.
+   *
+   * @param additionalSuiteNames the suite names
+   */
+  public void addSuiteNames(Collection<String> additionalSuiteNames) {
+    suiteNames.addAll(additionalSuiteNames);
+  }
+
+  /**
+   * @return the changed source files, or an empty list if they are not collected
+   */
+  public List<String> getChangedSourceFiles() {
+    return changedSourceFiles == null ? Collections.<String>emptyList() : changedSourceFiles;
+  }
+
+  public int getChangedFileCount() {
+    return changedFileCount;
+  }
+
+  public int getMatchedFileCount() {
+    return matchedFileCount;
+  }
+}
@@ -0,0 +1,268 @@
+package com.github.kentolsen;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Reads the classes a class file refers to from its constant pool, without a bytecode library.
+ * The dependencies are the classes named by <code>CONSTANT_Class</code> entries and the classes
+ * in the descriptors of fields, methods, method references and method types.  Annotations and
+ * generic signatures are not read.  The <code>SourceFile</code> attribute is read so that a
+ * class can be traced back to the source file it was compiled from.
+ *
+ * @author Kent Olsen
+ */
+public class ClassFileParser {
+
+  private static final int MAGIC = 0xcafebabe;
+  private static final int ACC_INTERFACE = 0x0200;
+  private static final int ACC_ABSTRACT = 0x0400;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  private ClassFileParser() {
+  }
+
+  /**
+   * Parses a class file.
+   *
+   * @param classFile the contents of the class file
+   * @return the class name, source file and dependencies
+   * @throws IOException if the class file is truncated or not a class file
+   */
+  public static ClassInfo parse(byte[] classFile) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+    try {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("Not a class file");
+      }
+      input.readUnsignedShort();
+      input.readUnsignedShort();
+      int count = input.readUnsignedShort();
+      String[] utf8 = new String[count];
+      int[] classNameIndexes = new int[count];
+      int[] descriptorIndexes = new int[count];
+      for (int index = 1; index < count; index++) {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+          case CONSTANT_UTF8:
+            utf8[index] = input.readUTF();
+            break;
+          case CONSTANT_CLASS:
+            classNameIndexes[index] = input.readUnsignedShort();
+            break;
+          case CONSTANT_NAME_AND_TYPE:
+            input.readUnsignedShort();
+            descriptorIndexes[index] = input.readUnsignedShort();
+            break;
+          case CONSTANT_METHOD_TYPE:
+            descriptorIndexes[index] = input.readUnsignedShort();
+            break;
+          case CONSTANT_STRING:
+          case CONSTANT_MODULE:
+          case CONSTANT_PACKAGE:
+            input.readUnsignedShort();
+            break;
+          case CONSTANT_METHOD_HANDLE:
+            input.readUnsignedByte();
+            input.readUnsignedShort();
+            break;
+          case CONSTANT_INTEGER:
+          case CONSTANT_FLOAT:
+          case CONSTANT_FIELDREF:
+          case CONSTANT_METHODREF:
+          case CONSTANT_INTERFACE_METHODREF:
+          case CONSTANT_DYNAMIC:
+          case CONSTANT_INVOKE_DYNAMIC:
+            input.readInt();
+            break;
+          case CONSTANT_LONG:
+          case CONSTANT_DOUBLE:
+            input.readLong();
+            index++;
+            break;
+          default:
+            throw new IOException("Unknown constant pool tag " + tag);
+        }
+      }
+
+      Set<String> dependencies = new HashSet<String>();
+      for (int index = 1; index < count; index++) {
+        if (classNameIndexes[index] != 0) {
+          addClassName(utf8[classNameIndexes[index]], dependencies);
+        }
+        if (descriptorIndexes[index] != 0) {
+          addDescriptor(utf8[descriptorIndexes[index]], dependencies);
+        }
+      }
+
+      int accessFlags = input.readUnsignedShort();
+      String className = toClassName(utf8[classNameIndexes[input.readUnsignedShort()]]);
+      input.readUnsignedShort();
+      skip(input, 2 * input.readUnsignedShort());
+      for (int member = 0; member < 2; member++) {
+        int memberCount = input.readUnsignedShort();
+        for (int index = 0; index < memberCount; index++) {
+          input.readUnsignedShort();
+          input.readUnsignedShort();
+          addDescriptor(utf8[input.readUnsignedShort()], dependencies);
+          skipAttributes(input);
+        }
+      }
+      String sourceFile = null;
+      int attributeCount = input.readUnsignedShort();
+      for (int index = 0; index < attributeCount; index++) {
+        String name = utf8[input.readUnsignedShort()];
+        int length = input.readInt();
+        if ("SourceFile".equals(name)) {
+          sourceFile = utf8[input.readUnsignedShort()];
+          skip(input, length - 2);
+        }
+        else {
+          skip(input, length);
+        }
+      }
+      dependencies.remove(className);
+      boolean concrete = (accessFlags & (ACC_INTERFACE | ACC_ABSTRACT)) == 0;
+      return new ClassInfo(className, sourceFile, concrete, dependencies);
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Corrupt class file", e);
+    }
+  }
+
+  private static void skipAttributes(DataInputStream input) throws IOException {
+    int attributeCount = input.readUnsignedShort();
+    for (int index = 0; index < attributeCount; index++) {
+      input.readUnsignedShort();
+      skip(input, input.readInt());
+    }
+  }
+
+  private static void skip(DataInputStream input, int length) throws IOException {
+    if (length < 0 || input.skipBytes(length) != length) {
+      throw new IOException("Truncated class file");
+    }
+  }
+
+  private static void addClassName(String name, Set<String> dependencies) {
+    if (name.startsWith("[")) {
+      addDescriptor(name, dependencies);
+    }
+    else {
+      dependencies.add(toClassName(name));
+    }
+  }
+
+  /**
+   * Adds every <code>Lname;</code> in a field or method descriptor.
+   */
+  private static void addDescriptor(String descriptor, Set<String> dependencies) {
+    int start = descriptor.indexOf('L');
+    while (start >= 0) {
+      int end = descriptor.indexOf(';', start);
+      if (end < 0) {
+        return;
+      }
+      dependencies.add(toClassName(descriptor.substring(start + 1, end)));
+      start = descriptor.indexOf('L', end);
+    }
+  }
+
+  private static String toClassName(String internalName) {
+    return internalName.replace('/', '.');
+  }
+
+  /**
+   * What a class file says about its class.
+   */
+  public static class ClassInfo {
+
+    private final String className;
+    private final String sourceFile;
+    private final boolean concrete;
+    private final Set<String> dependencies;
+
+    public ClassInfo(String className, String sourceFile, boolean concrete, Set<String> dependencies) {
+      this.className = className;
+      this.sourceFile = sourceFile;
+      this.concrete = concrete;
+      this.dependencies = Collections.unmodifiableSet(dependencies);
+    }
+
+    /**
+     * @return the binary class name, as in com.example.Outer$Inner
+     */
+    public String getClassName() {
+      return className;
+    }
+
+    /**
+     * @return the path of the source file relative to the source root, as in com/example/Outer.java,
+     * or null if the class file does not record it
+     */
+    public String getSourcePath() {
+      if (sourceFile == null) {
+        return null;
+      }
+      int packageEnd = className.lastIndexOf('.');
+      return packageEnd < 0 ? sourceFile : className.substring(0, packageEnd).replace('.', '/') + '/' + sourceFile;
+    }
+
+    public String getSourceFile() {
+      return sourceFile;
+    }
+
+    /**
+     * @return whether the class is neither an interface nor abstract
+     */
+    public boolean isConcrete() {
+      return concrete;
+    }
+
+    /**
+     * @return the names of the classes this class refers to, not including itself
+     */
+    public Set<String> getDependencies() {
+      return dependencies;
+    }
+  }
+}
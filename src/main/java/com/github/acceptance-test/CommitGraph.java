@@ -0,0 +1,243 @@
+package com.github.kentolsen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Reads the <code>objects/info/commit-graph</code> file git writes with
+ * <code>git commit-graph write</code> or <code>gc.writeCommitGraph</code>.  The file is memory
+ * mapped and read in place: each commit is found by a fanout table and a binary search over its
+ * sorted SHAs, and its parents, commit time and generation number are read from fixed-size
+ * records, so walking history does not inflate any commit objects.
+ * <p>
+ * Only a single version 1 SHA-1 graph is read.  A split graph (a
+ * <code>commit-graphs/commit-graph-chain</code>) or a graph based on other graphs is left to the
+ * caller to walk without the graph.
+ *
+ * @author Kent Olsen
+ */
+public class CommitGraph {
+
+  /**
+   * The generation of a commit that git wrote without generation numbers.
+   */
+  public static final int GENERATION_ZERO = 0;
+
+  private static final int SIGNATURE = 0x43475048;
+  private static final int CHUNK_OID_FANOUT = 0x4f494446;
+  private static final int CHUNK_OID_LOOKUP = 0x4f49444c;
+  private static final int CHUNK_COMMIT_DATA = 0x43444154;
+  private static final int CHUNK_EXTRA_EDGES = 0x45444745;
+  private static final int HEADER_SIZE = 8;
+  private static final int CHUNK_ENTRY_SIZE = 12;
+  private static final int SHA_LENGTH = 20;
+  private static final int COMMIT_DATA_SIZE = SHA_LENGTH + 16;
+  private static final int NO_PARENT = 0x70000000;
+  private static final int EDGE_FLAG = 0x80000000;
+
+  private final ByteBuffer buffer;
+  private final int commitCount;
+  private int fanoutOffset = -1;
+  private int lookupOffset = -1;
+  private int commitDataOffset = -1;
+  private int extraEdgesOffset = -1;
+
+  /**
+   * Maps the commit graph of a repository.
+   *
+   * @param objectsDirectory the <code>objects</code> directory of the repository
+   * @return the graph, or null if the repository has no single commit-graph file
+   * @throws IOException if the file cannot be read, is malformed or is a kind this reader does not read
+   */
+  public static CommitGraph open(File objectsDirectory) throws IOException {
+    File file = new File(objectsDirectory, "info" + File.separator + "commit-graph");
+    return file.isFile() ? new CommitGraph(GitRepositoryReader.map(file)) : null;
+  }
+
+  CommitGraph(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SIGNATURE) {
+      throw new IOException("Not a commit-graph file");
+    }
+    if (buffer.get(4) != 1 || buffer.get(5) != 1) {
+      throw new IOException("Unsupported commit-graph version " + buffer.get(4) + " with hash version " + buffer.get(5));
+    }
+    if (buffer.get(7) != 0) {
+      throw new IOException("Commit-graph files based on other graphs are not supported");
+    }
+    int chunkCount = buffer.get(6) & 0xff;
+    if (HEADER_SIZE + (chunkCount + 1) * CHUNK_ENTRY_SIZE > buffer.limit()) {
+      throw new IOException("Truncated commit-graph file");
+    }
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      int entry = HEADER_SIZE + chunk * CHUNK_ENTRY_SIZE;
+      long offset = buffer.getLong(entry + 4);
+      if (offset < 0 || offset > buffer.limit()) {
+        throw new IOException("Malformed commit-graph chunk offset " + offset);
+      }
+      switch (buffer.getInt(entry)) {
+        case CHUNK_OID_FANOUT:
+          fanoutOffset = (int) offset;
+          break;
+        case CHUNK_OID_LOOKUP:
+          lookupOffset = (int) offset;
+          break;
+        case CHUNK_COMMIT_DATA:
+          commitDataOffset = (int) offset;
+          break;
+        case CHUNK_EXTRA_EDGES:
+          extraEdgesOffset = (int) offset;
+          break;
+        default:
+          // generation data and bloom filter chunks are not needed
+      }
+    }
+    if (fanoutOffset < 0 || lookupOffset < 0 || commitDataOffset < 0 || fanoutOffset + 256 * 4 > buffer.limit()) {
+      throw new IOException("Commit-graph file is missing a required chunk");
+    }
+    commitCount = buffer.getInt(fanoutOffset + 255 * 4);
+    if (commitCount < 0 || lookupOffset + (long) commitCount * SHA_LENGTH > buffer.limit()
+      || commitDataOffset + (long) commitCount * COMMIT_DATA_SIZE > buffer.limit()) {
+      throw new IOException("Truncated commit-graph file");
+    }
+  }
+
+  /**
+   * @return the number of commits in the graph
+   */
+  public int size() {
+    return commitCount;
+  }
+
+  /**
+   * Finds a commit.
+   *
+   * @param sha the 20 byte SHA of the commit
+   * @return the position of the commit in the graph, or -1 if the graph does not have it
+   */
+  public int findCommit(byte[] sha) {
+    int first = sha[0] & 0xff;
+    int low = first == 0 ? 0 : buffer.getInt(fanoutOffset + (first - 1) * 4);
+    int high = buffer.getInt(fanoutOffset + first * 4) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = compareSha(lookupOffset + middle * SHA_LENGTH, sha);
+      if (comparison < 0) {
+        low = middle + 1;
+      }
+      else if (comparison > 0) {
+        high = middle - 1;
+      }
+      else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the 40 character SHA of the commit at <code>position</code>
+   */
+  public String getSha(int position) {
+    StringBuilder sha = new StringBuilder(SHA_LENGTH * 2);
+    int offset = lookupOffset + position * SHA_LENGTH;
+    for (int index = 0; index < SHA_LENGTH; index++) {
+      int b = buffer.get(offset + index) & 0xff;
+      sha.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sha.toString();
+  }
+
+  /**
+   * @return the positions of the parents of the commit at <code>position</code>, in commit order
+   * @throws IOException if the parents are malformed
+   */
+  public int[] getParents(int position) throws IOException {
+    int record = commitDataOffset + position * COMMIT_DATA_SIZE + SHA_LENGTH;
+    int first = buffer.getInt(record);
+    if (first == NO_PARENT) {
+      return new int[0];
+    }
+    int second = buffer.getInt(record + 4);
+    if (second == NO_PARENT) {
+      return new int[] {checkPosition(first)};
+    }
+    if ((second & EDGE_FLAG) == 0) {
+      return new int[] {checkPosition(first), checkPosition(second)};
+    }
+    if (extraEdgesOffset < 0) {
+      throw new IOException("Commit-graph file has no extra edges for an octopus merge");
+    }
+    int[] parents = new int[4];
+    parents[0] = checkPosition(first);
+    int count = 1;
+    int edge = extraEdgesOffset + (second & ~EDGE_FLAG) * 4;
+    int value;
+    do {
+      if (edge + 4 > buffer.limit()) {
+        throw new IOException("Truncated commit-graph extra edges");
+      }
+      value = buffer.getInt(edge);
+      edge += 4;
+      if (count == parents.length) {
+        parents = Arrays.copyOf(parents, count * 2);
+      }
+      parents[count++] = checkPosition(value & ~EDGE_FLAG);
+    }
+    while ((value & EDGE_FLAG) == 0);
+    return Arrays.copyOf(parents, count);
+  }
+
+  /**
+   * @return the topological level of the commit at <code>position</code>: one more than the highest level of its
+   * parents, and 1 for a root commit, or {@link #GENERATION_ZERO} if git did not compute it
+   */
+  public int getGeneration(int position) {
+    return buffer.getInt(commitDataOffset + position * COMMIT_DATA_SIZE + SHA_LENGTH + 8) >>> 2;
+  }
+
+  /**
+   * @return the commit time of the commit at <code>position</code>, in seconds since the epoch
+   */
+  public long getCommitTime(int position) {
+    int record = commitDataOffset + position * COMMIT_DATA_SIZE + SHA_LENGTH + 8;
+    return ((buffer.getInt(record) & 0x3L) << 32) | (buffer.getInt(record + 4) & 0xffffffffL);
+  }
+
+  private int checkPosition(int position) throws IOException {
+    if (position < 0 || position >= commitCount) {
+      throw new IOException("Malformed commit-graph parent position " + position);
+    }
+    return position;
+  }
+
+  private int compareSha(int offset, byte[] sha) {
+    for (int index = 0; index < SHA_LENGTH; index++) {
+      int difference = (buffer.get(offset + index) & 0xff) - (sha[index] & 0xff);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,643 @@
+package com.github.kentolsen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Index from source file to the suites whose recorded coverage includes it.  The coverage is read
+ * from a directory holding one file per suite, named after the suite:
+ * <ul>
+ *   <li><code>&lt;suite&gt;.exec</code>, JaCoCo execution data; every source file with an executed
+ *   class is covered as a whole</li>
+ *   <li><code>&lt;suite&gt;.coverage</code>, a coverage map with one source path per line, optionally
+ *   followed by <code>:</code> and the covered lines, as in <code>com/example/Foo.java:10-25,40</code>;
+ *   a path without lines is covered as a whole and lines starting with <code>#</code> are ignored</li>
+ * </ul>
+ * Each source file holds the numbers of its suites in a {@link SuiteBitmap}.  The index is kept
+ * between builds and updated incrementally: a coverage file is only read again when its size or
+ * modification time changed, and the suites of a changed or deleted file are removed from every
+ * source file before its new coverage is added.  The saved index is read into memory whole rather
+ * than mapped, so that it can be replaced on Windows, and one with a different {@link #VERSION} or
+ * that cannot be read is discarded and rebuilt.
+ *
+ * @author Kent Olsen
+ */
+public class CoverageIndex {
+
+  /**
+   * Version of the index format.  It must change whenever the format or what is stored changes.
+   */
+  public static final int VERSION = 1;
+
+  public static final String EXEC_SUFFIX = ".exec";
+  public static final String COVERAGE_MAP_SUFFIX = ".coverage";
+
+  private static final int MAGIC = 0x41545343;
+  private static final String CLASS_FILE_SUFFIX = ".class";
+  private static final String DEFAULT_SOURCE_SUFFIX = ".java";
+  private static final int[] WHOLE_FILE = new int[0];
+
+  private final List<Input> inputs;
+  private final Map<String, FileCoverage> files;
+  private boolean modified;
+  private int readCount;
+  private int reusedCount;
+  private int removedCount;
+
+  /**
+   * Creates an empty index.
+   */
+  public CoverageIndex() {
+    this(new ArrayList<Input>(), new HashMap<String, FileCoverage>(), true);
+  }
+
+  private CoverageIndex(List<Input> inputs, Map<String, FileCoverage> files, boolean modified) {
+    this.inputs = inputs;
+    this.files = files;
+    this.modified = modified;
+  }
+
+  /**
+   * Loads an index.  A missing, outdated or corrupt index gives an empty index.
+   *
+   * @param indexFile the index file
+   * @return the index
+   * @throws IOException if the index file exists but cannot be read
+   */
+  public static CoverageIndex load(File indexFile) throws IOException {
+    if (!indexFile.isFile()) {
+      return new CoverageIndex();
+    }
+    CoverageIndex index = read(ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath())));
+    return index != null ? index : new CoverageIndex();
+  }
+
+  /**
+   * Brings the index up to date with the coverage files in a directory.  Changed coverage files are
+   * read in parallel.
+   *
+   * @param coverageDirectory the directory of coverage files; a missing directory removes all suites
+   * @param classesDirectories the directories of the classes the execution data was recorded against, used
+   *                           to find the source file of an executed class; a class that is not found is
+   *                           taken to come from a <code>.java</code> file named after its top-level class
+   * @throws IOException if a coverage file cannot be read
+   */
+  public void update(File coverageDirectory, List<File> classesDirectories) throws IOException {
+    Map<String, File> coverageFiles = new TreeMap<String, File>();
+    File[] listed = coverageDirectory.listFiles((dir, name) -> name.endsWith(EXEC_SUFFIX) || name.endsWith(COVERAGE_MAP_SUFFIX));
+    if (listed != null) {
+      for (File coverageFile : listed) {
+        if (coverageFile.isFile()) {
+          coverageFiles.put(coverageFile.getName(), coverageFile);
+        }
+      }
+    }
+
+    BitSet removedSlots = new BitSet();
+    Set<String> unchanged = new HashSet<String>();
+    int deleted = 0;
+    for (int slot = 0; slot < inputs.size(); slot++) {
+      Input input = inputs.get(slot);
+      if (input == null) {
+        continue;
+      }
+      File coverageFile = coverageFiles.get(input.fileName);
+      if (coverageFile != null && coverageFile.length() == input.size && coverageFile.lastModified() == input.lastModified) {
+        unchanged.add(input.fileName);
+      }
+      else {
+        removedSlots.set(slot);
+        inputs.set(slot, null);
+        deleted += coverageFile == null ? 1 : 0;
+      }
+    }
+    if (!removedSlots.isEmpty()) {
+      removeSlots(removedSlots);
+    }
+
+    List<File> changedFiles = new ArrayList<File>();
+    for (File coverageFile : coverageFiles.values()) {
+      if (!unchanged.contains(coverageFile.getName())) {
+        changedFiles.add(coverageFile);
+      }
+    }
+    final SourceResolver sourceResolver = new SourceResolver(classesDirectories);
+    List<Map<String, int[]>> coverages;
+    try {
+      coverages = changedFiles.parallelStream().map(coverageFile -> readCoverage(coverageFile, sourceResolver))
+        .collect(Collectors.toList());
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    for (int index = 0; index < changedFiles.size(); index++) {
+      File coverageFile = changedFiles.get(index);
+      addInput(new Input(getSuiteName(coverageFile.getName()), coverageFile.getName(), coverageFile.length(),
+        coverageFile.lastModified()), coverages.get(index));
+    }
+
+    readCount = changedFiles.size();
+    reusedCount = unchanged.size();
+    removedCount = deleted;
+    modified |= !changedFiles.isEmpty() || !removedSlots.isEmpty();
+  }
+
+  /**
+   * Finds the suites whose coverage includes a changed source file.  The source paths of the index
+   * are matched against <code>changedPath</code> and every suffix of it that starts after a <code>/</code>.
+   *
+   * @param changedPath the changed file path, relative to the repository root
+   * @return the suite names, empty if none cover the file
+   */
+  public Set<String> findSuites(String changedPath) {
+    return findSuites(changedPath, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Finds the suites whose coverage includes any of a range of lines of a changed source file.
+   *
+   * @param changedPath the changed file path, relative to the repository root
+   * @param firstLine the first changed line
+   * @param lastLine the last changed line
+   * @return the suite names, empty if none cover the lines
+   */
+  public Set<String> findSuites(String changedPath, int firstLine, int lastLine) {
+    BitSet slots = new BitSet();
+    addSlots(files.get(changedPath), firstLine, lastLine, slots);
+    for (int slash = changedPath.indexOf('/'); slash >= 0; slash = changedPath.indexOf('/', slash + 1)) {
+      addSlots(files.get(changedPath.substring(slash + 1)), firstLine, lastLine, slots);
+    }
+    if (slots.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> suites = new HashSet<String>();
+    for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+      suites.add(inputs.get(slot).suiteName);
+    }
+    return suites;
+  }
+
+  /**
+   * Saves the index.  It is written to a temporary file next to <code>indexFile</code> and renamed
+   * over it, so a build that is interrupted leaves the previous index intact.
+   *
+   * @param indexFile the index file
+   * @throws IOException if the index cannot be written
+   */
+  public void save(File indexFile) throws IOException {
+    File directory = indexFile.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create index directory " + directory);
+    }
+    File temporary = File.createTempFile("." + indexFile.getName(), ".tmp", directory);
+    try {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16));
+      try {
+        write(output);
+      }
+      finally {
+        output.close();
+      }
+      try {
+        Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+    modified = false;
+  }
+
+  /**
+   * Reads a coverage map.
+   *
+   * @param reader the coverage map
+   * @return the covered lines of each source path as pairs of first and last line, empty for a whole file
+   * @throws IOException if the map cannot be read or a line number is malformed
+   */
+  public static Map<String, int[]> readCoverageMap(BufferedReader reader) throws IOException {
+    Map<String, int[]> coverage = new HashMap<String, int[]>();
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      int colon = line.lastIndexOf(':');
+      if (colon < 0) {
+        coverage.put(line, WHOLE_FILE);
+        continue;
+      }
+      String path = line.substring(0, colon).trim();
+      int[] ranges;
+      try {
+        ranges = parseRanges(line.substring(colon + 1));
+      }
+      catch (NumberFormatException e) {
+        throw new IOException("Malformed line range on line " + lineNumber + " of coverage map: " + line, e);
+      }
+      int[] previous = coverage.get(path);
+      if (previous == null) {
+        coverage.put(path, ranges);
+      }
+      else if (previous.length > 0 && ranges.length > 0) {
+        int[] merged = Arrays.copyOf(previous, previous.length + ranges.length);
+        System.arraycopy(ranges, 0, merged, previous.length, ranges.length);
+        coverage.put(path, merged);
+      }
+      else {
+        coverage.put(path, WHOLE_FILE);
+      }
+    }
+    return coverage;
+  }
+
+  /**
+   * @return whether the index differs from the saved index file
+   */
+  public boolean isModified() {
+    return modified;
+  }
+
+  /**
+   * @return the number of coverage files read by the last update
+   */
+  public int getReadCount() {
+    return readCount;
+  }
+
+  /**
+   * @return the number of coverage files taken from the index by the last update
+   */
+  public int getReusedCount() {
+    return reusedCount;
+  }
+
+  /**
+   * @return the number of coverage files the last update removed because they were deleted
+   */
+  public int getRemovedCount() {
+    return removedCount;
+  }
+
+  /**
+   * @return the number of coverage files, one per suite, in the index
+   */
+  public int getSuiteCount() {
+    int count = 0;
+    for (Input input : inputs) {
+      if (input != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of source files in the index
+   */
+  public int getFileCount() {
+    return files.size();
+  }
+
+  /**
+   * @return a digest of the name, size and modification time of the coverage files in the index
+   */
+  public String getFingerprint() {
+    MessageDigest digest = FileWriterHelper.newDigest();
+    for (Input input : inputs) {
+      if (input != null) {
+        digest.update((input.fileName + "\u0000" + input.size + "\u0000" + input.lastModified + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return SelectionCache.toHex(digest.digest());
+  }
+
+  static String getSuiteName(String fileName) {
+    int extension = fileName.lastIndexOf('.');
+    return extension < 0 ? fileName : fileName.substring(0, extension);
+  }
+
+  private void addInput(Input input, Map<String, int[]> coverage) {
+    int slot = inputs.indexOf(null);
+    if (slot < 0) {
+      slot = inputs.size();
+      if (slot > SuiteBitmap.MAX_VALUE) {
+        throw new IllegalArgumentException("Too many coverage files, at most " + (SuiteBitmap.MAX_VALUE + 1) + " are supported");
+      }
+      inputs.add(input);
+    }
+    else {
+      inputs.set(slot, input);
+    }
+    for (Map.Entry<String, int[]> entry : coverage.entrySet()) {
+      FileCoverage fileCoverage = files.get(entry.getKey());
+      if (fileCoverage == null) {
+        fileCoverage = new FileCoverage();
+        files.put(entry.getKey(), fileCoverage);
+      }
+      fileCoverage.add(slot, entry.getValue());
+    }
+  }
+
+  private void removeSlots(BitSet removedSlots) {
+    Iterator<FileCoverage> iterator = files.values().iterator();
+    while (iterator.hasNext()) {
+      FileCoverage fileCoverage = iterator.next();
+      fileCoverage.remove(removedSlots);
+      if (fileCoverage.suites.isEmpty()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static void addSlots(FileCoverage fileCoverage, int firstLine, int lastLine, BitSet slots) {
+    if (fileCoverage == null) {
+      return;
+    }
+    if (firstLine <= 0 && lastLine == Integer.MAX_VALUE) {
+      fileCoverage.suites.orInto(slots);
+      return;
+    }
+    fileCoverage.wholeFile.orInto(slots);
+    for (int index = 0; index < fileCoverage.rangeLength; index += 3) {
+      if (fileCoverage.ranges[index] <= lastLine && fileCoverage.ranges[index + 1] >= firstLine) {
+        slots.set(fileCoverage.ranges[index + 2]);
+      }
+    }
+  }
+
+  private static Map<String, int[]> readCoverage(File coverageFile, SourceResolver sourceResolver) {
+    try {
+      if (coverageFile.getName().endsWith(EXEC_SUFFIX)) {
+        Set<String> executedClasses;
+        InputStream inputStream = new FileInputStream(coverageFile);
+        try {
+          executedClasses = ExecFileReader.readExecutedClasses(new BufferedInputStream(inputStream));
+        }
+        finally {
+          inputStream.close();
+        }
+        Map<String, int[]> coverage = new HashMap<String, int[]>();
+        for (String executedClass : executedClasses) {
+          coverage.put(sourceResolver.resolve(executedClass), WHOLE_FILE);
+        }
+        return coverage;
+      }
+      BufferedReader reader = Files.newBufferedReader(coverageFile.toPath(), StandardCharsets.UTF_8);
+      try {
+        return readCoverageMap(reader);
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(new IOException("Unable to read coverage file " + coverageFile + ": " + e.getMessage(), e));
+    }
+  }
+
+  private static int[] parseRanges(String ranges) {
+    String[] parts = ranges.split(",");
+    int[] parsed = new int[parts.length * 2];
+    for (int index = 0; index < parts.length; index++) {
+      String part = parts[index].trim();
+      int dash = part.indexOf('-');
+      int first = Integer.parseInt(dash < 0 ? part : part.substring(0, dash).trim());
+      int last = dash < 0 ? first : Integer.parseInt(part.substring(dash + 1).trim());
+      if (first <= 0 || last < first) {
+        throw new NumberFormatException("Invalid line range " + part);
+      }
+      parsed[index * 2] = first;
+      parsed[index * 2 + 1] = last;
+    }
+    return parsed;
+  }
+
+  private void write(DataOutputStream output) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(inputs.size());
+    for (Input input : inputs) {
+      output.writeBoolean(input != null);
+      if (input != null) {
+        writeString(output, input.suiteName);
+        writeString(output, input.fileName);
+        output.writeLong(input.size);
+        output.writeLong(input.lastModified);
+      }
+    }
+    output.writeInt(files.size());
+    for (Map.Entry<String, FileCoverage> entry : files.entrySet()) {
+      FileCoverage fileCoverage = entry.getValue();
+      writeString(output, entry.getKey());
+      fileCoverage.suites.write(output);
+      fileCoverage.wholeFile.write(output);
+      output.writeInt(fileCoverage.rangeLength);
+      for (int index = 0; index < fileCoverage.rangeLength; index++) {
+        output.writeInt(fileCoverage.ranges[index]);
+      }
+    }
+  }
+
+  /**
+   * @return the index, or null if the buffer does not hold an index of this version
+   */
+  private static CoverageIndex read(ByteBuffer buffer) {
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        return null;
+      }
+      int inputCount = buffer.getInt();
+      List<Input> inputs = new ArrayList<Input>(inputCount);
+      for (int index = 0; index < inputCount; index++) {
+        inputs.add(buffer.get() == 0 ? null
+          : new Input(readString(buffer), readString(buffer), buffer.getLong(), buffer.getLong()));
+      }
+      int fileCount = buffer.getInt();
+      Map<String, FileCoverage> files = new HashMap<String, FileCoverage>(Math.max(16, fileCount * 2));
+      for (int index = 0; index < fileCount; index++) {
+        String path = readString(buffer);
+        FileCoverage fileCoverage = new FileCoverage(SuiteBitmap.read(buffer), SuiteBitmap.read(buffer));
+        fileCoverage.rangeLength = buffer.getInt();
+        fileCoverage.ranges = new int[fileCoverage.rangeLength];
+        for (int range = 0; range < fileCoverage.rangeLength; range++) {
+          fileCoverage.ranges[range] = buffer.getInt();
+        }
+        files.put(path, fileCoverage);
+      }
+      return buffer.hasRemaining() ? null : new CoverageIndex(inputs, files, false);
+    }
+    catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+      return null;
+    }
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A coverage file that has been read into the index.
+   */
+  private static class Input {
+
+    private final String suiteName;
+    private final String fileName;
+    private final long size;
+    private final long lastModified;
+
+    Input(String suiteName, String fileName, long size, long lastModified) {
+      this.suiteName = suiteName;
+      this.fileName = fileName;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * The suites covering one source file.  <code>ranges</code> holds first line, last line and suite
+   * number triples for the suites that only cover some lines.
+   */
+  private static class FileCoverage {
+
+    private final SuiteBitmap suites;
+    private final SuiteBitmap wholeFile;
+    private int[] ranges = WHOLE_FILE;
+    private int rangeLength;
+
+    FileCoverage() {
+      this(new SuiteBitmap(), new SuiteBitmap());
+    }
+
+    FileCoverage(SuiteBitmap suites, SuiteBitmap wholeFile) {
+      this.suites = suites;
+      this.wholeFile = wholeFile;
+    }
+
+    void add(int slot, int[] lines) {
+      suites.add(slot);
+      if (lines.length == 0) {
+        wholeFile.add(slot);
+        return;
+      }
+      if (rangeLength + lines.length / 2 * 3 > ranges.length) {
+        ranges = Arrays.copyOf(ranges, Math.max(rangeLength + lines.length / 2 * 3, ranges.length * 2));
+      }
+      for (int index = 0; index < lines.length; index += 2) {
+        ranges[rangeLength++] = lines[index];
+        ranges[rangeLength++] = lines[index + 1];
+        ranges[rangeLength++] = slot;
+      }
+    }
+
+    void remove(BitSet removedSlots) {
+      suites.removeAll(removedSlots);
+      wholeFile.removeAll(removedSlots);
+      int kept = 0;
+      for (int index = 0; index < rangeLength; index += 3) {
+        if (!removedSlots.get(ranges[index + 2])) {
+          ranges[kept++] = ranges[index];
+          ranges[kept++] = ranges[index + 1];
+          ranges[kept++] = ranges[index + 2];
+        }
+      }
+      rangeLength = kept;
+    }
+  }
+
+  /**
+   * Finds the source file of an executed class, remembering each answer for the other coverage files.
+   */
+  private static class SourceResolver {
+
+    private final List<File> classesDirectories;
+    private final Map<String, String> sourcePaths = new ConcurrentHashMap<String, String>();
+
+    SourceResolver(List<File> classesDirectories) {
+      this.classesDirectories = classesDirectories;
+    }
+
+    String resolve(String internalName) {
+      return sourcePaths.computeIfAbsent(internalName, this::findSourcePath);
+    }
+
+    private String findSourcePath(String internalName) {
+      for (File classesDirectory : classesDirectories) {
+        File classFile = classesDirectory == null ? null : new File(classesDirectory, internalName + CLASS_FILE_SUFFIX);
+        if (classFile != null && classFile.isFile()) {
+          try {
+            String sourcePath = ClassFileParser.parse(Files.readAllBytes(classFile.toPath())).getSourcePath();
+            if (sourcePath != null) {
+              return sourcePath;
+            }
+          }
+          catch (IOException e) {
+            // fall back to the class name
+          }
+        }
+      }
+      int nested = internalName.indexOf('$', internalName.lastIndexOf('/') + 1);
+      return (nested < 0 ? internalName : internalName.substring(0, nested)) + DEFAULT_SOURCE_SUFFIX;
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package com.github.kentolsen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Class-level reverse dependency graph of compiled classes.  It finds the test classes that
+ * can reach, through any chain of references, a class compiled from a changed source file.
+ * Test classes are the concrete top-level classes of the test class directories; a reference
+ * from one of their nested classes counts as a reference from the test class.
+ *
+ * @author Kent Olsen
+ */
+public class DependencyGraph {
+
+  private static final String CLASS_FILE_SUFFIX = ".class";
+  private static final String[] SOURCE_FILE_SUFFIXES = {".java", ".kt", ".groovy", ".scala"};
+
+  private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+  private final Map<String, Set<String>> classesBySourcePath = new HashMap<String, Set<String>>();
+  private final Set<String> testClasses = new HashSet<String>();
+  private int size;
+  private String fingerprint;
+
+  /**
+   * Builds the graph of all class files below the given directories.  The class files are
+   * parsed in parallel.
+   *
+   * @param classesDirectories the directories of classes that are not tests; missing directories are ignored
+   * @param testClassesDirectories the directories of test classes; missing directories are ignored
+   * @return the graph
+   * @throws IOException if a class file cannot be read or parsed
+   */
+  public static DependencyGraph scan(List<File> classesDirectories, List<File> testClassesDirectories) throws IOException {
+    List<Path> classFiles = findClassFiles(classesDirectories);
+    List<Path> testClassFiles = findClassFiles(testClassesDirectories);
+    DependencyGraph graph = new DependencyGraph();
+    graph.addAll(parseAll(classFiles), false);
+    graph.addAll(parseAll(testClassFiles), true);
+    List<Path> allClassFiles = new ArrayList<Path>(classFiles);
+    allClassFiles.addAll(testClassFiles);
+    graph.fingerprint = fingerprint(allClassFiles);
+    return graph;
+  }
+
+  /**
+   * Lists the class files below the given directories, sorted by path.
+   *
+   * @param directories the directories to search; missing directories are ignored
+   * @return the class files
+   * @throws IOException if a directory cannot be listed
+   */
+  public static List<Path> findClassFiles(List<File> directories) throws IOException {
+    List<Path> classFiles = new ArrayList<Path>();
+    for (File directory : directories) {
+      if (directory != null && directory.isDirectory()) {
+        Stream<Path> paths = Files.walk(directory.toPath());
+        try {
+          paths.filter(path -> path.toString().endsWith(CLASS_FILE_SUFFIX) && Files.isRegularFile(path)).forEach(classFiles::add);
+        }
+        finally {
+          paths.close();
+        }
+      }
+    }
+    Collections.sort(classFiles);
+    return classFiles;
+  }
+
+  /**
+   * @return whether <code>path</code> names a source file that compiles to classes
+   */
+  public static boolean isSourceFile(String path) {
+    for (String suffix : SOURCE_FILE_SUFFIXES) {
+      if (path.endsWith(suffix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds a class to the graph.
+   *
+   * @param classInfo the class
+   * @param testClass whether the class was compiled from test sources
+   */
+  public void add(ClassFileParser.ClassInfo classInfo, boolean testClass) {
+    String className = classInfo.getClassName();
+    size++;
+    for (String dependency : classInfo.getDependencies()) {
+      Set<String> classDependents = dependents.get(dependency);
+      if (classDependents == null) {
+        classDependents = new HashSet<String>();
+        dependents.put(dependency, classDependents);
+      }
+      classDependents.add(className);
+    }
+    String sourcePath = classInfo.getSourcePath();
+    if (sourcePath != null) {
+      Set<String> classes = classesBySourcePath.get(sourcePath);
+      if (classes == null) {
+        classes = new HashSet<String>();
+        classesBySourcePath.put(sourcePath, classes);
+      }
+      classes.add(className);
+    }
+    if (testClass && classInfo.isConcrete() && className.indexOf('$') < 0) {
+      testClasses.add(className);
+    }
+  }
+
+  /**
+   * Finds the classes compiled from a changed source file.  The source path recorded in a class
+   * is relative to its source root, so it is matched against every suffix of <code>changedPath</code>
+   * that starts after a <code>/</code>.
+   *
+   * @param changedPath the changed file path, relative to the repository root
+   * @return the classes, empty if none were compiled from the file
+   */
+  public Set<String> getClassesForSource(String changedPath) {
+    Set<String> classes = classesBySourcePath.get(changedPath);
+    int slash = changedPath.indexOf('/');
+    while (classes == null && slash >= 0) {
+      classes = classesBySourcePath.get(changedPath.substring(slash + 1));
+      slash = changedPath.indexOf('/', slash + 1);
+    }
+    return classes == null ? Collections.<String>emptySet() : classes;
+  }
+
+  /**
+   * Finds the test classes that depend, directly or transitively, on a class compiled from one of
+   * the changed files.  Each level of the traversal is expanded in parallel.
+   *
+   * @param changedPaths the changed file paths, relative to the repository root
+   * @param maxClasses the largest number of affected classes to follow
+   * @param maxDepth the longest chain of references to follow
+   * @return the affected test classes, or null if the traversal went beyond either cap
+   */
+  public Set<String> findAffectedTests(Collection<String> changedPaths, int maxClasses, int maxDepth) {
+    final Set<String> reached = ConcurrentHashMap.newKeySet();
+    for (String changedPath : changedPaths) {
+      reached.addAll(getClassesForSource(changedPath));
+    }
+    List<String> frontier = new ArrayList<String>(reached);
+    for (int depth = 0; !frontier.isEmpty(); depth++) {
+      if (reached.size() > maxClasses) {
+        return null;
+      }
+      List<String> next = frontier.parallelStream()
+        .flatMap(className -> dependents.getOrDefault(className, Collections.<String>emptySet()).stream())
+        .filter(reached::add)
+        .collect(Collectors.toList());
+      if (!next.isEmpty() && depth >= maxDepth) {
+        return null;
+      }
+      frontier = next;
+    }
+    if (reached.size() > maxClasses) {
+      return null;
+    }
+    Set<String> affectedTests = new HashSet<String>();
+    for (String className : reached) {
+      int nested = className.indexOf('$');
+      String topLevelClass = nested < 0 ? className : className.substring(0, nested);
+      if (testClasses.contains(topLevelClass)) {
+        affectedTests.add(topLevelClass);
+      }
+    }
+    return affectedTests;
+  }
+
+  /**
+   * @return the number of classes in the graph
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return a digest of the path, size and modification time of the scanned class files, which
+   * changes whenever the classes are recompiled, or null if the graph was not scanned
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  void setFingerprint(String fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  private static String fingerprint(List<Path> classFiles) throws IOException {
+    MessageDigest digest = FileWriterHelper.newDigest();
+    for (Path classFile : classFiles) {
+      addToFingerprint(digest, classFile, Files.size(classFile), Files.getLastModifiedTime(classFile).toMillis());
+    }
+    return SelectionCache.toHex(digest.digest());
+  }
+
+  static void addToFingerprint(MessageDigest digest, Path classFile, long size, long lastModified) {
+    digest.update((classFile + "\u0000" + size + "\u0000" + lastModified + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void addAll(List<ClassFileParser.ClassInfo> classInfos, boolean testClasses) {
+    for (ClassFileParser.ClassInfo classInfo : classInfos) {
+      add(classInfo, testClasses);
+    }
+  }
+
+  private static List<ClassFileParser.ClassInfo> parseAll(List<Path> classFiles) throws IOException {
+    try {
+      return classFiles.parallelStream().map(DependencyGraph::parse).collect(Collectors.toList());
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static ClassFileParser.ClassInfo parse(Path classFile) {
+    try {
+      return ClassFileParser.parse(Files.readAllBytes(classFile));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(new IOException("Unable to parse " + classFile + ": " + e.getMessage(), e));
+    }
+  }
+}
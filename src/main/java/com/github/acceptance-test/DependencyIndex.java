@@ -0,0 +1,371 @@
+package com.github.kentolsen;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Persistent index of parsed class files, so that a build only parses the class files that changed
+ * since the index was saved.  Each entry records the size, modification time and SHA-256 of its
+ * class file.  An entry whose size and modification time still match is used without reading the
+ * class file; otherwise the class file is read, and it is only parsed again if its hash changed.
+ * <p>
+ * The index is a binary file holding a table of every class and source file name followed by the
+ * entries, which refer to names by their position in the table.  It is read into memory whole
+ * rather than mapped, since a mapped file cannot be replaced on Windows until the mapping is
+ * garbage collected.
+ * An index with a different {@link #VERSION}, or one that cannot be read, is discarded and rebuilt.
+ *
+ * @author Kent Olsen
+ */
+public class DependencyIndex {
+
+  /**
+   * Version of the index format.  It must change whenever the format or what is stored changes.
+   */
+  public static final int VERSION = 1;
+
+  private static final int MAGIC = 0x41545349;
+  private static final int HASH_LENGTH = 32;
+  private static final int NO_NAME = -1;
+
+  private Map<String, Entry> entries;
+  private boolean modified;
+  private int reusedCount;
+  private int parsedCount;
+  private int removedCount;
+
+  /**
+   * Creates an empty index.
+   */
+  public DependencyIndex() {
+    this(new HashMap<String, Entry>(), true);
+  }
+
+  private DependencyIndex(Map<String, Entry> entries, boolean modified) {
+    this.entries = entries;
+    this.modified = modified;
+  }
+
+  /**
+   * Loads an index.  A missing, outdated or corrupt index gives an empty index that will be saved
+   * in full.
+   *
+   * @param indexFile the index file
+   * @return the index
+   * @throws IOException if the index file exists but cannot be read
+   */
+  public static DependencyIndex load(File indexFile) throws IOException {
+    if (!indexFile.isFile()) {
+      return new DependencyIndex();
+    }
+    Map<String, Entry> entries = read(ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath())));
+    return entries != null ? new DependencyIndex(entries, false) : new DependencyIndex();
+  }
+
+  /**
+   * Brings the index up to date with the class files below the given directories and builds the
+   * dependency graph from it.  Class files are checked and parsed in parallel.
+   *
+   * @param classesDirectories the directories of classes that are not tests; missing directories are ignored
+   * @param testClassesDirectories the directories of test classes; missing directories are ignored
+   * @return the graph, with the same fingerprint {@link DependencyGraph#scan} gives
+   * @throws IOException if a class file cannot be read or parsed
+   */
+  public DependencyGraph update(List<File> classesDirectories, List<File> testClassesDirectories) throws IOException {
+    List<Path> classFiles = DependencyGraph.findClassFiles(classesDirectories);
+    List<Path> testClassFiles = DependencyGraph.findClassFiles(testClassesDirectories);
+    Set<Path> testClassFileSet = new HashSet<Path>(testClassFiles);
+    List<Path> allClassFiles = new ArrayList<Path>(classFiles);
+    allClassFiles.addAll(testClassFiles);
+
+    final AtomicInteger reused = new AtomicInteger();
+    final AtomicInteger parsed = new AtomicInteger();
+    final AtomicInteger refreshed = new AtomicInteger();
+    List<Entry> updatedEntries;
+    try {
+      updatedEntries = allClassFiles.parallelStream()
+        .map(classFile -> refresh(classFile, testClassFileSet.contains(classFile), reused, parsed, refreshed))
+        .collect(Collectors.toList());
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    Map<String, Entry> updated = new LinkedHashMap<String, Entry>();
+    DependencyGraph graph = new DependencyGraph();
+    MessageDigest fingerprint = FileWriterHelper.newDigest();
+    for (int index = 0; index < allClassFiles.size(); index++) {
+      Entry entry = updatedEntries.get(index);
+      updated.put(entry.path, entry);
+      graph.add(entry.classInfo, entry.testClass);
+      DependencyGraph.addToFingerprint(fingerprint, allClassFiles.get(index), entry.size, entry.lastModified);
+    }
+    graph.setFingerprint(SelectionCache.toHex(fingerprint.digest()));
+
+    int removed = 0;
+    for (String path : entries.keySet()) {
+      if (!updated.containsKey(path)) {
+        removed++;
+      }
+    }
+    reusedCount = reused.get();
+    parsedCount = parsed.get();
+    removedCount = removed;
+    modified |= parsedCount > 0 || removedCount > 0 || refreshed.get() > 0;
+    entries = updated;
+    return graph;
+  }
+
+  /**
+   * Saves the index.  It is written to a temporary file next to <code>indexFile</code> and renamed
+   * over it, so a build that is interrupted leaves the previous index intact.
+   *
+   * @param indexFile the index file
+   * @throws IOException if the index cannot be written
+   */
+  public void save(File indexFile) throws IOException {
+    File directory = indexFile.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create index directory " + directory);
+    }
+    File temporary = File.createTempFile("." + indexFile.getName(), ".tmp", directory);
+    try {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16));
+      try {
+        write(output);
+      }
+      finally {
+        output.close();
+      }
+      try {
+        Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+    modified = false;
+  }
+
+  /**
+   * @return whether the index differs from the saved index file
+   */
+  public boolean isModified() {
+    return modified;
+  }
+
+  /**
+   * @return the number of class files taken from the index by the last update
+   */
+  public int getReusedCount() {
+    return reusedCount;
+  }
+
+  /**
+   * @return the number of class files parsed by the last update
+   */
+  public int getParsedCount() {
+    return parsedCount;
+  }
+
+  /**
+   * @return the number of entries the last update removed because their class files were deleted
+   */
+  public int getRemovedCount() {
+    return removedCount;
+  }
+
+  /**
+   * @return the number of class files in the index
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private Entry refresh(Path classFile, boolean testClass, AtomicInteger reused, AtomicInteger parsed,
+                        AtomicInteger refreshed) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(classFile, BasicFileAttributes.class);
+      long size = attributes.size();
+      long lastModified = attributes.lastModifiedTime().toMillis();
+      String path = classFile.toString();
+      Entry entry = entries.get(path);
+      if (entry != null && entry.testClass != testClass) {
+        entry = null;
+      }
+      if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+        reused.incrementAndGet();
+        return entry;
+      }
+      byte[] contents = Files.readAllBytes(classFile);
+      byte[] hash = FileWriterHelper.newDigest().digest(contents);
+      if (entry != null && Arrays.equals(entry.hash, hash)) {
+        reused.incrementAndGet();
+        refreshed.incrementAndGet();
+        return new Entry(path, testClass, contents.length, lastModified, hash, entry.classInfo);
+      }
+      ClassFileParser.ClassInfo classInfo;
+      try {
+        classInfo = ClassFileParser.parse(contents);
+      }
+      catch (IOException e) {
+        throw new IOException("Unable to parse " + classFile + ": " + e.getMessage(), e);
+      }
+      parsed.incrementAndGet();
+      return new Entry(path, testClass, contents.length, lastModified, hash, classInfo);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void write(DataOutputStream output) throws IOException {
+    Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+    for (Entry entry : entries.values()) {
+      addName(names, entry.path);
+      addName(names, entry.classInfo.getClassName());
+      addName(names, entry.classInfo.getSourceFile());
+      for (String dependency : entry.classInfo.getDependencies()) {
+        addName(names, dependency);
+      }
+    }
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(names.size());
+    for (String name : names.keySet()) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+    output.writeInt(entries.size());
+    for (Entry entry : entries.values()) {
+      ClassFileParser.ClassInfo classInfo = entry.classInfo;
+      output.writeInt(names.get(entry.path));
+      output.writeBoolean(entry.testClass);
+      output.writeLong(entry.size);
+      output.writeLong(entry.lastModified);
+      output.write(entry.hash);
+      output.writeInt(names.get(classInfo.getClassName()));
+      output.writeInt(classInfo.getSourceFile() == null ? NO_NAME : names.get(classInfo.getSourceFile()));
+      output.writeBoolean(classInfo.isConcrete());
+      output.writeInt(classInfo.getDependencies().size());
+      for (String dependency : classInfo.getDependencies()) {
+        output.writeInt(names.get(dependency));
+      }
+    }
+  }
+
+  private static void addName(Map<String, Integer> names, String name) {
+    if (name != null && !names.containsKey(name)) {
+      names.put(name, names.size());
+    }
+  }
+
+  /**
+   * @return the entries, or null if the buffer does not hold an index of this version
+   */
+  private static Map<String, Entry> read(ByteBuffer buffer) {
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        return null;
+      }
+      String[] names = new String[buffer.getInt()];
+      for (int index = 0; index < names.length; index++) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        names[index] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      int entryCount = buffer.getInt();
+      Map<String, Entry> entries = new HashMap<String, Entry>(Math.max(16, entryCount * 2));
+      for (int index = 0; index < entryCount; index++) {
+        String path = names[buffer.getInt()];
+        boolean testClass = buffer.get() != 0;
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(hash);
+        String className = names[buffer.getInt()];
+        int sourceFileIndex = buffer.getInt();
+        String sourceFile = sourceFileIndex == NO_NAME ? null : names[sourceFileIndex];
+        boolean concrete = buffer.get() != 0;
+        Set<String> dependencies = new HashSet<String>();
+        int dependencyCount = buffer.getInt();
+        for (int dependency = 0; dependency < dependencyCount; dependency++) {
+          dependencies.add(names[buffer.getInt()]);
+        }
+        entries.put(path, new Entry(path, testClass, size, lastModified, hash,
+          new ClassFileParser.ClassInfo(className, sourceFile, concrete, dependencies)));
+      }
+      return buffer.hasRemaining() ? null : entries;
+    }
+    catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * The parsed contents of one class file and what it was parsed from.
+   */
+  private static class Entry {
+
+    private final String path;
+    private final boolean testClass;
+    private final long size;
+    private final long lastModified;
+    private final byte[] hash;
+    private final ClassFileParser.ClassInfo classInfo;
+
+    Entry(String path, boolean testClass, long size, long lastModified, byte[] hash, ClassFileParser.ClassInfo classInfo) {
+      this.path = path;
+      this.testClass = testClass;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.classInfo = classInfo;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.github.kentolsen;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Writes lines to a file on a background thread, so that the full lists of a selection can be kept
+ * without slowing it down.  Lines are handed over through a bounded queue and written in batches
+ * through a large buffer; a caller only waits when the writer falls a whole queue behind.  The
+ * first write failure is kept and reported by {@link #close}, and later lines are dropped.
+ *
+ * @author Kent Olsen
+ */
+public class DetailLogWriter implements Closeable {
+
+  private static final int QUEUE_CAPACITY = 8192;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // compared by identity, so that no logged line can end the log
+  private static final String END = new String("end of detail log");
+
+  private final BlockingQueue<String> lines = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+  private final Thread writerThread;
+  private volatile IOException failure;
+  private volatile boolean closed;
+
+  /**
+   * Creates the file, and its directory if needed, and starts the writer thread.
+   *
+   * @param file the file, which is replaced if it exists
+   * @throws IOException if the file cannot be created
+   */
+  public DetailLogWriter(File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    writerThread = new Thread(() -> drain(writer), "acceptance-test-selector-detail-log");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Queues a line for writing.  Lines written from one thread keep their order.
+   *
+   * @param line the line, without a line separator
+   */
+  public void write(String line) {
+    if (closed || failure != null) {
+      return;
+    }
+    try {
+      lines.put(line);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes the queued lines, closes the file and stops the writer thread.
+   *
+   * @throws IOException if any line could not be written or the file could not be closed
+   */
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        lines.put(END);
+        writerThread.join();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while closing the detail log");
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void drain(Writer writer) {
+    List<String> batch = new ArrayList<String>();
+    try {
+      while (true) {
+        batch.add(lines.take());
+        lines.drainTo(batch);
+        for (String line : batch) {
+          if (line == END) {
+            return;
+          }
+          writeLine(writer, line);
+        }
+        batch.clear();
+      }
+    }
+    catch (InterruptedException e) {
+      fail(new InterruptedIOException("Detail log writer interrupted"));
+    }
+    finally {
+      try {
+        writer.close();
+      }
+      catch (IOException e) {
+        fail(e);
+      }
+    }
+  }
+
+  private void writeLine(Writer writer, String line) {
+    if (failure != null) {
+      return;
+    }
+    try {
+      writer.write(line);
+      writer.write('\n');
+    }
+    catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.github.kentolsen;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Reads the classes a JaCoCo execution data (<code>.exec</code>) file records as executed, without
+ * the JaCoCo libraries.  A class counts as executed when at least one of its probes was hit in any
+ * session of the file.  Probes are not mapped to lines, which would take the analysis of the class
+ * files the data was recorded against.
+ *
+ * @author Kent Olsen
+ */
+public class ExecFileReader {
+
+  private static final int BLOCK_HEADER = 0x01;
+  private static final int BLOCK_SESSION_INFO = 0x10;
+  private static final int BLOCK_EXECUTION_DATA = 0x11;
+  private static final char MAGIC = 0xc0c0;
+  private static final char FORMAT_VERSION = 0x1007;
+  private static final char OLD_FORMAT_VERSION = 0x1006;
+
+  private ExecFileReader() {
+  }
+
+  /**
+   * Reads execution data.
+   *
+   * @param inputStream the execution data; it is not closed
+   * @return the internal names, as in com/example/Outer$Inner, of the executed classes
+   * @throws IOException if the data cannot be read or is not JaCoCo execution data
+   */
+  public static Set<String> readExecutedClasses(InputStream inputStream) throws IOException {
+    DataInputStream input = new DataInputStream(inputStream);
+    Set<String> executedClasses = new HashSet<String>();
+    boolean header = false;
+    int type;
+    while ((type = input.read()) != -1) {
+      switch (type) {
+        case BLOCK_HEADER:
+          if (input.readChar() != MAGIC) {
+            throw new IOException("Not a JaCoCo execution data file");
+          }
+          char version = input.readChar();
+          if (version != FORMAT_VERSION && version != OLD_FORMAT_VERSION) {
+            throw new IOException("Unsupported JaCoCo execution data version 0x" + Integer.toHexString(version));
+          }
+          header = true;
+          break;
+        case BLOCK_SESSION_INFO:
+          input.readUTF();
+          input.readLong();
+          input.readLong();
+          break;
+        case BLOCK_EXECUTION_DATA:
+          if (!header) {
+            throw new IOException("Not a JaCoCo execution data file");
+          }
+          input.readLong();
+          String className = input.readUTF();
+          if (readProbes(input)) {
+            executedClasses.add(className);
+          }
+          break;
+        default:
+          throw new IOException("Unknown block type 0x" + Integer.toHexString(type) + " in JaCoCo execution data");
+      }
+    }
+    return executedClasses;
+  }
+
+  /**
+   * Reads a probe array, packed eight probes to a byte after its length.
+   *
+   * @return whether any probe was hit
+   */
+  private static boolean readProbes(DataInputStream input) throws IOException {
+    int probeCount = readVarInt(input);
+    if (probeCount < 0) {
+      throw new IOException("Malformed probe count in JaCoCo execution data");
+    }
+    int byteCount = (probeCount + 7) / 8;
+    boolean hit = false;
+    for (int index = 0; index < byteCount; index++) {
+      hit |= input.readUnsignedByte() != 0;
+    }
+    return hit;
+  }
+
+  private static int readVarInt(DataInputStream input) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = input.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed probe count in JaCoCo execution data");
+  }
+}
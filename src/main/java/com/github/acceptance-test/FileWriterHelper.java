@@ -3,8 +3,17 @@ package com.github.kentolsen;
 import org.apache.maven.plugin.MojoExecutionException;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 /*
  * Copyright (C) 2015  Kent Olsen
@@ -25,37 +34,83 @@ import java.io.IOException;
  */
 
 /**
- * Writes to files with a FileWriter.
+ * Writes files atomically and only when their contents change.
  *
  * @author Kent Olsen
  */
 public class FileWriterHelper {
 
-  public static FileWriter getFileWriter(File suiteFileName) throws MojoExecutionException {
-    FileWriter writer = null;
+  /**
+   * Writes <code>contents</code> to <code>file</code> as UTF-8 unless the file already holds exactly those
+   * bytes, in which case it is left untouched and keeps its modification time.  Otherwise the contents are
+   * written to a temporary file next to <code>file</code>, synced, and renamed over it, so readers see either
+   * the old or the new file but never a partial one.
+   *
+   * @param file the file to write
+   * @param contents the contents to write
+   * @return true if the file was written, false if it already held the contents
+   * @throws MojoExecutionException if the file cannot be compared or written
+   */
+  public static boolean writeIfChanged(File file, String contents) throws MojoExecutionException {
+    byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
     try {
-      writer = new FileWriter(suiteFileName);
+      if (file.isFile() && file.length() == bytes.length
+        && Arrays.equals(digest(file), newDigest().digest(bytes))) {
+        return false;
+      }
+      File directory = file.getAbsoluteFile().getParentFile();
+      File temporary = File.createTempFile("." + file.getName(), ".tmp", directory);
+      try {
+        FileOutputStream outputStream = new FileOutputStream(temporary);
+        try {
+          outputStream.write(bytes);
+          outputStream.getFD().sync();
+        }
+        finally {
+          outputStream.close();
+        }
+        try {
+          Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      finally {
+        Files.deleteIfExists(temporary.toPath());
+      }
     }
     catch (IOException e) {
-      ExceptionHelper.throwMojoExecutionException("Error opening file writer", e);
+      ExceptionHelper.throwMojoExecutionException("Error writing to file", e);
     }
-    return writer;
+    return true;
   }
 
-  public static void writeToWriter(FileWriter writer, String suiteContents) throws MojoExecutionException {
+  /**
+   * @return a new SHA-256 digest, as used for the contents, cache keys and fingerprints written by the plugin
+   */
+  static MessageDigest newDigest() {
     try {
-      writer.write(suiteContents);
+      return MessageDigest.getInstance("SHA-256");
     }
-    catch (IOException e) {
-      ExceptionHelper.throwMojoExecutionException("Error writing to file", e);
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
     }
-    finally {
-      try {
-        writer.close();
-      }
-      catch (IOException e) {
-        // ignore
+  }
+
+  private static byte[] digest(File file) throws IOException {
+    MessageDigest digest = newDigest();
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = inputStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, count);
       }
     }
+    finally {
+      inputStream.close();
+    }
+    return digest.digest();
   }
 }
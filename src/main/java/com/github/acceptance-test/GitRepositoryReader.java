@@ -0,0 +1,892 @@
+package com.github.kentolsen;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Reads a git repository directly from its <code>.git</code> directory so that changed files
+ * can be listed without starting a <code>git</code> process.  Loose objects are inflated from
+ * <code>objects/xx/...</code> and packed objects are read from memory-mapped version 2
+ * <code>.idx</code> and <code>.pack</code> files, including offset and reference deltas.
+ * <p>
+ * Anything the reader does not understand (alternates, version 1 pack indexes, packs larger
+ * than 2GB, abbreviated SHAs) results in an <code>IOException</code> so that callers can fall
+ * back to the git command.  Unlike <code>git diff --name-only</code>, renames are never
+ * detected, so a renamed file is reported under both its old and its new path.
+ *
+ * @author Kent Olsen
+ */
+public class GitRepositoryReader {
+
+  public static final int OBJ_COMMIT = 1;
+  public static final int OBJ_TREE = 2;
+  public static final int OBJ_BLOB = 3;
+  public static final int OBJ_TAG = 4;
+  private static final int OBJ_OFS_DELTA = 6;
+  private static final int OBJ_REF_DELTA = 7;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String[] OBJECT_TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+  private static final int PACK_INDEX_MAGIC = 0xff744f63;
+  private static final int INFLATE_CHUNK_SIZE = 8192;
+  private static final int OBJECT_CACHE_SIZE = 1024;
+  private static final int SHA_LENGTH = 20;
+  private static final int MAX_PEEL_DEPTH = 16;
+  private static final int MAX_SYMBOLIC_REF_DEPTH = 8;
+
+  private final File gitDirectory;
+  private final File commonDirectory;
+  private final File objectsDirectory;
+  private List<PackFile> packFiles;
+  private CommitGraph commitGraph;
+  private boolean commitGraphOpened;
+  private final Map<String, GitObject> objectCache = new LinkedHashMap<String, GitObject>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, GitObject> eldest) {
+      return size() > OBJECT_CACHE_SIZE;
+    }
+  };
+
+  /**
+   * Opens the repository containing <code>workingDirectory</code>.
+   *
+   * @param workingDirectory a directory inside the working tree of a git repository
+   * @throws IOException if no repository is found
+   */
+  public GitRepositoryReader(File workingDirectory) throws IOException {
+    gitDirectory = findGitDirectory(workingDirectory.getAbsoluteFile());
+    File commonDirectoryFile = new File(gitDirectory, "commondir");
+    commonDirectory = commonDirectoryFile.isFile()
+      ? resolvePath(gitDirectory, readFirstLine(commonDirectoryFile))
+      : gitDirectory;
+    objectsDirectory = new File(commonDirectory, "objects");
+    if (new File(objectsDirectory, "info/alternates").isFile()) {
+      throw new IOException("Repositories with alternates are not supported");
+    }
+  }
+
+  public File getGitDirectory() {
+    return gitDirectory;
+  }
+
+  /**
+   * Lists the files that differ between the trees of two commits, like
+   * <code>git diff --name-only --no-renames fromRevision toRevision</code>.
+   *
+   * @param fromRevision the base revision
+   * @param toRevision the revision to compare with the base
+   * @return the changed paths, relative to the repository root and sorted
+   * @throws IOException if the repository cannot be read
+   */
+  public List<String> getChangedPaths(String fromRevision, String toRevision) throws IOException {
+    return getChangedPaths(Collections.singletonList(fromRevision), toRevision).get(0);
+  }
+
+  /**
+   * Lists the files that differ between each of several base revisions and one revision, in a single pass over
+   * the trees.  Each tree of <code>toRevision</code> is read once for all the bases, a tree shared by several
+   * bases is read once for all of them, and a directory is only entered for the bases it differs from.
+   *
+   * @param fromRevisions the base revisions
+   * @param toRevision the revision to compare with the bases
+   * @return the changed paths of each base, in the order of the bases, relative to the repository root and sorted
+   * @throws IOException if the repository cannot be read
+   */
+  public List<List<String>> getChangedPaths(List<String> fromRevisions, String toRevision) throws IOException {
+    List<List<String>> changedPaths = new ArrayList<List<String>>(fromRevisions.size());
+    List<String> fromTreeShas = new ArrayList<String>(fromRevisions.size());
+    List<Integer> bases = new ArrayList<Integer>(fromRevisions.size());
+    for (String fromRevision : fromRevisions) {
+      bases.add(changedPaths.size());
+      changedPaths.add(new ArrayList<String>());
+      fromTreeShas.add(getTreeSha(resolve(fromRevision)));
+    }
+    diffTrees(bases, fromTreeShas, getTreeSha(resolve(toRevision)), "", changedPaths);
+    for (List<String> paths : changedPaths) {
+      Collections.sort(paths);
+    }
+    return changedPaths;
+  }
+
+  /**
+   * Resolves a full SHA, <code>HEAD</code>, or a branch, tag or remote name to a SHA.
+   *
+   * @param revision the revision to resolve
+   * @return the 40 character SHA of the revision
+   * @throws IOException if the revision cannot be resolved
+   */
+  public String resolve(String revision) throws IOException {
+    String trimmed = revision.trim();
+    if (isFullSha(trimmed)) {
+      return trimmed.toLowerCase();
+    }
+    String[] candidates = trimmed.startsWith("refs/") || trimmed.equals("HEAD")
+      ? new String[] {trimmed}
+      : new String[] {trimmed, "refs/heads/" + trimmed, "refs/tags/" + trimmed, "refs/remotes/" + trimmed};
+    for (String candidate : candidates) {
+      String sha = resolveRef(candidate, 0);
+      if (sha != null) {
+        return sha;
+      }
+    }
+    throw new IOException("Unable to resolve revision " + revision);
+  }
+
+  /**
+   * Reads an object, resolving pack deltas.
+   *
+   * @param sha the 40 character SHA of the object
+   * @return the object
+   * @throws IOException if the object is missing or cannot be read
+   */
+  public GitObject readObject(String sha) throws IOException {
+    GitObject object;
+    synchronized (objectCache) {
+      object = objectCache.get(sha);
+    }
+    if (object != null) {
+      return object;
+    }
+    File looseFile = new File(objectsDirectory, sha.substring(0, 2) + File.separator + sha.substring(2));
+    if (looseFile.isFile()) {
+      object = readLooseObject(looseFile);
+    }
+    else {
+      object = readPackedObject(sha);
+      if (object == null) {
+        throw new IOException("Object " + sha + " not found");
+      }
+    }
+    synchronized (objectCache) {
+      objectCache.put(sha, object);
+    }
+    return object;
+  }
+
+  /**
+   * Gets the SHA of the tree of a commit, peeling annotated tags.
+   *
+   * @param sha a commit or tag SHA
+   * @return the tree SHA
+   * @throws IOException if the object is not a commit or tag
+   */
+  public String getTreeSha(String sha) throws IOException {
+    return readObject(getCommitSha(sha)).getHeader("tree");
+  }
+
+  /**
+   * Gets the SHA of a commit, peeling annotated tags.
+   *
+   * @param sha a commit or tag SHA
+   * @return the commit SHA
+   * @throws IOException if the object is not a commit or tag
+   */
+  public String getCommitSha(String sha) throws IOException {
+    String current = sha;
+    for (int depth = 0; depth < MAX_PEEL_DEPTH; depth++) {
+      GitObject object = readObject(current);
+      if (object.getType() == OBJ_COMMIT) {
+        return current;
+      }
+      if (object.getType() != OBJ_TAG) {
+        throw new IOException("Object " + current + " is not a commit");
+      }
+      current = object.getHeader("object");
+    }
+    throw new IOException("Too many nested tags at " + sha);
+  }
+
+  /**
+   * Finds the best common ancestor of two revisions, like <code>git merge-base</code>.  The commit-graph file
+   * is used when the repository has one.
+   *
+   * @param revision1 a revision
+   * @param revision2 another revision
+   * @return the SHA of the merge base, or null if the revisions have no common ancestor
+   * @throws IOException if the repository cannot be read
+   */
+  public String getMergeBase(String revision1, String revision2) throws IOException {
+    return new MergeBaseFinder(this, getCommitGraph()).find(getCommitSha(resolve(revision1)), getCommitSha(resolve(revision2)));
+  }
+
+  /**
+   * @return the commit graph of the repository, or null if it has none this reader can use
+   */
+  public synchronized CommitGraph getCommitGraph() {
+    if (!commitGraphOpened) {
+      commitGraphOpened = true;
+      try {
+        commitGraph = CommitGraph.open(objectsDirectory);
+      }
+      catch (IOException e) {
+        // walk the commits without the graph
+        commitGraph = null;
+      }
+    }
+    return commitGraph;
+  }
+
+  /**
+   * Reads the entries of a tree object in tree order.
+   *
+   * @param treeSha the SHA of the tree, or null for an empty tree
+   * @return the entries, keyed by name
+   * @throws IOException if the tree cannot be read
+   */
+  public Map<String, TreeEntry> readTree(String treeSha) throws IOException {
+    Map<String, TreeEntry> entries = new LinkedHashMap<String, TreeEntry>();
+    if (treeSha == null) {
+      return entries;
+    }
+    GitObject tree = readObject(treeSha);
+    if (tree.getType() != OBJ_TREE) {
+      throw new IOException("Object " + treeSha + " is not a tree");
+    }
+    byte[] data = tree.getData();
+    int index = 0;
+    while (index < data.length) {
+      int space = indexOf(data, (byte) ' ', index);
+      int nul = indexOf(data, (byte) 0, space);
+      if (space < 0 || nul < 0 || nul + 1 + SHA_LENGTH > data.length) {
+        throw new IOException("Corrupt tree " + treeSha);
+      }
+      String mode = new String(data, index, space - index, UTF_8);
+      String name = new String(data, space + 1, nul - space - 1, UTF_8);
+      entries.put(name, new TreeEntry(mode, toHex(data, nul + 1)));
+      index = nul + 1 + SHA_LENGTH;
+    }
+    return entries;
+  }
+
+  /**
+   * Reads a file as it is in a revision.
+   *
+   * @param revision the revision
+   * @param path the path of the file relative to the repository root, separated by <code>/</code>
+   * @return the contents of the file, or null if the revision has no such file
+   * @throws IOException if the repository cannot be read
+   */
+  public byte[] readFile(String revision, String path) throws IOException {
+    String sha = getTreeSha(resolve(revision));
+    String[] names = path.split("/");
+    for (int index = 0; index < names.length; index++) {
+      TreeEntry entry = readTree(sha).get(names[index]);
+      if (entry == null || entry.isTree() != (index < names.length - 1)) {
+        return null;
+      }
+      sha = entry.getSha();
+    }
+    GitObject object = readObject(sha);
+    return object.getType() == OBJ_BLOB ? object.getData() : null;
+  }
+
+  /**
+   * Compares the trees of several bases with one tree.
+   *
+   * @param bases the indexes in <code>changedPaths</code> of the bases whose trees differ from <code>toTreeSha</code>
+   * @param fromTreeShas the tree of each of <code>bases</code>, or null where a base has no such tree
+   */
+  private void diffTrees(List<Integer> bases, List<String> fromTreeShas, String toTreeSha, String prefix,
+                         List<List<String>> changedPaths) throws IOException {
+    Map<String, TreeEntry> toEntries = readTree(toTreeSha);
+    Map<String, Map<String, TreeEntry>> entriesByTreeSha = new HashMap<String, Map<String, TreeEntry>>();
+    List<Map<String, TreeEntry>> fromEntries = new ArrayList<Map<String, TreeEntry>>(bases.size());
+    TreeSet<String> names = new TreeSet<String>(toEntries.keySet());
+    for (String fromTreeSha : fromTreeShas) {
+      Map<String, TreeEntry> entries = fromTreeSha != null ? entriesByTreeSha.get(fromTreeSha) : null;
+      if (entries == null) {
+        entries = readTree(fromTreeSha);
+        if (fromTreeSha != null) {
+          entriesByTreeSha.put(fromTreeSha, entries);
+        }
+      }
+      fromEntries.add(entries);
+      names.addAll(entries.keySet());
+    }
+    for (String name : names) {
+      TreeEntry to = toEntries.get(name);
+      String path = prefix + name;
+      String toSubtree = to != null && to.isTree() ? to.getSha() : null;
+      List<Integer> subtreeBases = new ArrayList<Integer>();
+      List<String> fromSubtrees = new ArrayList<String>();
+      for (int index = 0; index < bases.size(); index++) {
+        TreeEntry from = fromEntries.get(index).get(name);
+        if (from != null && from.equals(to)) {
+          continue;
+        }
+        String fromSubtree = from != null && from.isTree() ? from.getSha() : null;
+        if (fromSubtree != null || toSubtree != null) {
+          subtreeBases.add(bases.get(index));
+          fromSubtrees.add(fromSubtree);
+        }
+        if ((from != null && !from.isTree()) || (to != null && !to.isTree())) {
+          changedPaths.get(bases.get(index)).add(path);
+        }
+      }
+      if (!subtreeBases.isEmpty()) {
+        diffTrees(subtreeBases, fromSubtrees, toSubtree, path + "/", changedPaths);
+      }
+    }
+  }
+
+  private String resolveRef(String ref, int depth) throws IOException {
+    if (depth > MAX_SYMBOLIC_REF_DEPTH) {
+      throw new IOException("Too many symbolic references resolving " + ref);
+    }
+    File refFile = new File(ref.equals("HEAD") ? gitDirectory : commonDirectory, ref);
+    if (refFile.isFile()) {
+      String contents = readFirstLine(refFile);
+      if (contents.startsWith("ref:")) {
+        return resolveRef(contents.substring("ref:".length()).trim(), depth + 1);
+      }
+      if (isFullSha(contents)) {
+        return contents.toLowerCase();
+      }
+      throw new IOException("Unexpected contents in " + refFile);
+    }
+    File packedRefs = new File(commonDirectory, "packed-refs");
+    if (packedRefs.isFile()) {
+      BufferedReader reader = new BufferedReader(new FileReader(packedRefs));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.length() > 41 && line.charAt(40) == ' ' && line.substring(41).equals(ref)) {
+            return line.substring(0, 40).toLowerCase();
+          }
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+    return null;
+  }
+
+  private GitObject readLooseObject(File looseFile) throws IOException {
+    byte[] compressed = readFully(looseFile);
+    Inflater inflater = new Inflater();
+    ByteArrayOutputStream inflated = new ByteArrayOutputStream(compressed.length * 3);
+    try {
+      inflater.setInput(compressed);
+      byte[] buffer = new byte[INFLATE_CHUNK_SIZE];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated object " + looseFile);
+        }
+        inflated.write(buffer, 0, count);
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Corrupt object " + looseFile, e);
+    }
+    finally {
+      inflater.end();
+    }
+    byte[] raw = inflated.toByteArray();
+    int space = indexOf(raw, (byte) ' ', 0);
+    int nul = indexOf(raw, (byte) 0, 0);
+    if (space < 0 || nul < space) {
+      throw new IOException("Corrupt object header in " + looseFile);
+    }
+    int type = typeFromName(new String(raw, 0, space, UTF_8));
+    byte[] data = new byte[raw.length - nul - 1];
+    System.arraycopy(raw, nul + 1, data, 0, data.length);
+    return new GitObject(type, data);
+  }
+
+  private GitObject readPackedObject(String sha) throws IOException {
+    byte[] shaBytes = fromHex(sha);
+    for (PackFile packFile : getPackFiles()) {
+      long offset = packFile.findOffset(shaBytes);
+      if (offset >= 0) {
+        return packFile.readObject(offset, 0);
+      }
+    }
+    return null;
+  }
+
+  private synchronized List<PackFile> getPackFiles() throws IOException {
+    if (packFiles == null) {
+      packFiles = new ArrayList<PackFile>();
+      File[] indexFiles = new File(objectsDirectory, "pack").listFiles();
+      if (indexFiles != null) {
+        for (File indexFile : indexFiles) {
+          String name = indexFile.getName();
+          if (name.endsWith(".idx")) {
+            File pack = new File(indexFile.getParentFile(), name.substring(0, name.length() - ".idx".length()) + ".pack");
+            if (pack.isFile()) {
+              packFiles.add(new PackFile(indexFile, pack));
+            }
+          }
+        }
+      }
+    }
+    return packFiles;
+  }
+
+  private static File findGitDirectory(File workingDirectory) throws IOException {
+    File directory = workingDirectory;
+    while (directory != null) {
+      File dotGit = new File(directory, ".git");
+      if (dotGit.isDirectory()) {
+        return dotGit;
+      }
+      if (dotGit.isFile()) {
+        String contents = readFirstLine(dotGit);
+        if (contents.startsWith("gitdir:")) {
+          return resolvePath(directory, contents.substring("gitdir:".length()).trim());
+        }
+      }
+      directory = directory.getParentFile();
+    }
+    throw new IOException("No git repository found at " + workingDirectory);
+  }
+
+  private static File resolvePath(File base, String path) {
+    File file = new File(path);
+    return file.isAbsolute() ? file : new File(base, path);
+  }
+
+  private static String readFirstLine(File file) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line = reader.readLine();
+      return line == null ? "" : line.trim();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[INFLATE_CHUNK_SIZE];
+      int count;
+      while ((count = inputStream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, count);
+      }
+      return outputStream.toByteArray();
+    }
+    finally {
+      inputStream.close();
+    }
+  }
+
+  private static int typeFromName(String name) throws IOException {
+    for (int type = 1; type < OBJECT_TYPE_NAMES.length; type++) {
+      if (OBJECT_TYPE_NAMES[type].equals(name)) {
+        return type;
+      }
+    }
+    throw new IOException("Unknown object type " + name);
+  }
+
+  private static int indexOf(byte[] data, byte value, int from) {
+    if (from < 0) {
+      return -1;
+    }
+    for (int index = from; index < data.length; index++) {
+      if (data[index] == value) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  static boolean isFullSha(String value) {
+    if (value.length() != 40) {
+      return false;
+    }
+    for (int index = 0; index < value.length(); index++) {
+      if (Character.digit(value.charAt(index), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static String toHex(byte[] data, int offset) {
+    StringBuilder hex = new StringBuilder(SHA_LENGTH * 2);
+    for (int index = offset; index < offset + SHA_LENGTH; index++) {
+      hex.append(Character.forDigit((data[index] >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(data[index] & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  static byte[] fromHex(String sha) {
+    byte[] bytes = new byte[SHA_LENGTH];
+    for (int index = 0; index < SHA_LENGTH; index++) {
+      bytes[index] = (byte) Integer.parseInt(sha.substring(index * 2, index * 2 + 2), 16);
+    }
+    return bytes;
+  }
+
+  static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+    int[] position = {0};
+    long baseLength = readDeltaLength(delta, position);
+    long resultLength = readDeltaLength(delta, position);
+    if (baseLength != base.length) {
+      throw new IOException("Delta base length mismatch");
+    }
+    if (resultLength > Integer.MAX_VALUE - 8) {
+      throw new IOException("Delta result too large");
+    }
+    byte[] result = new byte[(int) resultLength];
+    int resultIndex = 0;
+    int index = position[0];
+    while (index < delta.length) {
+      int op = delta[index++] & 0xff;
+      if ((op & 0x80) != 0) {
+        long copyOffset = 0;
+        int copyLength = 0;
+        for (int bit = 0; bit < 4; bit++) {
+          if ((op & (1 << bit)) != 0) {
+            copyOffset |= (long) deltaByte(delta, index++) << (8 * bit);
+          }
+        }
+        for (int bit = 0; bit < 3; bit++) {
+          if ((op & (0x10 << bit)) != 0) {
+            copyLength |= deltaByte(delta, index++) << (8 * bit);
+          }
+        }
+        if (copyLength == 0) {
+          copyLength = 0x10000;
+        }
+        if (copyOffset + copyLength > base.length || copyLength > result.length - resultIndex) {
+          throw new IOException("Delta copy out of bounds");
+        }
+        System.arraycopy(base, (int) copyOffset, result, resultIndex, copyLength);
+        resultIndex += copyLength;
+      }
+      else if (op != 0) {
+        if (op > delta.length - index || op > result.length - resultIndex) {
+          throw new IOException("Delta insert out of bounds");
+        }
+        System.arraycopy(delta, index, result, resultIndex, op);
+        index += op;
+        resultIndex += op;
+      }
+      else {
+        throw new IOException("Invalid delta instruction");
+      }
+    }
+    if (resultIndex != result.length) {
+      throw new IOException("Delta result length mismatch");
+    }
+    return result;
+  }
+
+  private static int deltaByte(byte[] delta, int index) throws IOException {
+    if (index >= delta.length) {
+      throw new IOException("Truncated delta instruction");
+    }
+    return delta[index] & 0xff;
+  }
+
+  private static long readDeltaLength(byte[] delta, int[] position) throws IOException {
+    long length = 0;
+    int shift = 0;
+    int b;
+    do {
+      if (shift > 56) {
+        throw new IOException("Invalid delta length");
+      }
+      b = deltaByte(delta, position[0]++);
+      length |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return length;
+  }
+
+  /**
+   * An object read from the repository.
+   */
+  public static class GitObject {
+
+    private final int type;
+    private final byte[] data;
+
+    GitObject(int type, byte[] data) {
+      this.type = type;
+      this.data = data;
+    }
+
+    public int getType() {
+      return type;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    /**
+     * Gets the value of a header line of a commit or tag, such as <code>tree</code>.
+     *
+     * @param name the header name
+     * @return the first value of the header
+     * @throws IOException if the header is missing
+     */
+    public String getHeader(String name) throws IOException {
+      String prefix = name + " ";
+      int index = 0;
+      while (index < data.length && data[index] != '\n') {
+        int end = indexOf(data, (byte) '\n', index);
+        if (end < 0) {
+          end = data.length;
+        }
+        String line = new String(data, index, end - index, UTF_8);
+        if (line.startsWith(prefix)) {
+          return line.substring(prefix.length());
+        }
+        index = end + 1;
+      }
+      throw new IOException("Object has no " + name + " header");
+    }
+  }
+
+  /**
+   * An entry of a tree object.
+   */
+  public static class TreeEntry {
+
+    private final String mode;
+    private final String sha;
+
+    TreeEntry(String mode, String sha) {
+      this.mode = mode;
+      this.sha = sha;
+    }
+
+    public String getMode() {
+      return mode;
+    }
+
+    public String getSha() {
+      return sha;
+    }
+
+    public boolean isTree() {
+      return mode.equals("40000");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TreeEntry)) {
+        return false;
+      }
+      TreeEntry other = (TreeEntry) o;
+      return mode.equals(other.mode) && sha.equals(other.sha);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * mode.hashCode() + sha.hashCode();
+    }
+  }
+
+  private class PackFile {
+
+    private final File pack;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer data;
+    private final int objectCount;
+
+    PackFile(File indexFile, File pack) throws IOException {
+      this.pack = pack;
+      index = map(indexFile);
+      data = map(pack);
+      if (index.getInt(0) != PACK_INDEX_MAGIC || index.getInt(4) != 2) {
+        throw new IOException("Unsupported pack index version in " + indexFile);
+      }
+      objectCount = index.getInt(8 + 255 * 4);
+    }
+
+    long findOffset(byte[] sha) {
+      int first = sha[0] & 0xff;
+      int low = first == 0 ? 0 : index.getInt(8 + (first - 1) * 4);
+      int high = index.getInt(8 + first * 4) - 1;
+      int shaTable = 8 + 256 * 4;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int comparison = compareSha(shaTable + middle * SHA_LENGTH, sha);
+        if (comparison < 0) {
+          low = middle + 1;
+        }
+        else if (comparison > 0) {
+          high = middle - 1;
+        }
+        else {
+          int offsetTable = shaTable + objectCount * (SHA_LENGTH + 4);
+          int offset = index.getInt(offsetTable + middle * 4);
+          if ((offset & 0x80000000) == 0) {
+            return offset;
+          }
+          return index.getLong(offsetTable + objectCount * 4 + (offset & 0x7fffffff) * 8);
+        }
+      }
+      return -1;
+    }
+
+    GitObject readObject(long offset, int depth) throws IOException {
+      if (depth > MAX_PEEL_DEPTH * 4) {
+        throw new IOException("Delta chain too long in " + pack);
+      }
+      if (offset < 0 || offset >= data.limit()) {
+        throw new IOException("Object offset out of bounds in " + pack);
+      }
+      int position = (int) offset;
+      int b = readByte(position++);
+      int type = (b >> 4) & 7;
+      long size = b & 0x0f;
+      int shift = 4;
+      while ((b & 0x80) != 0) {
+        b = readByte(position++);
+        size |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      }
+      if (size > Integer.MAX_VALUE - 8) {
+        throw new IOException("Object too large in " + pack);
+      }
+      if (type == OBJ_OFS_DELTA) {
+        b = readByte(position++);
+        long baseDistance = b & 0x7f;
+        while ((b & 0x80) != 0) {
+          b = readByte(position++);
+          baseDistance = ((baseDistance + 1) << 7) | (b & 0x7f);
+        }
+        if (baseDistance <= 0 || baseDistance > offset) {
+          throw new IOException("Delta base out of bounds in " + pack);
+        }
+        GitObject base = readObject(offset - baseDistance, depth + 1);
+        return new GitObject(base.getType(), applyDelta(base.getData(), inflate(position, size)));
+      }
+      if (type == OBJ_REF_DELTA) {
+        byte[] baseSha = new byte[SHA_LENGTH];
+        for (int i = 0; i < SHA_LENGTH; i++) {
+          baseSha[i] = (byte) readByte(position++);
+        }
+        GitObject base = GitRepositoryReader.this.readObject(toHex(baseSha, 0));
+        return new GitObject(base.getType(), applyDelta(base.getData(), inflate(position, size)));
+      }
+      if (type < OBJ_COMMIT || type > OBJ_TAG) {
+        throw new IOException("Unknown pack object type " + type + " in " + pack);
+      }
+      return new GitObject(type, inflate(position, size));
+    }
+
+    private int readByte(int position) throws IOException {
+      if (position >= data.limit()) {
+        throw new IOException("Truncated object in " + pack);
+      }
+      return data.get(position) & 0xff;
+    }
+
+    private byte[] inflate(int position, long size) throws IOException {
+      byte[] result = new byte[(int) size];
+      byte[] chunk = new byte[INFLATE_CHUNK_SIZE];
+      byte[] overflow = new byte[1];
+      Inflater inflater = new Inflater();
+      try {
+        int inputPosition = position;
+        int resultLength = 0;
+        while (!inflater.finished()) {
+          if (inflater.needsInput()) {
+            int length = Math.min(chunk.length, data.limit() - inputPosition);
+            if (length <= 0) {
+              throw new IOException("Truncated object in " + pack);
+            }
+            ByteBuffer slice = data.duplicate();
+            slice.position(inputPosition);
+            slice.get(chunk, 0, length);
+            inputPosition += length;
+            inflater.setInput(chunk, 0, length);
+          }
+          if (resultLength < result.length) {
+            resultLength += inflater.inflate(result, resultLength, result.length - resultLength);
+          }
+          else if (inflater.inflate(overflow) > 0) {
+            throw new IOException("Object larger than declared in " + pack);
+          }
+          else if (inflater.needsDictionary()) {
+            throw new IOException("Corrupt object in " + pack);
+          }
+        }
+        if (resultLength != result.length) {
+          throw new IOException("Object smaller than declared in " + pack);
+        }
+      }
+      catch (DataFormatException e) {
+        throw new IOException("Corrupt object in " + pack, e);
+      }
+      finally {
+        inflater.end();
+      }
+      return result;
+    }
+
+    private int compareSha(int position, byte[] sha) {
+      for (int i = 0; i < SHA_LENGTH; i++) {
+        int difference = (index.get(position + i) & 0xff) - (sha[i] & 0xff);
+        if (difference != 0) {
+          return difference;
+        }
+      }
+      return 0;
+    }
+  }
+
+  static MappedByteBuffer map(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large to map: " + file);
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally {
+      randomAccessFile.close();
+    }
+  }
+}
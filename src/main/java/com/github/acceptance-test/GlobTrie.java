@@ -0,0 +1,271 @@
+package com.github.kentolsen;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Prefix trie of glob mapping keys with wildcard edges.  <code>?</code> matches one character
+ * other than <code>/</code>, <code>*</code> matches any run of characters other than
+ * <code>/</code>, <code>**</code> matches any run of characters and <code>**&#47;</code> matches
+ * zero or more whole directories.  Like literal keys, a glob matches a path when it matches a
+ * prefix of it.
+ * <p>
+ * All globs share one automaton, and a path is matched in a single pass over its characters
+ * however many globs there are.  The sets of trie nodes reached are turned into deterministic
+ * states as they are first needed and kept for later paths, up to a bound past which they are all
+ * dropped and built again.  Since lookups add states, they are synchronized, so a trie can be shared
+ * by several threads.
+ *
+ * @author Kent Olsen
+ */
+public class GlobTrie {
+
+  private static final int MAX_CACHED_STATES = 4096;
+
+  private final List<Node> nodes = new ArrayList<Node>();
+  private final Node root;
+  private final Map<BitSet, State> states = new HashMap<BitSet, State>();
+  private State start;
+  private int size;
+
+  public GlobTrie() {
+    root = newNode();
+  }
+
+  /**
+   * Adds a glob mapping key to the trie.
+   *
+   * @param glob the glob
+   */
+  public synchronized void put(String glob) {
+    Node node = root;
+    int index = 0;
+    while (index < glob.length()) {
+      char c = glob.charAt(index);
+      if (c == '*') {
+        int end = index;
+        while (end < glob.length() && glob.charAt(end) == '*') {
+          end++;
+        }
+        if (end - index == 1) {
+          node = node.getStar();
+        }
+        else if (end < glob.length() && glob.charAt(end) == '/') {
+          node = node.getDirectories();
+          end++;
+        }
+        else {
+          node = node.getGlobstar();
+        }
+        index = end;
+      }
+      else if (c == '?') {
+        if (node.anyCharacter == null) {
+          node.anyCharacter = newNode();
+        }
+        node = node.anyCharacter;
+        index++;
+      }
+      else {
+        Node child = node.literals.get(c);
+        if (child == null) {
+          child = newNode();
+          node.literals.put(c, child);
+        }
+        node = child;
+        index++;
+      }
+    }
+    if (node.keys.isEmpty()) {
+      node.keys = new ArrayList<String>(1);
+    }
+    if (!node.keys.contains(glob)) {
+      node.keys.add(glob);
+      size++;
+    }
+    clearStates();
+  }
+
+  /**
+   * Finds the globs that match a prefix of <code>path</code>.
+   *
+   * @param path the changed file path, relative to the repository root
+   * @return the matching globs, empty if there are none
+   */
+  public synchronized Set<String> findPrefixMatches(CharSequence path) {
+    Set<String> matches = new HashSet<String>();
+    if (start == null) {
+      BitSet initial = new BitSet();
+      addClosure(root, initial);
+      start = getState(initial);
+    }
+    State state = start;
+    matches.addAll(state.keys);
+    for (int index = 0; index < path.length() && !state.isDead(); index++) {
+      state = state.next(path.charAt(index));
+      matches.addAll(state.keys);
+    }
+    return matches;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  private Node newNode() {
+    Node node = new Node(nodes.size());
+    nodes.add(node);
+    return node;
+  }
+
+  private void addClosure(Node node, BitSet reached) {
+    if (reached.get(node.id)) {
+      return;
+    }
+    reached.set(node.id);
+    if (node.star != null) {
+      addClosure(node.star, reached);
+    }
+    if (node.globstar != null) {
+      addClosure(node.globstar, reached);
+    }
+    if (node.directories != null) {
+      addClosure(node.directories, reached);
+      addClosure(node.afterDirectories, reached);
+    }
+  }
+
+  private State getState(BitSet reached) {
+    State state = states.get(reached);
+    if (state == null) {
+      if (states.size() >= MAX_CACHED_STATES) {
+        // the old states stay reachable from start through their transitions until start is dropped too
+        clearStates();
+      }
+      state = new State(reached);
+      states.put(reached, state);
+    }
+    return state;
+  }
+
+  private void clearStates() {
+    states.clear();
+    start = null;
+  }
+
+  /**
+   * A deterministic state: the set of trie nodes reached after some prefix of a path.
+   */
+  private class State {
+
+    private final int[] nodeIds;
+    private final List<String> keys = new ArrayList<String>();
+    private final Map<Character, State> transitions = new HashMap<Character, State>();
+
+    State(BitSet reached) {
+      nodeIds = reached.stream().toArray();
+      for (int id : nodeIds) {
+        keys.addAll(nodes.get(id).keys);
+      }
+    }
+
+    boolean isDead() {
+      return nodeIds.length == 0;
+    }
+
+    State next(char c) {
+      State next = transitions.get(c);
+      if (next == null) {
+        BitSet reached = new BitSet();
+        for (int id : nodeIds) {
+          Node node = nodes.get(id);
+          Node literal = node.literals.get(c);
+          if (literal != null) {
+            addClosure(literal, reached);
+          }
+          if (c != '/' && node.anyCharacter != null) {
+            addClosure(node.anyCharacter, reached);
+          }
+          if (node.loopsAcrossDirectories || (c != '/' && node.loopsWithinDirectory)) {
+            addClosure(node, reached);
+          }
+        }
+        next = getState(reached);
+        transitions.put(c, next);
+      }
+      return next;
+    }
+  }
+
+  private class Node {
+
+    private final int id;
+    private final Map<Character, Node> literals = new HashMap<Character, Node>();
+    private Node anyCharacter;
+    private Node star;
+    private Node globstar;
+    private Node directories;
+    private Node afterDirectories;
+    private boolean loopsWithinDirectory;
+    private boolean loopsAcrossDirectories;
+    private List<String> keys = Collections.emptyList();
+
+    Node(int id) {
+      this.id = id;
+    }
+
+    Node getStar() {
+      if (star == null) {
+        star = newNode();
+        star.loopsWithinDirectory = true;
+      }
+      return star;
+    }
+
+    Node getGlobstar() {
+      if (globstar == null) {
+        globstar = newNode();
+        globstar.loopsAcrossDirectories = true;
+      }
+      return globstar;
+    }
+
+    /**
+     * The node after <code>**&#47;</code>.  It is reached directly, for zero directories, and
+     * through a node that consumes anything up to a <code>/</code>.
+     */
+    Node getDirectories() {
+      if (directories == null) {
+        directories = newNode();
+        directories.loopsAcrossDirectories = true;
+        afterDirectories = newNode();
+        directories.literals.put('/', afterDirectories);
+      }
+      return afterDirectories;
+    }
+  }
+}
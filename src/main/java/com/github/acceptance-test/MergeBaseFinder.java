@@ -0,0 +1,288 @@
+package com.github.kentolsen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Finds the best common ancestor of two commits, like <code>git merge-base</code>.  History is
+ * painted down from both commits, newest first, until every commit left to visit is already known
+ * to be reachable from a common ancestor.  When several common ancestors remain, those reachable
+ * from another one are dropped and the newest of the rest is the merge base.
+ * <p>
+ * Commits in the commit-graph are ordered by their generation number and read from the graph;
+ * other commits are inflated from the repository, count as newer than any commit in the graph,
+ * and are ordered by commit time, as git does.  Generation numbers also cut the search for
+ * redundant ancestors short: a commit can only reach commits of a lower generation.
+ *
+ * @author Kent Olsen
+ */
+public class MergeBaseFinder {
+
+  private static final int PARENT1 = 1;
+  private static final int PARENT2 = 2;
+  private static final int STALE = 4;
+  private static final int RESULT = 8;
+  private static final int GENERATION_INFINITY = Integer.MAX_VALUE;
+
+  private static final Comparator<Commit> NEWEST_FIRST = (first, second) -> {
+    if (first.generation != second.generation) {
+      return Integer.compare(second.generation, first.generation);
+    }
+    if (first.time != second.time) {
+      return Long.compare(second.time, first.time);
+    }
+    return first.sha.compareTo(second.sha);
+  };
+
+  private final GitRepositoryReader reader;
+  private final CommitGraph commitGraph;
+  private final Map<String, Commit> commits = new HashMap<String, Commit>();
+  private int inflatedCount;
+
+  /**
+   * @param reader the repository
+   * @param commitGraph the commit graph of the repository, or null to read every commit from the repository
+   */
+  public MergeBaseFinder(GitRepositoryReader reader, CommitGraph commitGraph) {
+    this.reader = reader;
+    this.commitGraph = commitGraph;
+  }
+
+  /**
+   * Finds the merge base of two commits.
+   *
+   * @param sha1 the 40 character SHA of a commit
+   * @param sha2 the 40 character SHA of another commit
+   * @return the SHA of the best common ancestor, or null if the commits have none
+   * @throws IOException if a commit cannot be read
+   */
+  public String find(String sha1, String sha2) throws IOException {
+    if (sha1.equals(sha2)) {
+      return sha1;
+    }
+    List<Commit> candidates = paintDownToCommon(getCommit(sha1), getCommit(sha2));
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    candidates.sort(NEWEST_FIRST);
+    for (Commit candidate : candidates) {
+      if (!isRedundant(candidate, candidates)) {
+        return candidate.sha;
+      }
+    }
+    return candidates.get(0).sha;
+  }
+
+  /**
+   * @return the number of commits read from the repository rather than from the commit graph
+   */
+  public int getInflatedCount() {
+    return inflatedCount;
+  }
+
+  private List<Commit> paintDownToCommon(Commit one, Commit two) throws IOException {
+    List<Commit> results = new ArrayList<Commit>();
+    PriorityQueue<Commit> queue = new PriorityQueue<Commit>(NEWEST_FIRST);
+    one.flags |= PARENT1;
+    two.flags |= PARENT2;
+    int[] nonStaleCount = new int[1];
+    push(queue, one, nonStaleCount);
+    push(queue, two, nonStaleCount);
+    while (nonStaleCount[0] > 0) {
+      Commit commit = queue.poll();
+      commit.queuedCount--;
+      if ((commit.flags & STALE) == 0) {
+        nonStaleCount[0]--;
+      }
+      int flags = commit.flags & (PARENT1 | PARENT2 | STALE);
+      if (flags == (PARENT1 | PARENT2)) {
+        if ((commit.flags & RESULT) == 0) {
+          commit.flags |= RESULT;
+          results.add(commit);
+        }
+        flags |= STALE;
+      }
+      for (Commit parent : getParents(commit)) {
+        if ((parent.flags & flags) == flags) {
+          continue;
+        }
+        if ((flags & STALE) != 0 && (parent.flags & STALE) == 0) {
+          // the copies of the parent already queued stop counting once it is known to be stale
+          nonStaleCount[0] -= parent.queuedCount;
+        }
+        parent.flags |= flags;
+        push(queue, parent, nonStaleCount);
+      }
+    }
+    return results;
+  }
+
+  private static void push(PriorityQueue<Commit> queue, Commit commit, int[] nonStaleCount) {
+    queue.add(commit);
+    commit.queuedCount++;
+    if ((commit.flags & STALE) == 0) {
+      nonStaleCount[0]++;
+    }
+  }
+
+  /**
+   * @return whether <code>candidate</code> is an ancestor of another candidate
+   */
+  private boolean isRedundant(Commit candidate, List<Commit> candidates) throws IOException {
+    Set<Commit> visited = new HashSet<Commit>();
+    Deque<Commit> pending = new ArrayDeque<Commit>();
+    for (Commit other : candidates) {
+      if (other != candidate) {
+        pending.push(other);
+      }
+    }
+    while (!pending.isEmpty()) {
+      Commit commit = pending.pop();
+      if (!visited.add(commit)) {
+        continue;
+      }
+      for (Commit parent : getParents(commit)) {
+        if (parent == candidate) {
+          return true;
+        }
+        if (canReach(parent, candidate)) {
+          pending.push(parent);
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean canReach(Commit commit, Commit target) {
+    return commit.generation == GENERATION_INFINITY || target.generation == GENERATION_INFINITY
+      || commit.generation > target.generation;
+  }
+
+  private Commit getCommit(String sha) throws IOException {
+    Commit commit = commits.get(sha);
+    if (commit != null) {
+      return commit;
+    }
+    int position = commitGraph != null ? commitGraph.findCommit(GitRepositoryReader.fromHex(sha)) : -1;
+    if (position >= 0) {
+      return addGraphCommit(sha, position);
+    }
+    GitRepositoryReader.GitObject object = reader.readObject(sha);
+    if (object.getType() != GitRepositoryReader.OBJ_COMMIT) {
+      throw new IOException("Object " + sha + " is not a commit");
+    }
+    inflatedCount++;
+    commit = new Commit(sha, GENERATION_INFINITY, 0);
+    List<String> parentShas = new ArrayList<String>();
+    byte[] data = object.getData();
+    int index = 0;
+    while (index < data.length && data[index] != '\n') {
+      int end = index;
+      while (end < data.length && data[end] != '\n') {
+        end++;
+      }
+      String line = new String(data, index, end - index, StandardCharsets.UTF_8);
+      if (line.startsWith("parent ")) {
+        parentShas.add(line.substring("parent ".length()));
+      }
+      else if (line.startsWith("committer ")) {
+        commit.time = parseCommitTime(line);
+      }
+      index = end + 1;
+    }
+    commit.parentShas = parentShas.toArray(new String[parentShas.size()]);
+    commits.put(sha, commit);
+    return commit;
+  }
+
+  private Commit addGraphCommit(String sha, int position) {
+    int generation = commitGraph.getGeneration(position);
+    Commit commit = new Commit(sha, generation == CommitGraph.GENERATION_ZERO ? GENERATION_INFINITY : generation,
+      commitGraph.getCommitTime(position));
+    commit.graphPosition = position;
+    commits.put(sha, commit);
+    return commit;
+  }
+
+  private Commit[] getParents(Commit commit) throws IOException {
+    if (commit.parents == null) {
+      Commit[] parents;
+      if (commit.graphPosition >= 0) {
+        int[] positions = commitGraph.getParents(commit.graphPosition);
+        parents = new Commit[positions.length];
+        for (int index = 0; index < positions.length; index++) {
+          String sha = commitGraph.getSha(positions[index]);
+          Commit parent = commits.get(sha);
+          parents[index] = parent != null ? parent : addGraphCommit(sha, positions[index]);
+        }
+      }
+      else {
+        parents = new Commit[commit.parentShas.length];
+        for (int index = 0; index < parents.length; index++) {
+          parents[index] = getCommit(commit.parentShas[index]);
+        }
+      }
+      commit.parents = parents;
+    }
+    return commit.parents;
+  }
+
+  /**
+   * @return the time of a <code>committer Name &lt;email&gt; 1234567890 +0000</code> line, or 0 if it has none
+   */
+  private static long parseCommitTime(String line) {
+    String[] fields = line.substring(line.lastIndexOf('>') + 1).trim().split(" ");
+    try {
+      return Long.parseLong(fields[0]);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static class Commit {
+
+    private final String sha;
+    private final int generation;
+    private long time;
+    private int graphPosition = -1;
+    private String[] parentShas;
+    private Commit[] parents;
+    private int flags;
+    private int queuedCount;
+
+    Commit(String sha, int generation, long time) {
+      this.sha = sha;
+      this.generation = generation;
+      this.time = time;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.github.kentolsen;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * The test classes selected to run, and for each the test methods if only some of them should run.  A
+ * selected test is either a class name, as in <code>com.example.BigTest</code>, or a class name and
+ * comma separated methods, as in <code>com.example.BigTest#login,logout</code>.  The methods selected
+ * for the same class are merged, and selecting the whole class overrides any selected methods.
+ *
+ * @author Kent Olsen
+ */
+public class MethodSelection {
+
+  /**
+   * Separates the class name from the methods in a selected test.
+   */
+  public static final char METHOD_SEPARATOR = '#';
+  /**
+   * Separates the methods in a selected test.
+   */
+  public static final String METHOD_LIST_SEPARATOR = ",";
+
+  private final Map<String, Set<String>> methodsByClass = new LinkedHashMap<String, Set<String>>();
+
+  /**
+   * @param tests the selected tests
+   * @return the selection, with the classes in the order they were first selected
+   */
+  public static MethodSelection of(Collection<String> tests) {
+    MethodSelection methodSelection = new MethodSelection();
+    for (String test : tests) {
+      methodSelection.add(test);
+    }
+    return methodSelection;
+  }
+
+  /**
+   * Adds a selected test.  A test without a class name is ignored, as is an empty method name.
+   *
+   * @param test the class name, optionally followed by <code>#</code> and the comma separated methods
+   */
+  public void add(String test) {
+    int separator = test.indexOf(METHOD_SEPARATOR);
+    String className = (separator < 0 ? test : test.substring(0, separator)).trim();
+    if (className.isEmpty()) {
+      return;
+    }
+    Set<String> methods = new TreeSet<String>();
+    if (separator >= 0) {
+      for (String method : test.substring(separator + 1).split(METHOD_LIST_SEPARATOR)) {
+        if (!method.trim().isEmpty()) {
+          methods.add(method.trim());
+        }
+      }
+    }
+    if (methods.isEmpty()) {
+      methodsByClass.put(className, null);
+    }
+    else if (!methodsByClass.containsKey(className)) {
+      methodsByClass.put(className, methods);
+    }
+    else if (methodsByClass.get(className) != null) {
+      methodsByClass.get(className).addAll(methods);
+    }
+  }
+
+  /**
+   * @return the selected classes, in the order they were first selected
+   */
+  public Set<String> getClassNames() {
+    return Collections.unmodifiableSet(methodsByClass.keySet());
+  }
+
+  /**
+   * @param className the class name
+   * @return the selected methods of the class in name order, or null if the whole class is selected or the
+   * class is not selected at all
+   */
+  public Set<String> getMethods(String className) {
+    Set<String> methods = methodsByClass.get(className);
+    return methods == null ? null : Collections.unmodifiableSet(methods);
+  }
+}
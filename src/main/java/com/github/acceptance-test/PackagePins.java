@@ -0,0 +1,292 @@
+package com.github.kentolsen;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Reads the versions of separate components from a package file and finds the components whose
+ * version changed.  A <code>.json</code> file is read as a package.json: the members of every
+ * object named like <code>dependencies</code>, <code>devDependencies</code> or
+ * <code>peerDependencies</code>, or the top-level members when there is no such object.  Any other
+ * file is read as a properties file of component names and versions.
+ *
+ * @author Kent Olsen
+ */
+public class PackagePins {
+
+  private static final String DEPENDENCIES_SUFFIX = "ependencies";
+
+  private PackagePins() {
+  }
+
+  /**
+   * Reads the component versions of a package file.
+   *
+   * @param fileName the name of the file, which decides its format
+   * @param contents the contents of the file; null or blank contents have no components
+   * @return the version of each component
+   * @throws IOException if a JSON file is malformed
+   */
+  public static Map<String, String> parse(String fileName, String contents) throws IOException {
+    if (contents == null || contents.trim().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    if (fileName.toLowerCase().endsWith(".json")) {
+      return parseJson(contents);
+    }
+    Properties properties = new Properties();
+    properties.load(new StringReader(contents));
+    Map<String, String> pins = new HashMap<String, String>();
+    for (String name : properties.stringPropertyNames()) {
+      pins.put(name, properties.getProperty(name).trim());
+    }
+    return pins;
+  }
+
+  /**
+   * Finds the components that are new or have a different version.  Removed components are not
+   * changes, since nothing integrates them any more.
+   *
+   * @param before the versions in the base revision
+   * @param after the versions in the head revision
+   * @return the new version of each changed component, sorted by component name
+   */
+  public static Map<String, String> diff(Map<String, String> before, Map<String, String> after) {
+    Map<String, String> changedPins = new TreeMap<String, String>();
+    for (Map.Entry<String, String> pin : after.entrySet()) {
+      if (!pin.getValue().equals(before.get(pin.getKey()))) {
+        changedPins.put(pin.getKey(), pin.getValue());
+      }
+    }
+    return changedPins;
+  }
+
+  private static Map<String, String> parseJson(String contents) throws IOException {
+    JsonParser parser = new JsonParser(contents);
+    Object root = parser.parseValue();
+    parser.expectEnd();
+    if (!(root instanceof Map)) {
+      throw new IOException("Package file is not a JSON object");
+    }
+    Map<String, String> pins = new HashMap<String, String>();
+    boolean dependencies = false;
+    for (Map.Entry<?, ?> member : ((Map<?, ?>) root).entrySet()) {
+      if (((String) member.getKey()).endsWith(DEPENDENCIES_SUFFIX) && member.getValue() instanceof Map) {
+        dependencies = true;
+        addVersions((Map<?, ?>) member.getValue(), pins);
+      }
+    }
+    if (!dependencies) {
+      addVersions((Map<?, ?>) root, pins);
+    }
+    return pins;
+  }
+
+  private static void addVersions(Map<?, ?> members, Map<String, String> pins) {
+    for (Map.Entry<?, ?> member : members.entrySet()) {
+      if (member.getValue() instanceof String) {
+        pins.put((String) member.getKey(), (String) member.getValue());
+      }
+    }
+  }
+
+  /**
+   * Parses JSON into maps, lists and strings.  Numbers, booleans and null are kept as their text,
+   * which is all a version needs.
+   */
+  private static class JsonParser {
+
+    private final String text;
+    private int position;
+
+    JsonParser(String text) {
+      this.text = text;
+    }
+
+    Object parseValue() throws IOException {
+      skipWhitespace();
+      if (position >= text.length()) {
+        throw error("Unexpected end of JSON");
+      }
+      char c = text.charAt(position);
+      if (c == '{') {
+        return parseObject();
+      }
+      if (c == '[') {
+        return parseArray();
+      }
+      if (c == '"') {
+        return parseString();
+      }
+      int start = position;
+      while (position < text.length() && "{}[],:\" \t\r\n".indexOf(text.charAt(position)) < 0) {
+        position++;
+      }
+      if (start == position) {
+        throw error("Unexpected '" + c + "'");
+      }
+      return text.substring(start, position);
+    }
+
+    void expectEnd() throws IOException {
+      skipWhitespace();
+      if (position < text.length()) {
+        throw error("Unexpected text after JSON value");
+      }
+    }
+
+    private Map<String, Object> parseObject() throws IOException {
+      Map<String, Object> members = new LinkedHashMap<String, Object>();
+      position++;
+      if (skipTo('}')) {
+        return members;
+      }
+      do {
+        skipWhitespace();
+        if (position >= text.length() || text.charAt(position) != '"') {
+          throw error("Expected a member name");
+        }
+        String name = parseString();
+        expect(':');
+        members.put(name, parseValue());
+      }
+      while (separatorBefore('}'));
+      return members;
+    }
+
+    private List<Object> parseArray() throws IOException {
+      List<Object> values = new ArrayList<Object>();
+      position++;
+      if (skipTo(']')) {
+        return values;
+      }
+      do {
+        values.add(parseValue());
+      }
+      while (separatorBefore(']'));
+      return values;
+    }
+
+    private String parseString() throws IOException {
+      StringBuilder value = new StringBuilder();
+      position++;
+      while (position < text.length()) {
+        char c = text.charAt(position++);
+        if (c == '"') {
+          return value.toString();
+        }
+        if (c != '\\') {
+          value.append(c);
+        }
+        else if (position < text.length()) {
+          char escaped = text.charAt(position++);
+          switch (escaped) {
+            case 'b':
+              value.append('\b');
+              break;
+            case 'f':
+              value.append('\f');
+              break;
+            case 'n':
+              value.append('\n');
+              break;
+            case 'r':
+              value.append('\r');
+              break;
+            case 't':
+              value.append('\t');
+              break;
+            case 'u':
+              if (position + 4 > text.length()) {
+                throw error("Malformed unicode escape");
+              }
+              try {
+                value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+              }
+              catch (NumberFormatException e) {
+                throw error("Malformed unicode escape");
+              }
+              position += 4;
+              break;
+            default:
+              value.append(escaped);
+          }
+        }
+      }
+      throw error("Unterminated string");
+    }
+
+    /**
+     * @return whether the next character is <code>close</code>, which is then skipped
+     */
+    private boolean skipTo(char close) {
+      skipWhitespace();
+      if (position < text.length() && text.charAt(position) == close) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return true after a comma, false after <code>close</code>
+     */
+    private boolean separatorBefore(char close) throws IOException {
+      skipWhitespace();
+      if (position < text.length()) {
+        char c = text.charAt(position++);
+        if (c == ',') {
+          return true;
+        }
+        if (c == close) {
+          return false;
+        }
+      }
+      throw error("Expected ',' or '" + close + "'");
+    }
+
+    private void expect(char expected) throws IOException {
+      skipWhitespace();
+      if (position >= text.length() || text.charAt(position) != expected) {
+        throw error("Expected '" + expected + "'");
+      }
+      position++;
+    }
+
+    private void skipWhitespace() {
+      while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+        position++;
+      }
+    }
+
+    private IOException error(String message) {
+      return new IOException(message + " at offset " + position + " of package file");
+    }
+  }
+}
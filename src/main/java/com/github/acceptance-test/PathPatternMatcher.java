@@ -0,0 +1,161 @@
+package com.github.kentolsen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Matches changed file paths against suite mapping keys of three kinds, each kind compiled
+ * once into a single structure so that the cost of matching a path does not grow with the
+ * number of keys:
+ * <ul>
+ *   <li>literal path prefixes, in a {@link SuiteMappingTrie}; only the longest matching one is used</li>
+ *   <li>globs, any key containing <code>*</code> or <code>?</code>, in a {@link GlobTrie}</li>
+ *   <li>regular expressions, keys starting with <code>regex:</code>, combined into one pattern</li>
+ * </ul>
+ * Globs and regular expressions match a path when they match a prefix of it, as literal keys
+ * do, and every matching glob and regular expression is used.  A regular expression with a
+ * backreference or a named group is matched on its own, since combining it with the others
+ * would renumber or duplicate its groups.  A matcher can be used by several threads at once: the
+ * glob trie synchronizes its lookups and each regular expression lookup uses its own matcher.
+ *
+ * @author Kent Olsen
+ */
+public class PathPatternMatcher {
+
+  /**
+   * Prefix of mapping keys that are regular expressions.
+   */
+  public static final String REGEX_PREFIX = "regex:";
+
+  private static final String GROUP_PREFIX = "key";
+
+  private final SuiteMappingTrie literalKeys = new SuiteMappingTrie();
+  private final GlobTrie globKeys = new GlobTrie();
+  private final List<String> regexKeys = new ArrayList<String>();
+  private final Pattern regexPattern;
+  private final Map<String, Pattern> separateRegexKeys = new LinkedHashMap<String, Pattern>();
+
+  /**
+   * @param keys the mapping keys
+   * @throws IllegalArgumentException if a regular expression key is not valid
+   */
+  public PathPatternMatcher(Collection<String> keys) {
+    StringBuilder combinedRegex = new StringBuilder();
+    for (String key : keys) {
+      if (key.startsWith(REGEX_PREFIX)) {
+        String regex = key.substring(REGEX_PREFIX.length());
+        Pattern pattern;
+        try {
+          pattern = Pattern.compile(regex);
+        }
+        catch (PatternSyntaxException e) {
+          throw new IllegalArgumentException("Invalid regular expression in mapping key " + key, e);
+        }
+        if (!isCombinable(regex)) {
+          separateRegexKeys.put(key, pattern);
+          continue;
+        }
+        // each key is an optional lookahead at the start of the path, so one match attempt reports all of them
+        combinedRegex.append("(?:(?=(?<").append(GROUP_PREFIX).append(regexKeys.size()).append('>')
+          .append(regex).append(")))?");
+        regexKeys.add(key);
+      }
+      else if (isGlob(key)) {
+        globKeys.put(key);
+      }
+      else {
+        literalKeys.put(key);
+      }
+    }
+    regexPattern = regexKeys.isEmpty() ? null : Pattern.compile(combinedRegex.toString());
+  }
+
+  /**
+   * @return whether <code>regex</code> keeps its meaning inside the combined pattern, which it does not when
+   * it refers to its groups by number or declares a named group
+   */
+  private static boolean isCombinable(String regex) {
+    for (int index = 0; index < regex.length() - 1; index++) {
+      char c = regex.charAt(index);
+      char next = regex.charAt(index + 1);
+      if (c == '\\') {
+        if (Character.isDigit(next) || next == 'k') {
+          return false;
+        }
+        index++;
+      }
+      else if (c == '(' && regex.startsWith("?<", index + 1) && index + 3 < regex.length()
+        && regex.charAt(index + 3) != '=' && regex.charAt(index + 3) != '!') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether <code>key</code> is matched as a glob
+   */
+  public static boolean isGlob(String key) {
+    return !key.startsWith(REGEX_PREFIX) && (key.indexOf('*') >= 0 || key.indexOf('?') >= 0);
+  }
+
+  /**
+   * Finds the mapping keys that match <code>path</code>: the longest matching literal key, if any,
+   * and all matching globs and regular expressions.
+   *
+   * @param path the changed file path, relative to the repository root
+   * @return the matching keys, empty if there are none
+   */
+  public Set<String> findMatches(String path) {
+    Set<String> matches = new HashSet<String>();
+    String literalKey = literalKeys.findLongestPrefix(path);
+    if (literalKey != null) {
+      matches.add(literalKey);
+    }
+    if (globKeys.size() > 0) {
+      matches.addAll(globKeys.findPrefixMatches(path));
+    }
+    if (regexPattern != null) {
+      Matcher regexMatcher = regexPattern.matcher(path);
+      if (regexMatcher.lookingAt()) {
+        for (int index = 0; index < regexKeys.size(); index++) {
+          if (regexMatcher.start(GROUP_PREFIX + index) >= 0) {
+            matches.add(regexKeys.get(index));
+          }
+        }
+      }
+    }
+    for (Map.Entry<String, Pattern> separateRegexKey : separateRegexKeys.entrySet()) {
+      if (separateRegexKey.getValue().matcher(path).lookingAt()) {
+        matches.add(separateRegexKey.getKey());
+      }
+    }
+    return matches;
+  }
+}
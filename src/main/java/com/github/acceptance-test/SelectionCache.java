@@ -0,0 +1,245 @@
+package com.github.kentolsen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * On-disk cache of generated suite contents.  Each entry is a file named after a digest of
+ * everything the selection depends on, so a hit can be written out without running git or
+ * matching again.  Entries are evicted least recently used first once there are more than
+ * <code>maxEntries</code>; the last modified time of an entry records its last use.  Hit and
+ * miss counts are kept in the cache directory across builds.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionCache {
+
+  private static final String ENTRY_SUFFIX = ".suite";
+  private static final String STATISTICS_FILE_NAME = "statistics.properties";
+  private static final String HITS = "hits";
+  private static final String MISSES = "misses";
+  private static final String LOCK_SUFFIX = ".lock";
+  /**
+   * A file lock is held by the whole JVM, so the modules of a parallel build also take turns on this monitor.
+   */
+  private static final Object STATISTICS_LOCK = new Object();
+
+  private final File directory;
+  private final int maxEntries;
+  private long hits;
+  private long misses;
+
+  public SelectionCache(File directory, int maxEntries) {
+    this.directory = directory;
+    this.maxEntries = Math.max(1, maxEntries);
+  }
+
+  /**
+   * Computes a cache key from the inputs of a selection.
+   *
+   * @param parts the inputs; null parts are allowed
+   * @return a hex SHA-256 digest of the parts
+   */
+  public static String createKey(String... parts) {
+    MessageDigest digest = FileWriterHelper.newDigest();
+    for (String part : parts) {
+      digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Creates a stable text form of mappings so that they can be part of a key regardless of
+   * their iteration order.
+   *
+   * @param mappings the mappings, may be null
+   * @return the sorted <code>name=value</code> lines
+   */
+  public static String describe(Properties mappings) {
+    StringBuilder description = new StringBuilder();
+    if (mappings != null) {
+      for (String name : new TreeSet<String>(mappings.stringPropertyNames())) {
+        description.append(name).append('=').append(mappings.getProperty(name)).append('\n');
+      }
+    }
+    return description.toString();
+  }
+
+  /**
+   * Looks up an entry and records a hit or miss.
+   *
+   * @param key the cache key
+   * @return the cached suite contents, or null on a miss
+   * @throws IOException if the cache cannot be read
+   */
+  public String get(String key) throws IOException {
+    File entry = getEntryFile(key);
+    String contents = null;
+    if (entry.isFile()) {
+      contents = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+      //noinspection ResultOfMethodCallIgnored
+      entry.setLastModified(System.currentTimeMillis());
+    }
+    recordLookup(contents != null);
+    return contents;
+  }
+
+  /**
+   * Stores an entry, evicting the least recently used entries if the cache is full.
+   *
+   * @param key the cache key
+   * @param contents the suite contents
+   * @throws IOException if the entry cannot be written
+   */
+  public void put(String key, String contents) throws IOException {
+    ensureDirectory();
+    replace(getEntryFile(key), contents.getBytes(StandardCharsets.UTF_8));
+    evict();
+  }
+
+  /**
+   * @return the number of hits recorded in this cache directory, including earlier builds
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of misses recorded in this cache directory, including earlier builds
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  private void evict() {
+    File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+    if (entries == null || entries.length <= maxEntries) {
+      return;
+    }
+    Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+    for (int index = 0; index < entries.length - maxEntries; index++) {
+      //noinspection ResultOfMethodCallIgnored
+      entries[index].delete();
+    }
+  }
+
+  /**
+   * Counts a lookup.  Builds sharing the cache directory update the counts under a lock on a sibling
+   * <code>.lock</code> file, so that none of their lookups are lost.
+   */
+  private void recordLookup(boolean hit) throws IOException {
+    ensureDirectory();
+    File statisticsFile = new File(directory, STATISTICS_FILE_NAME);
+    synchronized (STATISTICS_LOCK) {
+      FileChannel lockChannel = FileChannel.open(new File(directory, STATISTICS_FILE_NAME + LOCK_SUFFIX).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      try {
+        lockChannel.lock();
+        Properties statistics = new Properties();
+        if (statisticsFile.isFile()) {
+          InputStream inputStream = new FileInputStream(statisticsFile);
+          try {
+            statistics.load(inputStream);
+          }
+          finally {
+            inputStream.close();
+          }
+        }
+        hits = parseCount(statistics.getProperty(HITS)) + (hit ? 1 : 0);
+        misses = parseCount(statistics.getProperty(MISSES)) + (hit ? 0 : 1);
+        statistics.setProperty(HITS, String.valueOf(hits));
+        statistics.setProperty(MISSES, String.valueOf(misses));
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        statistics.store(contents, "acceptance-test-selector-plugin selection cache statistics");
+        replace(statisticsFile, contents.toByteArray());
+      }
+      finally {
+        // closing the channel releases the lock
+        lockChannel.close();
+      }
+    }
+  }
+
+  /**
+   * Writes a file through a temporary file in the cache directory, so that builds sharing the cache never read
+   * it half written.
+   */
+  private void replace(File file, byte[] contents) throws IOException {
+    File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+    OutputStream outputStream = new FileOutputStream(temporary);
+    try {
+      outputStream.write(contents);
+    }
+    finally {
+      outputStream.close();
+    }
+    try {
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+  }
+
+  private void ensureDirectory() throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + directory);
+    }
+  }
+
+  private File getEntryFile(String key) {
+    return new File(directory, key + ENTRY_SUFFIX);
+  }
+
+  private static long parseCount(String value) {
+    try {
+      return value == null ? 0 : Long.parseLong(value.trim());
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -0,0 +1,515 @@
+package com.github.kentolsen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Long-lived process that answers selection requests from the mojo with everything it needs kept
+ * warm in memory: the path matchers compiled from the suite mappings, keyed by a digest of the
+ * mappings, the most recently used git repositories with their object caches, and the changed
+ * files of recent revision pairs.  The mojo sends the repository, the base and head revisions and the digest of its
+ * mappings, and sends the mappings themselves only when the daemon asks for them because it has not
+ * seen the digest.  The daemon answers with the selected suites, the changed source files and the
+ * changed pins, read from the repository without starting <code>git</code>.
+ * <p>
+ * The daemon only listens on the loopback interface, but it does not authenticate requests: any user
+ * on the machine can connect and have it read any repository and package file the daemon's user can
+ * read.  Only run it on build agents that are not shared with untrusted users.  Start it with
+ * <code>java -cp &lt;plugin jar&gt;:&lt;plexus-utils jar&gt; com.github.kentolsen.SelectionDaemon [port [idle minutes]]</code>;
+ * it stops after being idle for the given number of minutes, 60 by default.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionDaemon implements Closeable {
+
+  /**
+   * The port the daemon listens on unless told otherwise.
+   */
+  public static final int DEFAULT_PORT = 47123;
+
+  static final int MAGIC = 0x41545344;
+  static final int VERSION = 2;
+  static final byte OK = 0;
+  static final byte ERROR = 1;
+  static final byte NEED_CONFIG = 2;
+
+  private static final int THREAD_COUNT = 4;
+  private static final int MAX_MAPPINGS = 16;
+  private static final int MAX_CHANGED_PATHS = 32;
+  private static final int MAX_REPOSITORIES = 8;
+  private static final int MAX_STRING_LENGTH = 1 << 20;
+  private static final int MAX_COUNT = 1 << 20;
+  private static final long MAX_REQUEST_LENGTH = 64L << 20;
+  private static final int SOCKET_TIMEOUT_MILLIS = 60000;
+  private static final long DEFAULT_IDLE_MINUTES = 60;
+
+  private final int requestedPort;
+  private final long idleTimeoutMillis;
+  private final Map<String, CompiledMappings> mappingsByDigest = lruMap(MAX_MAPPINGS);
+  private final Map<String, GitRepositoryReader> repositories = lruMap(MAX_REPOSITORIES);
+  private final Map<String, List<String>> changedPathsByRevisions = lruMap(MAX_CHANGED_PATHS);
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private ServerSocket serverSocket;
+  private ExecutorService executor;
+  private Thread acceptThread;
+  private volatile long lastRequestMillis;
+
+  /**
+   * @param port the port to listen on, or 0 for any free port
+   * @param idleTimeoutMillis how long to wait for a request before stopping, or 0 to never stop
+   */
+  public SelectionDaemon(int port, long idleTimeoutMillis) {
+    this.requestedPort = port;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    long idleMinutes = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_IDLE_MINUTES;
+    SelectionDaemon daemon = new SelectionDaemon(port, TimeUnit.MINUTES.toMillis(idleMinutes));
+    daemon.start();
+    System.out.println("Selection daemon listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + daemon.getPort());
+    daemon.acceptThread.join();
+  }
+
+  /**
+   * Starts listening.
+   *
+   * @throws IOException if the port cannot be bound
+   */
+  public synchronized void start() throws IOException {
+    serverSocket = new ServerSocket(requestedPort, 50, InetAddress.getLoopbackAddress());
+    if (idleTimeoutMillis > 0) {
+      serverSocket.setSoTimeout((int) Math.min(idleTimeoutMillis, Integer.MAX_VALUE));
+    }
+    executor = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+      Thread thread = new Thread(runnable, "selection-daemon-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    lastRequestMillis = System.currentTimeMillis();
+    acceptThread = new Thread(this::acceptConnections, "selection-daemon");
+    acceptThread.start();
+  }
+
+  /**
+   * @return the port the daemon listens on
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Stops listening.  Requests in progress are abandoned.
+   */
+  public synchronized void close() {
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    }
+    catch (IOException e) {
+      //ignore
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void acceptConnections() {
+    try {
+      while (!serverSocket.isClosed()) {
+        try {
+          final Socket socket = serverSocket.accept();
+          activeRequests.incrementAndGet();
+          executor.execute(() -> serve(socket));
+        }
+        catch (SocketTimeoutException e) {
+          if (activeRequests.get() == 0 && System.currentTimeMillis() - lastRequestMillis >= idleTimeoutMillis) {
+            return;
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      //closed
+    }
+    finally {
+      close();
+    }
+  }
+
+  private void serve(Socket socket) {
+    try {
+      socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+      DataInputStream input = new DataInputStream(new BoundedInputStream(new BufferedInputStream(socket.getInputStream()),
+        MAX_REQUEST_LENGTH));
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      Selection selection;
+      try {
+        selection = select(input, output);
+      }
+      catch (IOException | RuntimeException e) {
+        output.writeByte(ERROR);
+        writeString(output, String.valueOf(e.getMessage()));
+        output.flush();
+        return;
+      }
+      output.writeByte(OK);
+      selection.write(output);
+      output.flush();
+    }
+    catch (IOException e) {
+      //the client went away
+    }
+    finally {
+      lastRequestMillis = System.currentTimeMillis();
+      activeRequests.decrementAndGet();
+      try {
+        socket.close();
+      }
+      catch (IOException e) {
+        //ignore
+      }
+    }
+  }
+
+  private Selection select(DataInputStream input, DataOutputStream output) throws IOException {
+    if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+      throw new IOException("Unsupported selection request");
+    }
+    String repository = readString(input);
+    String baseRevision = readString(input);
+    String headRevision = readString(input);
+    String packageFile = readString(input);
+    String testClassSeparator = readString(input);
+    boolean collectSourceFiles = input.readBoolean();
+    String digest = readString(input);
+
+    CompiledMappings mappings;
+    synchronized (mappingsByDigest) {
+      mappings = mappingsByDigest.get(digest);
+    }
+    if (mappings == null) {
+      output.writeByte(NEED_CONFIG);
+      output.flush();
+      Properties suiteMappings = new Properties();
+      int count = readCount(input);
+      for (int index = 0; index < count; index++) {
+        suiteMappings.setProperty(readString(input), readString(input));
+      }
+      mappings = new CompiledMappings(suiteMappings, testClassSeparator);
+      synchronized (mappingsByDigest) {
+        mappingsByDigest.put(digest, mappings);
+      }
+    }
+
+    GitRepositoryReader reader = getRepository(repository, false);
+    Selection selection;
+    try {
+      selection = select(reader, baseRevision, headRevision, packageFile, mappings, collectSourceFiles);
+    }
+    catch (IOException e) {
+      // objects added since the repository was opened may be in packs the reader does not know about
+      reader = getRepository(repository, true);
+      selection = select(reader, baseRevision, headRevision, packageFile, mappings, collectSourceFiles);
+    }
+    return selection;
+  }
+
+  private Selection select(GitRepositoryReader reader, String baseRevision, String headRevision, String packageFile,
+                           CompiledMappings mappings, boolean collectSourceFiles) throws IOException {
+    String headSha;
+    String baseSha;
+    Map<String, String> changedPins;
+    List<String> changedPaths;
+    synchronized (reader) {
+      headSha = reader.resolve(headRevision);
+      baseSha = reader.resolve(baseRevision);
+      String revisionsKey = reader.getGitDirectory() + " " + baseSha + " " + headSha;
+      synchronized (changedPathsByRevisions) {
+        changedPaths = changedPathsByRevisions.get(revisionsKey);
+      }
+      if (changedPaths == null) {
+        changedPaths = reader.getChangedPaths(baseSha, headSha);
+        synchronized (changedPathsByRevisions) {
+          changedPathsByRevisions.put(revisionsKey, changedPaths);
+        }
+      }
+      String packagePath = packageFile.isEmpty() ? null : getRepositoryPath(new File(packageFile));
+      changedPins = packagePath == null
+        ? Collections.<String, String>emptyMap()
+        : PackagePins.diff(readPins(reader, baseSha, packagePath), readPins(reader, headSha, packagePath));
+    }
+    ChangedFileMatcher changedFileMatcher = new ChangedFileMatcher(mappings.suiteMappings, mappings.pathPatternMatcher,
+      mappings.testClassSeparator, collectSourceFiles);
+    changedPaths.forEach(changedFileMatcher);
+    return new Selection(headSha, changedFileMatcher.getSuiteNames(),
+      collectSourceFiles ? changedFileMatcher.getChangedSourceFiles() : null, changedFileMatcher.getChangedFileCount(),
+      changedFileMatcher.getMatchedFileCount(), changedPins, false);
+  }
+
+  private GitRepositoryReader getRepository(String repository, boolean reopen) throws IOException {
+    synchronized (repositories) {
+      GitRepositoryReader reader = reopen ? null : repositories.get(repository);
+      if (reader == null) {
+        reader = new GitRepositoryReader(new File(repository));
+        repositories.put(repository, reader);
+      }
+      return reader;
+    }
+  }
+
+  /**
+   * @return the path of a file relative to the root of the working tree containing it, or null if it is in none
+   */
+  static String getRepositoryPath(File file) {
+    File absoluteFile = file.getAbsoluteFile();
+    StringBuilder path = new StringBuilder(absoluteFile.getName());
+    for (File directory = absoluteFile.getParentFile(); directory != null; directory = directory.getParentFile()) {
+      if (new File(directory, ".git").exists()) {
+        return path.toString();
+      }
+      path.insert(0, directory.getName() + "/");
+    }
+    return null;
+  }
+
+  private static Map<String, String> readPins(GitRepositoryReader reader, String sha, String path) throws IOException {
+    byte[] contents = reader.readFile(sha, path);
+    return PackagePins.parse(path, contents != null ? new String(contents, StandardCharsets.UTF_8) : null);
+  }
+
+  static void writeString(DataOutputStream output, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  static String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Malformed selection message");
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeStrings(DataOutputStream output, Collection<String> values) throws IOException {
+    output.writeInt(values.size());
+    for (String value : values) {
+      writeString(output, value);
+    }
+  }
+
+  static List<String> readStrings(DataInputStream input) throws IOException {
+    int count = readCount(input);
+    List<String> values = new ArrayList<String>(Math.min(count, 1024));
+    for (int index = 0; index < count; index++) {
+      values.add(readString(input));
+    }
+    return values;
+  }
+
+  /**
+   * @return the number of entries that follow
+   * @throws IOException if the count is negative or larger than any well-formed message has
+   */
+  static int readCount(DataInputStream input) throws IOException {
+    int count = input.readInt();
+    if (count < 0 || count > MAX_COUNT) {
+      throw new IOException("Malformed selection message");
+    }
+    return count;
+  }
+
+  private static <V> Map<String, V> lruMap(final int maxEntries) {
+    return new LinkedHashMap<String, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Fails once more than <code>maxLength</code> bytes are read, so that a client cannot make the daemon read an
+   * unbounded request.
+   */
+  private static class BoundedInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    BoundedInputStream(InputStream inputStream, long maxLength) {
+      super(inputStream);
+      remaining = maxLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        throw new IOException("Selection request too large");
+      }
+      int b = super.read();
+      if (b >= 0) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (remaining <= 0 && length > 0) {
+        throw new IOException("Selection request too large");
+      }
+      int count = super.read(bytes, offset, (int) Math.min(length, remaining));
+      if (count > 0) {
+        remaining -= count;
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+  }
+
+  private static class CompiledMappings {
+
+    private final Properties suiteMappings;
+    private final PathPatternMatcher pathPatternMatcher;
+    private final String testClassSeparator;
+
+    CompiledMappings(Properties suiteMappings, String testClassSeparator) {
+      this.suiteMappings = suiteMappings;
+      this.pathPatternMatcher = new PathPatternMatcher(suiteMappings.stringPropertyNames());
+      this.testClassSeparator = testClassSeparator;
+    }
+  }
+
+  /**
+   * The answer to a selection request.
+   */
+  public static class Selection {
+
+    private final String headSha;
+    private final Collection<String> suiteNames;
+    private final List<String> changedSourceFiles;
+    private final int changedFileCount;
+    private final int matchedFileCount;
+    private final Map<String, String> changedPins;
+    private final boolean configSent;
+
+    Selection(String headSha, Collection<String> suiteNames, List<String> changedSourceFiles, int changedFileCount,
+              int matchedFileCount, Map<String, String> changedPins, boolean configSent) {
+      this.headSha = headSha;
+      this.suiteNames = suiteNames;
+      this.changedSourceFiles = changedSourceFiles;
+      this.changedFileCount = changedFileCount;
+      this.matchedFileCount = matchedFileCount;
+      this.changedPins = changedPins;
+      this.configSent = configSent;
+    }
+
+    public String getHeadSha() {
+      return headSha;
+    }
+
+    /**
+     * @return the matching outcome, as if the changed files had been matched in-process
+     */
+    public ChangedFileMatcher getChangedFileMatcher() {
+      return ChangedFileMatcher.matched(suiteNames, changedSourceFiles, changedFileCount, matchedFileCount);
+    }
+
+    /**
+     * @return the new version of each component whose version changed in the package file
+     */
+    public Map<String, String> getChangedPins() {
+      return changedPins;
+    }
+
+    /**
+     * @return whether the daemon had not seen the mappings and asked for them
+     */
+    public boolean isConfigSent() {
+      return configSent;
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      writeString(output, headSha);
+      writeStrings(output, suiteNames);
+      output.writeBoolean(changedSourceFiles != null);
+      if (changedSourceFiles != null) {
+        writeStrings(output, changedSourceFiles);
+      }
+      output.writeInt(changedFileCount);
+      output.writeInt(matchedFileCount);
+      output.writeInt(changedPins.size());
+      for (Map.Entry<String, String> pin : changedPins.entrySet()) {
+        writeString(output, pin.getKey());
+        writeString(output, pin.getValue());
+      }
+    }
+
+    static Selection read(DataInputStream input, boolean configSent) throws IOException {
+      String headSha = readString(input);
+      List<String> suiteNames = readStrings(input);
+      List<String> changedSourceFiles = input.readBoolean() ? readStrings(input) : null;
+      int changedFileCount = input.readInt();
+      int matchedFileCount = input.readInt();
+      int pinCount = readCount(input);
+      Map<String, String> changedPins = new TreeMap<String, String>();
+      for (int index = 0; index < pinCount; index++) {
+        changedPins.put(readString(input), readString(input));
+      }
+      return new Selection(headSha, suiteNames, changedSourceFiles, changedFileCount, matchedFileCount, changedPins, configSent);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.github.kentolsen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Asks a {@link SelectionDaemon} on this machine for the suites selected by the changes between two
+ * revisions.  Any failure, including no daemon listening, is reported as an <code>IOException</code> so
+ * that the caller can select in-process instead.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionDaemonClient {
+
+  private final int port;
+  private final int connectTimeoutMillis;
+  private final int selectionTimeoutMillis;
+
+  /**
+   * @param port the port of the daemon
+   * @param connectTimeoutMillis the timeout for connecting
+   * @param selectionTimeoutMillis the timeout for each read once connected, long enough for a cold daemon to diff a
+   *                               large change
+   */
+  public SelectionDaemonClient(int port, int connectTimeoutMillis, int selectionTimeoutMillis) {
+    this.port = port;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.selectionTimeoutMillis = selectionTimeoutMillis;
+  }
+
+  /**
+   * Requests a selection.
+   *
+   * @param repository a directory inside the working tree of the repository
+   * @param baseRevision the revision the changes are made since
+   * @param headRevision the revision with the changes
+   * @param packageFile the package file whose component versions are compared between the base and head revisions
+   *                    to find the changed pins, or null for none
+   * @param suiteMappings the suite mappings
+   * @param testClassSeparator the separator of the test classes in a mapping value
+   * @param collectSourceFiles whether to return the changed source files
+   * @return the selection
+   * @throws IOException if the daemon cannot be reached or fails to select
+   */
+  public SelectionDaemon.Selection select(File repository, String baseRevision, String headRevision, File packageFile,
+                                          Properties suiteMappings, String testClassSeparator, boolean collectSourceFiles)
+    throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), connectTimeoutMillis);
+      socket.setSoTimeout(selectionTimeoutMillis);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      output.writeInt(SelectionDaemon.MAGIC);
+      output.writeInt(SelectionDaemon.VERSION);
+      SelectionDaemon.writeString(output, repository.getAbsolutePath());
+      SelectionDaemon.writeString(output, baseRevision);
+      SelectionDaemon.writeString(output, headRevision);
+      SelectionDaemon.writeString(output, packageFile == null ? "" : packageFile.getAbsolutePath());
+      SelectionDaemon.writeString(output, testClassSeparator);
+      output.writeBoolean(collectSourceFiles);
+      SelectionDaemon.writeString(output, digest(suiteMappings, testClassSeparator));
+      output.flush();
+
+      byte status = input.readByte();
+      boolean configSent = false;
+      if (status == SelectionDaemon.NEED_CONFIG) {
+        TreeSet<String> keys = new TreeSet<String>(suiteMappings.stringPropertyNames());
+        output.writeInt(keys.size());
+        for (String key : keys) {
+          SelectionDaemon.writeString(output, key);
+          SelectionDaemon.writeString(output, suiteMappings.getProperty(key));
+        }
+        output.flush();
+        configSent = true;
+        status = input.readByte();
+      }
+      if (status == SelectionDaemon.ERROR) {
+        throw new IOException("Selection daemon failed: " + SelectionDaemon.readString(input));
+      }
+      if (status != SelectionDaemon.OK) {
+        throw new IOException("Unexpected selection daemon status " + status);
+      }
+      return SelectionDaemon.Selection.read(input, configSent);
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * @return a digest of the mappings that changes whenever a key, value or the separator does
+   */
+  static String digest(Properties suiteMappings, String testClassSeparator) {
+    return SelectionCache.createKey(testClassSeparator, SelectionCache.describe(suiteMappings));
+  }
+}
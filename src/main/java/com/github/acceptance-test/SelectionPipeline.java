@@ -0,0 +1,184 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Runs the slow steps of the selection as named stages on worker threads.  A stage starts as soon
+ * as the stages it depends on have completed, so independent steps overlap.  There are as many
+ * workers as stages ready to run, so a stage blocked on slow I/O never holds up another.  Waiting
+ * on a stage is bounded by a timeout, which is never spent queueing for a worker, and a failure is
+ * reported with the name of the stage where it originated, even when it surfaces through a
+ * dependent stage.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionPipeline {
+
+  private final ExecutorService executor;
+  private final long timeoutSeconds;
+
+  public SelectionPipeline(long timeoutSeconds) {
+    this.timeoutSeconds = timeoutSeconds;
+    this.executor = Executors.newCachedThreadPool(new StageThreadFactory());
+  }
+
+  /**
+   * Starts a stage that has no dependencies.
+   *
+   * @param name the stage name used in error messages
+   * @param task the work of the stage
+   * @return the running stage
+   */
+  public <T> Stage<T> submit(final String name, final Task<T> task) {
+    return new Stage<T>(name, CompletableFuture.supplyAsync(() -> run(name, task), executor));
+  }
+
+  /**
+   * Creates a stage whose value is already known.
+   *
+   * @param name the stage name
+   * @param value the value of the stage
+   * @return the completed stage
+   */
+  public <T> Stage<T> completed(String name, T value) {
+    return new Stage<T>(name, CompletableFuture.completedFuture(value));
+  }
+
+  /**
+   * Starts a stage once <code>dependency</code> has completed successfully.
+   *
+   * @param name the stage name used in error messages
+   * @param dependency the stage whose value is the input of this stage
+   * @param task the work of the stage
+   * @return the stage
+   */
+  public <T, R> Stage<R> then(final String name, Stage<T> dependency, final DependentTask<T, R> task) {
+    return new Stage<R>(name, dependency.future.thenApplyAsync(input -> run(name, () -> task.run(input)), executor));
+  }
+
+  /**
+   * Stops the worker threads.  Stages that are still running are interrupted.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static <T> T run(String name, Task<T> task) {
+    try {
+      return task.run();
+    }
+    catch (MojoExecutionException | RuntimeException e) {
+      throw new StageFailure(name, e);
+    }
+  }
+
+  /**
+   * The work of a stage without inputs.
+   */
+  public interface Task<T> {
+    T run() throws MojoExecutionException;
+  }
+
+  /**
+   * The work of a stage that uses the value of another stage.
+   */
+  public interface DependentTask<T, R> {
+    R run(T input) throws MojoExecutionException;
+  }
+
+  /**
+   * A named, possibly still running, step of the pipeline.
+   */
+  public class Stage<T> {
+
+    private final String name;
+    private final CompletableFuture<T> future;
+
+    Stage(String name, CompletableFuture<T> future) {
+      this.name = name;
+      this.future = future;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Waits for the stage to complete.
+     *
+     * @return the value of the stage
+     * @throws MojoExecutionException if the stage, or a stage it depends on, failed or timed out
+     */
+    public T get() throws MojoExecutionException {
+      T value = null;
+      try {
+        value = future.get(timeoutSeconds, TimeUnit.SECONDS);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof StageFailure) {
+          StageFailure failure = (StageFailure) cause;
+          ExceptionHelper.throwMojoExecutionException("Stage '" + failure.stageName + "' failed", (Exception) failure.getCause());
+        }
+        ExceptionHelper.throwMojoExecutionException("Stage '" + name + "' failed", e);
+      }
+      catch (TimeoutException e) {
+        future.cancel(true);
+        ExceptionHelper.throwMojoExecutionException("Stage '" + name + "' did not complete within " + timeoutSeconds + " seconds", e);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        ExceptionHelper.throwMojoExecutionException("Interrupted waiting for stage '" + name + "'", e);
+      }
+      return value;
+    }
+  }
+
+  private static class StageFailure extends RuntimeException {
+
+    private final String stageName;
+
+    StageFailure(String stageName, Exception cause) {
+      super(cause);
+      this.stageName = stageName;
+    }
+  }
+
+  private static class StageThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "acceptance-test-selector-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,309 @@
+package com.github.kentolsen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Timings and counts of one selection, written as JSON so that the reports of many builds can be
+ * collected to find slow agents and mappings that select too much.  Phases are timed as they run,
+ * possibly on several threads, and a phase that runs more than once, such as writing each shard,
+ * adds up.  Counts that a run never computed, as on a selection cache hit, are written as null.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionReport {
+
+  /**
+   * The version of the report format, written to every report.
+   */
+  public static final int VERSION = 1;
+
+  private final long startMillis = System.currentTimeMillis();
+  private final long startNanos = System.nanoTime();
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+  private long durationNanos = -1;
+  private boolean succeeded;
+  private String error;
+  private String sha;
+  private String mergeBase;
+  private boolean cacheHit;
+  private boolean daemonUsed;
+  private Integer changedFileCount;
+  private Integer matchedFileCount;
+  private Integer selectedSuiteCount;
+  private Integer mappedSuiteCount;
+  private boolean fallbackUsed;
+  private int shardCount = 1;
+  private int baseRevisionCount;
+
+  /**
+   * Wraps a task so that its running time is added to a phase.
+   *
+   * @param phase the phase name
+   * @param task the task
+   * @return the timed task
+   */
+  public <T> SelectionPipeline.Task<T> timed(final String phase, final SelectionPipeline.Task<T> task) {
+    return () -> {
+      long start = System.nanoTime();
+      try {
+        return task.run();
+      }
+      finally {
+        addTime(phase, System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * Wraps a task so that its running time is added to a phase.
+   *
+   * @param phase the phase name
+   * @param task the task
+   * @return the timed task
+   */
+  public <T, R> SelectionPipeline.DependentTask<T, R> timed(final String phase, final SelectionPipeline.DependentTask<T, R> task) {
+    return input -> timed(phase, () -> task.run(input)).run();
+  }
+
+  /**
+   * Adds time to a phase.
+   *
+   * @param phase the phase name
+   * @param nanos the time in nanoseconds
+   */
+  public void addTime(String phase, long nanos) {
+    synchronized (phaseNanos) {
+      Long total = phaseNanos.get(phase);
+      phaseNanos.put(phase, (total != null ? total : 0) + nanos);
+    }
+  }
+
+  /**
+   * @param phase the phase name
+   * @return the time spent in the phase in milliseconds, or -1 if it did not run
+   */
+  public long getMillis(String phase) {
+    synchronized (phaseNanos) {
+      Long nanos = phaseNanos.get(phase);
+      return nanos != null ? TimeUnit.NANOSECONDS.toMillis(nanos) : -1;
+    }
+  }
+
+  /**
+   * Ends the run.
+   *
+   * @param error the reason the run failed, or null if it succeeded
+   */
+  public void finish(String error) {
+    this.durationNanos = System.nanoTime() - startNanos;
+    this.succeeded = error == null;
+    this.error = error;
+  }
+
+  public void setSha(String sha) {
+    this.sha = sha;
+  }
+
+  /**
+   * @param mergeBase the merge base of the SHA and HEAD the changes were listed from, if not the SHA itself
+   */
+  public void setMergeBase(String mergeBase) {
+    this.mergeBase = mergeBase;
+  }
+
+  public void setCacheHit(boolean cacheHit) {
+    this.cacheHit = cacheHit;
+  }
+
+  public void setDaemonUsed(boolean daemonUsed) {
+    this.daemonUsed = daemonUsed;
+  }
+
+  public void setChangedFileCount(int changedFileCount) {
+    this.changedFileCount = changedFileCount;
+  }
+
+  public void setMatchedFileCount(int matchedFileCount) {
+    this.matchedFileCount = matchedFileCount;
+  }
+
+  public void setSelectedSuiteCount(int selectedSuiteCount) {
+    this.selectedSuiteCount = selectedSuiteCount;
+  }
+
+  public void setMappedSuiteCount(int mappedSuiteCount) {
+    this.mappedSuiteCount = mappedSuiteCount;
+  }
+
+  public void setFallbackUsed(boolean fallbackUsed) {
+    this.fallbackUsed = fallbackUsed;
+  }
+
+  public void setShardCount(int shardCount) {
+    this.shardCount = shardCount;
+  }
+
+  /**
+   * @param baseRevisionCount the number of base revisions selected against in one run, the changed and matched
+   *                          files then being counted once across all of them
+   */
+  public void setBaseRevisionCount(int baseRevisionCount) {
+    this.baseRevisionCount = baseRevisionCount;
+  }
+
+  /**
+   * @return the report as a JSON object
+   */
+  public String toJson() {
+    StringBuilder json = new StringBuilder("{\n");
+    json.append("  \"version\": ").append(VERSION).append(",\n");
+    json.append("  \"startTime\": ").append(startMillis).append(",\n");
+    json.append("  \"durationMillis\": ").append(TimeUnit.NANOSECONDS.toMillis(getDurationNanos())).append(",\n");
+    json.append("  \"succeeded\": ").append(succeeded).append(",\n");
+    json.append("  \"error\": ").append(quote(error)).append(",\n");
+    json.append("  \"sha\": ").append(quote(sha)).append(",\n");
+    json.append("  \"mergeBase\": ").append(quote(mergeBase)).append(",\n");
+    json.append("  \"cacheHit\": ").append(cacheHit).append(",\n");
+    json.append("  \"daemonUsed\": ").append(daemonUsed).append(",\n");
+    json.append("  \"changedFiles\": ").append(changedFileCount).append(",\n");
+    json.append("  \"matchedFiles\": ").append(matchedFileCount).append(",\n");
+    json.append("  \"unmatchedFiles\": ").append(getUnmatchedFileCount()).append(",\n");
+    json.append("  \"selectedSuites\": ").append(selectedSuiteCount).append(",\n");
+    json.append("  \"mappedSuites\": ").append(mappedSuiteCount).append(",\n");
+    json.append("  \"fallbackUsed\": ").append(fallbackUsed).append(",\n");
+    json.append("  \"shards\": ").append(shardCount).append(",\n");
+    json.append("  \"baseRevisions\": ").append(baseRevisionCount).append(",\n");
+    json.append("  \"phaseMillis\": {");
+    synchronized (phaseNanos) {
+      String separator = "\n";
+      for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+        json.append(separator).append("    ").append(quote(phase.getKey())).append(": ")
+          .append(TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+        separator = ",\n";
+      }
+      json.append(phaseNanos.isEmpty() ? "}\n" : "\n  }\n");
+    }
+    return json.append("}\n").toString();
+  }
+
+  /**
+   * @return the report on one line for the build log
+   */
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    if (!succeeded && error != null) {
+      summary.append("Selection failed");
+    }
+    else if (cacheHit) {
+      summary.append("Reused the cached selection of ").append(selectedSuiteCount).append(" suites");
+    }
+    else {
+      summary.append("Selected ").append(selectedSuiteCount).append(" of ").append(mappedSuiteCount).append(" mapped suites from ")
+        .append(changedFileCount).append(" changed files (").append(matchedFileCount).append(" matched, ")
+        .append(getUnmatchedFileCount()).append(" unmatched)");
+      if (baseRevisionCount > 0) {
+        summary.append(" against ").append(baseRevisionCount).append(" base revisions");
+      }
+      if (fallbackUsed) {
+        summary.append(" using the fallback");
+      }
+    }
+    summary.append(" in ").append(TimeUnit.NANOSECONDS.toMillis(getDurationNanos())).append(" ms");
+    String slowestPhase = null;
+    long slowestNanos = -1;
+    synchronized (phaseNanos) {
+      for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+        if (phase.getValue() > slowestNanos) {
+          slowestPhase = phase.getKey();
+          slowestNanos = phase.getValue();
+        }
+      }
+    }
+    if (slowestPhase != null) {
+      summary.append(", slowest phase ").append(slowestPhase).append(' ')
+        .append(TimeUnit.NANOSECONDS.toMillis(slowestNanos)).append(" ms");
+    }
+    return summary.append('.').toString();
+  }
+
+  /**
+   * Writes the report, creating its directory if needed.
+   *
+   * @param file the report file
+   * @throws IOException if the report cannot be written
+   */
+  public void write(File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private long getDurationNanos() {
+    return durationNanos >= 0 ? durationNanos : System.nanoTime() - startNanos;
+  }
+
+  private Integer getUnmatchedFileCount() {
+    return changedFileCount != null && matchedFileCount != null ? changedFileCount - matchedFileCount : null;
+  }
+
+  static String quote(String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int index = 0; index < value.length(); index++) {
+      char c = value.charAt(index);
+      switch (c) {
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\r':
+          quoted.append("\\r");
+          break;
+        case '\t':
+          quoted.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          }
+          else {
+            quoted.append(c);
+          }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
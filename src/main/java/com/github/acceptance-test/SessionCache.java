@@ -0,0 +1,152 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Values computed once per Maven session and shared by every module of a reactor build that runs the
+ * selector, such as the SHA fetched from the build server and the files changed since it.  The plugin
+ * class realm lives as long as the session, so the caches are held in a static map keyed weakly by the
+ * session object, and dropped with it.  A value is computed by the first module that asks for it while
+ * the others wait, and a failure is not kept, so the next module tries again.
+ *
+ * @author Kent Olsen
+ */
+public class SessionCache {
+
+  private static final Map<Object, SessionCache> SESSION_CACHES = new WeakHashMap<Object, SessionCache>();
+  private static final Object FAILED = new Object();
+
+  private final ConcurrentMap<String, CompletableFuture<Object>> values;
+
+  private SessionCache(boolean shared) {
+    this.values = shared ? new ConcurrentHashMap<String, CompletableFuture<Object>>() : null;
+  }
+
+  /**
+   * @param session the Maven session, or null for a cache that keeps nothing
+   * @return the cache of the session
+   */
+  public static SessionCache forSession(Object session) {
+    if (session == null) {
+      return new SessionCache(false);
+    }
+    synchronized (SESSION_CACHES) {
+      SessionCache sessionCache = SESSION_CACHES.get(session);
+      if (sessionCache == null) {
+        sessionCache = new SessionCache(true);
+        SESSION_CACHES.put(session, sessionCache);
+      }
+      return sessionCache;
+    }
+  }
+
+  /**
+   * @return whether values are kept for other modules
+   */
+  public boolean isShared() {
+    return values != null;
+  }
+
+  /**
+   * Counts the modules of a reactor build that run a plugin, reading the session reflectively since the plugin
+   * does not depend on Maven core.
+   *
+   * @param session the Maven session
+   * @param pluginArtifactId the artifact id of the plugin
+   * @return the number of projects whose build uses the plugin, every project of the reactor if none declares
+   * it as when its goal is run from the command line, or -1 if the session cannot tell
+   */
+  public static int countModules(Object session, String pluginArtifactId) {
+    if (session == null) {
+      return -1;
+    }
+    try {
+      List<?> projects = (List<?>) session.getClass().getMethod("getProjects").invoke(session);
+      int modules = 0;
+      for (Object project : projects) {
+        List<?> plugins = (List<?>) project.getClass().getMethod("getBuildPlugins").invoke(project);
+        for (Object plugin : plugins) {
+          if (pluginArtifactId.equals(plugin.getClass().getMethod("getArtifactId").invoke(plugin))) {
+            modules++;
+            break;
+          }
+        }
+      }
+      return modules > 0 ? modules : projects.size();
+    }
+    catch (ReflectiveOperationException | RuntimeException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Gets a value, computing it unless another module already has or is doing so.
+   *
+   * @param key identifies the value, including everything it depends on
+   * @param loader computes the value
+   * @return the value
+   * @throws MojoExecutionException if computing the value failed, or the wait for another module was interrupted
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, SelectionPipeline.Task<T> loader) throws MojoExecutionException {
+    if (values == null) {
+      return loader.run();
+    }
+    while (true) {
+      CompletableFuture<Object> created = new CompletableFuture<Object>();
+      CompletableFuture<Object> existing = values.putIfAbsent(key, created);
+      if (existing == null) {
+        try {
+          T value = loader.run();
+          created.complete(value);
+          return value;
+        }
+        catch (MojoExecutionException | RuntimeException e) {
+          values.remove(key, created);
+          created.complete(FAILED);
+          throw e;
+        }
+      }
+      Object value = null;
+      try {
+        value = existing.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        ExceptionHelper.throwMojoExecutionException("Interrupted waiting for " + key, e);
+      }
+      catch (ExecutionException e) {
+        ExceptionHelper.throwMojoExecutionException("Unable to compute " + key, e);
+      }
+      if (value != FAILED) {
+        return (T) value;
+      }
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package com.github.kentolsen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Fetches the response of <code>shaUrl</code> with connect and read timeouts and a bounded
+ * number of attempts with exponential backoff.  When a state file is configured, the last
+ * good response and its <code>ETag</code> are kept in it: later requests are made conditional
+ * with <code>If-None-Match</code>, and the last good response is used when the server cannot
+ * be reached at all.  Client errors such as 404 fail immediately without retries or fallback.
+ *
+ * @author Kent Olsen
+ */
+public class ShaResolver {
+
+  /**
+   * Where the last response returned by {@link #fetch(URL)} came from.
+   */
+  public enum Source {
+    SERVER, NOT_MODIFIED, LAST_KNOWN_GOOD
+  }
+
+  private static final String ETAG_SUFFIX = ".etag";
+  private static final String BODY_SUFFIX = ".body";
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  /**
+   * A file lock is held by the whole JVM, so the modules of a parallel build also take turns on this monitor.
+   */
+  private static final Object STATE_LOCK = new Object();
+
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  private final int maxAttempts;
+  private final long backoffMillis;
+  private final File stateFile;
+  private Source lastSource;
+
+  /**
+   * @param connectTimeoutMillis the connect timeout of each attempt
+   * @param readTimeoutMillis the read timeout of each attempt
+   * @param maxAttempts the number of attempts before giving up
+   * @param backoffMillis the wait before the second attempt; each later wait doubles
+   * @param stateFile the file holding the last good responses, or null to keep no state
+   */
+  public ShaResolver(int connectTimeoutMillis, int readTimeoutMillis, int maxAttempts, long backoffMillis, File stateFile) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.backoffMillis = backoffMillis;
+    this.stateFile = stateFile;
+  }
+
+  /**
+   * Fetches the body of <code>url</code>.
+   *
+   * @param url the url to fetch
+   * @return the response body
+   * @throws IOException if every attempt failed and there is no last good response
+   */
+  public String fetch(URL url) throws IOException {
+    Properties state = loadState();
+    String stateKey = url.toExternalForm();
+    IOException lastFailure = null;
+    for (int attempt = 0; attempt < maxAttempts; attempt++) {
+      if (attempt > 0) {
+        sleep(backoffMillis << (attempt - 1));
+      }
+      try {
+        return request(url, state, stateKey);
+      }
+      catch (PermanentFailure e) {
+        throw e;
+      }
+      catch (IOException e) {
+        lastFailure = e;
+      }
+    }
+    String lastKnownGood = state.getProperty(stateKey + BODY_SUFFIX);
+    if (lastKnownGood != null) {
+      lastSource = Source.LAST_KNOWN_GOOD;
+      return lastKnownGood;
+    }
+    throw lastFailure;
+  }
+
+  public Source getLastSource() {
+    return lastSource;
+  }
+
+  private String request(URL url, Properties state, String stateKey) throws IOException {
+    URLConnection connection = url.openConnection();
+    connection.setConnectTimeout(connectTimeoutMillis);
+    connection.setReadTimeout(readTimeoutMillis);
+    connection.setUseCaches(false);
+    String cachedBody = state.getProperty(stateKey + BODY_SUFFIX);
+    String etag = state.getProperty(stateKey + ETAG_SUFFIX);
+    if (connection instanceof HttpURLConnection) {
+      HttpURLConnection httpConnection = (HttpURLConnection) connection;
+      if (etag != null && cachedBody != null) {
+        httpConnection.setRequestProperty("If-None-Match", etag);
+      }
+      int status = httpConnection.getResponseCode();
+      if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cachedBody != null) {
+        httpConnection.disconnect();
+        lastSource = Source.NOT_MODIFIED;
+        return cachedBody;
+      }
+      if (status != HttpURLConnection.HTTP_OK) {
+        httpConnection.disconnect();
+        String message = "HTTP " + status + " from " + url;
+        if (status >= 400 && status < 500 && status != HttpURLConnection.HTTP_CLIENT_TIMEOUT && status != HTTP_TOO_MANY_REQUESTS) {
+          throw new PermanentFailure(message);
+        }
+        throw new IOException(message);
+      }
+      etag = httpConnection.getHeaderField("ETag");
+    }
+    else {
+      etag = null;
+    }
+    String body = readBody(connection);
+    lastSource = Source.SERVER;
+    saveState(state, stateKey, etag, body);
+    return body;
+  }
+
+  private static String readBody(URLConnection connection) throws IOException {
+    InputStream inputStream = connection.getInputStream();
+    try {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = inputStream.read(buffer)) != -1) {
+        body.write(buffer, 0, count);
+      }
+      return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+    finally {
+      inputStream.close();
+    }
+  }
+
+  private Properties loadState() {
+    Properties state = new Properties();
+    if (stateFile != null && stateFile.isFile()) {
+      try {
+        InputStream inputStream = new FileInputStream(stateFile);
+        try {
+          state.load(inputStream);
+        }
+        finally {
+          inputStream.close();
+        }
+      }
+      catch (IOException e) {
+        // a damaged state file only costs the conditional request and the fallback
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Records the response of one url.  The state file is shared by the builds on the machine, so it is re-read
+   * under a lock on a sibling <code>.lock</code> file and only the entries of <code>stateKey</code> are replaced,
+   * keeping those another build wrote since {@link #loadState()}.
+   */
+  private void saveState(Properties state, String stateKey, String etag, String body) {
+    if (stateFile == null) {
+      return;
+    }
+    setEntries(state, stateKey, etag, body);
+    try {
+      File directory = stateFile.getAbsoluteFile().getParentFile();
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        return;
+      }
+      synchronized (STATE_LOCK) {
+        FileChannel lockChannel = FileChannel.open(new File(directory, stateFile.getName() + LOCK_SUFFIX).toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+          lockChannel.lock();
+          Properties currentState = loadState();
+          setEntries(currentState, stateKey, etag, body);
+          File temporary = File.createTempFile(stateFile.getName(), ".tmp", directory);
+          try {
+            OutputStream outputStream = new FileOutputStream(temporary);
+            try {
+              currentState.store(outputStream, "acceptance-test-selector-plugin last known good shaUrl responses");
+            }
+            finally {
+              outputStream.close();
+            }
+            Files.move(temporary.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          }
+          finally {
+            Files.deleteIfExists(temporary.toPath());
+          }
+        }
+        finally {
+          // closing the channel releases the lock
+          lockChannel.close();
+        }
+      }
+    }
+    catch (IOException e) {
+      // the response is still good; only the fallback for later builds is lost
+    }
+  }
+
+  private static void setEntries(Properties state, String stateKey, String etag, String body) {
+    state.setProperty(stateKey + BODY_SUFFIX, body);
+    if (etag != null) {
+      state.setProperty(stateKey + ETAG_SUFFIX, etag);
+    }
+    else {
+      state.remove(stateKey + ETAG_SUFFIX);
+    }
+  }
+
+  private static void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting to retry", e);
+    }
+  }
+
+  private static class PermanentFailure extends IOException {
+
+    PermanentFailure(String message) {
+      super(message);
+    }
+  }
+}
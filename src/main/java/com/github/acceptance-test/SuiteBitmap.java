@@ -0,0 +1,254 @@
+package com.github.kentolsen;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Compressed set of suite numbers.  A set with few members is kept as a sorted array of 16-bit
+ * numbers, and it switches to a plain bitmap once that would be smaller, in the manner of a
+ * roaring bitmap container.  Most source files are covered by a handful of suites, so most
+ * sets take a few bytes however many suites there are.
+ *
+ * @author Kent Olsen
+ */
+public class SuiteBitmap {
+
+  /**
+   * The largest suite number a set can hold.
+   */
+  public static final int MAX_VALUE = Character.MAX_VALUE;
+
+  private static final byte ARRAY = 0;
+  private static final byte BITMAP = 1;
+
+  private char[] values = new char[0];
+  private long[] words;
+  private int cardinality;
+
+  /**
+   * @param value the suite number
+   * @return whether the set did not already hold the number
+   * @throws IllegalArgumentException if the number is negative or above {@link #MAX_VALUE}
+   */
+  public boolean add(int value) {
+    if (value < 0 || value > MAX_VALUE) {
+      throw new IllegalArgumentException("Suite number out of range: " + value);
+    }
+    if (words != null) {
+      return setBit(value);
+    }
+    int index = Arrays.binarySearch(values, 0, cardinality, (char) value);
+    if (index >= 0) {
+      return false;
+    }
+    index = -index - 1;
+    if (cardinality == values.length) {
+      values = Arrays.copyOf(values, Math.max(4, cardinality * 2));
+    }
+    System.arraycopy(values, index, values, index + 1, cardinality - index);
+    values[index] = (char) value;
+    cardinality++;
+    if (cardinality * Character.BYTES > wordCount(values[cardinality - 1]) * Long.BYTES) {
+      toBitmap();
+    }
+    return true;
+  }
+
+  /**
+   * @param value the suite number
+   * @return whether the set held the number
+   */
+  public boolean remove(int value) {
+    if (value < 0 || value > MAX_VALUE) {
+      return false;
+    }
+    if (words != null) {
+      int word = value >>> 6;
+      if (word >= words.length || (words[word] & (1L << value)) == 0) {
+        return false;
+      }
+      words[word] &= ~(1L << value);
+      cardinality--;
+      return true;
+    }
+    int index = Arrays.binarySearch(values, 0, cardinality, (char) value);
+    if (index < 0) {
+      return false;
+    }
+    System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+    cardinality--;
+    return true;
+  }
+
+  /**
+   * Removes every number in <code>removed</code>.
+   *
+   * @param removed the numbers to remove
+   */
+  public void removeAll(BitSet removed) {
+    if (words != null) {
+      for (int word = 0; word < words.length; word++) {
+        long before = words[word];
+        words[word] &= ~wordOf(removed, word);
+        cardinality -= Long.bitCount(before) - Long.bitCount(words[word]);
+      }
+      return;
+    }
+    int kept = 0;
+    for (int index = 0; index < cardinality; index++) {
+      if (!removed.get(values[index])) {
+        values[kept++] = values[index];
+      }
+    }
+    cardinality = kept;
+  }
+
+  public boolean contains(int value) {
+    if (value < 0 || value > MAX_VALUE) {
+      return false;
+    }
+    if (words != null) {
+      int word = value >>> 6;
+      return word < words.length && (words[word] & (1L << value)) != 0;
+    }
+    return Arrays.binarySearch(values, 0, cardinality, (char) value) >= 0;
+  }
+
+  /**
+   * Adds every number of this set to <code>target</code>.
+   *
+   * @param target the set receiving the numbers
+   */
+  public void orInto(BitSet target) {
+    if (words != null) {
+      for (int word = 0; word < words.length; word++) {
+        long bits = words[word];
+        while (bits != 0) {
+          target.set((word << 6) + Long.numberOfTrailingZeros(bits));
+          bits &= bits - 1;
+        }
+      }
+      return;
+    }
+    for (int index = 0; index < cardinality; index++) {
+      target.set(values[index]);
+    }
+  }
+
+  public boolean isEmpty() {
+    return cardinality == 0;
+  }
+
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /**
+   * Writes the set in its current form.
+   *
+   * @param output the output
+   * @throws IOException if the output fails
+   */
+  public void write(DataOutputStream output) throws IOException {
+    if (words != null) {
+      int used = words.length;
+      while (used > 0 && words[used - 1] == 0) {
+        used--;
+      }
+      output.writeByte(BITMAP);
+      output.writeInt(used);
+      for (int word = 0; word < used; word++) {
+        output.writeLong(words[word]);
+      }
+    }
+    else {
+      output.writeByte(ARRAY);
+      output.writeInt(cardinality);
+      for (int index = 0; index < cardinality; index++) {
+        output.writeChar(values[index]);
+      }
+    }
+  }
+
+  /**
+   * Reads a set written by {@link #write}.
+   *
+   * @param buffer the buffer positioned at the set
+   * @return the set
+   * @throws IllegalArgumentException if the buffer does not hold a set
+   */
+  public static SuiteBitmap read(ByteBuffer buffer) {
+    SuiteBitmap bitmap = new SuiteBitmap();
+    byte type = buffer.get();
+    int count = buffer.getInt();
+    if (type == BITMAP && count >= 0 && count <= wordCount(MAX_VALUE)) {
+      bitmap.words = new long[count];
+      for (int word = 0; word < count; word++) {
+        bitmap.words[word] = buffer.getLong();
+        bitmap.cardinality += Long.bitCount(bitmap.words[word]);
+      }
+    }
+    else if (type == ARRAY && count >= 0 && count <= MAX_VALUE + 1) {
+      bitmap.values = new char[count];
+      for (int index = 0; index < count; index++) {
+        bitmap.values[index] = buffer.getChar();
+      }
+      bitmap.cardinality = count;
+    }
+    else {
+      throw new IllegalArgumentException("Not a suite bitmap");
+    }
+    return bitmap;
+  }
+
+  private boolean setBit(int value) {
+    int word = value >>> 6;
+    if (word >= words.length) {
+      words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+    }
+    if ((words[word] & (1L << value)) != 0) {
+      return false;
+    }
+    words[word] |= 1L << value;
+    cardinality++;
+    return true;
+  }
+
+  private void toBitmap() {
+    words = new long[wordCount(values[cardinality - 1])];
+    for (int index = 0; index < cardinality; index++) {
+      words[values[index] >>> 6] |= 1L << values[index];
+    }
+    values = null;
+  }
+
+  private static int wordCount(int maxValue) {
+    return (maxValue >>> 6) + 1;
+  }
+
+  private static long wordOf(BitSet bits, int word) {
+    long[] longs = bits.get(word << 6, (word + 1) << 6).toLongArray();
+    return longs.length == 0 ? 0 : longs[0];
+  }
+}
@@ -0,0 +1,457 @@
+package com.github.kentolsen;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Rewrites a testng suite file in a single pass as it is read.  Every <code>&lt;packages&gt;</code>
+ * element and every <code>&lt;classes&gt;</code> element inside a <code>&lt;test&gt;</code> is removed, and
+ * when a classes section is given it is inserted before the end of each <code>&lt;test&gt;</code>.
+ * Everything else, including comments, CDATA, declarations, parameters, listeners and the
+ * exact spelling of attributes, is copied unchanged.  A line that only held a removed element
+ * is removed with it.
+ * <p>
+ * Memory use is bounded by the longest single tag, comment or run of whitespace rather than by
+ * the size of the suite file.
+ *
+ * @author Kent Olsen
+ */
+public class SuiteFileRewriter implements Consumer<String> {
+
+  private static final String PACKAGES_ELEMENT = "packages";
+  private static final String CLASSES_ELEMENT = "classes";
+  private static final String TEST_ELEMENT = "test";
+  private static final String COMMENT_START = "<!--";
+  private static final String CDATA_START = "<![CDATA[";
+  private static final String PRESERVE_ORDER_ATTRIBUTE = "preserve-order";
+
+  private enum Markup {
+    UNKNOWN, TAG, COMMENT, CDATA, PROCESSING_INSTRUCTION, DECLARATION
+  }
+
+  private final Writer writer;
+  private final String classes;
+  private final Boolean preserveOrder;
+  private final StringBuilder markup = new StringBuilder();
+  private final StringBuilder pendingWhitespace = new StringBuilder();
+  private Markup markupType;
+  private char quote;
+  private int declarationDepth;
+  private int skipDepth;
+  private boolean skipStartedLine;
+  private boolean inTest;
+  private boolean afterSkippedLine;
+  private int afterSkippedLineMark;
+  private char lastWritten;
+  private boolean written;
+  private int testCount;
+
+  /**
+   * @param writer the writer receiving the rewritten suite
+   * @param classes the classes section to insert into each test, or null to only remove packages and classes
+   */
+  public SuiteFileRewriter(Writer writer, String classes) {
+    this(writer, classes, null);
+  }
+
+  /**
+   * @param writer the writer receiving the rewritten suite
+   * @param classes the classes section to insert into each test, or null to only remove packages and classes
+   * @param preserveOrder the <code>preserve-order</code> attribute to set on each test, or null to leave it as it is
+   */
+  public SuiteFileRewriter(Writer writer, String classes, Boolean preserveOrder) {
+    this.writer = writer;
+    this.classes = classes;
+    this.preserveOrder = preserveOrder;
+  }
+
+  /**
+   * Rewrites a whole suite held in memory.
+   *
+   * @param suiteContents the suite file contents
+   * @param classes the classes section to insert into each test, or null to only remove packages and classes
+   * @return the rewritten suite
+   */
+  public static String rewrite(String suiteContents, String classes) {
+    return rewrite(suiteContents, classes, null);
+  }
+
+  /**
+   * Rewrites a whole suite held in memory.
+   *
+   * @param suiteContents the suite file contents
+   * @param classes the classes section to insert into each test, or null to only remove packages and classes
+   * @param preserveOrder the <code>preserve-order</code> attribute to set on each test, or null to leave it as it is
+   * @return the rewritten suite
+   */
+  public static String rewrite(String suiteContents, String classes, Boolean preserveOrder) {
+    StringWriter rewritten = new StringWriter(suiteContents.length() + (classes == null ? 0 : classes.length()));
+    SuiteFileRewriter rewriter = new SuiteFileRewriter(rewritten, classes, preserveOrder);
+    rewriter.write(suiteContents);
+    rewriter.finish();
+    return rewritten.toString();
+  }
+
+  /**
+   * Rewrites one line of the suite file.
+   *
+   * @param line the line, without its line separator
+   * @throws UncheckedIOException if the writer fails
+   */
+  public void accept(String line) {
+    write(line);
+    write(AcceptanceTestSelector.LINE_SEPARATOR);
+  }
+
+  /**
+   * Rewrites the next characters of the suite file.  Markup may be split across calls.
+   *
+   * @param chars the characters
+   * @throws UncheckedIOException if the writer fails
+   */
+  public void write(CharSequence chars) {
+    for (int index = 0; index < chars.length(); index++) {
+      char c = chars.charAt(index);
+      if (markupType != null) {
+        appendToMarkup(c);
+      }
+      else if (c == '<') {
+        markup.append(c);
+        markupType = Markup.UNKNOWN;
+      }
+      else {
+        text(c);
+      }
+    }
+  }
+
+  /**
+   * Writes whatever is still held back.  Unterminated markup is written as it is.
+   *
+   * @throws UncheckedIOException if the writer fails
+   */
+  public void finish() {
+    if (markupType != null && skipDepth == 0) {
+      flushWhitespace();
+      out(markup);
+    }
+    markup.setLength(0);
+    markupType = null;
+    flushWhitespace();
+    try {
+      writer.flush();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return the number of test elements seen so far
+   */
+  public int getTestCount() {
+    return testCount;
+  }
+
+  private void appendToMarkup(char c) {
+    markup.append(c);
+    if (markupType == Markup.UNKNOWN) {
+      markupType = classify();
+      if (markupType == Markup.UNKNOWN) {
+        return;
+      }
+    }
+    boolean complete = false;
+    switch (markupType) {
+      case COMMENT:
+        complete = markup.length() >= 7 && endsWith("-->");
+        break;
+      case CDATA:
+        complete = markup.length() >= 12 && endsWith("]]>");
+        break;
+      case PROCESSING_INSTRUCTION:
+        complete = markup.length() >= 4 && endsWith("?>");
+        break;
+      case DECLARATION:
+        if (quote != 0) {
+          quote = c == quote ? 0 : quote;
+        }
+        else if (c == '"' || c == '\'') {
+          quote = c;
+        }
+        else if (c == '[') {
+          declarationDepth++;
+        }
+        else if (c == ']') {
+          declarationDepth--;
+        }
+        else if (c == '>' && declarationDepth <= 0) {
+          complete = true;
+        }
+        break;
+      default:
+        if (quote != 0) {
+          quote = c == quote ? 0 : quote;
+        }
+        else if (c == '"' || c == '\'') {
+          quote = c;
+        }
+        else if (c == '>') {
+          complete = true;
+        }
+    }
+    if (complete) {
+      Markup completedType = markupType;
+      String completed = markup.toString();
+      markup.setLength(0);
+      markupType = null;
+      quote = 0;
+      declarationDepth = 0;
+      markup(completed, completedType);
+    }
+  }
+
+  private Markup classify() {
+    if (markup.length() < 2) {
+      return Markup.UNKNOWN;
+    }
+    char second = markup.charAt(1);
+    if (second == '?') {
+      return Markup.PROCESSING_INSTRUCTION;
+    }
+    if (second != '!') {
+      return Markup.TAG;
+    }
+    String start = markup.toString();
+    if (start.startsWith(COMMENT_START)) {
+      return Markup.COMMENT;
+    }
+    if (start.startsWith(CDATA_START)) {
+      return Markup.CDATA;
+    }
+    if (COMMENT_START.startsWith(start) || CDATA_START.startsWith(start)) {
+      return Markup.UNKNOWN;
+    }
+    return Markup.DECLARATION;
+  }
+
+  private boolean endsWith(String suffix) {
+    int offset = markup.length() - suffix.length();
+    for (int index = 0; index < suffix.length(); index++) {
+      if (markup.charAt(offset + index) != suffix.charAt(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void markup(String completed, Markup type) {
+    afterSkippedLine = false;
+    if (skipDepth > 0) {
+      if (type == Markup.TAG) {
+        skipTag(completed);
+      }
+      return;
+    }
+    if (type != Markup.TAG) {
+      flushWhitespace();
+      out(completed);
+      return;
+    }
+    boolean endTag = completed.startsWith("</");
+    boolean emptyElement = !endTag && completed.endsWith("/>");
+    String name = getTagName(completed, endTag);
+    if (!endTag && (PACKAGES_ELEMENT.equals(name) || (inTest && CLASSES_ELEMENT.equals(name)))) {
+      startSkip(emptyElement);
+    }
+    else if (!endTag && TEST_ELEMENT.equals(name)) {
+      testCount++;
+      if (preserveOrder != null) {
+        completed = setAttribute(completed, emptyElement, PRESERVE_ORDER_ATTRIBUTE, preserveOrder.toString());
+      }
+      flushWhitespace();
+      if (emptyElement && classes != null) {
+        out(completed.substring(0, completed.length() - 2));
+        out(">\n");
+        out(classes);
+        out("</" + name + ">");
+      }
+      else {
+        out(completed);
+        inTest = !emptyElement;
+      }
+    }
+    else if (endTag && inTest && TEST_ELEMENT.equals(name)) {
+      inTest = false;
+      if (classes != null) {
+        insertClasses();
+      }
+      flushWhitespace();
+      out(completed);
+    }
+    else {
+      flushWhitespace();
+      out(completed);
+    }
+  }
+
+  private void insertClasses() {
+    int newline = pendingWhitespace.lastIndexOf("\n");
+    String indentation = pendingWhitespace.substring(newline + 1);
+    pendingWhitespace.setLength(newline + 1);
+    flushWhitespace();
+    if (written && lastWritten != '\n') {
+      out("\n");
+    }
+    out(classes);
+    pendingWhitespace.append(indentation);
+  }
+
+  private void startSkip(boolean emptyElement) {
+    int newline = pendingWhitespace.lastIndexOf("\n");
+    boolean lineStart = newline >= 0 || !written;
+    if (lineStart) {
+      pendingWhitespace.setLength(newline + 1);
+    }
+    if (emptyElement) {
+      endSkip(lineStart);
+    }
+    else {
+      skipDepth = 1;
+      skipStartedLine = lineStart;
+    }
+  }
+
+  private void skipTag(String completed) {
+    if (completed.startsWith("</")) {
+      skipDepth--;
+    }
+    else if (!completed.endsWith("/>")) {
+      skipDepth++;
+    }
+    if (skipDepth == 0) {
+      endSkip(skipStartedLine);
+    }
+  }
+
+  private void endSkip(boolean lineStart) {
+    afterSkippedLine = lineStart;
+    afterSkippedLineMark = pendingWhitespace.length();
+  }
+
+  private void text(char c) {
+    if (skipDepth > 0) {
+      return;
+    }
+    if (afterSkippedLine) {
+      if (c == '\n') {
+        pendingWhitespace.setLength(afterSkippedLineMark);
+        afterSkippedLine = false;
+        return;
+      }
+      if (c != ' ' && c != '\t' && c != '\r') {
+        afterSkippedLine = false;
+      }
+    }
+    if (Character.isWhitespace(c)) {
+      pendingWhitespace.append(c);
+    }
+    else {
+      flushWhitespace();
+      out(String.valueOf(c));
+    }
+  }
+
+  private void flushWhitespace() {
+    if (pendingWhitespace.length() > 0) {
+      out(pendingWhitespace);
+      pendingWhitespace.setLength(0);
+    }
+  }
+
+  private void out(CharSequence chars) {
+    if (chars.length() == 0) {
+      return;
+    }
+    try {
+      writer.append(chars);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    written = true;
+    lastWritten = chars.charAt(chars.length() - 1);
+  }
+
+  /**
+   * Sets an attribute of a start tag, replacing its value if the tag already has it.
+   */
+  private static String setAttribute(String tag, boolean emptyElement, String attribute, String value) {
+    int index = getTagName(tag, false).length() + 1;
+    while (index < tag.length()) {
+      while (index < tag.length() && Character.isWhitespace(tag.charAt(index))) {
+        index++;
+      }
+      int nameStart = index;
+      while (index < tag.length() && tag.charAt(index) != '=' && tag.charAt(index) != '/' && tag.charAt(index) != '>'
+        && !Character.isWhitespace(tag.charAt(index))) {
+        index++;
+      }
+      String name = tag.substring(nameStart, index);
+      while (index < tag.length() && (Character.isWhitespace(tag.charAt(index)) || tag.charAt(index) == '=')) {
+        index++;
+      }
+      if (name.isEmpty() || index >= tag.length() || (tag.charAt(index) != '"' && tag.charAt(index) != '\'')) {
+        break;
+      }
+      char valueQuote = tag.charAt(index);
+      int valueEnd = tag.indexOf(valueQuote, index + 1);
+      if (valueEnd < 0) {
+        break;
+      }
+      if (name.equals(attribute)) {
+        return tag.substring(0, index + 1) + value + tag.substring(valueEnd);
+      }
+      index = valueEnd + 1;
+    }
+    int end = tag.length() - (emptyElement ? 2 : 1);
+    while (end > 0 && Character.isWhitespace(tag.charAt(end - 1))) {
+      end--;
+    }
+    return tag.substring(0, end) + " " + attribute + "=\"" + value + "\"" + tag.substring(end).trim();
+  }
+
+  private static String getTagName(String tag, boolean endTag) {
+    int start = endTag ? 2 : 1;
+    int end = start;
+    while (end < tag.length()) {
+      char c = tag.charAt(end);
+      if (Character.isWhitespace(c) || c == '/' || c == '>') {
+        break;
+      }
+      end++;
+    }
+    return tag.substring(start, end);
+  }
+}
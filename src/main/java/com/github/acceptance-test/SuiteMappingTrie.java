@@ -0,0 +1,128 @@
+package com.github.kentolsen;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Radix tree of suite mapping keys.  A changed file path is matched against all keys in
+ * a single walk whose cost is proportional to the length of the path rather than to the
+ * number of keys.  When several keys are a prefix of the path the longest one wins, so the
+ * result does not depend on the iteration order of the mappings.
+ *
+ * @author Kent Olsen
+ */
+public class SuiteMappingTrie {
+
+  private final Node root = new Node("");
+  private int size;
+
+  public SuiteMappingTrie() {
+  }
+
+  public SuiteMappingTrie(Properties mappings) {
+    for (String key : mappings.stringPropertyNames()) {
+      put(key);
+    }
+  }
+
+  /**
+   * Adds a mapping key to the tree.
+   *
+   * @param key the source path prefix
+   */
+  public void put(String key) {
+    Node node = root;
+    int index = 0;
+    while (index < key.length()) {
+      char first = key.charAt(index);
+      Node child = node.children.get(first);
+      if (child == null) {
+        child = new Node(key.substring(index));
+        node.children.put(first, child);
+        node = child;
+        break;
+      }
+      int common = commonPrefixLength(child.label, key, index);
+      if (common < child.label.length()) {
+        Node split = new Node(child.label.substring(0, common));
+        child.label = child.label.substring(common);
+        split.children.put(child.label.charAt(0), child);
+        node.children.put(first, split);
+        child = split;
+      }
+      node = child;
+      index += common;
+    }
+    if (node.key == null) {
+      size++;
+    }
+    node.key = key;
+  }
+
+  /**
+   * Finds the longest mapping key that is a prefix of <code>path</code>.
+   *
+   * @param path the changed file path, relative to the repository root
+   * @return the matching key, or null if no key is a prefix of the path
+   */
+  public String findLongestPrefix(String path) {
+    Node node = root;
+    String longest = root.key;
+    int index = 0;
+    while (index < path.length()) {
+      Node child = node.children.get(path.charAt(index));
+      if (child == null || !path.regionMatches(index, child.label, 0, child.label.length())) {
+        break;
+      }
+      node = child;
+      index += child.label.length();
+      if (node.key != null) {
+        longest = node.key;
+      }
+    }
+    return longest;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private static int commonPrefixLength(String label, String key, int offset) {
+    int limit = Math.min(label.length(), key.length() - offset);
+    int length = 0;
+    while (length < limit && label.charAt(length) == key.charAt(offset + length)) {
+      length++;
+    }
+    return length;
+  }
+
+  private static class Node {
+
+    private String label;
+    private String key;
+    private final Map<Character, Node> children = new HashMap<Character, Node>();
+
+    Node(String label) {
+      this.label = label;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.github.kentolsen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Orders test classes so that the ones most likely to fail run first, to shorten the time to the first
+ * failure.  Each class gets a failure score from its recorded runs, where a failure in the last run
+ * counts fully and each older failure counts half as much as the next newer one, so the score favours
+ * classes that failed recently and often.  A class whose source changed gets {@link #CHANGED_SCORE}
+ * on top.  Classes are ordered by score per expected second, so that a short class comes before a
+ * long one of the same score, and ties are broken by class name so the same input always gives the
+ * same order.
+ *
+ * @author Kent Olsen
+ */
+public class SuitePrioritizer {
+
+  /**
+   * The score added for a class whose source changed.
+   */
+  public static final double CHANGED_SCORE = 0.5;
+
+  private static final double DECAY = 0.5;
+
+  private SuitePrioritizer() {
+  }
+
+  /**
+   * Orders classes, most likely to fail first.
+   *
+   * @param classes the test classes
+   * @param testHistoryStore the recorded runs, or null if there are none
+   * @param changedClasses the classes whose source changed
+   * @param durations the expected duration of each class in milliseconds
+   * @param defaultDuration the expected duration in milliseconds of a class missing from <code>durations</code>
+   * @return the classes in the order to run them
+   */
+  public static List<String> prioritize(Collection<String> classes, TestHistoryStore testHistoryStore, Set<String> changedClasses,
+                                        Map<String, Long> durations, long defaultDuration) {
+    List<RankedClass> rankedClasses = new ArrayList<RankedClass>(classes.size());
+    for (String className : classes) {
+      TestHistoryStore.ClassHistory classHistory = testHistoryStore != null ? testHistoryStore.getClassHistory(className) : null;
+      double score = getFailureScore(classHistory) + (changedClasses.contains(className) ? CHANGED_SCORE : 0);
+      Long duration = durations.get(className);
+      rankedClasses.add(new RankedClass(className, score, duration != null ? duration : defaultDuration));
+    }
+    Collections.sort(rankedClasses);
+    List<String> prioritized = new ArrayList<String>(rankedClasses.size());
+    for (RankedClass rankedClass : rankedClasses) {
+      prioritized.add(rankedClass.className);
+    }
+    return prioritized;
+  }
+
+  /**
+   * @return the failures of the recorded runs weighted by recency, between 0 when the class never failed and 1
+   * when it failed every time
+   */
+  static double getFailureScore(TestHistoryStore.ClassHistory classHistory) {
+    if (classHistory == null) {
+      return 0;
+    }
+    List<TestResult> runs = classHistory.getRuns();
+    double failures = 0;
+    double total = 0;
+    double weight = 1;
+    for (int index = runs.size() - 1; index >= 0; index--) {
+      if (runs.get(index).getOutcome() == TestResult.Outcome.FAIL) {
+        failures += weight;
+      }
+      total += weight;
+      weight *= DECAY;
+    }
+    return total == 0 ? 0 : failures / total;
+  }
+
+  private static class RankedClass implements Comparable<RankedClass> {
+
+    private final String className;
+    private final double score;
+    private final long duration;
+    private final double scorePerSecond;
+
+    RankedClass(String className, double score, long duration) {
+      this.className = className;
+      this.score = score;
+      this.duration = duration;
+      this.scorePerSecond = score * 1000 / Math.max(duration, 1);
+    }
+
+    public int compareTo(RankedClass other) {
+      if (scorePerSecond != other.scorePerSecond) {
+        return Double.compare(other.scorePerSecond, scorePerSecond);
+      }
+      if (score != other.score) {
+        return Double.compare(other.score, score);
+      }
+      if (duration != other.duration) {
+        return Long.compare(duration, other.duration);
+      }
+      return className.compareTo(other.className);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.github.kentolsen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Splits test classes into shards that should take about the same time to run.  Classes are
+ * placed longest first, each on the shard with the least work so far (the LPT heuristic), which
+ * keeps the longest shard within 4/3 of the best possible split.  Ties are broken by class name
+ * and shard number, so the same input always gives the same shards.
+ *
+ * @author Kent Olsen
+ */
+public class SuiteSharder {
+
+  private SuiteSharder() {
+  }
+
+  /**
+   * Splits classes into shards.
+   *
+   * @param classes the test classes
+   * @param shardCount the number of shards; some are empty when there are fewer classes
+   * @param durations the expected duration of each class in milliseconds
+   * @param defaultDuration the expected duration in milliseconds of a class missing from <code>durations</code>
+   * @return the shards, in shard number order
+   * @throws IllegalArgumentException if <code>shardCount</code> is less than 1
+   */
+  public static List<Shard> shard(Collection<String> classes, int shardCount, Map<String, Long> durations, long defaultDuration) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+    }
+    List<TimedClass> timedClasses = new ArrayList<TimedClass>(classes.size());
+    for (String className : classes) {
+      Long duration = durations.get(className);
+      timedClasses.add(new TimedClass(className, duration != null ? duration : defaultDuration));
+    }
+    Collections.sort(timedClasses);
+
+    List<Shard> shards = new ArrayList<Shard>(shardCount);
+    PriorityQueue<Shard> byDuration = new PriorityQueue<Shard>(shardCount, (first, second) -> first.duration != second.duration
+      ? Long.compare(first.duration, second.duration)
+      : Integer.compare(first.number, second.number));
+    for (int number = 1; number <= shardCount; number++) {
+      Shard shard = new Shard(number);
+      shards.add(shard);
+      byDuration.add(shard);
+    }
+    for (TimedClass timedClass : timedClasses) {
+      Shard shard = byDuration.poll();
+      shard.classes.add(timedClass.className);
+      shard.duration += timedClass.duration;
+      byDuration.add(shard);
+    }
+    return shards;
+  }
+
+  /**
+   * @return the expected duration of the longest shard, which is when all shards are done
+   */
+  public static long getMakespan(List<Shard> shards) {
+    long makespan = 0;
+    for (Shard shard : shards) {
+      makespan = Math.max(makespan, shard.duration);
+    }
+    return makespan;
+  }
+
+  /**
+   * The classes of one shard.
+   */
+  public static class Shard {
+
+    private final int number;
+    private final List<String> classes = new ArrayList<String>();
+    private long duration;
+
+    Shard(int number) {
+      this.number = number;
+    }
+
+    /**
+     * @return the shard number, starting at 1
+     */
+    public int getNumber() {
+      return number;
+    }
+
+    /**
+     * @return the classes, longest first
+     */
+    public List<String> getClasses() {
+      return classes;
+    }
+
+    /**
+     * @return the expected duration of the shard in milliseconds
+     */
+    public long getDuration() {
+      return duration;
+    }
+  }
+
+  private static class TimedClass implements Comparable<TimedClass> {
+
+    private final String className;
+    private final long duration;
+
+    TimedClass(String className, long duration) {
+      this.className = className;
+      this.duration = duration;
+    }
+
+    public int compareTo(TimedClass other) {
+      return duration != other.duration ? Long.compare(other.duration, duration) : className.compareTo(other.className);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.logging.Log;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Logs a list that may be very long, such as the files changed by a large merge, without flooding
+ * the build log.  The first items are logged at INFO, the rest only at DEBUG and only when DEBUG
+ * is enabled, and the end of the list is logged with the number of items.  Every item also goes
+ * to the detail log when there is one.
+ *
+ * @author Kent Olsen
+ */
+public class SummarizedListLog {
+
+  private final Log log;
+  private final String prefix;
+  private final String title;
+  private final String itemLabel;
+  private final int limit;
+  private final DetailLogWriter detailLog;
+  private int count;
+
+  /**
+   * @param log the build log
+   * @param prefix the prefix of every message
+   * @param title the title of the list, as in "Changed file list"
+   * @param itemLabel the label of each item, as in "Changed file item"
+   * @param limit the number of items logged at INFO, or a negative number to log every item at INFO
+   * @param detailLog the detail log receiving every item, or null
+   */
+  public SummarizedListLog(Log log, String prefix, String title, String itemLabel, int limit, DetailLogWriter detailLog) {
+    this.log = log;
+    this.prefix = prefix;
+    this.title = title;
+    this.itemLabel = itemLabel;
+    this.limit = limit;
+    this.detailLog = detailLog;
+  }
+
+  public void begin() {
+    log.info(prefix + title + " begin:");
+    if (detailLog != null) {
+      detailLog.write("# " + title);
+    }
+  }
+
+  public void item(String item) {
+    count++;
+    if (limit < 0 || count <= limit) {
+      log.info(prefix + itemLabel + ": " + item);
+    }
+    else if (log.isDebugEnabled()) {
+      log.debug(prefix + itemLabel + ": " + item);
+    }
+    if (detailLog != null) {
+      detailLog.write(item);
+    }
+  }
+
+  public void end() {
+    StringBuilder message = new StringBuilder(prefix).append(title).append(" end, ").append(count)
+      .append(count == 1 ? " item" : " items");
+    int hidden = limit < 0 ? 0 : Math.max(0, count - limit);
+    if (hidden > 0) {
+      message.append(", ").append(hidden).append(" not shown at INFO");
+      if (detailLog != null) {
+        message.append(", all in the detail log");
+      }
+      else if (!log.isDebugEnabled()) {
+        message.append(", run with -X to log them");
+      }
+    }
+    log.info(message.append('.').toString());
+  }
+
+  /**
+   * @return the number of items logged so far
+   */
+  public int getCount() {
+    return count;
+  }
+}
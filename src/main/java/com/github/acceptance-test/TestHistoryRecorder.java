@@ -0,0 +1,139 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Maven plugin goal that records the durations and outcomes of the acceptance tests that just ran,
+ * read from the TestNG report <code>testResultsFile</code>, in the test history store
+ * <code>testHistoryFile</code>.  The <code>generateSuite</code> goal uses the history of earlier
+ * runs, for instance to balance shards by duration.
+ * <p>
+ * The goal expects the acceptance tests to run under the failsafe plugin, which writes its report in
+ * the <code>integration-test</code> phase and only fails the build in <code>verify</code>, so failed
+ * runs are recorded too.  Under surefire a failed run stops the build before this goal runs; point
+ * <code>testResultsFile</code> at <code>surefire-reports</code> and set
+ * <code>testFailureIgnore</code> there to record them.
+ *
+ * @author Kent Olsen
+ */
+@Mojo(name = "recordTestHistory", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
+public class TestHistoryRecorder extends AbstractMojo {
+
+  /**
+   * The TestNG report of the run to record, written by the failsafe plugin by default.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/failsafe-reports/testng-results.xml")
+  private File testResultsFile;
+
+  public void setTestResultsFile(File testResultsFile) {
+    this.testResultsFile = testResultsFile;
+  }
+
+  /**
+   * The test history store.  It should outlive the build directory, so that history accumulates across
+   * clean builds.
+   */
+  @Parameter(defaultValue = "${user.home}/.acceptance-test-selector/${project.groupId}.${project.artifactId}/test-history.bin")
+  private File testHistoryFile;
+
+  public void setTestHistoryFile(File testHistoryFile) {
+    this.testHistoryFile = testHistoryFile;
+  }
+
+  /**
+   * The number of runs kept in the store for each test class and each test method.
+   */
+  @Parameter(defaultValue = "20")
+  private int maxTestHistory = 20;
+
+  public void setMaxTestHistory(int maxTestHistory) {
+    this.maxTestHistory = maxTestHistory;
+  }
+
+  /**
+   * Whether to skip recording the run.
+   */
+  @Parameter
+  private boolean skip;
+
+  public void setSkip(boolean skip) {
+    this.skip = skip;
+  }
+
+  /**
+   * Run the maven plugin.
+   *
+   * @throws MojoExecutionException
+   */
+  public void execute() throws MojoExecutionException {
+    if (skip) {
+      logInfoMessage("Skipping test history recording.");
+      return;
+    }
+    if (testHistoryFile == null) {
+      ExceptionHelper.throwMojoExecutionException("testHistoryFile MUST be set");
+    }
+    if (testResultsFile == null || !testResultsFile.isFile()) {
+      logInfoMessage("No test results at " + testResultsFile + ", nothing to record.");
+      return;
+    }
+
+    List<TestResult> results = null;
+    try {
+      InputStream inputStream = new BufferedInputStream(new FileInputStream(testResultsFile));
+      try {
+        results = TestNGResultsParser.parse(inputStream, testResultsFile.lastModified());
+      }
+      finally {
+        inputStream.close();
+      }
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error reading test results from " + testResultsFile, e);
+    }
+
+    TestHistoryStore store = new TestHistoryStore(testHistoryFile, maxTestHistory);
+    try {
+      store.load();
+      store.append(results);
+    }
+    catch (IOException e) {
+      ExceptionHelper.throwMojoExecutionException("Error writing test history to " + testHistoryFile, e);
+    }
+    logInfoMessage("Recorded " + results.size() + " test results in " + testHistoryFile + " (" + store.getClassNames().size()
+      + " classes, " + store.getRecordCount() + " records).");
+  }
+
+  private void logInfoMessage(String message) {
+    getLog().info(AcceptanceTestSelector.ACCEPTANCE_TEST_SELECTOR_PLUGIN_MESSAGE_PREFIX + message);
+  }
+}
@@ -0,0 +1,481 @@
+package com.github.kentolsen;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Local store of the durations and outcomes of past test runs.  Results are appended to a log
+ * file, one record per test class and per test method, and read back into a map keyed by test
+ * class.  Only the latest <code>maxHistory</code> results of each class and each method are kept;
+ * once the log holds more than twice as many records as are kept, it is rewritten with only the
+ * kept records, so its size stays in proportion to the number of tests however many runs are
+ * recorded.  A log with a different {@link #VERSION} is discarded.
+ * <p>
+ * Builds on the same machine may share a log, so loading, appending and compacting take a lock on
+ * a sibling <code>.lock</code> file.  An append first reads the records other builds appended
+ * since this store last read the log, or the whole log if another build compacted it, so none of
+ * them is lost.  Since no build appends without the lock, bytes after the last whole record are a
+ * record cut short by an interrupted build, and the next append drops them.
+ *
+ * @author Kent Olsen
+ */
+public class TestHistoryStore {
+
+  /**
+   * Version of the log format.  It must change whenever the format or what is stored changes.
+   */
+  public static final int VERSION = 1;
+
+  private static final int MAGIC = 0x41545348;
+  private static final int HEADER_LENGTH = 8;
+  private static final byte RECORD = 'R';
+  private static final int MIN_RECORDS_TO_COMPACT = 1024;
+  private static final String LOCK_SUFFIX = ".lock";
+  /**
+   * A file lock is held by the whole JVM, so the stores of one JVM also take turns on this monitor.
+   */
+  private static final Object LOCK = new Object();
+
+  private final File file;
+  private final int maxHistory;
+  private final Map<String, ClassHistory> classes = new HashMap<String, ClassHistory>();
+  private long validLength;
+  private Object loadedFileKey;
+  private int recordCount;
+  private int retainedCount;
+
+  /**
+   * @param file the log file
+   * @param maxHistory the number of results kept for each test class and test method
+   */
+  public TestHistoryStore(File file, int maxHistory) {
+    this.file = file;
+    this.maxHistory = Math.max(1, maxHistory);
+  }
+
+  /**
+   * Reads the log.  A missing log or one with a different version gives an empty store.
+   *
+   * @throws IOException if the log cannot be read
+   */
+  public void load() throws IOException {
+    synchronized (LOCK) {
+      FileChannel lock = null;
+      if (file.isFile()) {
+        try {
+          lock = lock();
+        }
+        catch (IOException e) {
+          // a log that cannot be locked, as in a read-only directory, is read as it is
+        }
+      }
+      try {
+        reload();
+      }
+      finally {
+        if (lock != null) {
+          lock.close();
+        }
+      }
+    }
+  }
+
+  private void reload() throws IOException {
+    classes.clear();
+    recordCount = 0;
+    retainedCount = 0;
+    validLength = 0;
+    loadedFileKey = null;
+    if (!file.isFile()) {
+      return;
+    }
+    loadedFileKey = getFileKey();
+    byte[] contents = Files.readAllBytes(file.toPath());
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(contents));
+    try {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return;
+      }
+    }
+    catch (EOFException e) {
+      return;
+    }
+    validLength = HEADER_LENGTH;
+    readRecords(contents, HEADER_LENGTH, 0);
+  }
+
+  /**
+   * Reads the records other builds appended since the log was last read, or the whole log if it was replaced
+   * by a compaction or removed.
+   */
+  private void readTail() throws IOException {
+    Object fileKey = file.isFile() ? getFileKey() : null;
+    long length = file.length();
+    if (validLength < HEADER_LENGTH || fileKey == null || !fileKey.equals(loadedFileKey) || length < validLength) {
+      reload();
+      return;
+    }
+    if (length == validLength) {
+      return;
+    }
+    byte[] tail = new byte[(int) (length - validLength)];
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(tail);
+      while (buffer.hasRemaining() && channel.read(buffer, validLength + buffer.position()) >= 0) {
+        // read until the tail is full or the log ends
+      }
+    }
+    finally {
+      channel.close();
+    }
+    readRecords(tail, 0, validLength);
+  }
+
+  /**
+   * Reads records up to the first one cut short or damaged, moving <code>validLength</code> past each.
+   *
+   * @param contents bytes of the log
+   * @param offset the index in <code>contents</code> of the first record
+   * @param position the position in the log of <code>contents[0]</code>
+   */
+  private void readRecords(byte[] contents, int offset, long position) {
+    ByteArrayInputStream bytes = new ByteArrayInputStream(contents, offset, contents.length - offset);
+    DataInputStream input = new DataInputStream(bytes);
+    try {
+      while (bytes.available() > 0) {
+        if (input.readByte() != RECORD) {
+          break;
+        }
+        long runTime = input.readLong();
+        String className = input.readUTF();
+        String methodName = input.readUTF();
+        long duration = input.readLong();
+        int outcome = input.readUnsignedByte();
+        if (outcome >= TestResult.Outcome.values().length) {
+          break;
+        }
+        add(new TestResult(runTime, className, methodName.isEmpty() ? null : methodName, duration,
+          TestResult.Outcome.values()[outcome]));
+        recordCount++;
+        validLength = position + contents.length - bytes.available();
+      }
+    }
+    catch (IOException e) {
+      // a record cut short; everything before it is kept
+    }
+  }
+
+  /**
+   * Appends the results of a run, and compacts the log if it has grown to more than twice the
+   * records that are kept.
+   *
+   * @param results the results
+   * @throws IOException if the log cannot be written
+   */
+  public void append(Collection<TestResult> results) throws IOException {
+    ensureDirectory();
+    synchronized (LOCK) {
+      FileChannel lock = lock();
+      try {
+        readTail();
+        if (validLength < HEADER_LENGTH) {
+          writeLog(file, Collections.<TestResult>emptyList());
+          validLength = HEADER_LENGTH;
+          loadedFileKey = getFileKey();
+        }
+        else if (file.length() != validLength) {
+          // no build appends without the lock, so what follows the last whole record was cut short
+          FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+          try {
+            channel.truncate(validLength);
+          }
+          finally {
+            channel.close();
+          }
+        }
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        try {
+          for (TestResult result : results) {
+            writeRecord(output, result);
+            add(result);
+            recordCount++;
+          }
+        }
+        finally {
+          output.close();
+        }
+        validLength = file.length();
+        if (recordCount > MIN_RECORDS_TO_COMPACT && recordCount > 2 * retainedCount) {
+          writeCompacted();
+        }
+      }
+      finally {
+        lock.close();
+      }
+    }
+  }
+
+  /**
+   * Rewrites the log with only the kept records.  The new log is written next to the old one and
+   * renamed over it.
+   *
+   * @throws IOException if the log cannot be written
+   */
+  public void compact() throws IOException {
+    ensureDirectory();
+    synchronized (LOCK) {
+      FileChannel lock = lock();
+      try {
+        readTail();
+        writeCompacted();
+      }
+      finally {
+        lock.close();
+      }
+    }
+  }
+
+  private void writeCompacted() throws IOException {
+    List<TestResult> retained = new ArrayList<TestResult>(retainedCount);
+    for (ClassHistory classHistory : classes.values()) {
+      retained.addAll(classHistory.runs);
+      for (Deque<TestResult> methodRuns : classHistory.methods.values()) {
+        retained.addAll(methodRuns);
+      }
+    }
+    File temporary = File.createTempFile("." + file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      writeLog(temporary, retained);
+      try {
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+    recordCount = retained.size();
+    validLength = file.length();
+    loadedFileKey = getFileKey();
+  }
+
+  /**
+   * @param className the test class
+   * @return the history of the class, or null if it has none
+   */
+  public ClassHistory getClassHistory(String className) {
+    return classes.get(className);
+  }
+
+  /**
+   * @return the test classes with a history
+   */
+  public Set<String> getClassNames() {
+    return Collections.unmodifiableSet(classes.keySet());
+  }
+
+  /**
+   * @return the number of records in the log
+   */
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * @return the number of records kept in memory, which is what a compacted log holds
+   */
+  public int getRetainedCount() {
+    return retainedCount;
+  }
+
+  private void add(TestResult result) {
+    ClassHistory classHistory = classes.get(result.getClassName());
+    if (classHistory == null) {
+      classHistory = new ClassHistory();
+      classes.put(result.getClassName(), classHistory);
+    }
+    Deque<TestResult> runs;
+    if (result.getMethodName() == null) {
+      runs = classHistory.runs;
+    }
+    else {
+      runs = classHistory.methods.get(result.getMethodName());
+      if (runs == null) {
+        runs = new ArrayDeque<TestResult>();
+        classHistory.methods.put(result.getMethodName(), runs);
+      }
+    }
+    runs.addLast(result);
+    retainedCount++;
+    if (runs.size() > maxHistory) {
+      runs.removeFirst();
+      retainedCount--;
+    }
+  }
+
+  /**
+   * Locks the sibling lock file rather than the log, which a compaction replaces.
+   *
+   * @return the channel holding the lock, which closing releases
+   */
+  private FileChannel lock() throws IOException {
+    File lockFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + LOCK_SUFFIX);
+    FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      channel.lock();
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    return channel;
+  }
+
+  /**
+   * @return what identifies the log file, so that a log replaced by another build can be told from one that
+   * grew, or null if the file system does not tell
+   */
+  private Object getFileKey() throws IOException {
+    return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+  }
+
+  private void ensureDirectory() throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create test history directory " + directory);
+    }
+  }
+
+  private static void writeLog(File logFile, List<TestResult> results) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      for (TestResult result : results) {
+        writeRecord(output, result);
+      }
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  private static void writeRecord(DataOutputStream output, TestResult result) throws IOException {
+    output.writeByte(RECORD);
+    output.writeLong(result.getRunTime());
+    output.writeUTF(result.getClassName());
+    output.writeUTF(result.getMethodName() == null ? "" : result.getMethodName());
+    output.writeLong(result.getDuration());
+    output.writeByte(result.getOutcome().ordinal());
+  }
+
+  /**
+   * The kept results of one test class and of each of its methods, oldest first.
+   */
+  public static class ClassHistory {
+
+    private final Deque<TestResult> runs = new ArrayDeque<TestResult>();
+    private final Map<String, Deque<TestResult>> methods = new LinkedHashMap<String, Deque<TestResult>>();
+
+    /**
+     * @return the results of the class as a whole
+     */
+    public List<TestResult> getRuns() {
+      return new ArrayList<TestResult>(runs);
+    }
+
+    /**
+     * @return the methods with a history
+     */
+    public Set<String> getMethodNames() {
+      return Collections.unmodifiableSet(methods.keySet());
+    }
+
+    /**
+     * @param methodName the test method
+     * @return the results of the method, empty if it has none
+     */
+    public List<TestResult> getMethodRuns(String methodName) {
+      Deque<TestResult> methodRuns = methods.get(methodName);
+      return methodRuns == null ? Collections.<TestResult>emptyList() : new ArrayList<TestResult>(methodRuns);
+    }
+
+    /**
+     * @return the latest result of the class as a whole, or null if there is none
+     */
+    public TestResult getLastRun() {
+      return runs.peekLast();
+    }
+
+    /**
+     * @return the mean duration of the kept runs of the class in milliseconds, or -1 if there are none
+     */
+    public long getAverageDuration() {
+      if (runs.isEmpty()) {
+        return -1;
+      }
+      long total = 0;
+      for (TestResult run : runs) {
+        total += run.getDuration();
+      }
+      return total / runs.size();
+    }
+
+    /**
+     * @return the number of kept runs of the class that failed
+     */
+    public int getFailureCount() {
+      int failures = 0;
+      for (TestResult run : runs) {
+        if (run.getOutcome() == TestResult.Outcome.FAIL) {
+          failures++;
+        }
+      }
+      return failures;
+    }
+  }
+}
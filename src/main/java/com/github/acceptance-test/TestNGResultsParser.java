@@ -0,0 +1,156 @@
+package com.github.kentolsen;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Reads the results of a run from a TestNG <code>testng-results.xml</code> report.  The report is
+ * streamed, so only the results themselves are held in memory.  A method that ran more than once,
+ * as with a data provider or in several tests of the suite, is summed into one result with the
+ * worst outcome.  Configuration methods count toward the duration of their class, and a failed
+ * configuration method fails the class, but they have no results of their own.
+ *
+ * @author Kent Olsen
+ */
+public class TestNGResultsParser {
+
+  private static final String CLASS_ELEMENT = "class";
+  private static final String TEST_METHOD_ELEMENT = "test-method";
+
+  private TestNGResultsParser() {
+  }
+
+  /**
+   * Parses a report.
+   *
+   * @param inputStream the report; it is not closed
+   * @param runTime when the run happened, in milliseconds since the epoch
+   * @return the results of each class followed by those of its methods
+   * @throws IOException if the report cannot be read or is not well-formed
+   */
+  public static List<TestResult> parse(InputStream inputStream, long runTime) throws IOException {
+    Map<String, Accumulator> classes = new LinkedHashMap<String, Accumulator>();
+    Map<String, Map<String, Accumulator>> methods = new LinkedHashMap<String, Map<String, Accumulator>>();
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try {
+      XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+      try {
+        String className = null;
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT && CLASS_ELEMENT.equals(reader.getLocalName())) {
+            className = reader.getAttributeValue(null, "name");
+            if (className != null && !classes.containsKey(className)) {
+              classes.put(className, new Accumulator());
+              methods.put(className, new LinkedHashMap<String, Accumulator>());
+            }
+          }
+          else if (event == XMLStreamConstants.END_ELEMENT && CLASS_ELEMENT.equals(reader.getLocalName())) {
+            className = null;
+          }
+          else if (event == XMLStreamConstants.START_ELEMENT && TEST_METHOD_ELEMENT.equals(reader.getLocalName())
+            && className != null) {
+            addTestMethod(reader, classes.get(className), methods.get(className));
+          }
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (XMLStreamException e) {
+      throw new IOException("Unable to parse TestNG results: " + e.getMessage(), e);
+    }
+
+    List<TestResult> results = new ArrayList<TestResult>();
+    for (Map.Entry<String, Accumulator> classEntry : classes.entrySet()) {
+      String className = classEntry.getKey();
+      results.add(classEntry.getValue().toResult(runTime, className, null));
+      for (Map.Entry<String, Accumulator> methodEntry : methods.get(className).entrySet()) {
+        results.add(methodEntry.getValue().toResult(runTime, className, methodEntry.getKey()));
+      }
+    }
+    return results;
+  }
+
+  private static void addTestMethod(XMLStreamReader reader, Accumulator classAccumulator, Map<String, Accumulator> methodAccumulators) {
+    long duration = parseDuration(reader.getAttributeValue(null, "duration-ms"));
+    TestResult.Outcome outcome = parseOutcome(reader.getAttributeValue(null, "status"));
+    classAccumulator.duration += duration;
+    if (Boolean.parseBoolean(reader.getAttributeValue(null, "is-config"))) {
+      if (outcome == TestResult.Outcome.FAIL) {
+        classAccumulator.outcome = TestResult.Outcome.FAIL;
+      }
+      return;
+    }
+    classAccumulator.outcome = classAccumulator.outcome.worst(outcome);
+    String methodName = reader.getAttributeValue(null, "name");
+    if (methodName == null) {
+      return;
+    }
+    Accumulator methodAccumulator = methodAccumulators.get(methodName);
+    if (methodAccumulator == null) {
+      methodAccumulator = new Accumulator();
+      methodAccumulators.put(methodName, methodAccumulator);
+    }
+    methodAccumulator.duration += duration;
+    methodAccumulator.outcome = methodAccumulator.outcome.worst(outcome);
+  }
+
+  private static long parseDuration(String duration) {
+    try {
+      return duration == null ? 0 : Math.max(0, Long.parseLong(duration.trim()));
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static TestResult.Outcome parseOutcome(String status) {
+    if ("FAIL".equals(status)) {
+      return TestResult.Outcome.FAIL;
+    }
+    if ("SKIP".equals(status)) {
+      return TestResult.Outcome.SKIP;
+    }
+    return TestResult.Outcome.PASS;
+  }
+
+  private static class Accumulator {
+
+    private long duration;
+    private TestResult.Outcome outcome = TestResult.Outcome.PASS;
+
+    TestResult toResult(long runTime, String className, String methodName) {
+      return new TestResult(runTime, className, methodName, duration, outcome);
+    }
+  }
+}
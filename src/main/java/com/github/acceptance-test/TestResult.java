@@ -0,0 +1,86 @@
+package com.github.kentolsen;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * The outcome and duration of one test class or test method in one run.
+ *
+ * @author Kent Olsen
+ */
+public class TestResult {
+
+  /**
+   * How a test ended.  A class failed if any of its methods or configuration methods failed, and
+   * was skipped if it did not fail and any of its methods were skipped.
+   */
+  public enum Outcome {
+    PASS, SKIP, FAIL;
+
+    /**
+     * @return the worse of this outcome and <code>other</code>
+     */
+    public Outcome worst(Outcome other) {
+      return other.ordinal() > ordinal() ? other : this;
+    }
+  }
+
+  private final long runTime;
+  private final String className;
+  private final String methodName;
+  private final long duration;
+  private final Outcome outcome;
+
+  /**
+   * @param runTime when the run was recorded, in milliseconds since the epoch
+   * @param className the test class
+   * @param methodName the test method, or null for the class as a whole
+   * @param duration the duration in milliseconds
+   * @param outcome the outcome
+   */
+  public TestResult(long runTime, String className, String methodName, long duration, Outcome outcome) {
+    this.runTime = runTime;
+    this.className = className;
+    this.methodName = methodName;
+    this.duration = duration;
+    this.outcome = outcome;
+  }
+
+  public long getRunTime() {
+    return runTime;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  /**
+   * @return the test method, or null if this is the result of the class as a whole
+   */
+  public String getMethodName() {
+    return methodName;
+  }
+
+  public long getDuration() {
+    return duration;
+  }
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+}
@@ -1,8 +1,11 @@
 package com.github.kentolsen;
 
+import com.sun.net.httpserver.HttpServer;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.Assert;
@@ -13,10 +16,19 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
@@ -53,22 +65,30 @@ public class AcceptanceTestSelectorTest {
   @Mock
   private BufferedReader gitCommandReader;
   @Mock
+  private BufferedReader gitPinReader;
+  @Mock
+  private BufferedReader gitHeadReader;
+  @Mock
   private FileWriter suiteFileWriter;
+  @Mock
+  private GitRepositoryReader gitRepositoryReader;
 
   private MyAcceptanceTestSelector sut;
 
   @BeforeMethod
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
-    sut = new MyAcceptanceTestSelector(suiteFileNameReader, shaUrlReader, gitCommandReader, suiteFileWriter);
+    sut = new MyAcceptanceTestSelector(suiteFileNameReader, shaUrlReader, gitCommandReader, gitPinReader, suiteFileWriter);
+    sut.gitRepositoryReader = gitRepositoryReader;
+    sut.gitHeadReader = gitHeadReader;
+    System.clearProperty(AcceptanceTestSelector.LAST_SUCCESSFUL_REVISION);
   }
 
   @Test
   public void execute_skipFilter() throws MojoExecutionException, IOException {
     sut.setSkipFilter(true);
     sut.execute();
-    final FileWriter writer = sut.getSuiteFileWriter();
-    verify(writer, never()).write(anyString());
+    verify(suiteFileWriter, never()).write(anyString());
   }
 
   @Test (expectedExceptions = MojoExecutionException.class)
@@ -209,8 +229,9 @@ public class AcceptanceTestSelectorTest {
     when(gitCommandReader.readLine())
       .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
       .thenReturn("src/main/java/com/example/package1/path4/Class4.java")
-      .thenReturn(null)
-      .thenReturn("+ tree-descendancy")
+      .thenReturn(null);
+    when(gitPinReader.readLine())
+      .thenReturn("{\"dependencies\": {\"tree-descendancy\": \"1.0.1\"}}")
       .thenReturn(null);
 
     sut.execute();
@@ -225,6 +246,247 @@ public class AcceptanceTestSelectorTest {
     verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(classes)));
   }
 
+  @Test
+  public void execute_changedPinsComparedWithBase() throws Exception {
+
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    BufferedReader gitBasePinReader = mock(BufferedReader.class);
+    sut.gitBasePinReader = gitBasePinReader;
+
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+      .thenReturn(null);
+    when(gitBasePinReader.readLine())
+      .thenReturn("{\"dependencies\": {\"fanchart\": \"1.0.0\", \"tree-descendancy\": \"1.0.0\", \"tree-port-pedigree\": \"1.0.0\"}}")
+      .thenReturn(null);
+    when(gitPinReader.readLine())
+      .thenReturn("{\"dependencies\": {\"fanchart\": \"1.0.0\", \"tree-descendancy\": \"1.1.0\"}}")
+      .thenReturn(null);
+
+    sut.execute();
+
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("Path2Test", "DescendancyIntegrationTest"))));
+    verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("FanChartIntegrationTest"))));
+    verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("PortraitPedigreeIntegrationTest"))));
+  }
+
+  @Test
+  public void execute_packageFileAddedSinceBase() throws Exception {
+    File repository = Files.createTempDirectory("package-file").toFile();
+    try {
+      Assert.assertTrue(new File(repository, ".git").mkdir());
+      File sourceRoot = new File(repository, "web");
+      Assert.assertTrue(sourceRoot.mkdir());
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot(sourceRoot.getPath());
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+
+      when(shaUrlReader.readLine())
+        .thenReturn("1234567890")
+        .thenReturn(null);
+      when(gitCommandReader.readLine())
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn("{\"dependencies\": {\"fanchart\": \"1.0.0\"}}")
+        .thenReturn(null);
+
+      sut.execute();
+
+      Assert.assertTrue(sut.gitCommands.contains("git show 1234567890:web/package.json"), sut.gitCommands.toString());
+      Assert.assertTrue(sut.gitCommands.contains("git show HEAD:web/package.json"), sut.gitCommands.toString());
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("FanChartIntegrationTest"))));
+    }
+    finally {
+      DependencyGraphTest.delete(repository);
+    }
+  }
+
+  @Test
+  public void execute_mergeBase() throws Exception {
+
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setMergeBase(true);
+    sut.gitMergeBaseReader = mock(BufferedReader.class);
+
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(sut.gitMergeBaseReader.readLine())
+      .thenReturn("abcdef0123")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+      .thenReturn(null);
+
+    sut.execute();
+
+    Assert.assertTrue(sut.gitCommands.contains("git merge-base 1234567890 HEAD"), sut.gitCommands.toString());
+    Assert.assertTrue(sut.gitCommands.contains("git diff --name-only abcdef0123 HEAD"), sut.gitCommands.toString());
+    Assert.assertTrue(sut.gitCommands.contains("git show abcdef0123:./package.json"), sut.gitCommands.toString());
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("Path2Test"))));
+  }
+
+  @Test
+  public void execute_baseRevisions() throws Exception {
+    File directory = Files.createTempDirectory("base-revisions").toFile();
+    try {
+      File reportFile = new File(directory, "report.json");
+      sut.setReportFile(reportFile);
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      when(suiteFileName.getName()).thenReturn("acceptance.xml");
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setBaseRevisions(Arrays.asList("nightly=1111111111", "2222222222", " weekly = 1111111111 "));
+      sut.gitBasePinReader = mock(BufferedReader.class);
+      when(gitCommandReader.readLine())
+        .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+        .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+        .thenReturn(null)
+        .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+        .thenReturn("README.md")
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn("{\"dependencies\": {\"tree-descendancy\": \"1.0.1\"}}")
+        .thenReturn(null);
+      when(sut.gitBasePinReader.readLine())
+        .thenReturn("{\"dependencies\": {\"tree-descendancy\": \"1.0.0\"}}")
+        .thenReturn(null)
+        .thenReturn("{\"dependencies\": {\"tree-descendancy\": \"1.0.1\"}}")
+        .thenReturn(null);
+
+      sut.execute();
+
+      Assert.assertEquals(sut.gitCommands, Arrays.asList("git diff --name-only 1111111111 HEAD", "git diff --name-only 2222222222 HEAD",
+        "git show HEAD:./package.json", "git show 1111111111:./package.json", "git show 2222222222:./package.json"));
+      verifyZeroInteractions(shaUrlReader, suiteFileWriter);
+      Assert.assertTrue(sut.shardFiles.isEmpty());
+      Assert.assertEquals(sut.baseSuiteFiles.keySet(),
+        new HashSet<String>(Arrays.asList("acceptance-nightly.xml", "acceptance-2222222222.xml", "acceptance-weekly.xml")));
+      Assert.assertTrue(new StringListMatcher(Arrays.asList("Path1Test", "Path2Test", "DescendancyIntegrationTest"))
+        .matches(sut.baseSuiteFiles.get("acceptance-nightly.xml")), sut.baseSuiteFiles.get("acceptance-nightly.xml"));
+      Assert.assertEquals(sut.baseSuiteFiles.get("acceptance-weekly.xml"), sut.baseSuiteFiles.get("acceptance-nightly.xml"));
+      String other = sut.baseSuiteFiles.get("acceptance-2222222222.xml");
+      Assert.assertTrue(other.contains("<class name=\"Path2Test\"/>"), other);
+      Assert.assertFalse(other.contains("Path1Test"), other);
+      Assert.assertFalse(other.contains("DescendancyIntegrationTest"), other);
+      String report = new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8);
+      Assert.assertTrue(report.contains("  \"changedFiles\": 3,\n  \"matchedFiles\": 2,\n"), report);
+      Assert.assertTrue(report.contains("  \"selectedSuites\": 3,\n"), report);
+      Assert.assertTrue(report.contains("  \"baseRevisions\": 3,\n"), report);
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_baseRevisionsInProcess() throws Exception {
+    File repository = Files.createTempDirectory("base-revisions-repository").toFile();
+    try {
+      String baseSha = SelectionDaemonTest.createRepository(repository);
+      sut.setSourceRoot(repository.getPath());
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      when(suiteFileName.getName()).thenReturn("acceptance.xml");
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setInProcessGit(true);
+      sut.setBaseRevisions(Arrays.asList("last=" + baseSha, "head=HEAD"));
+      sut.gitRepositoryReader = new GitRepositoryReader(repository);
+
+      sut.execute();
+
+      Assert.assertTrue(sut.gitCommands.isEmpty(), sut.gitCommands.toString());
+      Assert.assertTrue(new StringListMatcher(Arrays.asList("Path1Test", "Path3Test", "DescendancyIntegrationTest"))
+        .matches(sut.baseSuiteFiles.get("acceptance-last.xml")), sut.baseSuiteFiles.get("acceptance-last.xml"));
+      String head = sut.baseSuiteFiles.get("acceptance-head.xml");
+      Assert.assertTrue(head.contains("<class name=\"FallbackTest\"/>"), head);
+      Assert.assertFalse(head.contains("Path1Test"), head);
+    }
+    finally {
+      DependencyGraphTest.delete(repository);
+    }
+  }
+
+  @Test (expectedExceptions = MojoExecutionException.class, expectedExceptionsMessageRegExp = ".*Invalid base revision 'night ly=abc'.*")
+  public void execute_baseRevisionsInvalidName() throws Exception {
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setBaseRevisions(Arrays.asList("night ly=abc"));
+
+    sut.execute();
+  }
+
+  @Test
+  public void execute_mergeBaseInProcess() throws Exception {
+    File repository = Files.createTempDirectory("merge-base-repository").toFile();
+    try {
+      String baseSha = SelectionDaemonTest.createRepository(repository);
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot(repository.getPath());
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setInProcessGit(true);
+      sut.setMergeBase(true);
+      sut.gitRepositoryReader = new GitRepositoryReader(repository);
+      SelectionDaemonTest.git(repository, "checkout", "-q", "-b", "mainline", baseSha);
+      SelectionDaemonTest.writeFile(repository, "src/main/java/com/example/package1/path2/Class2.java", "class Class2 { int changed; }");
+      SelectionDaemonTest.git(repository, "commit", "-q", "-a", "-m", "mainline");
+      String mainlineSha = SelectionDaemonTest.git(repository, "rev-parse", "HEAD").get(0);
+      SelectionDaemonTest.git(repository, "checkout", "-q", "-");
+      SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+      when(shaUrlReader.readLine())
+        .thenReturn(mainlineSha)
+        .thenReturn(null);
+
+      sut.execute();
+
+      Assert.assertTrue(sut.gitCommands.isEmpty(), sut.gitCommands.toString());
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("Path1Test", "Path3Test", "DescendancyIntegrationTest"))));
+      verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("Path2Test"))));
+    }
+    finally {
+      DependencyGraphTest.delete(repository);
+    }
+  }
+
   @Test
   public void execute_shaWrappedInTag() throws Exception {
 
@@ -247,8 +509,9 @@ public class AcceptanceTestSelectorTest {
     when(gitCommandReader.readLine())
       .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
       .thenReturn("src/main/java/com/example/package1/path4/Class4.java")
-      .thenReturn(null)
-      .thenReturn("+ fanchart\n+ tree-port-pedigree")
+      .thenReturn(null);
+    when(gitPinReader.readLine())
+      .thenReturn("{\"dependencies\": {\"fanchart\": \"2.0.0\", \"tree-port-pedigree\": \"1.1.0\"}}")
       .thenReturn(null);
 
     sut.execute();
@@ -282,7 +545,6 @@ public class AcceptanceTestSelectorTest {
     when(gitCommandReader.readLine())
       .thenReturn("src/main/java/com/example/package1/path5/Class5.java")
       .thenReturn("src/main/java/com/example/package1/path7/Class7.java")
-      .thenReturn(null)
       .thenReturn(null);
 
     sut.execute();
@@ -293,6 +555,693 @@ public class AcceptanceTestSelectorTest {
     verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(classes)));
   }
 
+  @Test
+  public void execute_inProcessGit() throws Exception {
+
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setInProcessGit(true);
+
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitRepositoryReader.getChangedPaths("1234567890", "HEAD"))
+      .thenReturn(Arrays.asList("src/main/java/com/example/package1/path3/Class3.java"));
+    when(gitCommandReader.readLine())
+      .thenReturn(null);
+
+    sut.execute();
+
+    List<String> classes = new ArrayList<String>();
+    classes.add("<classes>");
+    classes.add("Path3Test");
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(classes)));
+  }
+
+  @Test
+  public void execute_shards() throws Exception {
+    File classDurationsFile = File.createTempFile("class-durations", ".properties");
+    try {
+      Files.write(classDurationsFile.toPath(), Arrays.asList("Path1Test=100000", "Path2Test=60000", "Path3Test=50000",
+        "Path4Test=not a number"), StandardCharsets.UTF_8);
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      when(suiteFileName.getName()).thenReturn("acceptance.xml");
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setShardCount(2);
+      sut.setClassDurationsFile(classDurationsFile);
+      sut.setDefaultClassDuration(10000);
+      when(shaUrlReader.readLine())
+        .thenReturn("1234567890")
+        .thenReturn(null);
+      when(gitCommandReader.readLine())
+        .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+        .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+        .thenReturn("src/main/java/com/example/package1/path3/Class3.java")
+        .thenReturn("src/main/java/com/example/package1/path4/Class4.java")
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn(null);
+
+      sut.execute();
+
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("Path1Test", "Path2Test", "Path3Test", "Path4Test"))));
+      Assert.assertEquals(sut.shardFiles.keySet(), new HashSet<String>(Arrays.asList("acceptance-shard-1.xml", "acceptance-shard-2.xml")));
+      String shard1 = sut.shardFiles.get("acceptance-shard-1.xml");
+      String shard2 = sut.shardFiles.get("acceptance-shard-2.xml");
+      Assert.assertTrue(shard1.contains("\"Path1Test\"") && shard1.contains("\"Path4Test\""), shard1);
+      Assert.assertTrue(shard2.contains("\"Path2Test\"") && shard2.contains("\"Path3Test\""), shard2);
+      Assert.assertFalse(shard1.contains("Path2Test") || shard2.contains("Path1Test"));
+    }
+    finally {
+      Files.delete(classDurationsFile.toPath());
+    }
+  }
+
+  @Test (expectedExceptions = MojoExecutionException.class)
+  public void execute_invalidShardCount() throws Exception {
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    sut.setSuiteFileName(mock(File.class));
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setShardCount(0);
+    sut.execute();
+  }
+
+  @Test
+  public void execute_failureFirstOrder() throws Exception {
+    File directory = Files.createTempDirectory("failure-first").toFile();
+    try {
+      File testHistoryFile = new File(directory, "test-history.bin");
+      TestHistoryStore testHistoryStore = new TestHistoryStore(testHistoryFile, 20);
+      testHistoryStore.load();
+      testHistoryStore.append(Arrays.asList(
+        new TestResult(1, "Path1Test", null, 1000, TestResult.Outcome.PASS),
+        new TestResult(1, "Path3Test", null, 1000, TestResult.Outcome.FAIL),
+        new TestResult(1, "Path4Test", null, 1000, TestResult.Outcome.PASS)));
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      when(suiteFileName.getName()).thenReturn("acceptance.xml");
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setTestHistoryFile(testHistoryFile);
+      sut.setFailureFirstOrder(true);
+      sut.setShardCount(2);
+      when(shaUrlReader.readLine())
+        .thenReturn("1234567890")
+        .thenReturn(null);
+      when(gitCommandReader.readLine())
+        .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+        .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+        .thenReturn("src/main/java/com/example/package1/path3/Class3.java")
+        .thenReturn("src/main/java/com/example/package1/path4/Class4.java")
+        .thenReturn("src/test/java/com/example/Path4Test.java")
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn(null);
+
+      sut.execute();
+
+      ArgumentCaptor<String> suiteContents = ArgumentCaptor.forClass(String.class);
+      verify(suiteFileWriter).write(suiteContents.capture());
+      String suite = suiteContents.getValue();
+      Assert.assertTrue(suite.contains("preserve-order=\"true\""), suite);
+      Assert.assertTrue(suite.indexOf("Path3Test") < suite.indexOf("Path4Test")
+        && suite.indexOf("Path4Test") < suite.indexOf("Path1Test")
+        && suite.indexOf("Path1Test") < suite.indexOf("Path2Test"), suite);
+      String shard1 = sut.shardFiles.get("acceptance-shard-1.xml");
+      String shard2 = sut.shardFiles.get("acceptance-shard-2.xml");
+      Assert.assertTrue(shard1.contains("preserve-order=\"true\"") && shard2.contains("preserve-order=\"true\""));
+      String first = shard1.contains("Path3Test") ? shard1 : shard2;
+      String second = first == shard1 ? shard2 : shard1;
+      Assert.assertTrue(first.indexOf("Path3Test") < first.indexOf("Path1Test") || !first.contains("Path1Test"), first);
+      Assert.assertTrue(second.indexOf("Path4Test") < second.indexOf("Path2Test") || !second.contains("Path2Test"), second);
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_methodSelection() throws Exception {
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    when(suiteFileName.getName()).thenReturn("acceptance.xml");
+    sut.setSuiteFileName(suiteFileName);
+    Properties suiteMappings = new Properties();
+    suiteMappings.setProperty("src/main/java/com/example/package1/path1", "BigTest#login");
+    suiteMappings.setProperty("src/main/java/com/example/package1/path2", "BigTest#logout, login;Path2Test");
+    suiteMappings.setProperty("src/main/java/com/example/package1/path3", "OtherTest#search");
+    suiteMappings.setProperty("src/main/java/com/example/package1/path4", "OtherTest");
+    sut.setSuiteMappings(suiteMappings);
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setShardCount(3);
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+      .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+      .thenReturn("src/main/java/com/example/package1/path3/Class3.java")
+      .thenReturn("src/main/java/com/example/package1/path4/Class4.java")
+      .thenReturn(null);
+    when(gitPinReader.readLine())
+      .thenReturn(null);
+
+    sut.execute();
+
+    ArgumentCaptor<String> suiteContents = ArgumentCaptor.forClass(String.class);
+    verify(suiteFileWriter).write(suiteContents.capture());
+    String suite = suiteContents.getValue();
+    Assert.assertTrue(suite.contains("      <class name=\"BigTest\">\n"
+      + "        <methods>\n"
+      + "          <include name=\"login\"/>\n"
+      + "          <include name=\"logout\"/>\n"
+      + "        </methods>\n"
+      + "      </class>\n"), suite);
+    Assert.assertTrue(suite.contains("<class name=\"OtherTest\"/>") && suite.contains("<class name=\"Path2Test\"/>"), suite);
+    Assert.assertFalse(suite.contains("search"), suite);
+    String bigTestShard = null;
+    for (String shard : sut.shardFiles.values()) {
+      if (shard.contains("BigTest")) {
+        bigTestShard = shard;
+      }
+    }
+    Assert.assertNotNull(bigTestShard);
+    Assert.assertTrue(bigTestShard.contains("<include name=\"logout\"/>"), bigTestShard);
+  }
+
+  @Test
+  public void getMethodSelectionInSuiteContents() {
+    MethodSelection methodSelection = MethodSelection.of(Arrays.asList("BigTest#b,a", "SmallTest", "OtherTest#c"));
+    String classes = sut.generateSuiteClassesSection(methodSelection.getClassNames(), methodSelection);
+
+    MethodSelection readBack = AcceptanceTestSelector.getMethodSelectionInSuiteContents(
+      sut.setClassesInSuiteContents("<suite name=\"s\">\n  <test name=\"t\">\n  </test>\n</suite>\n", classes));
+
+    Assert.assertEquals(new ArrayList<String>(readBack.getClassNames()), Arrays.asList("BigTest", "SmallTest", "OtherTest"));
+    Assert.assertEquals(new ArrayList<String>(readBack.getMethods("BigTest")), Arrays.asList("a", "b"));
+    Assert.assertNull(readBack.getMethods("SmallTest"));
+    Assert.assertEquals(new ArrayList<String>(readBack.getMethods("OtherTest")), Arrays.asList("c"));
+  }
+
+  @Test
+  public void execute_sharesChangesAcrossModules() throws Exception {
+    Object session = new Object();
+    BufferedReader otherShaUrlReader = mock(BufferedReader.class);
+    BufferedReader otherGitCommandReader = mock(BufferedReader.class);
+    BufferedReader otherGitPinReader = mock(BufferedReader.class);
+    FileWriter otherSuiteFileWriter = mock(FileWriter.class);
+    MyAcceptanceTestSelector otherModule = new MyAcceptanceTestSelector(suiteFileNameReader, otherShaUrlReader,
+      otherGitCommandReader, otherGitPinReader, otherSuiteFileWriter);
+    for (MyAcceptanceTestSelector module : Arrays.asList(sut, otherModule)) {
+      module.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      module.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      module.setSuiteFileName(suiteFileName);
+      module.setSuiteMappings(createSuiteMappings());
+      module.setPackageFileName("package.json");
+      module.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      module.setSession(session);
+    }
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+      .thenReturn(null);
+    when(gitPinReader.readLine())
+      .thenReturn("{\"dependencies\": {\"tree-descendancy\": \"1.2.3\"}}")
+      .thenReturn(null);
+
+    sut.execute();
+    otherModule.execute();
+
+    verify(otherShaUrlReader, never()).readLine();
+    verify(otherGitCommandReader, never()).readLine();
+    verify(otherGitPinReader, never()).readLine();
+    List<String> classes = Arrays.asList("<classes>", "Path2Test", "DescendancyIntegrationTest");
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(classes)));
+    verify(otherSuiteFileWriter).write(argThat(new StringListMatcher(classes)));
+  }
+
+  @Test
+  public void execute_singleModuleStreamsChanges() throws Exception {
+    Object session = SessionCacheTest.session(Arrays.asList("acceptance-test-selector-plugin"), Arrays.asList("other"));
+    BufferedReader otherGitCommandReader = mock(BufferedReader.class);
+    FileWriter otherSuiteFileWriter = mock(FileWriter.class);
+    MyAcceptanceTestSelector otherRun = new MyAcceptanceTestSelector(suiteFileNameReader, mock(BufferedReader.class),
+      otherGitCommandReader, gitPinReader, otherSuiteFileWriter);
+    for (MyAcceptanceTestSelector run : Arrays.asList(sut, otherRun)) {
+      run.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      run.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      run.setSuiteFileName(suiteFileName);
+      run.setSuiteMappings(createSuiteMappings());
+      run.setPackageFileName("package.json");
+      run.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      run.setSession(session);
+    }
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+      .thenReturn(null);
+    when(otherGitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path3/Class3.java")
+      .thenReturn(null);
+
+    sut.execute();
+    otherRun.execute();
+
+    verify(otherGitCommandReader, times(2)).readLine();
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "Path2Test"))));
+    verify(otherSuiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "Path3Test"))));
+  }
+
+  @Test
+  public void execute_daemon() throws Exception {
+    File repository = Files.createTempDirectory("daemon-repository").toFile();
+    SelectionDaemon daemon = new SelectionDaemon(0, 0);
+    try {
+      String baseSha = SelectionDaemonTest.createRepository(repository);
+      daemon.start();
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot(repository.getPath());
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName(new File(repository, "package.json").getPath());
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setDaemonPort(daemon.getPort());
+      sut.setDaemonTimeoutMillis(10000);
+      when(shaUrlReader.readLine())
+        .thenReturn(baseSha)
+        .thenReturn(null);
+
+      sut.execute();
+
+      verify(gitCommandReader, never()).readLine();
+      verify(gitPinReader, never()).readLine();
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("Path1Test", "Path3Test", "DescendancyIntegrationTest"))));
+      verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("Path2Test"))));
+    }
+    finally {
+      daemon.close();
+      DependencyGraphTest.delete(repository);
+    }
+  }
+
+  @Test
+  public void execute_daemonRelativePackageFile() throws Exception {
+    SelectionDaemonClient selectionDaemonClient = mock(SelectionDaemonClient.class);
+    ArgumentCaptor<File> packageFile = ArgumentCaptor.forClass(File.class);
+    when(selectionDaemonClient.select(any(File.class), anyString(), anyString(), packageFile.capture(), any(Properties.class),
+      anyString(), anyBoolean())).thenThrow(new IOException("Connection refused"));
+    sut.selectionDaemonClient = selectionDaemonClient;
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setDaemonPort(SelectionDaemonTest.getUnusedPort());
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn(null);
+
+    sut.execute();
+
+    Assert.assertEquals(packageFile.getValue(), new File("/home/foo/example", "package.json"));
+  }
+
+  @Test
+  public void execute_daemonNotAvailable() throws Exception {
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setDaemonPort(SelectionDaemonTest.getUnusedPort());
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+      .thenReturn(null);
+
+    sut.execute();
+
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "Path2Test"))));
+  }
+
+  @Test
+  public void execute_summarizedLogging() throws Exception {
+    File directory = Files.createTempDirectory("detail-log").toFile();
+    try {
+      File detailFile = new File(directory, "detail.log");
+      Log log = mock(Log.class);
+      sut.setLog(log);
+      sut.setLogItemLimit(1);
+      sut.setLogDetailFile(detailFile);
+      sut.setReportFile(null);
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      when(shaUrlReader.readLine())
+        .thenReturn("1234567890")
+        .thenReturn(null);
+      when(gitCommandReader.readLine())
+        .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+        .thenReturn("src/main/java/com/example/package1/path3/Class3.java")
+        .thenReturn("README.md")
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn("{\"dependencies\": {\"example-pin\": \"1.2.3\"}}")
+        .thenReturn(null);
+
+      sut.execute();
+
+      String prefix = AcceptanceTestSelector.ACCEPTANCE_TEST_SELECTOR_PLUGIN_MESSAGE_PREFIX;
+      verify(log).info(prefix + "Changed file item: src/main/java/com/example/package1/path1/Class1.java");
+      verify(log, never()).info(prefix + "Changed file item: README.md");
+      verify(log).info(prefix + "Changed file list end, 3 items, 2 not shown at INFO, all in the detail log.");
+      verify(log).info(prefix + "Changed pins end, 1 item.");
+      List<String> detail = Files.readAllLines(detailFile.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(detail.subList(0, 4), Arrays.asList("# Changed file list",
+        "src/main/java/com/example/package1/path1/Class1.java", "src/main/java/com/example/package1/path3/Class3.java", "README.md"));
+      Assert.assertEquals(detail.subList(4, 6), Arrays.asList("# Changed pins", "example-pin 1.2.3"));
+      Assert.assertEquals(detail.get(6), "# Suites to run");
+      Assert.assertTrue(detail.size() > 7, detail.toString());
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_report() throws Exception {
+    File directory = Files.createTempDirectory("selection-report").toFile();
+    try {
+      File reportFile = new File(directory, "acceptance-test-selector/report.json");
+      sut.setReportFile(reportFile);
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      when(shaUrlReader.readLine())
+        .thenReturn("1234567890")
+        .thenReturn(null);
+      when(gitCommandReader.readLine())
+        .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+        .thenReturn("src/main/java/com/example/package1/path3/Class3.java")
+        .thenReturn("README.md")
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn(null);
+
+      sut.execute();
+
+      String report = new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8);
+      Assert.assertTrue(report.contains("\"succeeded\": true,"), report);
+      Assert.assertTrue(report.contains("\"sha\": \"1234567890\","), report);
+      Assert.assertTrue(report.contains("\"changedFiles\": 3,\n  \"matchedFiles\": 2,\n  \"unmatchedFiles\": 1,\n"
+        + "  \"selectedSuites\": 2,\n  \"mappedSuites\": 8,\n  \"fallbackUsed\": false,"), report);
+      for (String phase : Arrays.asList("suite read", "SHA resolution", "changed files", "changed pins", "matching", "suite rewrite",
+        "suite write")) {
+        Assert.assertTrue(report.contains("    \"" + phase + "\": "), phase + " in " + report);
+      }
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_reportOfFailedSelection() throws Exception {
+    File directory = Files.createTempDirectory("selection-report").toFile();
+    try {
+      File reportFile = new File(directory, "report.json");
+      sut.setReportFile(reportFile);
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setSuiteMappings(createSuiteMappings());
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      when(shaUrlReader.readLine())
+        .thenReturn(null);
+      try {
+        sut.execute();
+        Assert.fail();
+      }
+      catch (MojoExecutionException e) {
+        String report = new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(report.contains("\"succeeded\": false,") && report.contains("Stage 'SHA resolution' failed\","), report);
+      }
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_dependencyAnalysis() throws Exception {
+    File directory = Files.createTempDirectory("dependency-analysis").toFile();
+    try {
+      configureDependencyAnalysis(directory);
+      File dependencyIndexFile = new File(directory, "target/dependency-index.bin");
+      sut.setDependencyIndexFile(dependencyIndexFile);
+      when(gitCommandReader.readLine())
+        .thenReturn("services/app/src/main/java/com/example/util/Strings.java")
+        .thenReturn(null);
+
+      sut.execute();
+
+      Assert.assertEquals(DependencyIndex.load(dependencyIndexFile).size(), 7);
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "com.example.ServiceTest"))));
+      verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("com.example.OtherTest"))));
+      verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("FallbackTest"))));
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_dependencyAnalysisExceedsCap() throws Exception {
+    File directory = Files.createTempDirectory("dependency-analysis").toFile();
+    try {
+      configureDependencyAnalysis(directory);
+      sut.setDependencyAnalysisMaxDepth(1);
+      Properties suiteMappings = createSuiteMappings();
+      suiteMappings.setProperty(AcceptanceTestSelector.FALLBACK_CODE_PATH, "FallbackTest;SmokeTest");
+      sut.setSuiteMappings(suiteMappings);
+      File reportFile = new File(directory, "report.json");
+      sut.setReportFile(reportFile);
+      when(gitCommandReader.readLine())
+        .thenReturn("services/app/src/main/java/com/example/util/Strings.java")
+        .thenReturn(null);
+
+      sut.execute();
+
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "<class name=\"FallbackTest\"/>",
+        "<class name=\"SmokeTest\"/>"))));
+      verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("com.example.ServiceTest"))));
+      String report = new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8);
+      Assert.assertTrue(report.contains("\"fallbackUsed\": true,"), report);
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void execute_coverageWithoutSuiteMappings() throws Exception {
+    File directory = Files.createTempDirectory("coverage").toFile();
+    try {
+      File coverageDirectory = new File(directory, "coverage");
+      Assert.assertTrue(coverageDirectory.mkdirs());
+      Files.write(new File(coverageDirectory, "com.example.CheckoutTest.coverage").toPath(),
+        Arrays.asList("com/example/service/Service.java:1-40"), StandardCharsets.UTF_8);
+      Files.write(new File(coverageDirectory, "com.example.LoginTest.coverage").toPath(),
+        Arrays.asList("com/example/login/Login.java"), StandardCharsets.UTF_8);
+      File coverageIndexFile = new File(directory, "target/coverage-index.bin");
+      sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+      sut.setSourceRoot("/home/foo/example");
+      final File suiteFileName = mock(File.class);
+      when(suiteFileName.exists()).thenReturn(false);
+      sut.setSuiteFileName(suiteFileName);
+      sut.setPackageFileName("package.json");
+      sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+      sut.setCoverageDirectory(coverageDirectory);
+      sut.setCoverageIndexFile(coverageIndexFile);
+      when(shaUrlReader.readLine())
+        .thenReturn("1234567890")
+        .thenReturn(null);
+      when(gitCommandReader.readLine())
+        .thenReturn("services/app/src/main/java/com/example/service/Service.java")
+        .thenReturn(null);
+      when(gitPinReader.readLine())
+        .thenReturn(null);
+
+      sut.execute();
+
+      Assert.assertEquals(CoverageIndex.load(coverageIndexFile).getSuiteCount(), 2);
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "com.example.CheckoutTest"))));
+      verify(suiteFileWriter, never()).write(argThat(new StringListMatcher(Arrays.asList("com.example.LoginTest"))));
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  private void configureDependencyAnalysis(File directory) throws Exception {
+    File classesDirectory = new File(directory, "classes");
+    File testClassesDirectory = new File(directory, "test-classes");
+    DependencyGraphTest.compile(new File(directory, "src/main/java"), classesDirectory, null, DependencyGraphTest.MAIN_SOURCES);
+    DependencyGraphTest.compile(new File(directory, "src/test/java"), testClassesDirectory, classesDirectory,
+      DependencyGraphTest.TEST_SOURCES);
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setDependencyAnalysis(true);
+    sut.setClassesDirectory(classesDirectory);
+    sut.setTestClassesDirectory(testClassesDirectory);
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitPinReader.readLine())
+      .thenReturn(null);
+  }
+
+  @Test
+  public void execute_inProcessGitFallsBackToGitCommand() throws Exception {
+
+    sut.setShaUrl(new URL("http://localhost:8080/example-jenkins/blah"));
+    sut.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    sut.setSuiteFileName(suiteFileName);
+    sut.setSuiteMappings(createSuiteMappings());
+    sut.setPackageFileName("package.json");
+    sut.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    sut.setInProcessGit(true);
+
+    when(shaUrlReader.readLine())
+      .thenReturn("1234567890")
+      .thenReturn(null);
+    when(gitRepositoryReader.getChangedPaths("1234567890", "HEAD"))
+      .thenThrow(new IOException("Unable to resolve revision 1234567890"));
+    when(gitCommandReader.readLine())
+      .thenReturn("src/main/java/com/example/package1/path1/Class1.java")
+      .thenReturn(null);
+
+    sut.execute();
+
+    List<String> classes = new ArrayList<String>();
+    classes.add("<classes>");
+    classes.add("Path1Test");
+    verify(suiteFileWriter).write(argThat(new StringListMatcher(classes)));
+  }
+
+  @Test
+  public void execute_selectionCache() throws Exception {
+    File cacheDirectory = File.createTempFile("cache", "");
+    Assert.assertTrue(cacheDirectory.delete());
+    try {
+      System.setProperty(AcceptanceTestSelector.LAST_SUCCESSFUL_REVISION, "1234567890");
+      configureCachedSelection(sut, cacheDirectory);
+      when(gitCommandReader.readLine())
+        .thenReturn("src/main/java/com/example/package1/path2/Class2.java")
+        .thenReturn(null);
+      sut.execute();
+      verify(suiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "Path2Test"))));
+
+      BufferedReader secondGitCommandReader = mock(BufferedReader.class);
+      FileWriter secondSuiteFileWriter = mock(FileWriter.class);
+      MyAcceptanceTestSelector second = new MyAcceptanceTestSelector(suiteFileNameReader, shaUrlReader, secondGitCommandReader,
+        gitPinReader, secondSuiteFileWriter);
+      second.gitHeadReader = gitHeadReader;
+      configureCachedSelection(second, cacheDirectory);
+      second.execute();
+
+      verify(secondGitCommandReader, never()).readLine();
+      verify(secondSuiteFileWriter).write(argThat(new StringListMatcher(Arrays.asList("<classes>", "Path2Test"))));
+    }
+    finally {
+      System.clearProperty(AcceptanceTestSelector.LAST_SUCCESSFUL_REVISION);
+      File[] files = cacheDirectory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          Assert.assertTrue(file.delete());
+        }
+      }
+      Assert.assertTrue(cacheDirectory.delete());
+    }
+  }
+
+  private void configureCachedSelection(MyAcceptanceTestSelector selector, File cacheDirectory) throws Exception {
+    selector.setSourceRoot("/home/foo/example");
+    final File suiteFileName = mock(File.class);
+    when(suiteFileName.exists()).thenReturn(false);
+    selector.setSuiteFileName(suiteFileName);
+    selector.setSuiteMappings(createSuiteMappings());
+    selector.setPackageFileName("package.json");
+    selector.setIntegrationSuiteMappings(createIntegrationSuiteMappings());
+    selector.setSelectionCacheDirectory(cacheDirectory);
+    when(gitHeadReader.readLine())
+      .thenReturn("abcdef1234")
+      .thenReturn(null);
+  }
+
   @Test (expectedExceptions = MojoExecutionException.class)
   public void execute_emptySha() throws Exception {
 
@@ -340,6 +1289,34 @@ public class AcceptanceTestSelectorTest {
     Assert.assertTrue(file.delete());
   }
 
+  @Test
+  public void getShaUrlReader_http() throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/sha", exchange -> {
+      byte[] body = "<SHA1>1234567890</SHA1>\n".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+    try {
+      AcceptanceTestSelector selector = new AcceptanceTestSelector();
+      selector.setShaUrl(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/sha"));
+      Assert.assertEquals(BufferedReaderHelper.readFromBuffer(selector.getShaUrlReader()), "<SHA1>1234567890</SHA1>\n");
+    }
+    finally {
+      server.stop(0);
+    }
+  }
+
+  @Test (expectedExceptions = MojoExecutionException.class)
+  public void getShaUrlReader_unreachable() throws Exception {
+    AcceptanceTestSelector selector = new AcceptanceTestSelector();
+    selector.setShaUrl(new URL("file:///non-existent"));
+    selector.setShaUrlAttempts(1);
+    selector.getShaUrlReader();
+  }
+
   @Test
   public void getGitCommandReader() throws Exception {
     AcceptanceTestSelector selector = new AcceptanceTestSelector();
@@ -350,13 +1327,26 @@ public class AcceptanceTestSelectorTest {
   }
 
   @Test
-  public void getSuiteFileWriter() throws Exception {
+  public void getChangedClasses() {
+    ChangedFileMatcher changedFileMatcher = new ChangedFileMatcher(createSuiteMappings(), ";", true);
+    changedFileMatcher.accept("services/billing/src/test/java/com/example/billing/InvoiceTest.java");
+    changedFileMatcher.accept("src/test/java/com/example/LoginTest.java");
+    changedFileMatcher.accept("README.md");
+
+    Set<String> changedClasses = AcceptanceTestSelector.getChangedClasses(changedFileMatcher, Arrays.asList(
+      "com.example.billing.InvoiceTest", "billing.InvoiceTest", "LoginTest", "com.other.LoginTest", "ginTest", "README"));
+
+    Assert.assertEquals(changedClasses, new HashSet<String>(Arrays.asList("com.example.billing.InvoiceTest", "billing.InvoiceTest",
+      "LoginTest")));
+  }
+
+  @Test
+  public void writeSuiteFile() throws Exception {
     AcceptanceTestSelector selector = new AcceptanceTestSelector();
     File file = File.createTempFile("tmp", "txt");
     selector.setSuiteFileName(file);
-    final FileWriter fileWriter = selector.getSuiteFileWriter();
-    Assert.assertNotNull(fileWriter);
-    fileWriter.close();
+    Assert.assertTrue(selector.writeSuiteFile("<suite/>"));
+    Assert.assertFalse(selector.writeSuiteFile("<suite/>"));
     Assert.assertTrue(file.delete());
   }
 
@@ -383,12 +1373,23 @@ public class AcceptanceTestSelectorTest {
     private final BufferedReader suiteFileNameReader;
     private final BufferedReader shaUrlReader;
     private final BufferedReader gitCommandReader;
+    private final BufferedReader gitPinReader;
     private final FileWriter suiteFileWriter;
+    private GitRepositoryReader gitRepositoryReader;
+    private SelectionDaemonClient selectionDaemonClient;
+    private BufferedReader gitHeadReader;
+    private BufferedReader gitBasePinReader;
+    private BufferedReader gitMergeBaseReader;
+    private final List<String> gitCommands = new ArrayList<String>();
+    private final Map<String, String> shardFiles = new TreeMap<String, String>();
+    private final Map<String, String> baseSuiteFiles = new TreeMap<String, String>();
 
-    MyAcceptanceTestSelector(BufferedReader suiteFileNameReader, BufferedReader shaUrlReader, BufferedReader gitCommandReader, FileWriter suiteFileWriter) {
+    MyAcceptanceTestSelector(BufferedReader suiteFileNameReader, BufferedReader shaUrlReader, BufferedReader gitCommandReader,
+                             BufferedReader gitPinReader, FileWriter suiteFileWriter) {
       this.suiteFileNameReader = suiteFileNameReader;
       this.shaUrlReader = shaUrlReader;
       this.gitCommandReader = gitCommandReader;
+      this.gitPinReader = gitPinReader;
       this.suiteFileWriter = suiteFileWriter;
     }
 
@@ -403,13 +1404,54 @@ public class AcceptanceTestSelectorTest {
     }
 
     @Override
-    protected BufferedReader getGitCommandReader(String sha) throws MojoExecutionException {
+    protected BufferedReader getGitCommandReader(String gitCommand) throws MojoExecutionException {
+      gitCommands.add(gitCommand);
+      if (gitCommand.startsWith("git merge-base")) {
+        return gitMergeBaseReader;
+      }
+      if (gitCommand.startsWith("git rev-parse")) {
+        return gitHeadReader;
+      }
+      if (gitCommand.startsWith("git show HEAD:")) {
+        return gitPinReader;
+      }
+      if (gitCommand.startsWith("git show ")) {
+        return gitBasePinReader != null ? gitBasePinReader : new BufferedReader(new StringReader(""));
+      }
       return gitCommandReader;
     }
 
     @Override
-    protected FileWriter getSuiteFileWriter() throws MojoExecutionException {
-      return suiteFileWriter;
+    protected GitRepositoryReader getGitRepositoryReader() throws IOException {
+      return gitRepositoryReader;
+    }
+
+    @Override
+    protected SelectionDaemonClient getSelectionDaemonClient() {
+      return selectionDaemonClient != null ? selectionDaemonClient : super.getSelectionDaemonClient();
+    }
+
+    @Override
+    protected boolean writeSuiteFile(String suiteContents) throws MojoExecutionException {
+      try {
+        suiteFileWriter.write(suiteContents);
+      }
+      catch (IOException e) {
+        ExceptionHelper.throwMojoExecutionException("Error writing to file", e);
+      }
+      return true;
+    }
+
+    @Override
+    protected boolean writeShardFile(File shardFile, String shardContents) {
+      shardFiles.put(shardFile.getName(), shardContents);
+      return true;
+    }
+
+    @Override
+    protected boolean writeBaseSuiteFile(File baseSuiteFile, String baseSuiteContents) {
+      baseSuiteFiles.put(baseSuiteFile.getName(), baseSuiteContents);
+      return true;
     }
   }
 
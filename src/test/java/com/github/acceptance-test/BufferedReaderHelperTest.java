@@ -11,6 +11,9 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
@@ -99,6 +102,30 @@ public class BufferedReaderHelperTest {
     BufferedReaderHelper.getBufferedReader("ls", "non-existent-directory");
   }
 
+  @Test
+  public void readLines() throws Exception {
+    when(reader.readLine()).thenReturn("one").thenReturn("two").thenReturn("three").thenReturn(null);
+    final List<String> lines = new ArrayList<String>();
+    BufferedReaderHelper.readLines(reader, lines::add);
+    Assert.assertEquals(lines, Arrays.asList("one", "two", "three"));
+    verify(reader).close();
+  }
+
+  @Test (expectedExceptions = MojoExecutionException.class)
+  public void readLines_errorReading() throws Exception {
+    when(reader.readLine()).thenReturn("one").thenThrow(new IOException());
+    BufferedReaderHelper.readLines(reader, line -> { });
+  }
+
+  @Test
+  public void readLines_errorClosingReader() throws Exception {
+    when(reader.readLine()).thenReturn("one").thenReturn(null);
+    doThrow(new IOException()).when(reader).close();
+    final List<String> lines = new ArrayList<String>();
+    BufferedReaderHelper.readLines(reader, lines::add);
+    Assert.assertEquals(lines, Arrays.asList("one"));
+  }
+
   @Test
   public void readFromBuffer() throws Exception {
     when(reader.readLine()).thenReturn("one").thenReturn("two").thenReturn("three").thenReturn(null);
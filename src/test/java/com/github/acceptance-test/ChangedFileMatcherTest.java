@@ -0,0 +1,119 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the ChangedFileMatcher class.
+ *
+ * @author Kent Olsen
+ */
+public class ChangedFileMatcherTest {
+
+  @Test
+  public void accept() {
+    ChangedFileMatcher matcher = new ChangedFileMatcher(createSuiteMappings(), ";");
+    matcher.accept("src/main/java/com/example/package1/path1/Class1.java");
+    matcher.accept("src/main/java/com/example/package1/path2/Class2.java");
+    matcher.accept("src/main/java/com/example/package1/path2/Class3.java");
+    matcher.accept("README.md");
+    matcher.accept("");
+    Assert.assertEquals(matcher.getSuiteNames(), new HashSet<String>(Arrays.asList("Path1Test", "Path2Test", "Path2OtherTest")));
+    Assert.assertEquals(matcher.getChangedFileCount(), 4);
+    Assert.assertEquals(matcher.getMatchedFileCount(), 3);
+  }
+
+  @Test
+  public void accept_emptyValueMatchesWithoutSuites() {
+    Properties suiteMappings = createSuiteMappings();
+    suiteMappings.setProperty("src/main/java/com/example/package1/path3", "");
+    ChangedFileMatcher matcher = new ChangedFileMatcher(suiteMappings, ";");
+    matcher.accept("src/main/java/com/example/package1/path3/Class3.java");
+    Assert.assertTrue(matcher.getSuiteNames().isEmpty());
+    Assert.assertEquals(matcher.getMatchedFileCount(), 1);
+  }
+
+  @Test
+  public void accept_globAndRegexKeys() {
+    Properties suiteMappings = createSuiteMappings();
+    suiteMappings.setProperty("src/main/java/**/api/", "ApiTest");
+    suiteMappings.setProperty("regex:src/main/resources/.*\\.sql$", "DatabaseTest");
+    ChangedFileMatcher matcher = new ChangedFileMatcher(suiteMappings, ";");
+    matcher.accept("src/main/java/com/example/package1/path1/api/Api.java");
+    matcher.accept("src/main/resources/schema.sql");
+    matcher.accept("src/main/resources/schema.txt");
+    Assert.assertEquals(matcher.getSuiteNames(), new HashSet<String>(Arrays.asList("Path1Test", "ApiTest", "DatabaseTest")));
+    Assert.assertEquals(matcher.getMatchedFileCount(), 2);
+  }
+
+  @Test
+  public void accept_collectSourceFiles() {
+    ChangedFileMatcher matcher = new ChangedFileMatcher(createSuiteMappings(), ";", true);
+    matcher.accept("src/main/java/com/example/Util.java");
+    matcher.accept("src/main/resources/application.properties");
+    Assert.assertEquals(matcher.getChangedSourceFiles(), Arrays.asList("src/main/java/com/example/Util.java"));
+    Assert.assertTrue(new ChangedFileMatcher(createSuiteMappings(), ";").getChangedSourceFiles().isEmpty());
+  }
+
+  @Test
+  public void accept_sharedMatches() {
+    Properties suiteMappings = createSuiteMappings();
+    Map<String, Set<String>> suiteKeysByPath = new HashMap<String, Set<String>>();
+    PathPatternMatcher pathPatternMatcher = new PathPatternMatcher(suiteMappings.stringPropertyNames());
+    ChangedFileMatcher first = new ChangedFileMatcher(suiteMappings, pathPatternMatcher, ";", false, suiteKeysByPath);
+    first.accept("src/main/java/com/example/package1/path1/Class1.java");
+    first.accept("README.md");
+    suiteKeysByPath.put("src/main/java/com/example/package1/path3/Class3.java",
+      Collections.singleton("src/main/java/com/example/package1/path2"));
+    ChangedFileMatcher second = new ChangedFileMatcher(suiteMappings, pathPatternMatcher, ";", false, suiteKeysByPath);
+    second.accept("src/main/java/com/example/package1/path1/Class1.java");
+    second.accept("src/main/java/com/example/package1/path3/Class3.java");
+    Assert.assertEquals(suiteKeysByPath.keySet(), new HashSet<String>(Arrays.asList("src/main/java/com/example/package1/path1/Class1.java",
+      "README.md", "src/main/java/com/example/package1/path3/Class3.java")));
+    Assert.assertEquals(first.getSuiteNames(), Collections.singleton("Path1Test"));
+    Assert.assertEquals(first.getMatchedFileCount(), 1);
+    Assert.assertEquals(second.getSuiteNames(), new HashSet<String>(Arrays.asList("Path1Test", "Path2Test", "Path2OtherTest")));
+    Assert.assertEquals(second.getMatchedFileCount(), 2);
+  }
+
+  @Test
+  public void addSuiteNames() {
+    ChangedFileMatcher matcher = new ChangedFileMatcher(createSuiteMappings(), ";");
+    matcher.accept("src/main/java/com/example/package1/path1/Class1.java");
+    matcher.addSuiteNames(Arrays.asList("DependentTest"));
+    Assert.assertEquals(matcher.getSuiteNames(), new HashSet<String>(Arrays.asList("Path1Test", "DependentTest")));
+  }
+
+  private Properties createSuiteMappings() {
+    Properties suiteMappings = new Properties();
+    suiteMappings.setProperty("src/main/java/com/example/package1/path1", "Path1Test");
+    suiteMappings.setProperty("src/main/java/com/example/package1/path2", "Path2Test;Path2OtherTest");
+    return suiteMappings;
+  }
+}
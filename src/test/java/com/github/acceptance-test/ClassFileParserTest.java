@@ -0,0 +1,90 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the ClassFileParser class.
+ *
+ * @author Kent Olsen
+ */
+public class ClassFileParserTest {
+
+  @Test
+  public void parse() throws Exception {
+    ClassFileParser.ClassInfo classInfo = ClassFileParser.parse(readClassFile(SelectionPipeline.class));
+    Assert.assertEquals(classInfo.getClassName(), "com.github.kentolsen.SelectionPipeline");
+    Assert.assertEquals(classInfo.getSourceFile(), "SelectionPipeline.java");
+    Assert.assertEquals(classInfo.getSourcePath(), "com/github/kentolsen/SelectionPipeline.java");
+    Assert.assertTrue(classInfo.isConcrete());
+    Assert.assertTrue(classInfo.getDependencies().containsAll(Arrays.asList("java.util.concurrent.Executors",
+      "java.util.concurrent.CompletableFuture", "org.apache.maven.plugin.MojoExecutionException",
+      "com.github.kentolsen.SelectionPipeline$Stage")));
+    Assert.assertFalse(classInfo.getDependencies().contains("com.github.kentolsen.SelectionPipeline"));
+  }
+
+  @Test
+  public void parse_descriptorsOnly() throws Exception {
+    // Collection is only named in the descriptors of addSuiteNames and Set.addAll
+    ClassFileParser.ClassInfo classInfo = ClassFileParser.parse(readClassFile(ChangedFileMatcher.class));
+    Assert.assertTrue(classInfo.getDependencies().contains("java.util.Collection"));
+    Assert.assertTrue(classInfo.getDependencies().contains("com.github.kentolsen.PathPatternMatcher"));
+  }
+
+  @Test
+  public void parse_nestedInterface() throws Exception {
+    ClassFileParser.ClassInfo classInfo = ClassFileParser.parse(readClassFile(SelectionPipeline.Task.class));
+    Assert.assertEquals(classInfo.getClassName(), "com.github.kentolsen.SelectionPipeline$Task");
+    Assert.assertEquals(classInfo.getSourcePath(), "com/github/kentolsen/SelectionPipeline.java");
+    Assert.assertFalse(classInfo.isConcrete());
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void parse_notAClassFile() throws Exception {
+    ClassFileParser.parse("not a class file".getBytes("UTF-8"));
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void parse_truncated() throws Exception {
+    ClassFileParser.parse(Arrays.copyOf(readClassFile(SelectionPipeline.class), 200));
+  }
+
+  private static byte[] readClassFile(Class<?> type) throws IOException {
+    InputStream inputStream = type.getResourceAsStream(type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class");
+    try {
+      ByteArrayOutputStream contents = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = inputStream.read(buffer)) != -1) {
+        contents.write(buffer, 0, count);
+      }
+      return contents.toByteArray();
+    }
+    finally {
+      inputStream.close();
+    }
+  }
+}
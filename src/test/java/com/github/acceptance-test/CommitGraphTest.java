@@ -0,0 +1,111 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class CommitGraphTest {
+
+  private File repository;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    repository = Files.createTempDirectory("commit-graph").toFile();
+    SelectionDaemonTest.git(repository, "init", "-q", "--initial-branch=master");
+    SelectionDaemonTest.git(repository, "config", "user.name", "test");
+    SelectionDaemonTest.git(repository, "config", "user.email", "test@example.com");
+    SelectionDaemonTest.git(repository, "config", "commit.gpgsign", "false");
+    commit("root");
+    for (String branch : Arrays.asList("one", "two", "three")) {
+      SelectionDaemonTest.git(repository, "checkout", "-q", "-b", branch, "master");
+      commit(branch);
+    }
+    SelectionDaemonTest.git(repository, "checkout", "-q", "master");
+    commit("main");
+    SelectionDaemonTest.git(repository, "merge", "-q", "--no-edit", "one", "two", "three");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(repository);
+  }
+
+  @Test
+  public void open() throws Exception {
+    SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+    CommitGraph commitGraph = CommitGraph.open(new File(repository, ".git/objects"));
+
+    Assert.assertEquals(commitGraph.size(), 6);
+    Map<String, Integer> generations = new HashMap<String, Integer>();
+    for (String line : SelectionDaemonTest.git(repository, "rev-list", "--topo-order", "--reverse", "--parents", "HEAD")) {
+      List<String> shas = Arrays.asList(line.split(" "));
+      int position = commitGraph.findCommit(GitRepositoryReader.fromHex(shas.get(0)));
+      Assert.assertTrue(position >= 0, shas.get(0));
+      Assert.assertEquals(commitGraph.getSha(position), shas.get(0));
+      int[] parents = commitGraph.getParents(position);
+      Assert.assertEquals(parents.length, shas.size() - 1);
+      int generation = 1;
+      for (int index = 0; index < parents.length; index++) {
+        Assert.assertEquals(commitGraph.getSha(parents[index]), shas.get(index + 1));
+        generation = Math.max(generation, generations.get(shas.get(index + 1)) + 1);
+      }
+      Assert.assertEquals(commitGraph.getGeneration(position), generation);
+      generations.put(shas.get(0), generation);
+      Assert.assertEquals(commitGraph.getCommitTime(position),
+        Long.parseLong(SelectionDaemonTest.git(repository, "show", "-s", "--format=%ct", shas.get(0)).get(0)));
+    }
+    Assert.assertEquals(commitGraph.findCommit(GitRepositoryReader.fromHex("0123456789012345678901234567890123456789")), -1);
+  }
+
+  @Test
+  public void open_noCommitGraph() throws Exception {
+    Assert.assertNull(CommitGraph.open(new File(repository, ".git/objects")));
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Not a commit-graph file")
+  public void constructor_notCommitGraph() throws Exception {
+    new CommitGraph(ByteBuffer.wrap(new byte[64]));
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void constructor_truncated() throws Exception {
+    SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+    byte[] contents = Files.readAllBytes(new File(repository, ".git/objects/info/commit-graph").toPath());
+
+    new CommitGraph(ByteBuffer.wrap(Arrays.copyOf(contents, contents.length - 200)));
+  }
+
+  private void commit(String name) throws Exception {
+    SelectionDaemonTest.writeFile(repository, name + ".txt", name);
+    SelectionDaemonTest.git(repository, "add", name + ".txt");
+    SelectionDaemonTest.git(repository, "commit", "-q", "-m", name);
+  }
+}
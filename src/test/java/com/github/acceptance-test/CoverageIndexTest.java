@@ -0,0 +1,204 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class CoverageIndexTest {
+
+  private static final String SERVICE = "services/app/src/main/java/com/example/service/Service.java";
+  private static final String STRINGS = "services/app/src/main/java/com/example/util/Strings.java";
+
+  private File directory;
+  private File coverageDirectory;
+  private File classesDirectory;
+  private File indexFile;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("coverage-index").toFile();
+    coverageDirectory = new File(directory, "coverage");
+    Assert.assertTrue(coverageDirectory.mkdirs());
+    classesDirectory = new File(directory, "classes");
+    indexFile = new File(directory, "target/coverage-index.bin");
+    writeExec("com.example.LoginTest.exec", "com/example/util/Strings", "com/example/service/Service$1");
+    writeCoverageMap("com.example.CheckoutTest.coverage", "# checkout", "com/example/service/Service.java:10-20, 30",
+      "src/main/resources/app.properties");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(directory);
+  }
+
+  @Test
+  public void findSuites() throws Exception {
+    CoverageIndex index = update(new CoverageIndex());
+    Assert.assertEquals(index.getSuiteCount(), 2);
+    Assert.assertEquals(index.getFileCount(), 3);
+    Assert.assertEquals(index.findSuites(SERVICE), suites("com.example.LoginTest", "com.example.CheckoutTest"));
+    Assert.assertEquals(index.findSuites(STRINGS), suites("com.example.LoginTest"));
+    Assert.assertEquals(index.findSuites("src/main/resources/app.properties"), suites("com.example.CheckoutTest"));
+    Assert.assertTrue(index.findSuites("src/main/java/com/example/Other.java").isEmpty());
+  }
+
+  @Test
+  public void findSuites_lines() throws Exception {
+    CoverageIndex index = update(new CoverageIndex());
+    Assert.assertEquals(index.findSuites(SERVICE, 1, 9), suites("com.example.LoginTest"));
+    Assert.assertEquals(index.findSuites(SERVICE, 20, 25), suites("com.example.LoginTest", "com.example.CheckoutTest"));
+    Assert.assertEquals(index.findSuites(SERVICE, 30, 30), suites("com.example.LoginTest", "com.example.CheckoutTest"));
+    Assert.assertEquals(index.findSuites(SERVICE, 21, 29), suites("com.example.LoginTest"));
+  }
+
+  @Test
+  public void update_resolvesSourceFilesFromClasses() throws Exception {
+    DependencyGraphTest.compile(new File(directory, "src/main/kotlin"), classesDirectory, null,
+      "com/example/Kotlinish.java", "package com.example.util; class StringsKt { }");
+    writeExec("com.example.KotlinTest.exec", "com/example/util/StringsKt");
+    CoverageIndex index = update(new CoverageIndex());
+    Assert.assertEquals(index.findSuites("src/main/kotlin/com/example/util/Kotlinish.java"), suites("com.example.KotlinTest"));
+    Assert.assertTrue(index.findSuites("src/main/kotlin/com/example/util/StringsKt.java").isEmpty());
+  }
+
+  @Test
+  public void update_savedIndexIsReused() throws Exception {
+    update(new CoverageIndex()).save(indexFile);
+    CoverageIndex index = update(CoverageIndex.load(indexFile));
+    Assert.assertEquals(index.getReusedCount(), 2);
+    Assert.assertEquals(index.getReadCount(), 0);
+    Assert.assertFalse(index.isModified());
+    Assert.assertEquals(index.findSuites(SERVICE, 30, 30), suites("com.example.LoginTest", "com.example.CheckoutTest"));
+    Assert.assertEquals(index.getFingerprint(), update(new CoverageIndex()).getFingerprint());
+  }
+
+  @Test
+  public void update_changedCoverageFileIsRead() throws Exception {
+    update(new CoverageIndex()).save(indexFile);
+    String fingerprint = CoverageIndex.load(indexFile).getFingerprint();
+    File coverageMap = writeCoverageMap("com.example.CheckoutTest.coverage", "com/example/util/Strings.java");
+    Assert.assertTrue(coverageMap.setLastModified(coverageMap.lastModified() + 10000));
+    CoverageIndex index = update(CoverageIndex.load(indexFile));
+    Assert.assertEquals(index.getReadCount(), 1);
+    Assert.assertEquals(index.getReusedCount(), 1);
+    Assert.assertEquals(index.getRemovedCount(), 0);
+    Assert.assertTrue(index.isModified());
+    Assert.assertNotEquals(index.getFingerprint(), fingerprint);
+    Assert.assertEquals(index.findSuites(SERVICE), suites("com.example.LoginTest"));
+    Assert.assertEquals(index.findSuites(STRINGS), suites("com.example.LoginTest", "com.example.CheckoutTest"));
+    Assert.assertTrue(index.findSuites("src/main/resources/app.properties").isEmpty());
+  }
+
+  @Test
+  public void update_deletedCoverageFileIsRemoved() throws Exception {
+    update(new CoverageIndex()).save(indexFile);
+    Assert.assertTrue(new File(coverageDirectory, "com.example.LoginTest.exec").delete());
+    writeExec("com.example.SearchTest.exec", "com/example/search/Search");
+    CoverageIndex index = update(CoverageIndex.load(indexFile));
+    Assert.assertEquals(index.getRemovedCount(), 1);
+    Assert.assertEquals(index.getReadCount(), 1);
+    Assert.assertEquals(index.getSuiteCount(), 2);
+    Assert.assertTrue(index.findSuites(STRINGS).isEmpty());
+    Assert.assertEquals(index.findSuites(SERVICE), suites("com.example.CheckoutTest"));
+    Assert.assertEquals(index.findSuites("src/main/java/com/example/search/Search.java"), suites("com.example.SearchTest"));
+    index.save(indexFile);
+    Assert.assertEquals(CoverageIndex.load(indexFile).findSuites(SERVICE, 30, 30), suites("com.example.CheckoutTest"));
+  }
+
+  @Test
+  public void load_otherVersionIsRebuilt() throws Exception {
+    update(new CoverageIndex()).save(indexFile);
+    byte[] contents = Files.readAllBytes(indexFile.toPath());
+    contents[7]++;
+    Files.write(indexFile.toPath(), contents);
+    CoverageIndex index = CoverageIndex.load(indexFile);
+    Assert.assertEquals(index.getSuiteCount(), 0);
+    Assert.assertTrue(index.isModified());
+  }
+
+  @Test
+  public void load_corruptIndexIsRebuilt() throws Exception {
+    update(new CoverageIndex()).save(indexFile);
+    byte[] contents = Files.readAllBytes(indexFile.toPath());
+    Files.write(indexFile.toPath(), Arrays.copyOf(contents, contents.length - 3));
+    Assert.assertEquals(CoverageIndex.load(indexFile).getFileCount(), 0);
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void update_malformedCoverageMap() throws Exception {
+    writeCoverageMap("com.example.BrokenTest.coverage", "com/example/Foo.java:20-10");
+    update(new CoverageIndex());
+  }
+
+  @Test
+  public void readCoverageMap() throws Exception {
+    Map<String, int[]> coverage = CoverageIndex.readCoverageMap(new BufferedReader(new StringReader(
+      "a/B.java:1-2\n\n  a/B.java : 5 \nc/D.java\nc/D.java:3\n")));
+    Assert.assertEquals(coverage.get("a/B.java"), new int[]{1, 2, 5, 5});
+    Assert.assertEquals(coverage.get("c/D.java"), new int[0]);
+    Assert.assertEquals(coverage.size(), 2);
+  }
+
+  private CoverageIndex update(CoverageIndex index) throws IOException {
+    index.update(coverageDirectory, Collections.singletonList(classesDirectory));
+    return index;
+  }
+
+  private void writeExec(String fileName, String... executedClasses) throws IOException {
+    Map<String, boolean[]> probes = new LinkedHashMap<String, boolean[]>();
+    for (String executedClass : executedClasses) {
+      probes.put(executedClass, new boolean[]{true, false});
+    }
+    probes.put("com/example/NeverRun", new boolean[]{false});
+    OutputStream outputStream = new FileOutputStream(new File(coverageDirectory, fileName));
+    try {
+      ExecFileReaderTest.writeExec(outputStream, probes);
+    }
+    finally {
+      outputStream.close();
+    }
+  }
+
+  private File writeCoverageMap(String fileName, String... lines) throws IOException {
+    File coverageMap = new File(coverageDirectory, fileName);
+    Files.write(coverageMap.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return coverageMap;
+  }
+
+  private static HashSet<String> suites(String... suites) {
+    return new HashSet<String>(Arrays.asList(suites));
+  }
+}
@@ -0,0 +1,180 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the DependencyGraph class.  The classes are compiled from small sources at test time.
+ *
+ * @author Kent Olsen
+ */
+public class DependencyGraphTest {
+
+  static final String[] MAIN_SOURCES = {
+    "com/example/util/Strings.java", "package com.example.util; public class Strings { public static String trim(String s) { return s.trim(); } }",
+    "com/example/service/Service.java", "package com.example.service; public class Service { public String name() { return com.example.util.Strings.trim(\" s \"); } }",
+    "com/example/other/Other.java", "package com.example.other; public class Other { }"
+  };
+  static final String[] TEST_SOURCES = {
+    "com/example/ServiceTest.java", "package com.example; public class ServiceTest { Runnable check = new Runnable() { public void run() { new com.example.service.Service().name(); } }; }",
+    "com/example/OtherTest.java", "package com.example; public class OtherTest { com.example.other.Other other; }",
+    "com/example/AbstractStringsTest.java", "package com.example; public abstract class AbstractStringsTest { String s = com.example.util.Strings.trim(\"\"); }"
+  };
+
+  private File directory;
+  private File classesDirectory;
+  private File testClassesDirectory;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("dependency-graph").toFile();
+    classesDirectory = new File(directory, "classes");
+    testClassesDirectory = new File(directory, "test-classes");
+    compile(new File(directory, "src/main/java"), classesDirectory, null, MAIN_SOURCES);
+    compile(new File(directory, "src/test/java"), testClassesDirectory, classesDirectory, TEST_SOURCES);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    delete(directory);
+  }
+
+  @Test
+  public void findAffectedTests_transitive() throws Exception {
+    DependencyGraph graph = scan();
+    Assert.assertEquals(graph.size(), 7);
+    Assert.assertEquals(graph.findAffectedTests(Arrays.asList("services/app/src/main/java/com/example/util/Strings.java"), 100, 10),
+      new HashSet<String>(Arrays.asList("com.example.ServiceTest")));
+    Assert.assertEquals(graph.findAffectedTests(Arrays.asList("src/main/java/com/example/other/Other.java"), 100, 10),
+      new HashSet<String>(Arrays.asList("com.example.OtherTest")));
+  }
+
+  @Test
+  public void findAffectedTests_changedTest() throws Exception {
+    Assert.assertEquals(scan().findAffectedTests(Arrays.asList("src/test/java/com/example/OtherTest.java"), 100, 10),
+      new HashSet<String>(Arrays.asList("com.example.OtherTest")));
+  }
+
+  @Test
+  public void findAffectedTests_unknownSource() throws Exception {
+    Assert.assertTrue(scan().findAffectedTests(Arrays.asList("src/main/java/com/example/Missing.java", "README.md"), 100, 10).isEmpty());
+  }
+
+  @Test
+  public void findAffectedTests_depthCap() throws Exception {
+    DependencyGraph graph = scan();
+    List<String> changedPaths = Collections.singletonList("src/main/java/com/example/util/Strings.java");
+    Assert.assertNull(graph.findAffectedTests(changedPaths, 100, 2));
+    Assert.assertNotNull(graph.findAffectedTests(changedPaths, 100, 3));
+  }
+
+  @Test
+  public void findAffectedTests_sizeCap() throws Exception {
+    DependencyGraph graph = scan();
+    List<String> changedPaths = Collections.singletonList("src/main/java/com/example/util/Strings.java");
+    Assert.assertNull(graph.findAffectedTests(changedPaths, 3, 10));
+    Assert.assertNotNull(graph.findAffectedTests(changedPaths, 5, 10));
+  }
+
+  @Test
+  public void getClassesForSource() throws Exception {
+    Assert.assertEquals(scan().getClassesForSource("src/test/java/com/example/ServiceTest.java"),
+      new HashSet<String>(Arrays.asList("com.example.ServiceTest", "com.example.ServiceTest$1")));
+  }
+
+  @Test
+  public void getFingerprint() throws Exception {
+    String fingerprint = scan().getFingerprint();
+    Assert.assertEquals(scan().getFingerprint(), fingerprint);
+    File classFile = new File(classesDirectory, "com/example/other/Other.class");
+    Assert.assertTrue(classFile.setLastModified(classFile.lastModified() - 10000));
+    Assert.assertNotEquals(scan().getFingerprint(), fingerprint);
+  }
+
+  @Test
+  public void scan_missingDirectories() throws Exception {
+    DependencyGraph graph = DependencyGraph.scan(Collections.singletonList(new File(directory, "missing")), Collections.<File>emptyList());
+    Assert.assertEquals(graph.size(), 0);
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void scan_corruptClassFile() throws Exception {
+    Files.write(new File(classesDirectory, "Corrupt.class").toPath(), new byte[]{1, 2, 3});
+    scan();
+  }
+
+  @Test
+  public void isSourceFile() {
+    Assert.assertTrue(DependencyGraph.isSourceFile("a/B.java"));
+    Assert.assertTrue(DependencyGraph.isSourceFile("a/B.kt"));
+    Assert.assertFalse(DependencyGraph.isSourceFile("a/b.xml"));
+  }
+
+  private DependencyGraph scan() throws IOException {
+    return DependencyGraph.scan(Collections.singletonList(classesDirectory), Collections.singletonList(testClassesDirectory));
+  }
+
+  /**
+   * Writes sources given as path and contents pairs below <code>sourceDirectory</code> and compiles them into
+   * <code>outputDirectory</code>.
+   */
+  static void compile(File sourceDirectory, File outputDirectory, File classPath, String... sources) throws IOException {
+    List<String> arguments = new ArrayList<String>(Arrays.asList("-d", outputDirectory.getPath(), "-nowarn"));
+    if (classPath != null) {
+      arguments.add("-classpath");
+      arguments.add(classPath.getPath());
+    }
+    for (int index = 0; index < sources.length; index += 2) {
+      File source = new File(sourceDirectory, sources[index]);
+      Assert.assertTrue(source.getParentFile().isDirectory() || source.getParentFile().mkdirs());
+      Files.write(source.toPath(), sources[index + 1].getBytes(StandardCharsets.UTF_8));
+      arguments.add(source.getPath());
+    }
+    Assert.assertTrue(outputDirectory.isDirectory() || outputDirectory.mkdirs());
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    Assert.assertEquals(compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])), 0);
+  }
+
+  static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+}
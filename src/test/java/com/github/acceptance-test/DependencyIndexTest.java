@@ -0,0 +1,179 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class DependencyIndexTest {
+
+  private static final List<String> CHANGED_STRINGS = Collections.singletonList("src/main/java/com/example/util/Strings.java");
+
+  private File directory;
+  private File classesDirectory;
+  private File testClassesDirectory;
+  private File indexFile;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("dependency-index").toFile();
+    classesDirectory = new File(directory, "classes");
+    testClassesDirectory = new File(directory, "test-classes");
+    indexFile = new File(directory, "target/dependency-index.bin");
+    DependencyGraphTest.compile(new File(directory, "src/main/java"), classesDirectory, null, DependencyGraphTest.MAIN_SOURCES);
+    DependencyGraphTest.compile(new File(directory, "src/test/java"), testClassesDirectory, classesDirectory,
+      DependencyGraphTest.TEST_SOURCES);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(directory);
+  }
+
+  @Test
+  public void update_missingIndex() throws Exception {
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    DependencyGraph graph = update(index);
+    Assert.assertEquals(index.getParsedCount(), 7);
+    Assert.assertEquals(index.getReusedCount(), 0);
+    Assert.assertTrue(index.isModified());
+    Assert.assertEquals(graph.size(), 7);
+    Assert.assertEquals(graph.findAffectedTests(CHANGED_STRINGS, 100, 10), new HashSet<String>(Arrays.asList("com.example.ServiceTest")));
+    Assert.assertEquals(graph.getFingerprint(), scan().getFingerprint());
+  }
+
+  @Test
+  public void update_savedIndex() throws Exception {
+    saveIndex();
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    Assert.assertEquals(index.size(), 7);
+    DependencyGraph graph = update(index);
+    Assert.assertEquals(index.getParsedCount(), 0);
+    Assert.assertEquals(index.getReusedCount(), 7);
+    Assert.assertFalse(index.isModified());
+    Assert.assertEquals(graph.findAffectedTests(CHANGED_STRINGS, 100, 10), new HashSet<String>(Arrays.asList("com.example.ServiceTest")));
+    Assert.assertEquals(graph.getClassesForSource("src/test/java/com/example/ServiceTest.java"),
+      new HashSet<String>(Arrays.asList("com.example.ServiceTest", "com.example.ServiceTest$1")));
+    Assert.assertEquals(graph.getFingerprint(), scan().getFingerprint());
+  }
+
+  @Test
+  public void update_touchedClassFileIsNotParsed() throws Exception {
+    saveIndex();
+    File classFile = new File(classesDirectory, "com/example/other/Other.class");
+    Assert.assertTrue(classFile.setLastModified(classFile.lastModified() - 10000));
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    DependencyGraph graph = update(index);
+    Assert.assertEquals(index.getParsedCount(), 0);
+    Assert.assertEquals(index.getReusedCount(), 7);
+    Assert.assertTrue(index.isModified());
+    Assert.assertEquals(graph.getFingerprint(), scan().getFingerprint());
+  }
+
+  @Test
+  public void update_changedClassFileIsParsed() throws Exception {
+    saveIndex();
+    DependencyGraphTest.compile(new File(directory, "src/main/java"), classesDirectory, classesDirectory,
+      "com/example/other/Other.java", "package com.example.other; public class Other { com.example.util.Strings strings; }");
+    File classFile = new File(classesDirectory, "com/example/other/Other.class");
+    Assert.assertTrue(classFile.setLastModified(classFile.lastModified() + 10000));
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    DependencyGraph graph = update(index);
+    Assert.assertEquals(index.getParsedCount(), 1);
+    Assert.assertEquals(index.getReusedCount(), 6);
+    Assert.assertEquals(graph.findAffectedTests(CHANGED_STRINGS, 100, 10),
+      new HashSet<String>(Arrays.asList("com.example.ServiceTest", "com.example.OtherTest")));
+  }
+
+  @Test
+  public void update_deletedClassFileIsRemoved() throws Exception {
+    saveIndex();
+    Assert.assertTrue(new File(testClassesDirectory, "com/example/OtherTest.class").delete());
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    DependencyGraph graph = update(index);
+    Assert.assertEquals(index.getRemovedCount(), 1);
+    Assert.assertEquals(index.size(), 6);
+    Assert.assertTrue(index.isModified());
+    Assert.assertTrue(graph.findAffectedTests(Collections.singletonList("src/main/java/com/example/other/Other.java"), 100, 10).isEmpty());
+  }
+
+  @Test
+  public void load_otherVersionIsRebuilt() throws Exception {
+    saveIndex();
+    byte[] contents = Files.readAllBytes(indexFile.toPath());
+    DataOutputStream output = new DataOutputStream(new FileOutputStream(indexFile));
+    try {
+      output.write(contents, 0, 4);
+      output.writeInt(DependencyIndex.VERSION + 1);
+      output.write(contents, 8, contents.length - 8);
+    }
+    finally {
+      output.close();
+    }
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    Assert.assertEquals(index.size(), 0);
+    Assert.assertTrue(index.isModified());
+    update(index);
+    Assert.assertEquals(index.getParsedCount(), 7);
+  }
+
+  @Test
+  public void load_corruptIndexIsRebuilt() throws Exception {
+    saveIndex();
+    byte[] contents = Files.readAllBytes(indexFile.toPath());
+    Files.write(indexFile.toPath(), Arrays.copyOf(contents, contents.length / 2));
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    Assert.assertEquals(index.size(), 0);
+    Assert.assertTrue(index.isModified());
+  }
+
+  @Test
+  public void save_clearsModified() throws Exception {
+    DependencyIndex index = new DependencyIndex();
+    update(index);
+    index.save(indexFile);
+    Assert.assertFalse(index.isModified());
+    Assert.assertEquals(DependencyIndex.load(indexFile).size(), 7);
+  }
+
+  private void saveIndex() throws Exception {
+    DependencyIndex index = DependencyIndex.load(indexFile);
+    update(index);
+    index.save(indexFile);
+  }
+
+  private DependencyGraph update(DependencyIndex index) throws Exception {
+    return index.update(Collections.singletonList(classesDirectory), Collections.singletonList(testClassesDirectory));
+  }
+
+  private DependencyGraph scan() throws Exception {
+    return DependencyGraph.scan(Collections.singletonList(classesDirectory), Collections.singletonList(testClassesDirectory));
+  }
+}
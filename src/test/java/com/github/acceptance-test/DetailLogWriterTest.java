@@ -0,0 +1,67 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class DetailLogWriterTest {
+
+  @Test
+  public void write() throws Exception {
+    File directory = Files.createTempDirectory("detail-log").toFile();
+    try {
+      File file = new File(directory, "logs/detail.log");
+      List<String> expected = new ArrayList<String>();
+      DetailLogWriter writer = new DetailLogWriter(file);
+      for (int index = 0; index < 20000; index++) {
+        writer.write("line " + index);
+        expected.add("line " + index);
+      }
+      writer.write("end of detail log");
+      expected.add("end of detail log");
+      writer.close();
+      writer.write("after close");
+      writer.close();
+
+      Assert.assertEquals(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8), expected);
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void constructor_unwritableFile() throws Exception {
+    File directory = Files.createTempDirectory("detail-log").toFile();
+    try {
+      new DetailLogWriter(directory);
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class ExecFileReaderTest {
+
+  @Test
+  public void readExecutedClasses() throws Exception {
+    Map<String, boolean[]> probes = new LinkedHashMap<String, boolean[]>();
+    probes.put("com/example/Hit", new boolean[]{false, false, false, false, false, false, false, false, false, true});
+    probes.put("com/example/Missed", new boolean[]{false, false, false});
+    probes.put("com/example/Empty", new boolean[0]);
+    probes.put("com/example/Outer$Inner", new boolean[]{true});
+    Assert.assertEquals(ExecFileReader.readExecutedClasses(new ByteArrayInputStream(exec(probes))),
+      new HashSet<String>(Arrays.asList("com/example/Hit", "com/example/Outer$Inner")));
+  }
+
+  @Test
+  public void readExecutedClasses_manyProbes() throws Exception {
+    boolean[] manyProbes = new boolean[1000];
+    manyProbes[999] = true;
+    Map<String, boolean[]> probes = new LinkedHashMap<String, boolean[]>();
+    probes.put("com/example/Large", manyProbes);
+    probes.put("com/example/After", new boolean[]{true});
+    Assert.assertEquals(ExecFileReader.readExecutedClasses(new ByteArrayInputStream(exec(probes))),
+      new HashSet<String>(Arrays.asList("com/example/Large", "com/example/After")));
+  }
+
+  @Test
+  public void readExecutedClasses_empty() throws Exception {
+    Assert.assertTrue(ExecFileReader.readExecutedClasses(new ByteArrayInputStream(new byte[0])).isEmpty());
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void readExecutedClasses_notExecutionData() throws Exception {
+    ExecFileReader.readExecutedClasses(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void readExecutedClasses_truncated() throws Exception {
+    Map<String, boolean[]> probes = new LinkedHashMap<String, boolean[]>();
+    probes.put("com/example/Hit", new boolean[]{true});
+    byte[] contents = exec(probes);
+    ExecFileReader.readExecutedClasses(new ByteArrayInputStream(Arrays.copyOf(contents, contents.length - 1)));
+  }
+
+  static byte[] exec(Map<String, boolean[]> probes) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writeExec(bytes, probes);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Writes execution data the way JaCoCo's <code>ExecutionDataWriter</code> does.
+   */
+  static void writeExec(OutputStream outputStream, Map<String, boolean[]> probes) throws IOException {
+    DataOutputStream output = new DataOutputStream(outputStream);
+    output.writeByte(0x01);
+    output.writeChar(0xc0c0);
+    output.writeChar(0x1007);
+    output.writeByte(0x10);
+    output.writeUTF("session");
+    output.writeLong(1L);
+    output.writeLong(2L);
+    long id = 0;
+    for (Map.Entry<String, boolean[]> entry : probes.entrySet()) {
+      output.writeByte(0x11);
+      output.writeLong(id++);
+      output.writeUTF(entry.getKey());
+      boolean[] classProbes = entry.getValue();
+      int length = classProbes.length;
+      while ((length & ~0x7f) != 0) {
+        output.writeByte((length & 0x7f) | 0x80);
+        length >>>= 7;
+      }
+      output.writeByte(length);
+      int buffer = 0;
+      int bufferSize = 0;
+      for (boolean probe : classProbes) {
+        if (probe) {
+          buffer |= 1 << bufferSize;
+        }
+        if (++bufferSize == 8) {
+          output.writeByte(buffer);
+          buffer = 0;
+          bufferSize = 0;
+        }
+      }
+      if (bufferSize > 0) {
+        output.writeByte(buffer);
+      }
+    }
+    output.flush();
+  }
+}
@@ -1,18 +1,12 @@
 package com.github.kentolsen;
 
 import org.apache.maven.plugin.MojoExecutionException;
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
 import org.testng.Assert;
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-
-import static org.mockito.Matchers.anyString;
-import static org.mockito.Mockito.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 /*
  * Copyright (C) 2015  Kent Olsen
@@ -39,40 +33,24 @@ import static org.mockito.Mockito.*;
  */
 public class FileWriterHelperTest {
 
-  @Mock
-  private File file;
-  @Mock
-  private FileWriter writer;
-
-  @BeforeMethod
-  public void setUp() throws Exception {
-    MockitoAnnotations.initMocks(this);
-  }
-
   @Test
   public void construct() {
     Assert.assertNotNull(new FileWriterHelper());
   }
 
   @Test
-  public void getFileWriter() throws Exception {
+  public void writeIfChanged() throws Exception {
     File file = File.createTempFile("tmp", "txt");
-    final FileWriter fileWriter = FileWriterHelper.getFileWriter(file);
-    Assert.assertNotNull(fileWriter);
-    fileWriter.close();
-    Assert.assertTrue(file.delete());
-  }
-
-  @Test (expectedExceptions = MojoExecutionException.class)
-  public void getFileWriter_exceptionCreatingWriter() throws Exception {
-    File file = File.createTempFile("tmp", "txt");
-    Assert.assertTrue(file.setReadOnly());
-    //noinspection CaughtExceptionImmediatelyRethrown
     try {
-      FileWriterHelper.getFileWriter(file);
-    }
-    catch (MojoExecutionException e) {
-      throw e;
+      Assert.assertTrue(FileWriterHelper.writeIfChanged(file, "<suite name=\"\u00e9\"/>"));
+      Assert.assertEquals(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), "<suite name=\"\u00e9\"/>");
+      Assert.assertTrue(file.setLastModified(1000000000000L));
+      Assert.assertFalse(FileWriterHelper.writeIfChanged(file, "<suite name=\"\u00e9\"/>"));
+      Assert.assertEquals(file.lastModified(), 1000000000000L);
+      Assert.assertTrue(FileWriterHelper.writeIfChanged(file, "<suite name=\"e\"/>"));
+      Assert.assertEquals(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), "<suite name=\"e\"/>");
+      File[] leftovers = file.getParentFile().listFiles((dir, name) -> name.startsWith("." + file.getName()));
+      Assert.assertEquals(leftovers.length, 0);
     }
     finally {
       Assert.assertTrue(file.delete());
@@ -80,24 +58,21 @@ public class FileWriterHelperTest {
   }
 
   @Test
-  public void writeToWriter() throws Exception {
-    final String contents = "contents";
-    FileWriterHelper.writeToWriter(writer, contents);
-    verify(writer).write(eq(contents));
-  }
-
-  @Test
-  public void writeToWriter_errorClosing() throws Exception {
-    final String contents = "contents";
-    doThrow(new IOException()).when(writer).close();
-    FileWriterHelper.writeToWriter(writer, contents);
-    verify(writer).write(eq(contents));
-    verify(writer).close();
+  public void writeIfChanged_newFile() throws Exception {
+    File directory = Files.createTempDirectory("suite").toFile();
+    File file = new File(directory, "testng.xml");
+    try {
+      Assert.assertTrue(FileWriterHelper.writeIfChanged(file, "<suite/>"));
+      Assert.assertEquals(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), "<suite/>");
+    }
+    finally {
+      Assert.assertTrue(file.delete());
+      Assert.assertTrue(directory.delete());
+    }
   }
 
   @Test (expectedExceptions = MojoExecutionException.class)
-  public void writeToWriter_errorWriting() throws Exception {
-    doThrow(new IOException()).when(writer).write(anyString());
-    FileWriterHelper.writeToWriter(writer, "contents");
+  public void writeIfChanged_missingDirectory() throws Exception {
+    FileWriterHelper.writeIfChanged(new File("/non-existent/testng.xml"), "<suite/>");
   }
 }
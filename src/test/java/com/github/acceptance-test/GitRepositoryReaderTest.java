@@ -0,0 +1,294 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the GitRepositoryReader class.  These tests build a small repository with the
+ * git command and compare the in-process results with <code>git diff --name-only</code>.
+ *
+ * @author Kent Olsen
+ */
+public class GitRepositoryReaderTest {
+
+  private File repository;
+  private String baseSha;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    repository = File.createTempFile("repository", "");
+    Assert.assertTrue(repository.delete());
+    Assert.assertTrue(repository.mkdirs());
+    git("init", "-q");
+    git("config", "user.name", "test");
+    git("config", "user.email", "test@example.com");
+    git("config", "commit.gpgsign", "false");
+    git("config", "tag.gpgsign", "false");
+    writeFile("README.md", "readme");
+    writeFile("src/main/java/com/example/package1/Class1.java", "class Class1 {}");
+    writeFile("src/main/java/com/example/package1/Class2.java", "class Class2 {}");
+    writeFile("src/main/java/com/example/package2/Class3.java", "class Class3 {}");
+    writeFile("src/main/java/com/example/unchanged/Class4.java", "class Class4 {}");
+    writeFile("lib/tool", "tool");
+    commit("base");
+    baseSha = git("rev-parse", "HEAD").get(0);
+
+    writeFile("src/main/java/com/example/package1/Class1.java", "class Class1 { int changed; }");
+    Assert.assertTrue(new File(repository, "src/main/java/com/example/package1/Class2.java").delete());
+    writeFile("src/main/java/com/example/package3/Class5.java", "class Class5 {}");
+    Assert.assertTrue(new File(repository, "lib/tool").delete());
+    Assert.assertTrue(new File(repository, "lib").delete());
+    writeFile("lib/tool/Tool.java", "class Tool {}");
+    git("update-index", "--chmod=+x", "README.md");
+    git("add", "-A");
+    commit("change");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    delete(repository);
+  }
+
+  @Test
+  public void getChangedPaths_looseObjects() throws Exception {
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(reader.getChangedPaths(baseSha, "HEAD"), gitDiff());
+  }
+
+  @Test
+  public void getChangedPaths_packedObjects() throws Exception {
+    git("gc", "-q", "--aggressive");
+    Assert.assertFalse(new File(repository, ".git/refs/heads/" + currentBranch()).exists());
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(reader.getChangedPaths(baseSha, "HEAD"), gitDiff());
+    Assert.assertEquals(reader.getChangedPaths(baseSha, currentBranch()), gitDiff());
+  }
+
+  @Test
+  public void getChangedPaths_severalBases() throws Exception {
+    String headSha = git("rev-parse", "HEAD").get(0);
+    git("checkout", "-q", "-b", "other", baseSha);
+    writeFile("src/main/java/com/example/package2/Class3.java", "class Class3 { int changed; }");
+    writeFile("src/main/java/com/example/package1/Class6.java", "class Class6 {}");
+    git("add", "-A");
+    commit("other");
+    String otherSha = git("rev-parse", "HEAD").get(0);
+    git("checkout", "-q", headSha);
+    List<String> otherDiff = git("diff", "--name-only", "--no-renames", otherSha, "HEAD");
+    Collections.sort(otherDiff);
+
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(reader.getChangedPaths(Arrays.asList(baseSha, "HEAD", otherSha, baseSha), "HEAD"),
+      Arrays.asList(gitDiff(), Collections.<String>emptyList(), otherDiff, gitDiff()));
+    Assert.assertTrue(otherDiff.contains("src/main/java/com/example/package2/Class3.java"), otherDiff.toString());
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Corrupt tree .*")
+  public void readTree_truncatedEntry() throws Exception {
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    entries.write("100644 file".getBytes(StandardCharsets.UTF_8));
+    entries.write(0);
+    entries.write(new byte[19]);
+    byte[] header = ("tree " + entries.size()).getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream object = new ByteArrayOutputStream();
+    object.write(header);
+    object.write(0);
+    entries.writeTo(object);
+    StringBuilder sha = new StringBuilder();
+    for (byte b : MessageDigest.getInstance("SHA-1").digest(object.toByteArray())) {
+      sha.append(String.format("%02x", b));
+    }
+    File objectFile = new File(repository, ".git/objects/" + sha.substring(0, 2) + "/" + sha.substring(2));
+    Assert.assertTrue(objectFile.getParentFile().isDirectory() || objectFile.getParentFile().mkdirs());
+    DeflaterOutputStream output = new DeflaterOutputStream(new FileOutputStream(objectFile));
+    try {
+      object.writeTo(output);
+    }
+    finally {
+      output.close();
+    }
+
+    new GitRepositoryReader(repository).readTree(sha.toString());
+  }
+
+  @Test
+  public void applyDelta() throws Exception {
+    byte[] base = "hello world".getBytes(StandardCharsets.UTF_8);
+    byte[] delta = {11, 8, (byte) 0x91, 6, 5, 3, 'f', 'o', 'o'};
+
+    Assert.assertEquals(new String(GitRepositoryReader.applyDelta(base, delta), StandardCharsets.UTF_8), "worldfoo");
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Delta copy out of bounds")
+  public void applyDelta_copyPastBase() throws Exception {
+    GitRepositoryReader.applyDelta("hello".getBytes(StandardCharsets.UTF_8), new byte[] {5, 5, (byte) 0x91, 3, 5});
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Delta insert out of bounds")
+  public void applyDelta_insertPastDelta() throws Exception {
+    GitRepositoryReader.applyDelta("hello".getBytes(StandardCharsets.UTF_8), new byte[] {5, 5, 5, 'a', 'b'});
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Delta copy out of bounds")
+  public void applyDelta_copyPastResult() throws Exception {
+    GitRepositoryReader.applyDelta("hello".getBytes(StandardCharsets.UTF_8), new byte[] {5, 2, (byte) 0x90, 5});
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Truncated delta instruction")
+  public void applyDelta_truncated() throws Exception {
+    GitRepositoryReader.applyDelta("hello".getBytes(StandardCharsets.UTF_8), new byte[] {5, 5, (byte) 0x91, 0});
+  }
+
+  @Test
+  public void readFile() throws Exception {
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(new String(reader.readFile(baseSha, "src/main/java/com/example/package1/Class1.java"), "UTF-8"), "class Class1 {}");
+    Assert.assertEquals(new String(reader.readFile("HEAD", "src/main/java/com/example/package1/Class1.java"), "UTF-8"),
+      "class Class1 { int changed; }");
+    Assert.assertNull(reader.readFile("HEAD", "src/main/java/com/example/package1/Class2.java"));
+    Assert.assertNull(reader.readFile("HEAD", "src/main/java"));
+    Assert.assertNull(reader.readFile("HEAD", "README.md/child"));
+  }
+
+  @Test
+  public void getChangedPaths_fromSubdirectory() throws Exception {
+    GitRepositoryReader reader = new GitRepositoryReader(new File(repository, "src/main"));
+    Assert.assertEquals(reader.getChangedPaths(baseSha, "HEAD"), gitDiff());
+  }
+
+  @Test
+  public void getChangedPaths_sameCommit() throws Exception {
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(reader.getChangedPaths("HEAD", "HEAD"), Collections.<String>emptyList());
+  }
+
+  @Test
+  public void getChangedPaths_annotatedTag() throws Exception {
+    git("tag", "-a", "-m", "base", "base-tag", baseSha);
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(reader.getChangedPaths("base-tag", "HEAD"), gitDiff());
+  }
+
+  @Test
+  public void resolve() throws Exception {
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    Assert.assertEquals(reader.resolve("HEAD"), git("rev-parse", "HEAD").get(0));
+    Assert.assertEquals(reader.resolve(baseSha.toUpperCase()), baseSha);
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void resolve_abbreviatedSha() throws Exception {
+    new GitRepositoryReader(repository).resolve(baseSha.substring(0, 10));
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void readObject_missing() throws Exception {
+    new GitRepositoryReader(repository).readObject("0123456789012345678901234567890123456789");
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void construct_noRepository() throws Exception {
+    File directory = File.createTempFile("norepository", "");
+    Assert.assertTrue(directory.delete());
+    Assert.assertTrue(directory.mkdirs());
+    try {
+      new GitRepositoryReader(directory);
+    }
+    finally {
+      delete(directory);
+    }
+  }
+
+  private List<String> gitDiff() throws Exception {
+    List<String> paths = git("diff", "--name-only", "--no-renames", baseSha, "HEAD");
+    Collections.sort(paths);
+    return paths;
+  }
+
+  private String currentBranch() throws Exception {
+    return git("rev-parse", "--abbrev-ref", "HEAD").get(0);
+  }
+
+  private void commit(String message) throws Exception {
+    git("add", "-A");
+    git("commit", "-q", "-m", message);
+  }
+
+  private void writeFile(String path, String contents) throws IOException {
+    File file = new File(repository, path);
+    Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(contents);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private List<String> git(String... arguments) throws Exception {
+    List<String> command = new ArrayList<String>();
+    command.add("git");
+    command.addAll(Arrays.asList(arguments));
+    Process process = new ProcessBuilder(command).directory(repository).redirectErrorStream(true).start();
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    finally {
+      reader.close();
+    }
+    Assert.assertEquals(process.waitFor(), 0, command + ": " + lines);
+    return lines;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+}
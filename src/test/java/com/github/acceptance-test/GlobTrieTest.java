@@ -0,0 +1,176 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the GlobTrie class.
+ *
+ * @author Kent Olsen
+ */
+public class GlobTrieTest {
+
+  private static final String[] RANDOM_GLOBS = {"a/*/c", "a/**/c", "**/b", "a?b*", "*/*/", "a/**", "b**c/"};
+
+  @Test
+  public void findPrefixMatches_star() {
+    GlobTrie trie = createTrie("services/*/src/main/");
+    assertMatches(trie, "services/billing/src/main/java/A.java", "services/*/src/main/");
+    assertMatches(trie, "services//src/main/A.java", "services/*/src/main/");
+    assertMatches(trie, "services/billing/x/src/main/A.java");
+    assertMatches(trie, "services/billing/src/test/A.java");
+  }
+
+  @Test
+  public void findPrefixMatches_globstar() {
+    GlobTrie trie = createTrie("services/**Api.java");
+    assertMatches(trie, "services/billing/src/BillingApi.java", "services/**Api.java");
+    assertMatches(trie, "services/Api.java", "services/**Api.java");
+    assertMatches(trie, "services/billing/src/Billing.java");
+  }
+
+  @Test
+  public void findPrefixMatches_directories() {
+    GlobTrie trie = createTrie("services/*/src/main/java/**/api/");
+    assertMatches(trie, "services/billing/src/main/java/com/example/api/Api.java", "services/*/src/main/java/**/api/");
+    assertMatches(trie, "services/billing/src/main/java/api/Api.java", "services/*/src/main/java/**/api/");
+    assertMatches(trie, "services/billing/src/main/java/com/rapi/Api.java");
+    assertMatches(trie, "services/billing/src/main/java/com/api.java");
+  }
+
+  @Test
+  public void findPrefixMatches_leadingDirectories() {
+    GlobTrie trie = createTrie("**/pom.xml");
+    assertMatches(trie, "pom.xml", "**/pom.xml");
+    assertMatches(trie, "services/billing/pom.xml", "**/pom.xml");
+    assertMatches(trie, "services/billingpom.xml");
+  }
+
+  @Test
+  public void findPrefixMatches_question() {
+    GlobTrie trie = createTrie("module?/");
+    assertMatches(trie, "module1/A.java", "module?/");
+    assertMatches(trie, "module12/A.java");
+    assertMatches(trie, "module//A.java");
+  }
+
+  @Test
+  public void findPrefixMatches_severalGlobs() {
+    GlobTrie trie = createTrie("services/*/", "services/billing/*.xml", "**/api/", "docs/**");
+    assertMatches(trie, "services/billing/pom.xml", "services/*/", "services/billing/*.xml");
+    assertMatches(trie, "services/billing/api/Api.java", "services/*/", "**/api/");
+    assertMatches(trie, "README.md");
+    Assert.assertEquals(trie.size(), 4);
+  }
+
+  @Test
+  public void put_duplicate() {
+    GlobTrie trie = createTrie("a/*", "a/*");
+    Assert.assertEquals(trie.size(), 1);
+    assertMatches(trie, "a/b", "a/*");
+  }
+
+  @Test
+  public void put_afterMatching() {
+    GlobTrie trie = createTrie("a/*");
+    assertMatches(trie, "b/c");
+    trie.put("b/*");
+    assertMatches(trie, "b/c", "b/*");
+  }
+
+  @Test
+  public void findPrefixMatches_sameAsRegularExpressions() {
+    GlobTrie trie = createTrie(RANDOM_GLOBS);
+    assertSameAsRegularExpressions(trie, new Random(7));
+  }
+
+  @Test
+  public void findPrefixMatches_concurrently() throws Exception {
+    final GlobTrie trie = createTrie(RANDOM_GLOBS);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int thread = 0; thread < 4; thread++) {
+        final int seed = thread;
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            assertSameAsRegularExpressions(trie, new Random(seed));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void assertSameAsRegularExpressions(GlobTrie trie, Random random) {
+    for (int count = 0; count < 2000; count++) {
+      StringBuilder path = new StringBuilder();
+      int length = random.nextInt(10);
+      for (int index = 0; index < length; index++) {
+        path.append("abc/".charAt(random.nextInt(4)));
+      }
+      Set<String> expected = new HashSet<String>();
+      for (String glob : RANDOM_GLOBS) {
+        if (toRegex(glob).matcher(path).lookingAt()) {
+          expected.add(glob);
+        }
+      }
+      Assert.assertEquals(trie.findPrefixMatches(path), expected, path.toString());
+    }
+  }
+
+  private static Pattern toRegex(String glob) {
+    String regex = glob.replace("?", "[^/]").replace("**/", "\\u0001").replace("**", "\\u0000")
+      .replace("*", "[^/]*").replace("\\u0000", ".*").replace("\\u0001", "(?:.*/)?");
+    return Pattern.compile(regex);
+  }
+
+  private static GlobTrie createTrie(String... globs) {
+    GlobTrie trie = new GlobTrie();
+    for (String glob : globs) {
+      trie.put(glob);
+    }
+    return trie;
+  }
+
+  private static void assertMatches(GlobTrie trie, String path, String... globs) {
+    Set<String> expected = new HashSet<String>();
+    Collections.addAll(expected, globs);
+    Assert.assertEquals(trie.findPrefixMatches(path), expected, path);
+  }
+}
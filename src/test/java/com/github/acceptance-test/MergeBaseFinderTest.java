@@ -0,0 +1,140 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class MergeBaseFinderTest {
+
+  private File repository;
+  private String fork;
+  private String feature;
+  private String main;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    repository = Files.createTempDirectory("merge-base").toFile();
+    SelectionDaemonTest.git(repository, "init", "-q", "--initial-branch=master");
+    SelectionDaemonTest.git(repository, "config", "user.name", "test");
+    SelectionDaemonTest.git(repository, "config", "user.email", "test@example.com");
+    SelectionDaemonTest.git(repository, "config", "commit.gpgsign", "false");
+    commit("root");
+    fork = commit("fork");
+    SelectionDaemonTest.git(repository, "checkout", "-q", "-b", "feature");
+    commit("feature1");
+    feature = commit("feature2");
+    SelectionDaemonTest.git(repository, "checkout", "-q", "-");
+    commit("main1");
+    main = commit("main2");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(repository);
+  }
+
+  @Test
+  public void find_withoutCommitGraph() throws Exception {
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    MergeBaseFinder finder = new MergeBaseFinder(reader, null);
+
+    Assert.assertEquals(finder.find(feature, main), fork);
+    Assert.assertEquals(finder.getInflatedCount(), 6);
+    Assert.assertNull(reader.getCommitGraph());
+    Assert.assertEquals(reader.getMergeBase("feature", "HEAD"), fork);
+    Assert.assertEquals(reader.getMergeBase(fork, "feature"), fork);
+    Assert.assertEquals(reader.getMergeBase(main, main), main);
+  }
+
+  @Test
+  public void find_withCommitGraph() throws Exception {
+    SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    MergeBaseFinder finder = new MergeBaseFinder(reader, reader.getCommitGraph());
+
+    Assert.assertEquals(finder.find(feature, main), fork);
+    Assert.assertEquals(finder.getInflatedCount(), 0);
+  }
+
+  @Test
+  public void find_commitsNewerThanCommitGraph() throws Exception {
+    SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+    String newer = commit("main3");
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+    MergeBaseFinder finder = new MergeBaseFinder(reader, reader.getCommitGraph());
+
+    Assert.assertEquals(finder.find(newer, feature), fork);
+    Assert.assertEquals(finder.getInflatedCount(), 1);
+  }
+
+  @Test
+  public void find_afterMerge() throws Exception {
+    SelectionDaemonTest.git(repository, "merge", "-q", "--no-edit", "feature");
+    SelectionDaemonTest.git(repository, "checkout", "-q", "feature");
+    String featureAfterMerge = commit("feature3");
+    SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+
+    for (boolean useCommitGraph : new boolean[] {false, true}) {
+      GitRepositoryReader reader = new GitRepositoryReader(repository);
+      MergeBaseFinder finder = new MergeBaseFinder(reader, useCommitGraph ? reader.getCommitGraph() : null);
+      Assert.assertEquals(finder.find(featureAfterMerge, SelectionDaemonTest.git(repository, "rev-parse", "master").get(0)), feature);
+    }
+  }
+
+  @Test
+  public void find_crissCross() throws Exception {
+    SelectionDaemonTest.git(repository, "checkout", "-q", "-b", "other", main);
+    SelectionDaemonTest.git(repository, "merge", "-q", "--no-edit", feature);
+    String other = commit("other1");
+    SelectionDaemonTest.git(repository, "checkout", "-q", "feature");
+    SelectionDaemonTest.git(repository, "merge", "-q", "--no-edit", main);
+    String featureMerge = commit("feature3");
+    SelectionDaemonTest.git(repository, "commit-graph", "write", "--reachable");
+    List<String> expected = SelectionDaemonTest.git(repository, "merge-base", "--all", other, featureMerge);
+
+    for (boolean useCommitGraph : new boolean[] {false, true}) {
+      GitRepositoryReader reader = new GitRepositoryReader(repository);
+      String base = new MergeBaseFinder(reader, useCommitGraph ? reader.getCommitGraph() : null).find(other, featureMerge);
+      Assert.assertTrue(expected.contains(base), base + " in " + expected);
+    }
+  }
+
+  @Test
+  public void find_unrelatedHistories() throws Exception {
+    SelectionDaemonTest.git(repository, "checkout", "-q", "--orphan", "unrelated");
+    String unrelated = commit("unrelated");
+    GitRepositoryReader reader = new GitRepositoryReader(repository);
+
+    Assert.assertNull(reader.getMergeBase(unrelated, main));
+  }
+
+  private String commit(String name) throws Exception {
+    SelectionDaemonTest.writeFile(repository, name + ".txt", name);
+    SelectionDaemonTest.git(repository, "add", name + ".txt");
+    SelectionDaemonTest.git(repository, "commit", "-q", "-m", name);
+    return SelectionDaemonTest.git(repository, "rev-parse", "HEAD").get(0);
+  }
+}
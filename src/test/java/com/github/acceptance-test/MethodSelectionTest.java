@@ -0,0 +1,60 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class MethodSelectionTest {
+
+  @Test
+  public void add_mergesMethods() {
+    MethodSelection methodSelection = MethodSelection.of(Arrays.asList("BigTest#logout", "SmallTest", "BigTest# login , logout"));
+
+    Assert.assertEquals(new ArrayList<String>(methodSelection.getClassNames()), Arrays.asList("BigTest", "SmallTest"));
+    Assert.assertEquals(new ArrayList<String>(methodSelection.getMethods("BigTest")), Arrays.asList("login", "logout"));
+    Assert.assertNull(methodSelection.getMethods("SmallTest"));
+  }
+
+  @Test
+  public void add_wholeClassWins() {
+    MethodSelection before = MethodSelection.of(Arrays.asList("BigTest", "BigTest#login"));
+    MethodSelection after = MethodSelection.of(Arrays.asList("BigTest#login", "BigTest"));
+    MethodSelection empty = MethodSelection.of(Arrays.asList("BigTest#login", "BigTest#,"));
+
+    Assert.assertNull(before.getMethods("BigTest"));
+    Assert.assertNull(after.getMethods("BigTest"));
+    Assert.assertNull(empty.getMethods("BigTest"));
+  }
+
+  @Test
+  public void add_ignoresMissingClassName() {
+    MethodSelection methodSelection = MethodSelection.of(Arrays.asList("#login", " ", "Test"));
+
+    Assert.assertEquals(new ArrayList<String>(methodSelection.getClassNames()), Arrays.asList("Test"));
+  }
+
+  @Test (expectedExceptions = UnsupportedOperationException.class)
+  public void getMethods_unmodifiable() {
+    MethodSelection.of(Arrays.asList("BigTest#login")).getMethods("BigTest").add("logout");
+  }
+}
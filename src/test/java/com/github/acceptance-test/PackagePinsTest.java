@@ -0,0 +1,107 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class PackagePinsTest {
+
+  @Test
+  public void parse_packageJson() throws Exception {
+    String contents = "{\n"
+      + "  \"name\": \"product\",\n"
+      + "  \"version\": \"3.0.0\",\n"
+      + "  \"scripts\": {\"test\": \"karma start\"},\n"
+      + "  \"dependencies\": {\n"
+      + "    \"fanchart\": \"1.0.0\",\n"
+      + "    \"@scope/tree-port-pedigree\": \"^2.1.0\"\n"
+      + "  },\n"
+      + "  \"devDependencies\": {\"tree-descendancy\": \"git+https://example.com/tree.git#v1\\u002e2\"},\n"
+      + "  \"bundledDependencies\": [\"fanchart\"],\n"
+      + "  \"private\": true\n"
+      + "}\n";
+
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("fanchart", "1.0.0");
+    expected.put("@scope/tree-port-pedigree", "^2.1.0");
+    expected.put("tree-descendancy", "git+https://example.com/tree.git#v1.2");
+    Assert.assertEquals(PackagePins.parse("package.json", contents), expected);
+  }
+
+  @Test
+  public void parse_flatJson() throws Exception {
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("fanchart", "1.0.0");
+    expected.put("build", "12");
+    Assert.assertEquals(PackagePins.parse("pins.json", "{\"fanchart\": \"1.0.0\", \"build\": 12, \"nested\": {\"a\": \"b\"}}"),
+      expected);
+  }
+
+  @Test
+  public void parse_properties() throws Exception {
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("fanchart", "1.0.0");
+    expected.put("tree-descendancy", "2.0.0");
+    Assert.assertEquals(PackagePins.parse("versions.properties", "# pins\nfanchart=1.0.0\ntree-descendancy: 2.0.0 \n"), expected);
+  }
+
+  @Test
+  public void parse_empty() throws Exception {
+    Assert.assertTrue(PackagePins.parse("package.json", null).isEmpty());
+    Assert.assertTrue(PackagePins.parse("package.json", " \n").isEmpty());
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Expected ',' or '}' at offset .*")
+  public void parse_malformedJson() throws Exception {
+    PackagePins.parse("package.json", "{\"dependencies\": {\"fanchart\": \"1.0.0\" \"tree\": \"2\"}}");
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Unterminated string .*")
+  public void parse_unterminatedString() throws Exception {
+    PackagePins.parse("package.json", "{\"dependencies\": {\"fanchart");
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void parse_trailingText() throws Exception {
+    PackagePins.parse("package.json", "{} {}");
+  }
+
+  @Test
+  public void diff() {
+    Map<String, String> before = new HashMap<String, String>();
+    before.put("fanchart", "1.0.0");
+    before.put("tree-descendancy", "2.0.0");
+    before.put("removed", "1.0.0");
+    Map<String, String> after = new HashMap<String, String>();
+    after.put("fanchart", "1.0.0");
+    after.put("tree-descendancy", "2.1.0");
+    after.put("added", "0.1.0");
+
+    Map<String, String> expected = new TreeMap<String, String>();
+    expected.put("added", "0.1.0");
+    expected.put("tree-descendancy", "2.1.0");
+    Assert.assertEquals(PackagePins.diff(before, after), expected);
+  }
+}
@@ -0,0 +1,85 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the PathPatternMatcher class.
+ *
+ * @author Kent Olsen
+ */
+public class PathPatternMatcherTest {
+
+  private final PathPatternMatcher matcher = new PathPatternMatcher(Arrays.asList(
+    "services", "services/billing", "services/*/api/", "regex:services/(billing|orders)/.*\\.xml$", "regex:docs/"));
+
+  @Test
+  public void findMatches_longestLiteralOnly() {
+    Assert.assertEquals(matcher.findMatches("services/billing/src/A.java"), new HashSet<String>(Arrays.asList("services/billing")));
+    Assert.assertEquals(matcher.findMatches("services/orders/src/A.java"), new HashSet<String>(Arrays.asList("services")));
+  }
+
+  @Test
+  public void findMatches_allPatterns() {
+    Assert.assertEquals(matcher.findMatches("services/billing/api/pom.xml"),
+      new HashSet<String>(Arrays.asList("services/billing", "services/*/api/", "regex:services/(billing|orders)/.*\\.xml$")));
+    Assert.assertEquals(matcher.findMatches("docs/index.md"), new HashSet<String>(Arrays.asList("regex:docs/")));
+  }
+
+  @Test
+  public void findMatches_regexMatchesStartOfPath() {
+    Assert.assertTrue(matcher.findMatches("site/docs/index.md").isEmpty());
+  }
+
+  @Test
+  public void findMatches_none() {
+    Assert.assertTrue(matcher.findMatches("README.md").isEmpty());
+  }
+
+  @Test
+  public void findMatches_regexWithBackreferences() {
+    PathPatternMatcher matcher = new PathPatternMatcher(Arrays.asList("regex:(lib|app)/", "regex:(a)/\\1/",
+      "regex:(?<module>[a-z]+)/\\k<module>\\.xml", "regex:(?<module>[a-z]+)/src/", "regex:(?<=x)|docs/\\\\1"));
+    Assert.assertEquals(matcher.findMatches("a/a/b"), Collections.singleton("regex:(a)/\\1/"));
+    Assert.assertTrue(matcher.findMatches("a/lib/b").isEmpty());
+    Assert.assertEquals(matcher.findMatches("lib/lib.xml"),
+      new HashSet<String>(Arrays.asList("regex:(lib|app)/", "regex:(?<module>[a-z]+)/\\k<module>\\.xml")));
+    Assert.assertEquals(matcher.findMatches("web/src/A.java"), Collections.singleton("regex:(?<module>[a-z]+)/src/"));
+    Assert.assertEquals(matcher.findMatches("docs/\\1"), Collections.singleton("regex:(?<=x)|docs/\\\\1"));
+  }
+
+  @Test
+  public void isGlob() {
+    Assert.assertTrue(PathPatternMatcher.isGlob("a/*"));
+    Assert.assertTrue(PathPatternMatcher.isGlob("a?"));
+    Assert.assertFalse(PathPatternMatcher.isGlob("a/b"));
+    Assert.assertFalse(PathPatternMatcher.isGlob("regex:a.*"));
+  }
+
+  @Test (expectedExceptions = IllegalArgumentException.class)
+  public void construct_invalidRegex() {
+    new PathPatternMatcher(Arrays.asList("regex:services/(billing"));
+  }
+}
@@ -0,0 +1,142 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the SelectionCache class.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionCacheTest {
+
+  private File directory;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = File.createTempFile("cache", "");
+    Assert.assertTrue(directory.delete());
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Assert.assertTrue(file.delete());
+      }
+    }
+    Assert.assertTrue(!directory.exists() || directory.delete());
+  }
+
+  @Test
+  public void getAndPut() throws Exception {
+    SelectionCache cache = new SelectionCache(directory, 4);
+    Assert.assertNull(cache.get("key"));
+    cache.put("key", "<suite>\u00e9</suite>");
+    Assert.assertEquals(cache.get("key"), "<suite>\u00e9</suite>");
+    cache.put("key", "<suite/>");
+    Assert.assertEquals(cache.get("key"), "<suite/>");
+    Assert.assertEquals(cache.getHits(), 2);
+    Assert.assertEquals(cache.getMisses(), 1);
+  }
+
+  @Test
+  public void statisticsPersistAcrossInstances() throws Exception {
+    new SelectionCache(directory, 4).get("missing");
+    SelectionCache cache = new SelectionCache(directory, 4);
+    cache.get("missing");
+    Assert.assertEquals(cache.getHits(), 0);
+    Assert.assertEquals(cache.getMisses(), 2);
+  }
+
+  @Test
+  public void statisticsKeepConcurrentLookups() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(executor.submit(() -> {
+          SelectionCache cache = new SelectionCache(directory, 4);
+          for (int lookup = 0; lookup < 25; lookup++) {
+            cache.get("missing");
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    SelectionCache cache = new SelectionCache(directory, 4);
+    cache.get("missing");
+    Assert.assertEquals(cache.getMisses(), 101);
+  }
+
+  @Test
+  public void put_evictsLeastRecentlyUsed() throws Exception {
+    SelectionCache cache = new SelectionCache(directory, 2);
+    cache.put("first", "1");
+    cache.put("second", "2");
+    Assert.assertTrue(new File(directory, "first.suite").setLastModified(System.currentTimeMillis() - 20000));
+    Assert.assertTrue(new File(directory, "second.suite").setLastModified(System.currentTimeMillis() - 10000));
+    Assert.assertEquals(cache.get("first"), "1");
+    cache.put("third", "3");
+    Assert.assertEquals(cache.get("first"), "1");
+    Assert.assertNull(cache.get("second"));
+    Assert.assertEquals(cache.get("third"), "3");
+  }
+
+  @Test
+  public void createKey() {
+    Assert.assertEquals(SelectionCache.createKey("a", "b"), SelectionCache.createKey("a", "b"));
+    Assert.assertNotEquals(SelectionCache.createKey("a", "b"), SelectionCache.createKey("ab", ""));
+    Assert.assertNotEquals(SelectionCache.createKey("a", null), SelectionCache.createKey("a", ""));
+    Assert.assertEquals(SelectionCache.createKey("a").length(), 64);
+  }
+
+  @Test
+  public void describe_isIndependentOfInsertionOrder() {
+    Properties first = new Properties();
+    first.setProperty("b", "2");
+    first.setProperty("a", "1");
+    Properties second = new Properties();
+    second.setProperty("a", "1");
+    second.setProperty("b", "2");
+    Assert.assertEquals(SelectionCache.describe(first), "a=1\nb=2\n");
+    Assert.assertEquals(SelectionCache.describe(first), SelectionCache.describe(second));
+    Assert.assertEquals(SelectionCache.describe(null), "");
+  }
+}
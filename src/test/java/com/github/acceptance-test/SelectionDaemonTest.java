@@ -0,0 +1,230 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SelectionDaemonTest {
+
+  static final String PACKAGE_BEFORE = "{\n  \"dependencies\": {\n    \"fanchart\": \"1.0.0\",\n    \"tree-descendancy\": \"2.0.0\"\n  }\n}\n";
+  static final String PACKAGE_AFTER = "{\n  \"dependencies\": {\n    \"fanchart\": \"1.0.0\",\n    \"tree-descendancy\": \"2.1.0\"\n  }\n}\n";
+
+  private File repository;
+  private String baseSha;
+  private SelectionDaemon daemon;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    repository = Files.createTempDirectory("selection-daemon").toFile();
+    baseSha = createRepository(repository);
+    daemon = new SelectionDaemon(0, 0);
+    daemon.start();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    daemon.close();
+    DependencyGraphTest.delete(repository);
+  }
+
+  @Test
+  public void select() throws Exception {
+    SelectionDaemonClient client = new SelectionDaemonClient(daemon.getPort(), 10000, 10000);
+
+    SelectionDaemon.Selection first = client.select(repository, baseSha, "HEAD", new File(repository, "package.json"),
+      createSuiteMappings(), ";", true);
+    SelectionDaemon.Selection second = client.select(new File(repository, "src"), baseSha, "HEAD", new File(repository, "package.json"),
+      createSuiteMappings(), ";", false);
+
+    Assert.assertTrue(first.isConfigSent());
+    Assert.assertFalse(second.isConfigSent());
+    Assert.assertEquals(first.getHeadSha().length(), 40);
+    ChangedFileMatcher changedFileMatcher = first.getChangedFileMatcher();
+    Assert.assertEquals(changedFileMatcher.getSuiteNames(), new HashSet<String>(Arrays.asList("Path1Test", "Path3Test")));
+    Assert.assertEquals(changedFileMatcher.getChangedSourceFiles(), Arrays.asList(
+      "src/main/java/com/example/package1/path1/Class1.java", "src/main/java/com/example/package1/path3/Class3.java"));
+    Assert.assertEquals(changedFileMatcher.getChangedFileCount(), 3);
+    Assert.assertEquals(changedFileMatcher.getMatchedFileCount(), 2);
+    Assert.assertEquals(first.getChangedPins(), Collections.singletonMap("tree-descendancy", "2.1.0"));
+    Assert.assertEquals(second.getChangedFileMatcher().getSuiteNames(), changedFileMatcher.getSuiteNames());
+    Assert.assertTrue(second.getChangedFileMatcher().getChangedSourceFiles().isEmpty());
+  }
+
+  @Test
+  public void select_changedMappingsAreSent() throws Exception {
+    SelectionDaemonClient client = new SelectionDaemonClient(daemon.getPort(), 10000, 10000);
+    client.select(repository, baseSha, "HEAD", null, createSuiteMappings(), ";", false);
+    Properties suiteMappings = createSuiteMappings();
+    suiteMappings.setProperty("src/main/java/com/example/package1/path1", "OtherTest");
+
+    SelectionDaemon.Selection selection = client.select(repository, baseSha, "HEAD", null, suiteMappings, ";", false);
+
+    Assert.assertTrue(selection.isConfigSent());
+    Assert.assertEquals(selection.getChangedFileMatcher().getSuiteNames(), new HashSet<String>(Arrays.asList("OtherTest", "Path3Test")));
+    Assert.assertTrue(selection.getChangedPins().isEmpty());
+  }
+
+  @Test
+  public void select_newCommitsAfterRepack() throws Exception {
+    SelectionDaemonClient client = new SelectionDaemonClient(daemon.getPort(), 10000, 10000);
+    client.select(repository, baseSha, "HEAD", null, createSuiteMappings(), ";", false);
+    writeFile(repository, "src/main/java/com/example/package1/path2/Class2.java", "class Class2 { int changed; }");
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "more");
+    git(repository, "gc", "-q");
+
+    SelectionDaemon.Selection selection = client.select(repository, baseSha, "HEAD", null, createSuiteMappings(), ";", false);
+
+    Assert.assertEquals(selection.getChangedFileMatcher().getSuiteNames(),
+      new HashSet<String>(Arrays.asList("Path1Test", "Path2Test", "Path3Test")));
+  }
+
+  @Test (expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Selection daemon failed: .*")
+  public void select_unknownRevision() throws Exception {
+    new SelectionDaemonClient(daemon.getPort(), 10000, 10000).select(repository, "0123456789012345678901234567890123456789", "HEAD", null,
+      createSuiteMappings(), ";", false);
+  }
+
+  @Test
+  public void select_oversizedString() throws Exception {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+    try {
+      socket.setSoTimeout(10000);
+      DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+      output.writeInt(SelectionDaemon.MAGIC);
+      output.writeInt(SelectionDaemon.VERSION);
+      output.writeInt(Integer.MAX_VALUE);
+      output.flush();
+
+      DataInputStream input = new DataInputStream(socket.getInputStream());
+      Assert.assertEquals(input.readByte(), SelectionDaemon.ERROR);
+      Assert.assertEquals(SelectionDaemon.readString(input), "Malformed selection message");
+    }
+    finally {
+      socket.close();
+    }
+
+    SelectionDaemon.Selection selection = new SelectionDaemonClient(daemon.getPort(), 10000, 10000).select(repository, baseSha, "HEAD",
+      null, createSuiteMappings(), ";", false);
+
+    Assert.assertEquals(selection.getChangedFileMatcher().getSuiteNames(), new HashSet<String>(Arrays.asList("Path1Test", "Path3Test")));
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void select_noDaemon() throws Exception {
+    new SelectionDaemonClient(getUnusedPort(), 1000, 1000).select(repository, baseSha, "HEAD", null, createSuiteMappings(), ";", false);
+  }
+
+  @Test
+  public void getRepositoryPath() {
+    Assert.assertEquals(SelectionDaemon.getRepositoryPath(new File(repository, "services/web/package.json")), "services/web/package.json");
+    Assert.assertEquals(SelectionDaemon.getRepositoryPath(new File(repository, "package.json")), "package.json");
+  }
+
+  static Properties createSuiteMappings() {
+    Properties suiteMappings = new Properties();
+    suiteMappings.setProperty("src/main/java/com/example/package1/path1", "Path1Test");
+    suiteMappings.setProperty("src/main/java/com/example/package1/path2", "Path2Test");
+    suiteMappings.setProperty("src/main/java/com/example/package1/path3", "Path3Test");
+    return suiteMappings;
+  }
+
+  /**
+   * Creates a repository with a base commit and a commit changing the sources mapped to Path1Test and Path3Test,
+   * and a pin in package.json.
+   *
+   * @return the SHA of the base commit
+   */
+  static String createRepository(File repository) throws Exception {
+    git(repository, "init", "-q");
+    git(repository, "config", "user.name", "test");
+    git(repository, "config", "user.email", "test@example.com");
+    git(repository, "config", "commit.gpgsign", "false");
+    writeFile(repository, "package.json", PACKAGE_BEFORE);
+    writeFile(repository, "src/main/java/com/example/package1/path1/Class1.java", "class Class1 {}");
+    writeFile(repository, "src/main/java/com/example/package1/path2/Class2.java", "class Class2 {}");
+    writeFile(repository, "src/main/java/com/example/package1/path3/Class3.java", "class Class3 {}");
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "base");
+    String baseSha = git(repository, "rev-parse", "HEAD").get(0);
+    writeFile(repository, "package.json", PACKAGE_AFTER);
+    writeFile(repository, "src/main/java/com/example/package1/path1/Class1.java", "class Class1 { int changed; }");
+    writeFile(repository, "src/main/java/com/example/package1/path3/Class3.java", "class Class3 { int changed; }");
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "change");
+    return baseSha;
+  }
+
+  static int getUnusedPort() throws IOException {
+    ServerSocket serverSocket = new ServerSocket(0);
+    try {
+      return serverSocket.getLocalPort();
+    }
+    finally {
+      serverSocket.close();
+    }
+  }
+
+  static void writeFile(File repository, String path, String contents) throws IOException {
+    File file = new File(repository, path);
+    Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+    Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static List<String> git(File repository, String... arguments) throws Exception {
+    List<String> command = new ArrayList<String>();
+    command.add("git");
+    command.addAll(Arrays.asList(arguments));
+    Process process = new ProcessBuilder(command).directory(repository).redirectErrorStream(true).start();
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    finally {
+      reader.close();
+    }
+    Assert.assertEquals(process.waitFor(), 0, command + ": " + lines);
+    return lines;
+  }
+}
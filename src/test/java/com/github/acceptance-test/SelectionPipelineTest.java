@@ -0,0 +1,160 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the SelectionPipeline class.
+ *
+ * @author Kent Olsen
+ */
+public class SelectionPipelineTest {
+
+  private SelectionPipeline pipeline;
+
+  @BeforeMethod
+  public void setUp() {
+    pipeline = new SelectionPipeline(5);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    pipeline.shutdown();
+  }
+
+  @Test
+  public void then_usesValueOfDependency() throws Exception {
+    SelectionPipeline.Stage<String> sha = pipeline.submit("sha", () -> "1234567890");
+    SelectionPipeline.Stage<Integer> length = pipeline.then("length", sha, String::length);
+    Assert.assertEquals(length.get(), Integer.valueOf(10));
+    Assert.assertEquals(length.getName(), "length");
+  }
+
+  @Test
+  public void submit_independentStagesOverlap() throws Exception {
+    final CountDownLatch bothStarted = new CountDownLatch(2);
+    SelectionPipeline.Task<Boolean> task = () -> {
+      bothStarted.countDown();
+      try {
+        return bothStarted.await(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        return false;
+      }
+    };
+    SelectionPipeline.Stage<Boolean> first = pipeline.submit("first", task);
+    SelectionPipeline.Stage<Boolean> second = pipeline.submit("second", task);
+    Assert.assertTrue(first.get());
+    Assert.assertTrue(second.get());
+  }
+
+  @Test
+  public void submit_everyStageStartsAtOnce() throws Exception {
+    final CountDownLatch allStarted = new CountDownLatch(6);
+    SelectionPipeline.Task<Boolean> task = () -> {
+      allStarted.countDown();
+      try {
+        return allStarted.await(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        return false;
+      }
+    };
+    List<SelectionPipeline.Stage<Boolean>> stages = new ArrayList<SelectionPipeline.Stage<Boolean>>();
+    for (int index = 0; index < 6; index++) {
+      stages.add(pipeline.submit("stage " + index, task));
+    }
+    for (SelectionPipeline.Stage<Boolean> stage : stages) {
+      Assert.assertTrue(stage.get(), stage.getName());
+    }
+  }
+
+  @Test
+  public void completed() throws Exception {
+    Assert.assertEquals(pipeline.completed("sha", "abc").get(), "abc");
+  }
+
+  @Test
+  public void get_reportsOriginatingStage() throws Exception {
+    SelectionPipeline.Stage<String> sha = pipeline.submit("SHA resolution", () -> {
+      ExceptionHelper.throwMojoExecutionException("SHA not found");
+      return null;
+    });
+    SelectionPipeline.Stage<String> diff = pipeline.then("changed files", sha, input -> input + " HEAD");
+    try {
+      diff.get();
+      Assert.fail("Expected MojoExecutionException");
+    }
+    catch (MojoExecutionException e) {
+      Assert.assertTrue(e.getMessage().contains("Stage 'SHA resolution' failed"), e.getMessage());
+      Assert.assertTrue(e.getCause().getMessage().contains("SHA not found"));
+    }
+  }
+
+  @Test
+  public void get_reportsRuntimeFailures() throws Exception {
+    SelectionPipeline.Stage<String> stage = pipeline.submit("suite read", () -> {
+      throw new IllegalStateException("boom");
+    });
+    try {
+      stage.get();
+      Assert.fail("Expected MojoExecutionException");
+    }
+    catch (MojoExecutionException e) {
+      Assert.assertTrue(e.getMessage().contains("Stage 'suite read' failed"), e.getMessage());
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void get_timesOut() throws Exception {
+    SelectionPipeline shortPipeline = new SelectionPipeline(0);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      SelectionPipeline.Stage<String> stage = shortPipeline.submit("changed pins", () -> {
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "done";
+      });
+      stage.get();
+      Assert.fail("Expected MojoExecutionException");
+    }
+    catch (MojoExecutionException e) {
+      Assert.assertTrue(e.getMessage().contains("Stage 'changed pins' did not complete within 0 seconds"), e.getMessage());
+    }
+    finally {
+      release.countDown();
+      shortPipeline.shutdown();
+    }
+  }
+}
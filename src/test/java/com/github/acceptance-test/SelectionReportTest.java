@@ -0,0 +1,138 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SelectionReportTest {
+
+  @Test
+  public void toJson() {
+    SelectionReport report = new SelectionReport();
+    report.setSha("1234567890");
+    report.setChangedFileCount(10);
+    report.setMatchedFileCount(7);
+    report.setSelectedSuiteCount(3);
+    report.setMappedSuiteCount(40);
+    report.setFallbackUsed(true);
+    report.setShardCount(2);
+    report.addTime("changed files", 3000000);
+    report.addTime("matching", 1000000);
+    report.addTime("changed files", 2000000);
+    report.finish(null);
+
+    String json = report.toJson();
+
+    Assert.assertTrue(json.startsWith("{\n  \"version\": 1,\n"), json);
+    Assert.assertTrue(json.contains("  \"succeeded\": true,\n  \"error\": null,\n  \"sha\": \"1234567890\",\n"), json);
+    Assert.assertTrue(json.contains("  \"changedFiles\": 10,\n  \"matchedFiles\": 7,\n  \"unmatchedFiles\": 3,\n"
+      + "  \"selectedSuites\": 3,\n  \"mappedSuites\": 40,\n  \"fallbackUsed\": true,\n  \"shards\": 2,\n"), json);
+    Assert.assertTrue(json.endsWith("  \"phaseMillis\": {\n    \"changed files\": 5,\n    \"matching\": 1\n  }\n}\n"), json);
+    Assert.assertEquals(report.getMillis("changed files"), 5);
+    Assert.assertEquals(report.getMillis("suite write"), -1);
+    Assert.assertTrue(report.getSummary().startsWith("Selected 3 of 40 mapped suites from 10 changed files (7 matched, 3 unmatched)"
+      + " using the fallback in "), report.getSummary());
+    Assert.assertTrue(report.getSummary().endsWith(", slowest phase changed files 5 ms."), report.getSummary());
+  }
+
+  @Test
+  public void baseRevisions() {
+    SelectionReport report = new SelectionReport();
+    report.setBaseRevisionCount(2);
+    report.setChangedFileCount(4);
+    report.setMatchedFileCount(3);
+    report.setSelectedSuiteCount(5);
+    report.setMappedSuiteCount(9);
+    report.finish(null);
+
+    Assert.assertTrue(report.toJson().contains("  \"shards\": 1,\n  \"baseRevisions\": 2,\n"), report.toJson());
+    Assert.assertTrue(report.getSummary().startsWith("Selected 5 of 9 mapped suites from 4 changed files (3 matched, 1 unmatched)"
+      + " against 2 base revisions in "), report.getSummary());
+  }
+
+  @Test
+  public void toJson_cacheHit() {
+    SelectionReport report = new SelectionReport();
+    report.setCacheHit(true);
+    report.setSelectedSuiteCount(4);
+    report.finish(null);
+
+    String json = report.toJson();
+
+    Assert.assertTrue(json.contains("  \"cacheHit\": true,\n"), json);
+    Assert.assertTrue(json.contains("  \"changedFiles\": null,\n  \"matchedFiles\": null,\n  \"unmatchedFiles\": null,\n"), json);
+    Assert.assertTrue(json.endsWith("  \"phaseMillis\": {}\n}\n"), json);
+    Assert.assertTrue(report.getSummary().startsWith("Reused the cached selection of 4 suites in "), report.getSummary());
+  }
+
+  @Test
+  public void toJson_failed() {
+    SelectionReport report = new SelectionReport();
+    report.finish("Stage 'changed files' failed: \"git\"\n");
+
+    Assert.assertTrue(report.toJson().contains("  \"succeeded\": false,\n  \"error\": \"Stage 'changed files' failed: \\\"git\\\"\\n\",\n"),
+      report.toJson());
+    Assert.assertTrue(report.getSummary().startsWith("Selection failed in "), report.getSummary());
+  }
+
+  @Test
+  public void timed_recordsFailedTask() throws Exception {
+    SelectionReport report = new SelectionReport();
+    try {
+      report.timed("SHA resolution", () -> {
+        throw new MojoExecutionException("unreachable");
+      }).run();
+      Assert.fail();
+    }
+    catch (MojoExecutionException e) {
+      Assert.assertEquals(report.getMillis("SHA resolution"), 0);
+    }
+    Assert.assertEquals(report.timed("changed pins", (String input) -> input + "!").run("pins"), "pins!");
+    Assert.assertTrue(report.getMillis("changed pins") >= 0);
+  }
+
+  @Test
+  public void write() throws Exception {
+    File directory = Files.createTempDirectory("selection-report").toFile();
+    try {
+      SelectionReport report = new SelectionReport();
+      report.finish(null);
+      File reportFile = new File(directory, "acceptance-test-selector/report.json");
+
+      report.write(reportFile);
+
+      Assert.assertEquals(new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8), report.toJson());
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+
+  @Test
+  public void quote() {
+    Assert.assertEquals(SelectionReport.quote("a\\b\t\u0001"), "\"a\\\\b\\t\\u0001\"");
+    Assert.assertEquals(SelectionReport.quote(null), "null");
+  }
+}
@@ -0,0 +1,176 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SessionCacheTest {
+
+  @Test
+  public void get_sharedBySession() throws Exception {
+    Object session = new Object();
+    AtomicInteger loads = new AtomicInteger();
+
+    String first = SessionCache.forSession(session).get("sha", () -> "abc" + loads.incrementAndGet());
+    String second = SessionCache.forSession(session).get("sha", () -> "abc" + loads.incrementAndGet());
+    String other = SessionCache.forSession(new Object()).get("sha", () -> "abc" + loads.incrementAndGet());
+
+    Assert.assertEquals(first, "abc1");
+    Assert.assertEquals(second, "abc1");
+    Assert.assertEquals(other, "abc2");
+    Assert.assertTrue(SessionCache.forSession(session).isShared());
+  }
+
+  @Test
+  public void countModules() {
+    Assert.assertEquals(SessionCache.countModules(session(Arrays.asList("other"), Arrays.asList("plugin", "other")), "plugin"), 1);
+    Assert.assertEquals(SessionCache.countModules(session(Arrays.asList("plugin"), Arrays.asList("plugin")), "plugin"), 2);
+    Assert.assertEquals(SessionCache.countModules(session(Arrays.asList("other"), Collections.<String>emptyList()), "plugin"), 2);
+    Assert.assertEquals(SessionCache.countModules(new Object(), "plugin"), -1);
+    Assert.assertEquals(SessionCache.countModules(null, "plugin"), -1);
+  }
+
+  @Test
+  public void get_withoutSession() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+    SessionCache sessionCache = SessionCache.forSession(null);
+
+    sessionCache.get("sha", loads::incrementAndGet);
+    sessionCache.get("sha", loads::incrementAndGet);
+
+    Assert.assertFalse(sessionCache.isShared());
+    Assert.assertEquals(loads.get(), 2);
+  }
+
+  @Test
+  public void get_failureIsNotKept() throws Exception {
+    SessionCache sessionCache = SessionCache.forSession(new Object());
+    try {
+      sessionCache.get("sha", () -> {
+        throw new MojoExecutionException("unreachable");
+      });
+      Assert.fail();
+    }
+    catch (MojoExecutionException e) {
+      Assert.assertEquals(e.getMessage(), "unreachable");
+    }
+
+    Assert.assertEquals(sessionCache.get("sha", () -> "abc"), "abc");
+  }
+
+  @Test
+  public void get_nullValue() throws Exception {
+    SessionCache sessionCache = SessionCache.forSession(new Object());
+
+    Assert.assertNull(sessionCache.get("files", () -> null));
+    Assert.assertNull(sessionCache.get("files", () -> "computed again"));
+  }
+
+  @Test
+  public void get_concurrentModulesComputeOnce() throws Exception {
+    final SessionCache sessionCache = SessionCache.forSession(new Object());
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = executor.submit(() -> sessionCache.get("files", () -> {
+        loading.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return loads.incrementAndGet();
+      }));
+      Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+      Future<Integer> second = executor.submit(() -> sessionCache.get("files", loads::incrementAndGet));
+      release.countDown();
+
+      Assert.assertEquals(first.get(10, TimeUnit.SECONDS), Integer.valueOf(1));
+      Assert.assertEquals(second.get(10, TimeUnit.SECONDS), Integer.valueOf(1));
+      Assert.assertEquals(loads.get(), 1);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @param pluginsOfProjects the artifact ids of the build plugins of each project
+   * @return an object with the parts of a Maven session that {@link SessionCache#countModules} reads
+   */
+  @SafeVarargs
+  static Session session(List<String>... pluginsOfProjects) {
+    Session session = new Session();
+    for (List<String> plugins : pluginsOfProjects) {
+      Project project = new Project();
+      for (String plugin : plugins) {
+        project.plugins.add(new Plugin(plugin));
+      }
+      session.projects.add(project);
+    }
+    return session;
+  }
+
+  public static class Session {
+
+    private final List<Project> projects = new ArrayList<Project>();
+
+    public List<Project> getProjects() {
+      return projects;
+    }
+  }
+
+  public static class Project {
+
+    private final List<Plugin> plugins = new ArrayList<Plugin>();
+
+    public List<Plugin> getBuildPlugins() {
+      return plugins;
+    }
+  }
+
+  public static class Plugin {
+
+    private final String artifactId;
+
+    Plugin(String artifactId) {
+      this.artifactId = artifactId;
+    }
+
+    public String getArtifactId() {
+      return artifactId;
+    }
+  }
+}
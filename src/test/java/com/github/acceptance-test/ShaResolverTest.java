@@ -0,0 +1,247 @@
+package com.github.kentolsen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the ShaResolver class against an embedded HTTP server.
+ *
+ * @author Kent Olsen
+ */
+public class ShaResolverTest {
+
+  private static final String SHA = "adbf23f466db4d9c1b7e0652103ff9bce422c97a";
+
+  private HttpServer server;
+  private URL url;
+  private File stateFile;
+  private final List<Integer> statuses = Collections.synchronizedList(new ArrayList<Integer>());
+  private final List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+  private volatile String etag;
+  private volatile String body;
+  private volatile Callable<Void> duringRequest;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    statuses.clear();
+    duringRequest = null;
+    ifNoneMatchHeaders.clear();
+    etag = "\"v1\"";
+    body = SHA + "\n";
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/lastSuccessfulBuild", this::handle);
+    server.start();
+    url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/lastSuccessfulBuild");
+    stateFile = File.createTempFile("sha-state", ".properties");
+    Assert.assertTrue(stateFile.delete());
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    server.stop(0);
+    //noinspection ResultOfMethodCallIgnored
+    stateFile.delete();
+    //noinspection ResultOfMethodCallIgnored
+    new File(stateFile.getPath() + ".lock").delete();
+  }
+
+  @Test
+  public void fetch() throws Exception {
+    statuses.add(200);
+    ShaResolver resolver = new ShaResolver(1000, 1000, 1, 0, null);
+    Assert.assertEquals(resolver.fetch(url), SHA + "\n");
+    Assert.assertEquals(resolver.getLastSource(), ShaResolver.Source.SERVER);
+  }
+
+  @Test
+  public void fetch_taggedResponse() throws Exception {
+    statuses.add(200);
+    body = "<SHA1>" + SHA + "</SHA1>";
+    Assert.assertEquals(new ShaResolver(1000, 1000, 1, 0, null).fetch(url), "<SHA1>" + SHA + "</SHA1>");
+  }
+
+  @Test
+  public void fetch_retriesServerErrors() throws Exception {
+    statuses.add(503);
+    statuses.add(500);
+    statuses.add(200);
+    ShaResolver resolver = new ShaResolver(1000, 1000, 3, 1, null);
+    Assert.assertEquals(resolver.fetch(url), SHA + "\n");
+    Assert.assertTrue(statuses.isEmpty());
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void fetch_givesUpAfterMaxAttempts() throws Exception {
+    statuses.add(500);
+    statuses.add(500);
+    statuses.add(200);
+    new ShaResolver(1000, 1000, 2, 1, null).fetch(url);
+  }
+
+  @Test
+  public void fetch_doesNotRetryClientErrors() throws Exception {
+    statuses.add(200);
+    new ShaResolver(1000, 1000, 1, 0, stateFile).fetch(url);
+    statuses.add(404);
+    statuses.add(200);
+    try {
+      new ShaResolver(1000, 1000, 3, 1, stateFile).fetch(url);
+      Assert.fail("Expected IOException");
+    }
+    catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("404"), e.getMessage());
+    }
+    Assert.assertEquals(statuses.size(), 1);
+  }
+
+  @Test
+  public void fetch_conditionalRequest() throws Exception {
+    statuses.add(200);
+    Assert.assertEquals(new ShaResolver(1000, 1000, 1, 0, stateFile).fetch(url), SHA + "\n");
+    statuses.add(304);
+    ShaResolver resolver = new ShaResolver(1000, 1000, 1, 0, stateFile);
+    Assert.assertEquals(resolver.fetch(url), SHA + "\n");
+    Assert.assertEquals(resolver.getLastSource(), ShaResolver.Source.NOT_MODIFIED);
+    Assert.assertEquals(ifNoneMatchHeaders.get(0), null);
+    Assert.assertEquals(ifNoneMatchHeaders.get(1), "\"v1\"");
+  }
+
+  @Test
+  public void fetch_newResponseReplacesState() throws Exception {
+    statuses.add(200);
+    new ShaResolver(1000, 1000, 1, 0, stateFile).fetch(url);
+    statuses.add(200);
+    etag = "\"v2\"";
+    body = "1234567890123456789012345678901234567890\n";
+    Assert.assertEquals(new ShaResolver(1000, 1000, 1, 0, stateFile).fetch(url), body);
+    server.stop(0);
+    ShaResolver resolver = new ShaResolver(200, 200, 1, 0, stateFile);
+    Assert.assertEquals(resolver.fetch(url), body);
+  }
+
+  @Test
+  public void fetch_lastKnownGoodWhenUnreachable() throws Exception {
+    statuses.add(200);
+    new ShaResolver(1000, 1000, 1, 0, stateFile).fetch(url);
+    server.stop(0);
+    ShaResolver resolver = new ShaResolver(200, 200, 2, 1, stateFile);
+    Assert.assertEquals(resolver.fetch(url), SHA + "\n");
+    Assert.assertEquals(resolver.getLastSource(), ShaResolver.Source.LAST_KNOWN_GOOD);
+  }
+
+  @Test
+  public void fetch_keepsStateWrittenByOtherBuilds() throws Exception {
+    statuses.add(200);
+    duringRequest = () -> {
+      Properties otherState = new Properties();
+      otherState.setProperty("http://other/lastSuccessfulBuild.body", "other");
+      OutputStream outputStream = new FileOutputStream(stateFile);
+      try {
+        otherState.store(outputStream, null);
+      }
+      finally {
+        outputStream.close();
+      }
+      return null;
+    };
+    new ShaResolver(1000, 1000, 1, 0, stateFile).fetch(url);
+
+    Properties state = new Properties();
+    InputStream inputStream = new FileInputStream(stateFile);
+    try {
+      state.load(inputStream);
+    }
+    finally {
+      inputStream.close();
+    }
+    Assert.assertEquals(state.getProperty("http://other/lastSuccessfulBuild.body"), "other");
+    Assert.assertEquals(state.getProperty(url.toExternalForm() + ".body"), SHA + "\n");
+    Assert.assertEquals(state.getProperty(url.toExternalForm() + ".etag"), "\"v1\"");
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void fetch_unreachableWithoutState() throws Exception {
+    server.stop(0);
+    new ShaResolver(200, 200, 2, 1, stateFile).fetch(url);
+  }
+
+  @Test
+  public void fetch_fileUrl() throws Exception {
+    File file = File.createTempFile("sha", ".txt");
+    try {
+      java.nio.file.Files.write(file.toPath(), SHA.getBytes(StandardCharsets.UTF_8));
+      Assert.assertEquals(new ShaResolver(1000, 1000, 1, 0, null).fetch(file.toURI().toURL()), SHA);
+    }
+    finally {
+      Assert.assertTrue(file.delete());
+    }
+  }
+
+  @Test (expectedExceptions = FileNotFoundException.class)
+  public void fetch_missingFileUrl() throws Exception {
+    new ShaResolver(1000, 1000, 1, 0, null).fetch(new URL("file:///non-existent"));
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    ifNoneMatchHeaders.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+    int status = statuses.isEmpty() ? 500 : statuses.remove(0);
+    if (duringRequest != null) {
+      try {
+        duringRequest.call();
+      }
+      catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+    if (status == 200) {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("ETag", etag);
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream outputStream = exchange.getResponseBody();
+      outputStream.write(bytes);
+      outputStream.close();
+    }
+    else {
+      exchange.sendResponseHeaders(status, -1);
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SuiteBitmapTest {
+
+  @Test
+  public void add_sparse() {
+    SuiteBitmap bitmap = new SuiteBitmap();
+    Assert.assertTrue(bitmap.add(700));
+    Assert.assertTrue(bitmap.add(3));
+    Assert.assertFalse(bitmap.add(700));
+    Assert.assertEquals(bitmap.cardinality(), 2);
+    Assert.assertTrue(bitmap.contains(3));
+    Assert.assertTrue(bitmap.contains(700));
+    Assert.assertFalse(bitmap.contains(4));
+    Assert.assertEquals(toBitSet(bitmap), bitSet(3, 700));
+  }
+
+  @Test
+  public void add_dense() {
+    SuiteBitmap bitmap = new SuiteBitmap();
+    BitSet expected = new BitSet();
+    for (int value = 0; value < 300; value += 3) {
+      Assert.assertTrue(bitmap.add(value));
+      expected.set(value);
+    }
+    Assert.assertFalse(bitmap.add(150));
+    Assert.assertEquals(bitmap.cardinality(), 100);
+    Assert.assertEquals(toBitSet(bitmap), expected);
+    Assert.assertTrue(bitmap.add(SuiteBitmap.MAX_VALUE));
+    Assert.assertTrue(bitmap.contains(SuiteBitmap.MAX_VALUE));
+  }
+
+  @Test (expectedExceptions = IllegalArgumentException.class)
+  public void add_outOfRange() {
+    new SuiteBitmap().add(SuiteBitmap.MAX_VALUE + 1);
+  }
+
+  @Test
+  public void remove() {
+    SuiteBitmap sparse = new SuiteBitmap();
+    sparse.add(1);
+    sparse.add(9);
+    Assert.assertTrue(sparse.remove(1));
+    Assert.assertFalse(sparse.remove(1));
+    Assert.assertEquals(toBitSet(sparse), bitSet(9));
+
+    SuiteBitmap dense = dense();
+    Assert.assertTrue(dense.remove(10));
+    Assert.assertFalse(dense.remove(10));
+    Assert.assertFalse(dense.remove(100000));
+    Assert.assertEquals(dense.cardinality(), 19);
+  }
+
+  @Test
+  public void removeAll() {
+    SuiteBitmap sparse = new SuiteBitmap();
+    sparse.add(1);
+    sparse.add(9);
+    sparse.removeAll(bitSet(9, 12));
+    Assert.assertEquals(toBitSet(sparse), bitSet(1));
+
+    SuiteBitmap dense = dense();
+    dense.removeAll(bitSet(0, 1, 19, 200));
+    Assert.assertEquals(dense.cardinality(), 17);
+    Assert.assertFalse(dense.contains(19));
+    dense.removeAll(toBitSet(dense));
+    Assert.assertTrue(dense.isEmpty());
+  }
+
+  @Test
+  public void writeAndRead() throws Exception {
+    SuiteBitmap sparse = new SuiteBitmap();
+    sparse.add(42);
+    SuiteBitmap dense = dense();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    sparse.write(output);
+    dense.write(output);
+    output.close();
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    Assert.assertEquals(toBitSet(SuiteBitmap.read(buffer)), toBitSet(sparse));
+    SuiteBitmap read = SuiteBitmap.read(buffer);
+    Assert.assertEquals(toBitSet(read), toBitSet(dense));
+    Assert.assertEquals(read.cardinality(), dense.cardinality());
+    Assert.assertFalse(buffer.hasRemaining());
+  }
+
+  @Test (expectedExceptions = IllegalArgumentException.class)
+  public void read_notABitmap() {
+    SuiteBitmap.read(ByteBuffer.wrap(new byte[]{7, 0, 0, 0, 0}));
+  }
+
+  private static SuiteBitmap dense() {
+    SuiteBitmap bitmap = new SuiteBitmap();
+    for (int value = 0; value < 20; value++) {
+      bitmap.add(value);
+    }
+    return bitmap;
+  }
+
+  private static BitSet toBitSet(SuiteBitmap bitmap) {
+    BitSet bits = new BitSet();
+    bitmap.orInto(bits);
+    return bits;
+  }
+
+  private static BitSet bitSet(int... values) {
+    BitSet bits = new BitSet();
+    for (int value : values) {
+      bits.set(value);
+    }
+    return bits;
+  }
+}
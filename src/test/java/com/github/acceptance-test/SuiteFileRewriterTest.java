@@ -0,0 +1,183 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the SuiteFileRewriter class.
+ *
+ * @author Kent Olsen
+ */
+public class SuiteFileRewriterTest {
+
+  private static final String CLASSES = "    <classes>\n      <class name=\"Path1Test\"/>\n    </classes>\n";
+
+  @Test
+  public void rewrite_setsPreserveOrder() {
+    String suite = "<suite name=\"s\" preserve-order=\"false\">\n"
+      + "  <test name=\"first\" preserve-order = 'false' verbose=\"2\">\n"
+      + "  </test>\n"
+      + "  <test name=\"second\">\n"
+      + "  </test>\n"
+      + "  <test name=\"third\" />\n"
+      + "</suite>\n";
+    Assert.assertEquals(SuiteFileRewriter.rewrite(suite, CLASSES, Boolean.TRUE), "<suite name=\"s\" preserve-order=\"false\">\n"
+      + "  <test name=\"first\" preserve-order = 'true' verbose=\"2\">\n"
+      + CLASSES
+      + "  </test>\n"
+      + "  <test name=\"second\" preserve-order=\"true\">\n"
+      + CLASSES
+      + "  </test>\n"
+      + "  <test name=\"third\" preserve-order=\"true\">\n"
+      + CLASSES
+      + "</test>\n"
+      + "</suite>\n");
+  }
+
+  @Test
+  public void rewrite_keepsPreserveOrderWhenNull() {
+    String suite = "<suite name=\"s\">\n  <test name=\"t\" preserve-order=\"false\">\n  </test>\n</suite>\n";
+    Assert.assertEquals(SuiteFileRewriter.rewrite(suite, null, null), suite);
+  }
+
+  @Test
+  public void rewrite_removesPackagesAndClasses() {
+    String suite = "<suite name=\"s\">\n"
+      + "  <test name=\"t\">\n"
+      + "    <packages>\n"
+      + "      <package name=\"com.example.*\"/>\n"
+      + "    </packages>\n"
+      + "    <classes>\n"
+      + "      <class name=\"OldTest\"/>\n"
+      + "    </classes>\n"
+      + "  </test>\n"
+      + "</suite>\n";
+    Assert.assertEquals(SuiteFileRewriter.rewrite(suite, null), "<suite name=\"s\">\n  <test name=\"t\">\n  </test>\n</suite>\n");
+  }
+
+  @Test
+  public void rewrite_insertsClassesIntoEachTest() {
+    String suite = "<suite name=\"s\">\n"
+      + "  <test name=\"first\">\n"
+      + "    <packages><package name=\"a.*\"/></packages>\n"
+      + "  </test>\n"
+      + "  <test name=\"second\">\n"
+      + "    <classes><class name=\"OldTest\"/></classes>\n"
+      + "  </test>\n"
+      + "</suite>\n";
+    Assert.assertEquals(SuiteFileRewriter.rewrite(suite, CLASSES), "<suite name=\"s\">\n"
+      + "  <test name=\"first\">\n"
+      + CLASSES
+      + "  </test>\n"
+      + "  <test name=\"second\">\n"
+      + CLASSES
+      + "  </test>\n"
+      + "</suite>\n");
+  }
+
+  @Test
+  public void rewrite_preservesEverythingElse() {
+    String suite = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<!DOCTYPE suite SYSTEM \"http://testng.org/testng-1.0.dtd\" [ <!ENTITY x \"<packages>\"> ]>\n"
+      + "<suite name='s'  verbose = \"1\">\n"
+      + "  <!-- <packages> in a comment </test> stays -->\n"
+      + "  <listeners>\n"
+      + "    <listener class-name=\"com.example.Listener\" />\n"
+      + "  </listeners>\n"
+      + "  <parameter name=\"url\" value=\"http://host/a?b=1&amp;c=&gt;\"/>\n"
+      + "  <test name=\"t\" attr=\"a > b\">\n"
+      + "    <parameter name=\"cdata\"><![CDATA[</test><classes>]]></parameter>\n"
+      + "  </test>\n"
+      + "</suite>\n";
+    String expected = suite.replace("  </test>\n</suite>", CLASSES + "  </test>\n</suite>");
+    Assert.assertEquals(SuiteFileRewriter.rewrite(suite, CLASSES), expected);
+    Assert.assertEquals(SuiteFileRewriter.rewrite(suite, null), suite);
+  }
+
+  @Test
+  public void rewrite_emptyTestElement() {
+    Assert.assertEquals(SuiteFileRewriter.rewrite("<suite>\n<test name=\"t\"/>\n</suite>\n", CLASSES),
+      "<suite>\n<test name=\"t\">\n" + CLASSES + "</test>\n</suite>\n");
+    Assert.assertEquals(SuiteFileRewriter.rewrite("<suite>\n<test name=\"t\"/>\n</suite>\n", null),
+      "<suite>\n<test name=\"t\"/>\n</suite>\n");
+  }
+
+  @Test
+  public void rewrite_testOnOneLine() {
+    Assert.assertEquals(SuiteFileRewriter.rewrite("<suite><test><classes/></test></suite>", CLASSES),
+      "<suite><test>\n" + CLASSES + "</test></suite>");
+  }
+
+  @Test
+  public void rewrite_suiteLevelPackages() {
+    Assert.assertEquals(SuiteFileRewriter.rewrite("<suite>\n  <packages>\n    <package name=\"a\"/>\n  </packages>\n</suite>\n", null),
+      "<suite>\n</suite>\n");
+  }
+
+  @Test
+  public void rewrite_withoutTest() {
+    Assert.assertEquals(SuiteFileRewriter.rewrite("<suite>\n</suite>\n", CLASSES), "<suite>\n</suite>\n");
+  }
+
+  @Test
+  public void accept_lineByLine() {
+    StringWriter writer = new StringWriter();
+    SuiteFileRewriter rewriter = new SuiteFileRewriter(writer, CLASSES);
+    rewriter.accept("<suite>");
+    rewriter.accept("<test name=\"t\"");
+    rewriter.accept("      parallel=\"false\"><!-- a");
+    rewriter.accept("b --><packages>");
+    rewriter.accept("</packages>");
+    rewriter.accept("</test>");
+    rewriter.accept("</suite>");
+    rewriter.finish();
+    String separator = AcceptanceTestSelector.LINE_SEPARATOR;
+    Assert.assertEquals(writer.toString(), "<suite>" + separator + "<test name=\"t\"" + separator
+      + "      parallel=\"false\"><!-- a" + separator + "b -->" + separator + CLASSES + "</test>" + separator + "</suite>" + separator);
+    Assert.assertEquals(rewriter.getTestCount(), 1);
+  }
+
+  @Test
+  public void finish_writesUnterminatedMarkup() {
+    Assert.assertEquals(SuiteFileRewriter.rewrite("<suite>\n<!-- open", null), "<suite>\n<!-- open");
+  }
+
+  @Test (expectedExceptions = UncheckedIOException.class)
+  public void write_writerFails() {
+    Writer writer = new Writer() {
+      public void write(char[] chars, int offset, int length) throws IOException {
+        throw new IOException("disk full");
+      }
+
+      public void flush() {
+      }
+
+      public void close() {
+      }
+    };
+    new SuiteFileRewriter(writer, null).write("<suite/>");
+  }
+}
@@ -0,0 +1,144 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Tests for the SuiteMappingTrie class.
+ *
+ * @author Kent Olsen
+ */
+public class SuiteMappingTrieTest {
+
+  private static final String[] SEGMENTS = {"src", "main", "java", "com", "example", "package1", "path1", "path2", "api", "impl"};
+
+  @Test
+  public void findLongestPrefix_noMatch() {
+    SuiteMappingTrie trie = new SuiteMappingTrie(createMappings());
+    Assert.assertNull(trie.findLongestPrefix("src/test/java/com/example/Foo.java"));
+    Assert.assertNull(trie.findLongestPrefix(""));
+  }
+
+  @Test
+  public void findLongestPrefix_longestWins() {
+    SuiteMappingTrie trie = new SuiteMappingTrie(createMappings());
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/package1/path2/Class2.java"),
+      "src/main/java/com/example/package1/path2");
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/package1/path4/Class4.java"),
+      "src/main/java/com/example/package1");
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/package1"),
+      "src/main/java/com/example/package1");
+  }
+
+  @Test
+  public void findLongestPrefix_partialSegment() {
+    SuiteMappingTrie trie = new SuiteMappingTrie(createMappings());
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/package1/path20/Class20.java"),
+      "src/main/java/com/example/package1/path2");
+  }
+
+  @Test
+  public void findLongestPrefix_emptyKeyMatchesEverything() {
+    SuiteMappingTrie trie = new SuiteMappingTrie();
+    trie.put("");
+    trie.put("src/main");
+    Assert.assertEquals(trie.findLongestPrefix("pom.xml"), "");
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java"), "src/main");
+  }
+
+  @Test
+  public void put_splitsExistingEdges() {
+    SuiteMappingTrie trie = new SuiteMappingTrie();
+    trie.put("src/main/java/com/example/alpha");
+    trie.put("src/main/java/com/example/beta");
+    trie.put("src/main/java/com");
+    trie.put("src/main/java/com");
+    Assert.assertEquals(trie.size(), 3);
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/alpha/A.java"), "src/main/java/com/example/alpha");
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/beta/B.java"), "src/main/java/com/example/beta");
+    Assert.assertEquals(trie.findLongestPrefix("src/main/java/com/example/gamma/C.java"), "src/main/java/com");
+  }
+
+  @Test
+  public void findLongestPrefix_sameAsStartsWithLoopForNonOverlappingKeys() {
+    Random random = new Random(42);
+    List<String> keys = new ArrayList<String>();
+    Set<String> seen = new HashSet<String>();
+    while (keys.size() < 300) {
+      String key = randomPath(random, 2 + random.nextInt(4));
+      if (seen.add(key) && !overlaps(key, keys)) {
+        keys.add(key);
+      }
+    }
+    SuiteMappingTrie trie = new SuiteMappingTrie();
+    for (String key : keys) {
+      trie.put(key);
+    }
+
+    for (int i = 0; i < 5000; i++) {
+      String path = randomPath(random, 1 + random.nextInt(7)) + ".java";
+      String expected = null;
+      for (String key : keys) {
+        if (path.startsWith(key)) {
+          expected = key;
+          break;
+        }
+      }
+      Assert.assertEquals(trie.findLongestPrefix(path), expected, path);
+    }
+  }
+
+  private static boolean overlaps(String key, List<String> keys) {
+    for (String other : keys) {
+      if (other.startsWith(key) || key.startsWith(other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String randomPath(Random random, int depth) {
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      if (i > 0) {
+        path.append('/');
+      }
+      path.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+    }
+    return path.toString();
+  }
+
+  private static Properties createMappings() {
+    Properties mappings = new Properties();
+    mappings.setProperty("src/main/java/com/example/package1", "Package1Test");
+    mappings.setProperty("src/main/java/com/example/package1/path1", "Path1Test");
+    mappings.setProperty("src/main/java/com/example/package1/path2", "Path2Test");
+    mappings.setProperty("src/main/java/com/example/package2", "Package2Test");
+    return mappings;
+  }
+}
@@ -0,0 +1,108 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SuitePrioritizerTest {
+
+  private File directory;
+  private TestHistoryStore testHistoryStore;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("suite-prioritizer").toFile();
+    testHistoryStore = new TestHistoryStore(new File(directory, "test-history.bin"), 20);
+    testHistoryStore.load();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(directory);
+  }
+
+  @Test
+  public void prioritize_recentFailuresFirst() throws Exception {
+    record(1, "Stable", TestResult.Outcome.PASS, "OldFailure", TestResult.Outcome.FAIL, "NewFailure", TestResult.Outcome.PASS);
+    record(2, "Stable", TestResult.Outcome.PASS, "OldFailure", TestResult.Outcome.PASS, "NewFailure", TestResult.Outcome.PASS);
+    record(3, "Stable", TestResult.Outcome.PASS, "OldFailure", TestResult.Outcome.PASS, "NewFailure", TestResult.Outcome.FAIL);
+
+    List<String> prioritized = SuitePrioritizer.prioritize(Arrays.asList("Stable", "OldFailure", "NewFailure", "Unknown"),
+      testHistoryStore, Collections.<String>emptySet(), Collections.<String, Long>emptyMap(), 1000);
+
+    Assert.assertEquals(prioritized, Arrays.asList("NewFailure", "OldFailure", "Stable", "Unknown"));
+  }
+
+  @Test
+  public void prioritize_shortClassesFirst() throws Exception {
+    record(1, "Long", TestResult.Outcome.FAIL, "Short", TestResult.Outcome.FAIL, "Passing", TestResult.Outcome.PASS);
+    Map<String, Long> durations = new HashMap<String, Long>();
+    durations.put("Long", 100000L);
+    durations.put("Short", 1000L);
+    durations.put("Passing", 10L);
+    durations.put("Changed", 2000L);
+
+    List<String> prioritized = SuitePrioritizer.prioritize(Arrays.asList("Passing", "Long", "Changed", "Short"),
+      testHistoryStore, new HashSet<String>(Collections.singletonList("Changed")), durations, 60000);
+
+    Assert.assertEquals(prioritized, Arrays.asList("Short", "Changed", "Long", "Passing"));
+  }
+
+  @Test
+  public void prioritize_withoutHistoryIsStable() {
+    List<String> first = SuitePrioritizer.prioritize(Arrays.asList("C", "A", "B"), null, Collections.<String>emptySet(),
+      Collections.<String, Long>emptyMap(), 1000);
+    List<String> second = SuitePrioritizer.prioritize(Arrays.asList("B", "C", "A"), null, Collections.<String>emptySet(),
+      Collections.<String, Long>emptyMap(), 1000);
+
+    Assert.assertEquals(first, Arrays.asList("A", "B", "C"));
+    Assert.assertEquals(second, first);
+  }
+
+  @Test
+  public void getFailureScore() throws Exception {
+    record(1, "A", TestResult.Outcome.FAIL);
+    record(2, "A", TestResult.Outcome.PASS);
+    record(3, "A", TestResult.Outcome.SKIP);
+
+    Assert.assertEquals(SuitePrioritizer.getFailureScore(testHistoryStore.getClassHistory("A")), 0.25 / 1.75, 1e-9);
+    Assert.assertEquals(SuitePrioritizer.getFailureScore(null), 0.0);
+  }
+
+  private void record(long runTime, Object... classOutcomes) throws Exception {
+    List<TestResult> results = new ArrayList<TestResult>();
+    for (int index = 0; index < classOutcomes.length; index += 2) {
+      results.add(new TestResult(runTime, (String) classOutcomes[index], null, 1000, (TestResult.Outcome) classOutcomes[index + 1]));
+    }
+    testHistoryStore.append(results);
+  }
+}
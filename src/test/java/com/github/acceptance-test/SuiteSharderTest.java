@@ -0,0 +1,98 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SuiteSharderTest {
+
+  @Test
+  public void shard_longestFirst() {
+    Map<String, Long> durations = new HashMap<String, Long>();
+    durations.put("A", 7L);
+    durations.put("B", 6L);
+    durations.put("C", 5L);
+    durations.put("D", 4L);
+    durations.put("E", 3L);
+    durations.put("F", 3L);
+    List<SuiteSharder.Shard> shards = SuiteSharder.shard(Arrays.asList("F", "E", "D", "C", "B", "A"), 3, durations, 1);
+    Assert.assertEquals(shards.size(), 3);
+    Assert.assertEquals(shards.get(0).getClasses(), Arrays.asList("A", "F"));
+    Assert.assertEquals(shards.get(1).getClasses(), Arrays.asList("B", "E"));
+    Assert.assertEquals(shards.get(2).getClasses(), Arrays.asList("C", "D"));
+    Assert.assertEquals(shards.get(0).getDuration(), 10);
+    Assert.assertEquals(shards.get(1).getDuration(), 9);
+    Assert.assertEquals(shards.get(2).getDuration(), 9);
+    Assert.assertEquals(SuiteSharder.getMakespan(shards), 10);
+  }
+
+  @Test
+  public void shard_defaultDuration() {
+    Map<String, Long> durations = Collections.singletonMap("Known", 50L);
+    List<SuiteSharder.Shard> shards = SuiteSharder.shard(Arrays.asList("Known", "Unknown1", "Unknown2"), 2, durations, 30);
+    Assert.assertEquals(shards.get(0).getClasses(), Arrays.asList("Known"));
+    Assert.assertEquals(shards.get(1).getClasses(), Arrays.asList("Unknown1", "Unknown2"));
+    Assert.assertEquals(SuiteSharder.getMakespan(shards), 60);
+  }
+
+  @Test
+  public void shard_moreShardsThanClasses() {
+    List<SuiteSharder.Shard> shards = SuiteSharder.shard(Arrays.asList("A"), 3, Collections.<String, Long>emptyMap(), 5);
+    Assert.assertEquals(shards.size(), 3);
+    Assert.assertEquals(shards.get(0).getClasses(), Arrays.asList("A"));
+    Assert.assertTrue(shards.get(1).getClasses().isEmpty());
+    Assert.assertTrue(shards.get(2).getClasses().isEmpty());
+    Assert.assertEquals(shards.get(2).getNumber(), 3);
+  }
+
+  @Test
+  public void shard_isBalanced() {
+    Map<String, Long> durations = new HashMap<String, Long>();
+    List<String> classes = new ArrayList<String>();
+    long total = 0;
+    for (int index = 0; index < 500; index++) {
+      String className = "Test" + index;
+      long duration = 1000 + (index * 7919L) % 90000;
+      durations.put(className, duration);
+      classes.add(className);
+      total += duration;
+    }
+    List<SuiteSharder.Shard> shards = SuiteSharder.shard(classes, 12, durations, 0);
+    long lowerBound = (total + 11) / 12;
+    Assert.assertTrue(SuiteSharder.getMakespan(shards) <= lowerBound * 4 / 3);
+    int classCount = 0;
+    for (SuiteSharder.Shard shard : shards) {
+      classCount += shard.getClasses().size();
+    }
+    Assert.assertEquals(classCount, 500);
+  }
+
+  @Test (expectedExceptions = IllegalArgumentException.class)
+  public void shard_invalidShardCount() {
+    SuiteSharder.shard(Arrays.asList("A"), 0, Collections.<String, Long>emptyMap(), 5);
+  }
+}
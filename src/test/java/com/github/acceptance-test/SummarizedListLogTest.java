@@ -0,0 +1,105 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.logging.Log;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class SummarizedListLogTest {
+
+  @Test
+  public void item_limited() {
+    Log log = mock(Log.class);
+    SummarizedListLog listLog = new SummarizedListLog(log, "p: ", "Changed file list", "Changed file item", 2, null);
+
+    listLog.begin();
+    listLog.item("a");
+    listLog.item("b");
+    listLog.item("c");
+    listLog.end();
+
+    verify(log).info("p: Changed file list begin:");
+    verify(log).info("p: Changed file item: a");
+    verify(log).info("p: Changed file item: b");
+    verify(log).info("p: Changed file list end, 3 items, 1 not shown at INFO, run with -X to log them.");
+    verify(log, never()).debug(anyString());
+    verify(log, times(4)).info(anyString());
+    Assert.assertEquals(listLog.getCount(), 3);
+  }
+
+  @Test
+  public void item_debugEnabled() {
+    Log log = mock(Log.class);
+    when(log.isDebugEnabled()).thenReturn(true);
+    SummarizedListLog listLog = new SummarizedListLog(log, "p: ", "Suites to run", "Suite to run item", 0, null);
+
+    listLog.begin();
+    listLog.item("Suite1");
+    listLog.end();
+
+    verify(log).debug("p: Suite to run item: Suite1");
+    verify(log).info("p: Suites to run end, 1 item, 1 not shown at INFO.");
+  }
+
+  @Test
+  public void item_unlimited() {
+    Log log = mock(Log.class);
+    SummarizedListLog listLog = new SummarizedListLog(log, "p: ", "Changed pins", "Changed pin item", -1, null);
+
+    listLog.begin();
+    for (int index = 0; index < 100; index++) {
+      listLog.item("pin");
+    }
+    listLog.end();
+
+    verify(log, times(100)).info("p: Changed pin item: pin");
+    verify(log).info("p: Changed pins end, 100 items.");
+  }
+
+  @Test
+  public void item_detailLog() throws Exception {
+    File directory = Files.createTempDirectory("detail-log").toFile();
+    try {
+      File file = new File(directory, "detail.log");
+      Log log = mock(Log.class);
+      DetailLogWriter detailLog = new DetailLogWriter(file);
+      SummarizedListLog listLog = new SummarizedListLog(log, "p: ", "Changed file list", "Changed file item", 1, detailLog);
+
+      listLog.begin();
+      listLog.item("a");
+      listLog.item("b");
+      listLog.end();
+      detailLog.close();
+
+      verify(log).info("p: Changed file list end, 2 items, 1 not shown at INFO, all in the detail log.");
+      Assert.assertEquals(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8), Arrays.asList("# Changed file list", "a", "b"));
+    }
+    finally {
+      DependencyGraphTest.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.github.kentolsen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class TestHistoryRecorderTest {
+
+  private File directory;
+  private File testResultsFile;
+  private File testHistoryFile;
+  private TestHistoryRecorder sut;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("test-history-recorder").toFile();
+    testResultsFile = new File(directory, "testng-results.xml");
+    testHistoryFile = new File(directory, "history/test-history.bin");
+    sut = new TestHistoryRecorder();
+    sut.setTestResultsFile(testResultsFile);
+    sut.setTestHistoryFile(testHistoryFile);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(directory);
+  }
+
+  @Test
+  public void execute() throws Exception {
+    Files.write(testResultsFile.toPath(), TestNGResultsParserTest.RESULTS.getBytes(StandardCharsets.UTF_8));
+    sut.execute();
+    sut.execute();
+
+    TestHistoryStore store = new TestHistoryStore(testHistoryFile, 20);
+    store.load();
+    Assert.assertEquals(store.getRecordCount(), 10);
+    Assert.assertEquals(store.getClassHistory("com.example.LoginTest").getFailureCount(), 2);
+    Assert.assertEquals(store.getClassHistory("com.example.SearchTest").getAverageDuration(), 50);
+  }
+
+  @Test
+  public void execute_noResults() throws Exception {
+    sut.execute();
+    Assert.assertFalse(testHistoryFile.exists());
+  }
+
+  @Test
+  public void execute_skip() throws Exception {
+    Files.write(testResultsFile.toPath(), TestNGResultsParserTest.RESULTS.getBytes(StandardCharsets.UTF_8));
+    sut.setSkip(true);
+    sut.execute();
+    Assert.assertFalse(testHistoryFile.exists());
+  }
+
+  @Test (expectedExceptions = MojoExecutionException.class)
+  public void execute_malformedResults() throws Exception {
+    Files.write(testResultsFile.toPath(), "<testng-results>".getBytes(StandardCharsets.UTF_8));
+    sut.execute();
+  }
+}
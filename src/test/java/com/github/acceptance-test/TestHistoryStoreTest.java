@@ -0,0 +1,194 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class TestHistoryStoreTest {
+
+  private File directory;
+  private File file;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("test-history").toFile();
+    file = new File(directory, "history/test-history.bin");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DependencyGraphTest.delete(directory);
+  }
+
+  @Test
+  public void appendAndLoad() throws Exception {
+    TestHistoryStore store = new TestHistoryStore(file, 5);
+    store.load();
+    Assert.assertTrue(store.getClassNames().isEmpty());
+    store.append(run(1, 100, TestResult.Outcome.PASS));
+    store.append(run(2, 300, TestResult.Outcome.FAIL));
+
+    TestHistoryStore loaded = new TestHistoryStore(file, 5);
+    loaded.load();
+    Assert.assertEquals(loaded.getRecordCount(), 4);
+    TestHistoryStore.ClassHistory history = loaded.getClassHistory("com.example.LoginTest");
+    Assert.assertEquals(history.getRuns().size(), 2);
+    Assert.assertEquals(history.getAverageDuration(), 200);
+    Assert.assertEquals(history.getFailureCount(), 1);
+    Assert.assertEquals(history.getLastRun().getRunTime(), 2);
+    Assert.assertEquals(history.getLastRun().getOutcome(), TestResult.Outcome.FAIL);
+    Assert.assertEquals(history.getMethodNames().size(), 1);
+    Assert.assertEquals(history.getMethodRuns("login").get(1).getDuration(), 300);
+    Assert.assertTrue(history.getMethodRuns("missing").isEmpty());
+    Assert.assertNull(loaded.getClassHistory("com.example.Missing"));
+  }
+
+  @Test
+  public void append_boundsHistory() throws Exception {
+    TestHistoryStore store = new TestHistoryStore(file, 3);
+    store.load();
+    for (int run = 1; run <= 10; run++) {
+      store.append(run(run, run * 10, TestResult.Outcome.PASS));
+    }
+    List<TestResult> runs = store.getClassHistory("com.example.LoginTest").getRuns();
+    Assert.assertEquals(runs.size(), 3);
+    Assert.assertEquals(runs.get(0).getRunTime(), 8);
+    Assert.assertEquals(store.getRetainedCount(), 6);
+    Assert.assertEquals(store.getRecordCount(), 20);
+  }
+
+  @Test
+  public void append_compacts() throws Exception {
+    TestHistoryStore store = new TestHistoryStore(file, 2);
+    store.load();
+    for (int run = 1; run <= 600; run++) {
+      store.append(run(run, run, TestResult.Outcome.PASS));
+    }
+    Assert.assertTrue(store.getRecordCount() <= 1026, String.valueOf(store.getRecordCount()));
+    long compactedLength = file.length();
+
+    TestHistoryStore loaded = new TestHistoryStore(file, 2);
+    loaded.load();
+    Assert.assertEquals(loaded.getRecordCount(), store.getRecordCount());
+    List<TestResult> runs = loaded.getClassHistory("com.example.LoginTest").getRuns();
+    Assert.assertEquals(runs.get(0).getRunTime(), 599);
+    Assert.assertEquals(runs.get(1).getRunTime(), 600);
+    loaded.compact();
+    Assert.assertEquals(loaded.getRecordCount(), 4);
+    Assert.assertTrue(file.length() < compactedLength);
+  }
+
+  @Test
+  public void append_dropsTruncatedRecord() throws Exception {
+    TestHistoryStore store = new TestHistoryStore(file, 5);
+    store.load();
+    store.append(run(1, 100, TestResult.Outcome.PASS));
+    long length = file.length();
+    store.append(run(2, 200, TestResult.Outcome.PASS));
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(length + 5);
+    }
+    finally {
+      randomAccessFile.close();
+    }
+
+    TestHistoryStore loaded = new TestHistoryStore(file, 5);
+    loaded.load();
+    Assert.assertEquals(loaded.getRecordCount(), 2);
+    loaded.append(run(3, 300, TestResult.Outcome.PASS));
+    TestHistoryStore reloaded = new TestHistoryStore(file, 5);
+    reloaded.load();
+    Assert.assertEquals(reloaded.getRecordCount(), 4);
+    Assert.assertEquals(reloaded.getClassHistory("com.example.LoginTest").getAverageDuration(), 200);
+  }
+
+  @Test
+  public void append_keepsRecordsAppendedByOtherStores() throws Exception {
+    TestHistoryStore first = new TestHistoryStore(file, 5);
+    first.load();
+    first.append(run(1, 100, TestResult.Outcome.PASS));
+    TestHistoryStore second = new TestHistoryStore(file, 5);
+    second.load();
+    second.append(run(2, 200, TestResult.Outcome.PASS));
+    first.append(run(3, 300, TestResult.Outcome.FAIL));
+    Assert.assertEquals(first.getRecordCount(), 6);
+
+    TestHistoryStore loaded = new TestHistoryStore(file, 5);
+    loaded.load();
+    Assert.assertEquals(loaded.getRecordCount(), 6);
+    Assert.assertEquals(loaded.getClassHistory("com.example.LoginTest").getAverageDuration(), 200);
+  }
+
+  @Test
+  public void append_afterOtherStoreCompacted() throws Exception {
+    TestHistoryStore first = new TestHistoryStore(file, 2);
+    first.load();
+    first.append(run(1, 100, TestResult.Outcome.PASS));
+    TestHistoryStore second = new TestHistoryStore(file, 2);
+    second.load();
+    for (int run = 2; run <= 10; run++) {
+      second.append(run(run, run * 100, TestResult.Outcome.PASS));
+    }
+    second.compact();
+    first.append(run(11, 1100, TestResult.Outcome.PASS));
+
+    TestHistoryStore loaded = new TestHistoryStore(file, 2);
+    loaded.load();
+    List<TestResult> runs = loaded.getClassHistory("com.example.LoginTest").getRuns();
+    Assert.assertEquals(runs.size(), 2);
+    Assert.assertEquals(runs.get(0).getRunTime(), 10);
+    Assert.assertEquals(runs.get(1).getRunTime(), 11);
+    Assert.assertEquals(loaded.getRecordCount(), 6);
+  }
+
+  @Test
+  public void load_otherVersionIsDiscarded() throws Exception {
+    TestHistoryStore store = new TestHistoryStore(file, 5);
+    store.load();
+    store.append(run(1, 100, TestResult.Outcome.PASS));
+    byte[] contents = Files.readAllBytes(file.toPath());
+    contents[7]++;
+    Files.write(file.toPath(), contents);
+
+    TestHistoryStore loaded = new TestHistoryStore(file, 5);
+    loaded.load();
+    Assert.assertTrue(loaded.getClassNames().isEmpty());
+    loaded.append(run(2, 200, TestResult.Outcome.PASS));
+    TestHistoryStore reloaded = new TestHistoryStore(file, 5);
+    reloaded.load();
+    Assert.assertEquals(reloaded.getRecordCount(), 2);
+  }
+
+  private static List<TestResult> run(long runTime, long duration, TestResult.Outcome outcome) {
+    return new ArrayList<TestResult>(Arrays.asList(
+      new TestResult(runTime, "com.example.LoginTest", null, duration, outcome),
+      new TestResult(runTime, "com.example.LoginTest", "login", duration, outcome)));
+  }
+}
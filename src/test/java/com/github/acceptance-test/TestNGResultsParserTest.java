@@ -0,0 +1,95 @@
+package com.github.kentolsen;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+ * Copyright (C) 2015  Kent Olsen
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+public class TestNGResultsParserTest {
+
+  static final String RESULTS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+    + "<testng-results skipped=\"1\" failed=\"1\" total=\"5\" passed=\"3\">\n"
+    + "  <reporter-output>\n  </reporter-output>\n"
+    + "  <suite name=\"Acceptance\" duration-ms=\"500\">\n"
+    + "    <groups>\n    </groups>\n"
+    + "    <test name=\"First\">\n"
+    + "      <class name=\"com.example.LoginTest\">\n"
+    + "        <test-method status=\"PASS\" name=\"setUp\" is-config=\"true\" duration-ms=\"5\"/>\n"
+    + "        <test-method status=\"PASS\" name=\"login\" duration-ms=\"100\"/>\n"
+    + "        <test-method status=\"FAIL\" name=\"logout\" duration-ms=\"40\">\n"
+    + "          <exception class=\"java.lang.AssertionError\"><message><![CDATA[expected <class name=\"x\">]]></message></exception>\n"
+    + "        </test-method>\n"
+    + "      </class>\n"
+    + "      <class name=\"com.example.SearchTest\">\n"
+    + "        <test-method status=\"PASS\" name=\"search\" duration-ms=\"20\"/>\n"
+    + "        <test-method status=\"SKIP\" name=\"search\" duration-ms=\"0\"/>\n"
+    + "      </class>\n"
+    + "    </test>\n"
+    + "    <test name=\"Second\">\n"
+    + "      <class name=\"com.example.SearchTest\">\n"
+    + "        <test-method status=\"PASS\" name=\"search\" duration-ms=\"30\"/>\n"
+    + "      </class>\n"
+    + "    </test>\n"
+    + "  </suite>\n"
+    + "</testng-results>\n";
+
+  @Test
+  public void parse() throws Exception {
+    List<TestResult> results = parse(RESULTS);
+    Assert.assertEquals(results.size(), 5);
+    assertResult(results.get(0), "com.example.LoginTest", null, 145, TestResult.Outcome.FAIL);
+    assertResult(results.get(1), "com.example.LoginTest", "login", 100, TestResult.Outcome.PASS);
+    assertResult(results.get(2), "com.example.LoginTest", "logout", 40, TestResult.Outcome.FAIL);
+    assertResult(results.get(3), "com.example.SearchTest", null, 50, TestResult.Outcome.SKIP);
+    assertResult(results.get(4), "com.example.SearchTest", "search", 50, TestResult.Outcome.SKIP);
+    Assert.assertEquals(results.get(0).getRunTime(), 1234L);
+  }
+
+  @Test
+  public void parse_failedConfiguration() throws Exception {
+    List<TestResult> results = parse("<testng-results><suite><test><class name=\"A\">"
+      + "<test-method status=\"FAIL\" name=\"setUp\" is-config=\"true\" duration-ms=\"7\"/>"
+      + "<test-method status=\"SKIP\" name=\"run\" duration-ms=\"x\"/>"
+      + "</class></test></suite></testng-results>");
+    Assert.assertEquals(results.size(), 2);
+    assertResult(results.get(0), "A", null, 7, TestResult.Outcome.FAIL);
+    assertResult(results.get(1), "A", "run", 0, TestResult.Outcome.SKIP);
+  }
+
+  @Test (expectedExceptions = IOException.class)
+  public void parse_malformed() throws Exception {
+    parse("<testng-results><suite>");
+  }
+
+  private static List<TestResult> parse(String results) throws IOException {
+    return TestNGResultsParser.parse(new ByteArrayInputStream(results.getBytes(StandardCharsets.UTF_8)), 1234L);
+  }
+
+  private static void assertResult(TestResult result, String className, String methodName, long duration, TestResult.Outcome outcome) {
+    Assert.assertEquals(result.getClassName(), className);
+    Assert.assertEquals(result.getMethodName(), methodName);
+    Assert.assertEquals(result.getDuration(), duration);
+    Assert.assertEquals(result.getOutcome(), outcome);
+  }
+}